@@ -0,0 +1,262 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.data.IData;
+import etomica.data.IDataInfo;
+import etomica.data.IDataSink;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the reduced energies of sampled configurations in each of K
+ * states and computes the free energies of the states with the multistate
+ * Bennett acceptance ratio (MBAR) method.  Configurations may come from any
+ * of the states (one simulation per state, or several simulations feeding
+ * the same accumulator); the sink returned by makeSink(k) records samples
+ * taken from state k.  Data is typically the output of a
+ * MeterMultistateEnergy.
+ * <p>
+ * MBAR needs every sample, so the reduced energies are kept (in chunks) until
+ * reset.  The free energies are found at the end with the self-consistent
+ * MBAR iteration.  Samples may be added from multiple threads.
+ */
+public class AccumulatorMBAR {
+
+    protected static final int CHUNK_SIZE = 4096;
+
+    public AccumulatorMBAR(int numStates) {
+        this.numStates = numStates;
+        chunks = new ArrayList<>();
+        sampleCount = new long[numStates];
+        tolerance = 1e-10;
+        maxIterations = 100000;
+    }
+
+    /**
+     * Returns a sink that records data from configurations sampled in the
+     * given state.
+     */
+    public IDataSink makeSink(final int sampledState) {
+        if (sampledState < 0 || sampledState >= numStates) {
+            throw new IllegalArgumentException("invalid state "+sampledState);
+        }
+        return new IDataSink() {
+            final double[] u = new double[numStates];
+            public void putData(IData data) {
+                for (int i=0; i<numStates; i++) {
+                    u[i] = data.getValue(i);
+                }
+                addSample(sampledState, u);
+            }
+
+            public void putDataInfo(IDataInfo dataInfo) {
+                if (dataInfo.getLength() != numStates) {
+                    throw new IllegalArgumentException("expected "+numStates+" reduced energies");
+                }
+            }
+        };
+    }
+
+    /**
+     * Records a configuration sampled in sampledState, with reduced energies
+     * (beta U) in each state.
+     */
+    public synchronized void addSample(int sampledState, double[] reducedEnergies) {
+        int iChunk = (int)(nSamples / CHUNK_SIZE);
+        int i = (int)(nSamples % CHUNK_SIZE);
+        if (iChunk == chunks.size()) {
+            chunks.add(new double[CHUNK_SIZE*numStates]);
+        }
+        System.arraycopy(reducedEnergies, 0, chunks.get(iChunk), i*numStates, numStates);
+        sampleCount[sampledState]++;
+        nSamples++;
+        freeEnergies = null;
+    }
+
+    public synchronized void reset() {
+        chunks.clear();
+        nSamples = 0;
+        for (int i=0; i<numStates; i++) {
+            sampleCount[i] = 0;
+        }
+        freeEnergies = null;
+    }
+
+    public int getNumStates() {
+        return numStates;
+    }
+
+    public long getSampleCount(int state) {
+        return sampleCount[state];
+    }
+
+    public long getSampleCount() {
+        return nSamples;
+    }
+
+    /**
+     * Sets the convergence tolerance of the reduced free energies.
+     */
+    public void setTolerance(double newTolerance) {
+        tolerance = newTolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    public void setMaxIterations(int newMaxIterations) {
+        maxIterations = newMaxIterations;
+    }
+
+    public int getMaxIterations() {
+        return maxIterations;
+    }
+
+    /**
+     * Returns the number of iterations taken by the last solution.
+     */
+    public int getNumIterations() {
+        return numIterations;
+    }
+
+    /**
+     * Returns the reduced free energy (beta A) of each state, relative to
+     * state 0.
+     */
+    public synchronized double[] getFreeEnergies() {
+        if (freeEnergies == null) {
+            solve();
+        }
+        return freeEnergies.clone();
+    }
+
+    /**
+     * Returns beta A of state j minus beta A of state i.
+     */
+    public double getFreeEnergyDifference(int i, int j) {
+        double[] f = getFreeEnergies();
+        return f[j] - f[i];
+    }
+
+    /**
+     * Solves the MBAR equations
+     *   f_i = -ln sum_n exp(-u_i(x_n)) / sum_k N_k exp(f_k - u_k(x_n))
+     * by self-consistent iteration, with sums done in log space.
+     */
+    protected void solve() {
+        if (nSamples == 0) {
+            throw new IllegalStateException("no samples");
+        }
+        double[] logN = new double[numStates];
+        for (int k=0; k<numStates; k++) {
+            logN[k] = sampleCount[k] > 0 ? Math.log(sampleCount[k]) : Double.NEGATIVE_INFINITY;
+        }
+        double[] f = new double[numStates];
+        double[] fNew = new double[numStates];
+        double[] logDen = new double[(int)nSamples];
+        double[] maxTerm = new double[numStates];
+        double[] sumTerm = new double[numStates];
+        numIterations = 0;
+        while (true) {
+            // log of the denominator for each sample
+            for (int n=0; n<nSamples; n++) {
+                double[] chunk = chunks.get(n/CHUNK_SIZE);
+                int offset = (n%CHUNK_SIZE)*numStates;
+                double max = Double.NEGATIVE_INFINITY;
+                for (int k=0; k<numStates; k++) {
+                    double t = logN[k] + f[k] - chunk[offset+k];
+                    if (t > max) max = t;
+                }
+                double sum = 0;
+                for (int k=0; k<numStates; k++) {
+                    sum += Math.exp(logN[k] + f[k] - chunk[offset+k] - max);
+                }
+                logDen[n] = max + Math.log(sum);
+            }
+            // new free energies, with a running log-sum-exp over samples
+            for (int i=0; i<numStates; i++) {
+                maxTerm[i] = Double.NEGATIVE_INFINITY;
+                sumTerm[i] = 0;
+            }
+            for (int n=0; n<nSamples; n++) {
+                double[] chunk = chunks.get(n/CHUNK_SIZE);
+                int offset = (n%CHUNK_SIZE)*numStates;
+                for (int i=0; i<numStates; i++) {
+                    double t = -chunk[offset+i] - logDen[n];
+                    if (t > maxTerm[i]) {
+                        sumTerm[i] = sumTerm[i]*Math.exp(maxTerm[i]-t) + 1;
+                        maxTerm[i] = t;
+                    }
+                    else {
+                        sumTerm[i] += Math.exp(t-maxTerm[i]);
+                    }
+                }
+            }
+            for (int i=0; i<numStates; i++) {
+                fNew[i] = -(maxTerm[i] + Math.log(sumTerm[i]));
+            }
+            double delta = 0;
+            for (int i=numStates-1; i>=0; i--) {
+                fNew[i] -= fNew[0];
+                delta = Math.max(delta, Math.abs(fNew[i]-f[i]));
+                f[i] = fNew[i];
+            }
+            numIterations++;
+            if (delta < tolerance) break;
+            if (numIterations == maxIterations) {
+                throw new RuntimeException("MBAR did not converge after "+maxIterations+" iterations (change "+delta+")");
+            }
+        }
+        freeEnergies = f;
+    }
+
+    /**
+     * Returns the overlap matrix O_ij = N_j sum_n W_ni W_nj, where W_ni is the
+     * MBAR weight of sample n in state i.  Off-diagonal elements near zero
+     * indicate states that are poorly connected by the sampling.
+     */
+    public synchronized double[][] getOverlapMatrix() {
+        double[] f = getFreeEnergies();
+        double[][] o = new double[numStates][numStates];
+        double[] w = new double[numStates];
+        for (int n=0; n<nSamples; n++) {
+            double[] chunk = chunks.get(n/CHUNK_SIZE);
+            int offset = (n%CHUNK_SIZE)*numStates;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int k=0; k<numStates; k++) {
+                if (sampleCount[k] == 0) continue;
+                double t = Math.log(sampleCount[k]) + f[k] - chunk[offset+k];
+                if (t > max) max = t;
+            }
+            double sum = 0;
+            for (int k=0; k<numStates; k++) {
+                if (sampleCount[k] == 0) continue;
+                sum += Math.exp(Math.log(sampleCount[k]) + f[k] - chunk[offset+k] - max);
+            }
+            double logDen = max + Math.log(sum);
+            for (int i=0; i<numStates; i++) {
+                w[i] = Math.exp(f[i] - chunk[offset+i] - logDen);
+            }
+            for (int i=0; i<numStates; i++) {
+                for (int j=0; j<numStates; j++) {
+                    o[i][j] += w[i]*w[j]*sampleCount[j];
+                }
+            }
+        }
+        return o;
+    }
+
+    protected final int numStates;
+    protected final List<double[]> chunks;
+    protected final long[] sampleCount;
+    protected long nSamples;
+    protected double tolerance;
+    protected int maxIterations;
+    protected int numIterations;
+    protected double[] freeEnergies;
+}
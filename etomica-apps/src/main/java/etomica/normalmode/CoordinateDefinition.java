@@ -13,6 +13,7 @@ import etomica.lattice.IndexIteratorRectangular;
 import etomica.lattice.crystal.Basis;
 import etomica.lattice.crystal.BasisMonatomic;
 import etomica.lattice.crystal.Primitive;
+import etomica.math.numerical.GridFourierTransform;
 import etomica.molecule.IMolecule;
 import etomica.molecule.IMoleculeList;
 import etomica.molecule.MoleculeArrayList;
@@ -21,6 +22,8 @@ import etomica.space.Space;
 import etomica.space.Vector;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * An abstract class that defines the real-space generalized coordinates that are
@@ -220,6 +223,230 @@ public abstract class CoordinateDefinition {
 
     }
 
+    /**
+     * Calculates the T vectors for all of the given wave vectors.  The
+     * generalized coordinates are computed once for each cell.  If the cells
+     * form a complete periodic grid along the primitive vectors, T for all
+     * lattice-commensurate wave vectors comes from a single multidimensional
+     * FFT over the grid, which costs O(N log N) rather than O(N) per wave
+     * vector.  Wave vectors that are not commensurate with the grid (or any
+     * wave vector, if the cells do not form such a grid) are summed directly.
+     *
+     * @param waveVectors the wave vectors
+     * @param realT       outputs the real component of each T vector
+     * @param imaginaryT  outputs the imaginary component of each T vector
+     */
+    public void calcT(Vector[] waveVectors, double[][] realT, double[][] imaginaryT) {
+        int nCells = cells.length;
+        if (uCells == null || uCells.length != nCells*coordinateDim) {
+            uCells = new double[nCells*coordinateDim];
+        }
+        for (int iCell = 0; iCell<nCells; iCell++) {
+            double[] u = calcU(cells[iCell].molecules);
+            System.arraycopy(u, 0, uCells, iCell*coordinateDim, coordinateDim);
+        }
+
+        int[] gridIndex = waveVectors.length > 1 ? getGridIndex() : null;
+        int[] kIndices = gridIndex == null ? null : getGridWaveVectorIndices(waveVectors);
+        if (gridIndex != null) {
+            if (fftReal == null || fftReal.length != coordinateDim || fftReal[0].length != nCells) {
+                fftReal = new double[coordinateDim][nCells];
+                fftImaginary = new double[coordinateDim][nCells];
+            }
+            for (int i = 0; i < coordinateDim; i++) {
+                for (int iCell = 0; iCell<nCells; iCell++) {
+                    fftReal[i][gridIndex[iCell]] = uCells[iCell*coordinateDim+i];
+                    fftImaginary[i][gridIndex[iCell]] = 0;
+                }
+                fft.transform(fftReal[i], fftImaginary[i], gridSize);
+            }
+        }
+
+        double sqrtCells = Math.sqrt(nCells);
+        Vector r0 = cells[0].cellPosition;
+        WaveVectorTrigTable trigTable = null;
+        for (int iVector = 0; iVector<waveVectors.length; iVector++) {
+            Vector k = waveVectors[iVector];
+            double[] rT = realT[iVector];
+            double[] iT = imaginaryT[iVector];
+            int kIndex = kIndices == null ? -1 : kIndices[iVector];
+            if (kIndex < 0) {
+                if (trigTable == null) {
+                    trigTable = getTrigTable(waveVectors);
+                }
+                calcTDirect(trigTable, iVector, rT, iT);
+                continue;
+            }
+            // T(k) = exp(-i k.R0) sum_m u(m) exp(-2 pi i j.m/n)
+            double kR0 = k.dot(r0);
+            double cos0 = Math.cos(kR0);
+            double sin0 = Math.sin(kR0);
+            for (int i = 0; i < coordinateDim; i++) {
+                double re = fftReal[i][kIndex];
+                double im = fftImaginary[i][kIndex];
+                rT[i] = (cos0*re + sin0*im) / sqrtCells;
+                iT[i] = (cos0*im - sin0*re) / sqrtCells;
+            }
+        }
+    }
+
+    /**
+     * Sums T for a single wave vector (from the given trig table) using the
+     * coordinates stored in uCells.
+     */
+    protected void calcTDirect(WaveVectorTrigTable trigTable, int iVector, double[] realT, double[] imaginaryT) {
+        for (int i = 0; i < coordinateDim; i++) {
+            realT[i] = 0;
+            imaginaryT[i] = 0;
+        }
+        for (int iCell = 0; iCell<cells.length; iCell++) {
+            double coskR = trigTable.cos(iVector, iCell);
+            double sinkR = trigTable.sin(iVector, iCell);
+            int offset = iCell*coordinateDim;
+            for (int i = 0; i < coordinateDim; i++) {
+                realT[i] += coskR * uCells[offset+i];
+                imaginaryT[i] -= sinkR * uCells[offset+i];
+            }
+        }
+        double sqrtCells = Math.sqrt(cells.length);
+        for (int i = 0; i < coordinateDim; i++) {
+            realT[i] /= sqrtCells;
+            imaginaryT[i] /= sqrtCells;
+        }
+    }
+
+    /**
+     * Returns the grid index of each cell (see makeGridIndex), or null if
+     * the cells do not fill a complete grid.  The result is cached until the
+     * cells are rebuilt or the primitive vectors change.
+     */
+    protected int[] getGridIndex() {
+        Vector[] a = primitive.vectors();
+        if (gridCells != cells || !sameComponents(gridPrimitiveComponents, a)) {
+            gridCells = cells;
+            gridPrimitiveComponents = copyComponents(gridPrimitiveComponents, a);
+            gridIndexValid = makeGridIndex() != null;
+            gridWaveVectorComponents = null;
+        }
+        return gridIndexValid ? gridIndex : null;
+    }
+
+    /**
+     * Returns the FFT grid index for each wave vector (-1 for those not
+     * commensurate with the grid).  getGridIndex must have returned a grid.
+     * The result is cached until the wave vectors or the grid change.
+     */
+    protected int[] getGridWaveVectorIndices(Vector[] waveVectors) {
+        if (gridWaveVectorComponents == null || !sameComponents(gridWaveVectorComponents, waveVectors)) {
+            gridWaveVectorComponents = copyComponents(gridWaveVectorComponents, waveVectors);
+            if (gridWaveVectorIndices == null || gridWaveVectorIndices.length != waveVectors.length) {
+                gridWaveVectorIndices = new int[waveVectors.length];
+            }
+            Vector[] primitiveVectors = primitive.vectors();
+            for (int i=0; i<waveVectors.length; i++) {
+                gridWaveVectorIndices[i] = gridWaveVectorIndex(waveVectors[i], primitiveVectors);
+            }
+        }
+        return gridWaveVectorIndices;
+    }
+
+    private static boolean sameComponents(double[] components, Vector[] v) {
+        if (components == null || v.length == 0 || components.length != v.length*v[0].getD()) return false;
+        int D = v[0].getD();
+        for (int i=0; i<v.length; i++) {
+            for (int j=0; j<D; j++) {
+                if (components[i*D+j] != v[i].getX(j)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static double[] copyComponents(double[] components, Vector[] v) {
+        int D = v.length == 0 ? 0 : v[0].getD();
+        if (components == null || components.length != v.length*D) {
+            components = new double[v.length*D];
+        }
+        for (int i=0; i<v.length; i++) {
+            for (int j=0; j<D; j++) {
+                components[i*D+j] = v[i].getX(j);
+            }
+        }
+        return components;
+    }
+
+    /**
+     * Determines the position of each cell on a grid along the primitive
+     * vectors, relative to the first cell.  Returns the index of each cell
+     * in the (row-major) grid, or null if the cells do not fill a complete
+     * grid.  The grid dimensions are stored in gridSize.
+     */
+    protected int[] makeGridIndex() {
+        int D = space.D();
+        Vector[] a = primitive.vectors();
+        if (a.length != D) return null;
+        double[][] dual = GridFourierTransform.dualVectors(a);
+        if (dual == null) return null;
+
+        int nCells = cells.length;
+        if (gridM == null || gridM.length != nCells*D) {
+            gridM = new int[nCells*D];
+        }
+        int[] min = new int[D], max = new int[D];
+        Vector r0 = cells[0].cellPosition;
+        for (int iCell=0; iCell<nCells; iCell++) {
+            Vector r = cells[iCell].cellPosition;
+            for (int i=0; i<D; i++) {
+                double x = 0;
+                for (int j=0; j<D; j++) {
+                    x += dual[i][j]*(r.getX(j) - r0.getX(j));
+                }
+                int m = (int)Math.round(x);
+                if (Math.abs(x-m) > 1e-6) return null;
+                gridM[iCell*D+i] = m;
+                if (m < min[i]) min[i] = m;
+                if (m > max[i]) max[i] = m;
+            }
+        }
+        if (gridSize == null || gridSize.length != D) {
+            gridSize = new int[D];
+        }
+        int nGrid = 1;
+        for (int i=0; i<D; i++) {
+            gridSize[i] = max[i]-min[i]+1;
+            nGrid *= gridSize[i];
+        }
+        if (nGrid != nCells) return null;
+        if (gridIndex == null || gridIndex.length != nCells) {
+            gridIndex = new int[nCells];
+        }
+        boolean[] filled = new boolean[nCells];
+        for (int iCell=0; iCell<nCells; iCell++) {
+            int idx = 0;
+            for (int i=0; i<D; i++) {
+                idx = idx*gridSize[i] + Math.floorMod(gridM[iCell*D+i], gridSize[i]);
+            }
+            if (filled[idx]) return null;
+            filled[idx] = true;
+            gridIndex[iCell] = idx;
+        }
+        return gridIndex;
+    }
+
+    /**
+     * Returns the grid index of the FFT output corresponding to wave vector
+     * k, or -1 if k is not commensurate with the grid.
+     */
+    protected int gridWaveVectorIndex(Vector k, Vector[] primitiveVectors) {
+        int idx = 0;
+        for (int i=0; i<gridSize.length; i++) {
+            double x = k.dot(primitiveVectors[i])*gridSize[i]/(2*Math.PI);
+            long j = Math.round(x);
+            if (Math.abs(x-j) > 1e-6) return -1;
+            idx = idx*gridSize[i] + (int)Math.floorMod(j, (long)gridSize[i]);
+        }
+        return idx;
+    }
+
     public Box getBox() {
         return box;
     }
@@ -234,6 +461,39 @@ public abstract class CoordinateDefinition {
         return cells;
     }
 
+    /**
+     * Returns a table of cos(k.R) and sin(k.R) for the given wave vectors and
+     * the lattice positions of the basis cells.  Tables are cached, so all
+     * moves and meters using the same wave vectors share one table.
+     */
+    public WaveVectorTrigTable getTrigTable(Vector[] waveVectors) {
+        for (int i = trigTables.size()-1; i >= 0; i--) {
+            WaveVectorTrigTable table = trigTables.get(i);
+            if (table.cells != cells || table.isSinglePrecision() != trigTableSinglePrecision) {
+                // stale (the cells were rebuilt) or the wrong precision
+                trigTables.remove(i);
+            }
+            else if (table.matches(waveVectors, cells)) {
+                return table;
+            }
+        }
+        WaveVectorTrigTable table = new WaveVectorTrigTable(waveVectors, cells, trigTableSinglePrecision);
+        trigTables.add(table);
+        return table;
+    }
+
+    /**
+     * Sets whether trig tables store values in single precision, which halves
+     * their size at the cost of ~1e-7 relative error in each value.
+     */
+    public void setTrigTableSinglePrecision(boolean newSinglePrecision) {
+        trigTableSinglePrecision = newSinglePrecision;
+    }
+
+    public boolean isTrigTableSinglePrecision() {
+        return trigTableSinglePrecision;
+    }
+
     public Primitive getPrimitive() {
         return primitive;
     }
@@ -255,6 +515,17 @@ public abstract class CoordinateDefinition {
     protected final MoleculeActionTranslateTo atomActionTranslateTo;
     protected BasisCell[] cells;
     protected final Space space;
+    // work arrays for calcT(Vector[],...)
+    protected double[] uCells;
+    protected double[][] fftReal, fftImaginary;
+    protected int[] gridM, gridSize, gridIndex, gridWaveVectorIndices;
+    // what gridIndex and gridWaveVectorIndices were computed for
+    protected BasisCell[] gridCells;
+    protected double[] gridPrimitiveComponents, gridWaveVectorComponents;
+    protected boolean gridIndexValid;
+    protected final GridFourierTransform fft = new GridFourierTransform();
+    protected final List<WaveVectorTrigTable> trigTables = new ArrayList<>();
+    protected boolean trigTableSinglePrecision;
     
     protected static class SiteSource implements AtomLeafAgentManager.AgentSource<Vector> {
         
@@ -8,7 +8,6 @@ import Jama.EigenvalueDecomposition;
 import Jama.Matrix;
 import etomica.action.activity.ActivityIntegrate;
 import etomica.atom.AtomType;
-import etomica.atom.IAtom;
 import etomica.box.Box;
 import etomica.integrator.IntegratorMC;
 import etomica.lattice.crystal.Basis;
@@ -29,6 +28,7 @@ import etomica.species.SpeciesSpheresMono;
 
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.stream.IntStream;
 
 /**
  * MC simulation of FCC soft-sphere model in 3D with tabulation of the
@@ -55,6 +55,7 @@ public class HessianDB extends Simulation {
     public CoordinateDefinition coordinateDefinition;
     public PotentialMasterMonatomic potentialMaster;
     public NormalModes nm;
+    public P2SoftSphericalTruncated pTruncated;
     protected double latticeEnergy;
 
     public HessianDB(Space _space, int numAtoms, double density, double temperature, int exponent, String filename) {
@@ -83,7 +84,7 @@ public class HessianDB extends Simulation {
         Potential2SoftSpherical potential = new P2SoftSphere(space, 1.0, 1.0, 12);
         double truncationRadius = boundary.getBoxSize().getX(0) * 0.495;
         System.out.println("radius: " + truncationRadius);
-        P2SoftSphericalTruncated pTruncated = new P2SoftSphericalTruncated(space, potential, truncationRadius);
+        pTruncated = new P2SoftSphericalTruncated(space, potential, truncationRadius);
 
         AtomType sphereType = species.getLeafType();
         potentialMaster.addPotential(pTruncated, new AtomType[]{sphereType, sphereType});
@@ -91,11 +92,6 @@ public class HessianDB extends Simulation {
         coordinateDefinition = new CoordinateDefinitionLeaf(box, primitive, basis, space);
         coordinateDefinition.initializeCoordinates(new int[]{1, 1, 1});
 
-        Vector pos1 = space.makeVector();
-        Vector pos2 = space.makeVector();
-        Vector r = space.makeVector();
-
-
         try {
             FileWriter fileWriterH = new FileWriter(filename + ".h");
             FileWriter fileWriterVal = new FileWriter(filename + ".val");
@@ -106,65 +102,7 @@ public class HessianDB extends Simulation {
             wv.makeWaveVectors(box);
 
             int rdim = numAtoms * space.D();
-
-            double[][] array = new double[rdim][rdim];
-
-            for (int atomN1 = 0; atomN1 < numAtoms; atomN1++) {
-                for (int atomN2 = 0; atomN2 < numAtoms; atomN2++) {
-                    if (atomN2 == atomN1) continue;
-
-                    IAtom atom1 = box.getLeafList().get(atomN1);
-                    IAtom atom2 = box.getLeafList().get(atomN2);
-
-                    pos1 = atom1.getPosition();
-                    pos2 = atom2.getPosition();
-
-                    r.Ev1Mv2(pos2, pos1);
-
-                    box.getBoundary().nearestImage(r); // get the nearest image
-
-                    double[][] der2 = new double[space.D()][space.D()];
-                    derivative2nd(r, pTruncated).assignTo(der2);
-                    for (int i = 0; i < space.D(); i++) {
-                        for (int j = 0; j < space.D(); j++) {
-
-                            array[atomN1 * space.D() + i][atomN2 * space.D() + j] = der2[i][j];
-                        }
-                    }
-
-                }
-
-            }
-
-            // self-term
-            for (int atomN1 = 0; atomN1 < numAtoms; atomN1++) {
-                for (int atomN2 = 0; atomN2 < numAtoms; atomN2++) {
-                    if (atomN1 == atomN2)
-                        continue; // we might double sum the elements in array[a][a] if we don't skip the pair
-                    for (int i = 0; i < space.D(); i++) {
-                        for (int j = 0; j < space.D(); j++) {
-
-                            array[atomN1 * space.D() + i][atomN1 * space.D() + j] -= array[atomN1 * space.D() + i][atomN2 * space.D() + j];
-                        }
-                    }
-                }
-            }
-
-            /*
-             * impose symmetry on the matrix
-             * Jama would generate a non-orthogonal eigenvectors if the last-digit
-             *  in value in the matrix is different (numerical precision problem).
-             */
-            double[][] arrayjjp = array.clone();
-            double[][] arrayjpj = array.clone();
-
-            for (int i = 0; i < array.length; i++) {
-                for (int j = i + 1; j < array[0].length; j++) {
-                    double ave = 0.5 * (arrayjjp[i][j] + arrayjpj[j][i]);
-                    array[i][j] = ave;
-                    array[j][i] = ave;
-                }
-            }
+            double[][] array = makeHessian(pTruncated, true);
 
             for (int i = 0; i < space.D() * numAtoms; i++) {
                 for (int j = 0; j < space.D() * numAtoms; j++) {
@@ -259,7 +197,70 @@ public class HessianDB extends Simulation {
 //        sim.getController().actionPerformed();
     }
 
+    /**
+     * Returns the (symmetrized) Hessian of the box's configuration for the
+     * given potential.  Each block row (one atom's interactions with all
+     * others) is assembled independently, so the rows can be done in
+     * parallel; the result is the same either way.
+     */
+    public double[][] makeHessian(Potential2SoftSpherical potential, boolean parallel) {
+        int D = space.D();
+        int numAtoms = box.getLeafList().size();
+        double[][] array = new double[numAtoms * D][numAtoms * D];
+
+        IntStream atoms = IntStream.range(0, numAtoms);
+        if (parallel) atoms = atoms.parallel();
+        atoms.forEach(atomN1 -> {
+            Vector dr = space.makeVector();
+            Tensor3D der2 = new Tensor3D();
+            Vector pos1 = box.getLeafList().get(atomN1).getPosition();
+            double[][] rows = new double[D][];
+            for (int i = 0; i < D; i++) {
+                rows[i] = array[atomN1 * D + i];
+            }
+            for (int atomN2 = 0; atomN2 < numAtoms; atomN2++) {
+                if (atomN2 == atomN1) continue;
+
+                dr.Ev1Mv2(box.getLeafList().get(atomN2).getPosition(), pos1);
+
+                box.getBoundary().nearestImage(dr); // get the nearest image
+
+                derivative2nd(dr, potential, der2);
+                for (int i = 0; i < D; i++) {
+                    for (int j = 0; j < D; j++) {
+                        double v = der2.component(i, j);
+                        rows[i][atomN2 * D + j] = v;
+                        // self-term
+                        rows[i][atomN1 * D + j] -= v;
+                    }
+                }
+            }
+        });
+
+        /*
+         * impose symmetry on the matrix
+         * Jama would generate a non-orthogonal eigenvectors if the last-digit
+         *  in value in the matrix is different (numerical precision problem).
+         */
+        for (int i = 0; i < array.length; i++) {
+            for (int j = i + 1; j < array[0].length; j++) {
+                double ave = 0.5 * (array[i][j] + array[j][i]);
+                array[i][j] = ave;
+                array[j][i] = ave;
+            }
+        }
+        return array;
+    }
+
     public Tensor3D derivative2nd(Vector r, Potential2SoftSpherical potential) {
+        return derivative2nd(r, potential, tensor);
+    }
+
+    /**
+     * Computes the second derivative tensor for separation r into the given
+     * tensor (so that it can be called from multiple threads).
+     */
+    public Tensor3D derivative2nd(Vector r, Potential2SoftSpherical potential, Tensor3D tensor) {
 
         tensor.Ev1v2(r, r);
         double r2 = r.squared();
@@ -109,7 +109,7 @@ public class IntegratorHarmonic extends IntegratorMD {
        		}
        	}
        
-        
+        WaveVectorTrigTable trigTable = coordinateDefinition.getTrigTable(waveVectors);
         for (int iCell = 0; iCell<cells.length; iCell++) {
 
             BasisCell cell = cells[iCell];
@@ -127,9 +127,8 @@ public class IntegratorHarmonic extends IntegratorMD {
             	int wvNum = getWaveVectorNum();
             	int eValNum = getEValNum();
             	
-            	double kR = waveVectors[wvNum].dot(cell.cellPosition);//getLatticePositions()[atomCount]);
-                double coskR = Math.cos(kR);
-                double sinkR = Math.sin(kR);
+                double coskR = trigTable.cos(wvNum, iCell);
+                double sinkR = trigTable.sin(wvNum, iCell);
                  
                 if (isOneEVal()){
                 	for (int i=0; i<coordinateDim; i++) {
@@ -151,9 +150,8 @@ public class IntegratorHarmonic extends IntegratorMD {
             
 	            for (int iVector=0; iVector< totalWV; iVector++) {
 	            	
-	                double kR = waveVectors[iVector].dot(cell.cellPosition);//getLatticePositions()[atomCount]);
-	                double coskR = Math.cos(kR);
-	                double sinkR = Math.sin(kR);
+	                double coskR = trigTable.cos(iVector, iCell);
+	                double sinkR = trigTable.sin(iVector, iCell);
 	                
 	                for (int i=0; i<coordinateDim; i++) {
 	                    for (int j=0; j<coordinateDim; j++) {
@@ -123,6 +123,7 @@ public class MCMoveSingleMode extends MCMoveBoxStep{
         	delta2[i] = (2*random.nextDouble()-1) *stepSize;
         }
         
+        WaveVectorTrigTable trigTable = coordinateDefinition.getTrigTable(waveVectors);
         for(int iCell = 0; iCell < cells.length; iCell++){
             //store old positions.
             double[] uNow = coordinateDefinition.calcU(cells[iCell].molecules);
@@ -135,9 +136,8 @@ public class MCMoveSingleMode extends MCMoveBoxStep{
             //loop over the wavevectors, and sum contribution of each to the
             //generalized coordinates.  Change the selected wavevectors eigen-
             //vectors at the same time!
-            double kR = waveVectors[changedWV].dot(cell.cellPosition);
-            double coskR = Math.cos(kR);
-            double sinkR = Math.sin(kR);
+            double coskR = trigTable.cos(changedWV, iCell);
+            double sinkR = trigTable.sin(changedWV, iCell);
             for(int i = 0; i < coordinateDim; i++){
                 if( !(Double.isInfinite(omega2[changedWV][i])) ){
                     //if(changedWV == 0) { System.out.println("why am i here?");}
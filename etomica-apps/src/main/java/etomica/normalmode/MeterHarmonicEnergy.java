@@ -29,10 +29,6 @@ public class MeterHarmonicEnergy extends DataSourceScalar {
         this.coordinateDefinition = coordinateDefinition;
         this.normalModes = normalModes;
 
-        int coordinateDim = coordinateDefinition.getCoordinateDim();
-        realT = new double[coordinateDim];
-        imaginaryT = new double[coordinateDim];
-
         Box box = coordinateDefinition.getBox();
         normalModes.getWaveVectorFactory().makeWaveVectors(box);
         setWaveVectors(normalModes.getWaveVectorFactory().getWaveVectors(),normalModes.getWaveVectorFactory().getCoefficients());
@@ -46,8 +42,10 @@ public class MeterHarmonicEnergy extends DataSourceScalar {
 
     public double getDataAsScalar() {
         double energySum = 0;
+        coordinateDefinition.calcT(waveVectors, realT, imaginaryT);
         for (int iVector = 0; iVector < waveVectors.length; iVector++) {
-            coordinateDefinition.calcT(waveVectors[iVector], realT, imaginaryT);
+            double[] rT = realT[iVector];
+            double[] iT = imaginaryT[iVector];
             // we want to calculate Q = A T
             // where A is made up of eigenvectors as columns
             int coordinateDim = coordinateDefinition.getCoordinateDim();
@@ -57,8 +55,8 @@ public class MeterHarmonicEnergy extends DataSourceScalar {
                 }
                 double realCoord = 0, imaginaryCoord = 0;
                 for (int j=0; j<coordinateDim; j++) {
-                    realCoord += eigenvectors[iVector][i][j] * realT[j];
-                    imaginaryCoord += eigenvectors[iVector][i][j] * imaginaryT[j];
+                    realCoord += eigenvectors[iVector][i][j] * rT[j];
+                    imaginaryCoord += eigenvectors[iVector][i][j] * iT[j];
                 }
                 // coordinates are now actually the normal mode coordinates divided by sqrt(wvc*2)
                 // if wvc=0.5, realCoord and imagCoord are the normal mode coordinates
@@ -79,6 +77,9 @@ public class MeterHarmonicEnergy extends DataSourceScalar {
     protected void setWaveVectors(Vector[] newWaveVectors, double[] coefficients) {
         waveVectors = newWaveVectors;
         waveVectorCoefficients = coefficients;
+        int coordinateDim = coordinateDefinition.getCoordinateDim();
+        realT = new double[waveVectors.length][coordinateDim];
+        imaginaryT = new double[waveVectors.length][coordinateDim];
     }
     
     protected void setEigenvectors(double[][][] eigenvectors) {
@@ -97,7 +98,7 @@ public class MeterHarmonicEnergy extends DataSourceScalar {
     
     private static final long serialVersionUID = 1L;
     protected CoordinateDefinition coordinateDefinition;
-    protected double[] realT, imaginaryT;
+    protected double[][] realT, imaginaryT;
     protected Vector[] waveVectors;
     protected double[] waveVectorCoefficients;
     protected double[][][] eigenvectors;
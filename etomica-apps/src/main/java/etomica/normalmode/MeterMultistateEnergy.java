@@ -0,0 +1,132 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.data.DataSourceScalar;
+import etomica.data.DataTag;
+import etomica.data.IData;
+import etomica.data.IDataInfo;
+import etomica.data.IDataSource;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataDoubleArray.DataInfoDoubleArray;
+import etomica.units.dimensions.Null;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Meter that returns the reduced energy (beta U) of the current configuration
+ * in each of a list of thermodynamic states.  The energy of each state is a
+ * linear combination of a set of energy terms (for instance, the harmonic
+ * energy and the potential energy), plus a constant (such as the lattice
+ * energy), divided by the state's temperature.  Each term is evaluated once
+ * per measurement and then combined for all states, so adding states is
+ * nearly free.
+ * <p>
+ * The data is meant to be handed to an AccumulatorMBAR.
+ */
+public class MeterMultistateEnergy implements IDataSource {
+
+    /**
+     * @param energyTerms the energy terms from which the state energies are
+     *                    built
+     */
+    public MeterMultistateEnergy(DataSourceScalar[] energyTerms) {
+        this.energyTerms = energyTerms;
+        termValues = new double[energyTerms.length];
+        states = new ArrayList<>();
+        tag = new DataTag();
+        makeData();
+    }
+
+    /**
+     * Adds a state whose energy is sum(coefficients[i]*term[i]) + constant
+     * at the given temperature.
+     *
+     * @return the index of the new state
+     */
+    public int addState(double[] coefficients, double constant, double temperature) {
+        if (coefficients.length != energyTerms.length) {
+            throw new IllegalArgumentException("need one coefficient for each energy term");
+        }
+        states.add(new State(coefficients.clone(), constant, temperature));
+        makeData();
+        return states.size()-1;
+    }
+
+    /**
+     * Adds the states along a linear path between two energy terms (such as
+     * a harmonic reference and the full potential), with
+     * U(lambda) = (1-lambda)*term[iTerm0] + lambda*term[iTerm1] + constant.
+     *
+     * @return the index of the first new state
+     */
+    public int addLinearPath(int iTerm0, int iTerm1, double[] lambdas, double constant, double temperature) {
+        int first = states.size();
+        for (double lambda : lambdas) {
+            double[] c = new double[energyTerms.length];
+            c[iTerm0] += 1 - lambda;
+            c[iTerm1] += lambda;
+            states.add(new State(c, constant, temperature));
+        }
+        makeData();
+        return first;
+    }
+
+    public int getNumStates() {
+        return states.size();
+    }
+
+    protected void makeData() {
+        int n = states.size();
+        data = new DataDoubleArray(n);
+        dataInfo = new DataInfoDoubleArray("reduced energy", Null.DIMENSION, new int[]{n});
+        dataInfo.addTag(tag);
+    }
+
+    public IData getData() {
+        for (int j=0; j<energyTerms.length; j++) {
+            termValues[j] = energyTerms[j].getDataAsScalar();
+        }
+        double[] x = data.getData();
+        for (int i=0; i<x.length; i++) {
+            State s = states.get(i);
+            double u = s.constant;
+            for (int j=0; j<termValues.length; j++) {
+                if (s.coefficients[j] != 0) {
+                    u += s.coefficients[j]*termValues[j];
+                }
+            }
+            x[i] = u/s.temperature;
+        }
+        return data;
+    }
+
+    public DataTag getTag() {
+        return tag;
+    }
+
+    public IDataInfo getDataInfo() {
+        return dataInfo;
+    }
+
+    protected static class State {
+        public final double[] coefficients;
+        public final double constant, temperature;
+
+        public State(double[] coefficients, double constant, double temperature) {
+            this.coefficients = coefficients;
+            this.constant = constant;
+            this.temperature = temperature;
+        }
+    }
+
+    protected final DataSourceScalar[] energyTerms;
+    protected final double[] termValues;
+    protected final List<State> states;
+    protected final DataTag tag;
+    protected DataDoubleArray data;
+    protected DataInfoDoubleArray dataInfo;
+}
@@ -34,8 +34,6 @@ public class MeterNormalMode implements IDataSource, IAction, Serializable {
      */
     public void setCoordinateDefinition(CoordinateDefinition newCoordinateDefinition) {
         coordinateDefinition = newCoordinateDefinition;
-        realT = new double[coordinateDefinition.getCoordinateDim()];
-        imaginaryT = new double[coordinateDefinition.getCoordinateDim()];
     }
     
     /**
@@ -70,6 +68,8 @@ public class MeterNormalMode implements IDataSource, IAction, Serializable {
         waveVectors = waveVectorFactory.getWaveVectors();
         // we don't actually care about the coefficients
         numWaveVectors = waveVectors.length;
+        realT = new double[numWaveVectors][coordinateDefinition.getCoordinateDim()];
+        imaginaryT = new double[numWaveVectors][coordinateDefinition.getCoordinateDim()];
 
         int coordinateDim = coordinateDefinition.getCoordinateDim();
         DataDoubleArray[] S = new DataDoubleArray[numWaveVectors];
@@ -106,16 +106,17 @@ public class MeterNormalMode implements IDataSource, IAction, Serializable {
         int coordinateDim = coordinateDefinition.getCoordinateDim();
 
         // |data.E(0)| here to calculate the current value rather than the sum
+        coordinateDefinition.calcT(waveVectors, realT, imaginaryT);
         // loop over wave vectors
         for (int iVector = 0; iVector < numWaveVectors; iVector++) {
+            double[] rT = realT[iVector];
+            double[] iT = imaginaryT[iVector];
 
-            coordinateDefinition.calcT(waveVectors[iVector], realT, imaginaryT);
-            
             // add to S(k).  imaginary part of S is 0
             double[] sValues = ((DataDoubleArray)data.getData(iVector)).getData();
             for (int i=0; i<coordinateDim; i++) {
                 for (int j=0; j<coordinateDim; j++) {
-                    sValues[i*coordinateDim+j] += realT[i]*realT[j] + imaginaryT[i]*imaginaryT[j];
+                    sValues[i*coordinateDim+j] += rT[i]*rT[j] + iT[i]*iT[j];
                 }
             }
         }
@@ -164,5 +165,5 @@ public class MeterNormalMode implements IDataSource, IAction, Serializable {
     private DataGroup data;
     private int callCount;
 
-    protected double[] realT, imaginaryT;
+    protected double[][] realT, imaginaryT;
 }
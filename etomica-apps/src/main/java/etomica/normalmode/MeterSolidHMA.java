@@ -0,0 +1,119 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.box.Box;
+import etomica.data.DataTag;
+import etomica.data.IData;
+import etomica.data.IDataInfo;
+import etomica.data.IDataSource;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataDoubleArray.DataInfoDoubleArray;
+import etomica.potential.IteratorDirective;
+import etomica.potential.PotentialCalculationEnergySum;
+import etomica.potential.PotentialCalculationVirialSum;
+import etomica.potential.PotentialMaster;
+import etomica.space.Space;
+import etomica.units.dimensions.Null;
+
+/**
+ * Meter for the harmonically-mapped averages of the energy and pressure of a
+ * crystal.  This returns the same quantities as MeterSolidDA, but instead of
+ * summing over all pairs when data is requested, it takes the sums collected
+ * by a PotentialCalculationForceSumSolidSuper that the integrator uses as its
+ * force sum.  Data can then be collected every step at almost no cost.
+ * <p>
+ * The sums correspond to the configuration at the last force calculation, so
+ * the integrator must compute forces for the current configuration (as
+ * IntegratorVelocityVerlet does at the end of each step).  Requires that
+ * temperature be set.
+ */
+public class MeterSolidHMA implements IDataSource {
+
+    public MeterSolidHMA(Space space, PotentialMaster potentialMaster, CoordinateDefinition coordinateDefinition, PotentialCalculationForceSumSolidSuper pcForceSum) {
+        tag = new DataTag();
+        this.pcForceSum = pcForceSum;
+        dim = space.D();
+        box = coordinateDefinition.getBox();
+        IteratorDirective iteratorDirective = new IteratorDirective();
+        iteratorDirective.includeLrc = false;
+        PotentialCalculationEnergySum pcEnergy = new PotentialCalculationEnergySum();
+        pcEnergy.zeroSum();
+        potentialMaster.calculate(box, iteratorDirective, pcEnergy);
+        latticeEnergy = pcEnergy.getSum();
+
+        PotentialCalculationVirialSum pcVirial = new PotentialCalculationVirialSum();
+        pcVirial.zeroSum();
+        potentialMaster.calculate(box, iteratorDirective, pcVirial);
+        latticePressure = -pcVirial.getSum()/(box.getBoundary().volume()*dim);
+
+        int n = 5;
+        dataInfo = new DataInfoDoubleArray("Stuff", Null.DIMENSION, new int[]{n});
+        dataInfo.addTag(tag);
+        data = new DataDoubleArray(n);
+    }
+
+    public IDataInfo getDataInfo() {
+        return dataInfo;
+    }
+
+    public DataTag getTag() {
+        return tag;
+    }
+
+    public void setTemperature(double temperature) {
+        this.temperature = temperature;
+    }
+
+    /**
+     * Sets the residual pressure of the harmonic crystal (the pressure beyond
+     * the lattice pressure and the ideal-gas contribution).
+     */
+    public void setPRes(double pRes) {
+        this.pRes = pRes;
+    }
+
+    public double getLatticeEnergy() {
+        return latticeEnergy;
+    }
+
+    public double getLatticePressure() {
+        return latticePressure;
+    }
+
+    /**
+     * Returns the energy per molecule, the conventional pressure, the mapped
+     * average of the configurational energy (beta U_c/N), the mapped average
+     * of the compressibility factor (Z_c) and dbA_c/dv2 (at constant Y for
+     * LJ).
+     */
+    public IData getData() {
+        double V = box.getBoundary().volume();
+        int N = box.getMoleculeList().size();
+        double density = N/V;
+        double energy = pcForceSum.getEnergySum();
+        double dadb = pcForceSum.getDADBSum();
+        double[] x = data.getData();
+        x[0] = energy/N;
+        x[1] = temperature*density - pcForceSum.getVirialSum()/(dim*V);
+        double buc = (0.5*dadb + (energy - latticeEnergy))/temperature/N;
+        x[2] = buc;
+        double fac2 = (-1/V + pRes/temperature)/(dim*N-dim);
+        double Zc = (pcForceSum.getPressure1() + fac2*dadb - latticePressure)/(density*temperature);
+        x[3] = Zc;
+        x[4] = (4*buc-Zc)*density*density/2;
+        return data;
+    }
+
+    protected final int dim;
+    protected final DataTag tag;
+    protected DataInfoDoubleArray dataInfo;
+    protected DataDoubleArray data;
+    protected final PotentialCalculationForceSumSolidSuper pcForceSum;
+    protected double temperature;
+    protected double latticeEnergy, latticePressure;
+    protected final Box box;
+    protected double pRes;
+}
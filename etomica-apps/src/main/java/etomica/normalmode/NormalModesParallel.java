@@ -0,0 +1,241 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Computes normal modes from a dynamical matrix for each wave vector, with
+ * the wave vectors handled concurrently on a fork-join pool.  Each task
+ * builds the matrix for its wave vector (via the DynamicalMatrix) and then
+ * diagonalizes it, so both the assembly and the eigen-solve run in parallel.
+ * <p>
+ * Results are the same as those from a serial calculation and can be written
+ * as the .k, .val and .vec files read by NormalModesFromFile.
+ */
+public class NormalModesParallel implements NormalModes {
+
+    /**
+     * @param kFactory wave vector factory; makeWaveVectors must have already
+     *                 been called
+     * @param matrix   provides the dynamical matrix for each wave vector
+     */
+    public NormalModesParallel(WaveVectorFactory kFactory, DynamicalMatrix matrix) {
+        this.kFactory = kFactory;
+        this.matrix = matrix;
+        numThreads = Runtime.getRuntime().availableProcessors();
+        needToCalculateModes = true;
+    }
+
+    /**
+     * Sets the number of threads used to compute the modes.  By default, one
+     * thread is used for each available processor.
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) throw new IllegalArgumentException("need at least one thread");
+        numThreads = newNumThreads;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public void calculateModes() {
+        int kDim = kFactory.getWaveVectors().length;
+        eigenvalues = new double[kDim][];
+        omega2 = new double[kDim][];
+        eigenvectors = new double[kDim][][];
+        if (numThreads == 1) {
+            for (int k=0; k<kDim; k++) {
+                solve(k);
+            }
+        }
+        else {
+            ForkJoinPool pool = new ForkJoinPool(numThreads);
+            try {
+                pool.invoke(new SolveTask(0, kDim));
+            }
+            finally {
+                pool.shutdown();
+            }
+        }
+        needToCalculateModes = false;
+    }
+
+    /**
+     * Builds and diagonalizes the dynamical matrix for wave vector k.
+     */
+    protected void solve(int k) {
+        double[][] array = matrix.getMatrix(k);
+        int eDim = array.length;
+        // impose symmetry on the matrix.  elements can differ in the last
+        // digit, and with a not exactly symmetric matrix Jama assumes it's
+        // asymmetric and finds not-orthogonal eigenvectors.
+        for (int i=0; i<eDim; i++) {
+            for (int j=i+1; j<eDim; j++) {
+                double v = 0.5*(array[i][j] + array[j][i]);
+                array[i][j] = v;
+                array[j][i] = v;
+            }
+        }
+
+        EigenvalueDecomposition ed = new Matrix(array).eig();
+        double[] eVals = ed.getRealEigenvalues();
+        double[][] eVecs = ed.getV().getArray();
+
+        double[] kOmega2 = new double[eDim];
+        double[][] kEigenvectors = new double[eDim][eDim];
+        for (int j=0; j<eDim; j++) {
+            kOmega2[j] = eVals[j] < 1E-12 ? Double.POSITIVE_INFINITY : eVals[j];
+            for (int m=0; m<eDim; m++) {
+                kEigenvectors[j][m] = eVecs[m][j];
+            }
+        }
+        eigenvalues[k] = eVals;
+        omega2[k] = kOmega2;
+        eigenvectors[k] = kEigenvectors;
+    }
+
+    /**
+     * Writes the wave vectors, eigenvalues and eigenvectors to fileName.k,
+     * fileName.val and fileName.vec, in the format read by
+     * NormalModesFromFile.
+     */
+    public void writeFiles(String fileName) {
+        if (needToCalculateModes) {
+            calculateModes();
+        }
+        try {
+            FileWriter fileWriterK = new FileWriter(fileName+".k");
+            FileWriter fileWriterVal = new FileWriter(fileName+".val");
+            FileWriter fileWriterVec = new FileWriter(fileName+".vec");
+            double[] kCoefficients = kFactory.getCoefficients();
+            for (int k=0; k<eigenvalues.length; k++) {
+                fileWriterK.write(Double.toString(kCoefficients[k]));
+                for (int n=0; n<kFactory.getWaveVectors()[k].getD(); n++) {
+                    fileWriterK.write(" "+kFactory.getWaveVectors()[k].getX(n));
+                }
+                fileWriterK.write("\n");
+
+                double[] eVals = eigenvalues[k];
+                for (int ival=0; ival<eVals.length; ival++) {
+                    if (eVals[ival] < 1E-10) {
+                        fileWriterVal.write("0.0 ");
+                    }
+                    else {
+                        fileWriterVal.write(1/eVals[ival]+" ");
+                    }
+                }
+                fileWriterVal.write("\n");
+
+                double[][] eVecs = eigenvectors[k];
+                for (int ivec=0; ivec<eVecs.length; ivec++) {
+                    for (int jvec=0; jvec<eVecs.length; jvec++) {
+                        if (Math.abs(eVecs[ivec][jvec]) < 1e-10) {
+                            fileWriterVec.write("0.0 ");
+                        }
+                        else {
+                            fileWriterVec.write(eVecs[ivec][jvec]+" ");
+                        }
+                    }
+                    fileWriterVec.write("\n");
+                }
+            }
+            fileWriterK.close();
+            fileWriterVal.close();
+            fileWriterVec.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the eigenvalues of the dynamical matrix for each wave vector,
+     * in the order of the eigenvectors.
+     */
+    public double[][] getEigenvalues() {
+        if (needToCalculateModes) {
+            calculateModes();
+        }
+        return eigenvalues;
+    }
+
+    public double[][][] getEigenvectors() {
+        if (needToCalculateModes) {
+            calculateModes();
+        }
+        return eigenvectors;
+    }
+
+    public double[][] getOmegaSquared() {
+        if (needToCalculateModes) {
+            calculateModes();
+        }
+        return omega2;
+    }
+
+    public WaveVectorFactory getWaveVectorFactory() {
+        return kFactory;
+    }
+
+    public void setHarmonicFudge(double newHarmonicFudge) {
+        // we ignore fudge
+    }
+
+    public void setTemperature(double newTemperature) {
+        // we ignore temperature
+    }
+
+    /**
+     * Splits a range of wave vectors in half until single wave vectors remain.
+     */
+    protected class SolveTask extends RecursiveAction {
+        protected final int start, end;
+
+        public SolveTask(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        protected void compute() {
+            if (end - start < 2) {
+                if (end > start) solve(start);
+                return;
+            }
+            int mid = (start + end) / 2;
+            invokeAll(new SolveTask(start, mid), new SolveTask(mid, end));
+        }
+
+        private static final long serialVersionUID = 1L;
+    }
+
+    /**
+     * Provides the dynamical matrix for a wave vector.  getMatrix is called
+     * concurrently for different wave vectors, so implementations must not
+     * share mutable work objects between calls.
+     */
+    public interface DynamicalMatrix {
+        /**
+         * Returns a new array holding the dynamical matrix for the wave
+         * vector with index k.
+         */
+        double[][] getMatrix(int k);
+    }
+
+    protected final WaveVectorFactory kFactory;
+    protected final DynamicalMatrix matrix;
+    protected int numThreads;
+    protected double[][] eigenvalues;
+    protected double[][] omega2;
+    protected double[][][] eigenvectors;
+    protected boolean needToCalculateModes;
+}
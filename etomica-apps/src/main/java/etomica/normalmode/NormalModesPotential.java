@@ -4,12 +4,8 @@
 
 package etomica.normalmode;
 
-import java.io.FileWriter;
-import java.io.IOException;
 import java.util.Arrays;
 
-import Jama.EigenvalueDecomposition;
-import Jama.Matrix;
 import etomica.box.Box;
 import etomica.space.Vector;
 import etomica.data.DataInfo;
@@ -39,7 +35,9 @@ public class NormalModesPotential implements NormalModes {
         this.space = space;
         needToCalculateModes = true;
         
-        lattice = new BravaisLatticeCrystal(primitive, basis);
+        this.primitive = primitive;
+        this.basis = basis;
+        numThreads = Runtime.getRuntime().availableProcessors();
         setPotential(potential);
         
         int nSites = nCells[0]*nCells[1]*nCells[2];
@@ -62,14 +60,97 @@ public class NormalModesPotential implements NormalModes {
     }
     
     public void calculateModes() {
-        int kDim = kFactory.getWaveVectors().length;
-        int spaceDim = lattice.getSpace().D();
-        int basisDim = lattice.getBasis().getScaledCoordinates().length;
-        int eDim = basisDim * spaceDim;
-        omega2 = new double[kDim][eDim];
-        eigenvectors = new double[kDim][eDim][eDim];
-        //this function returns phi_{alpha,beta}, as defined in Dove Eq. 6.15
-        FunctionData<Object> function = new FunctionData<Object>() {
+        final int spaceDim = space.D();
+        final int basisDim = basis.getScaledCoordinates().length;
+        final int eDim = basisDim * spaceDim;
+
+        //calculation of self term
+        Vector kVector = space.makeVector();
+        kVector.E(0.0);
+        System.out.println("\n k:"+kVector.toString()+"   in NormalModesPotential");
+        final DataGroupLSC sum0 = calculateSum(kVector);
+
+        // each wave vector gets its own lattice and summer, so that the
+        // lattice sums can run concurrently
+        NormalModesParallel.DynamicalMatrix dynamicalMatrix = new NormalModesParallel.DynamicalMatrix() {
+            public double[][] getMatrix(int k) {
+                DataGroupLSC sum = calculateSum(kFactory.getWaveVectors()[k]);
+                for(int j=0; j<basisDim; j++) {
+                    for(int jp=0; jp<basisDim; jp++) {
+                        sum.getDataReal(j,j).ME(sum0.getDataReal(j, jp));
+                    }
+                }
+                double[][] array = new double[eDim][eDim];
+                // impose symmetry on the matrix.  elements of the tensor can have elements that are different
+                // only in the last digit (due numerical precision issues).  With a not exactly symmetric
+                // matrix Jama assumes it's asymmetric and finds not-orthogonal eigenvectors.
+                for(int j=0; j<basisDim; j++) {
+                    for(int jp=j+1; jp<basisDim; jp++) {
+                        // grab mirror blocks for j,jp and jp,j
+                        Tensor tensorj_jp = ((DataTensor)sum.getDataReal(j,jp)).x;
+                        Tensor tensorjp_j = ((DataTensor)sum.getDataReal(j,jp)).x;
+                        for(int alpha=0; alpha<spaceDim; alpha++) {
+                            for(int beta=0; beta<spaceDim; beta++) {
+                                // average opposite components from opposite blocks
+                                double v = 0.5*(tensorj_jp.component(alpha, beta) + tensorjp_j.component(beta, alpha));
+                                array[spaceDim*j+alpha][spaceDim*jp+beta] = v;
+                                array[spaceDim*jp+beta][spaceDim*j+alpha] = v;
+                            }
+                        }
+                    }
+                    // grab diagonal block
+                    Tensor tensor = ((DataTensor)sum.getDataReal(j,j)).x;
+                    for(int alpha=0; alpha<spaceDim; alpha++) {
+                        for(int beta=alpha+1; beta<spaceDim; beta++) {
+                            // average opposite components
+                            double v = 0.5*(tensor.component(alpha, beta) + tensor.component(beta, alpha));
+                            array[spaceDim*j+alpha][spaceDim*j+beta] = v;
+                            array[spaceDim*j+beta][spaceDim*j+alpha] = v;
+                        }
+                        // grab diagonal component
+                        array[spaceDim*j+alpha][spaceDim*j+alpha] = tensor.component(alpha, alpha);
+                    }
+                }
+                return array;
+            }
+        };
+
+        NormalModesParallel solver = new NormalModesParallel(kFactory, dynamicalMatrix);
+        solver.setNumThreads(numThreads);
+        solver.calculateModes();
+        omega2 = solver.getOmegaSquared();
+        eigenvectors = solver.getEigenvectors();
+        double[][] eVals = solver.getEigenvalues();
+        for(int k=0; k<eVals.length; k++) {
+            System.out.println("k:"+kFactory.getWaveVectors()[k].toString());
+            System.out.println("Real eigenvalues: " + Arrays.toString(eVals[k]));
+        }
+        if (fileName != null) {
+            solver.writeFiles(fileName);
+        }
+
+        needToCalculateModes = false;
+    }
+
+    /**
+     * Returns the lattice sum of the second-derivative tensor for the given
+     * wave vector.  A new lattice and summer are used for each call (the
+     * lattice's site method is not thread-safe).
+     */
+    protected DataGroupLSC calculateSum(Vector kVector) {
+        LatticeSumCrystal summer = new LatticeSumCrystal(new BravaisLatticeCrystal(primitive, basis));
+        summer.setMaxLatticeShell(maxLatticeShell);
+        summer.setK(kVector);
+        DataGroupLSC sum = (DataGroupLSC)summer.calculateSum(makeFunction());
+        sum.map(new Function.Chop(1e-9));
+        return sum;
+    }
+
+    /**
+     * Returns a function giving phi_{alpha,beta}, as defined in Dove Eq. 6.15
+     */
+    protected FunctionData<Object> makeFunction() {
+        return new FunctionData<Object>() {
             public IData f(Object obj) {
                 Vector r = (Vector)obj;
                 tensor.x.Ev1v2(r, r);
@@ -87,154 +168,21 @@ public class NormalModesPotential implements NormalModes {
             final DataInfo dataInfo = new DataTensor.DataInfoTensor("", Dimension.MIXED, space);
             final Tensor identity = new Tensor3D(new double[][] {{1.0,0.0,0.0}, {0.0,1.0,0.0}, {0.0,0.0,1.0}});
         };
-        
-        LatticeSumCrystal summer = new LatticeSumCrystal(lattice);
-        summer.setMaxLatticeShell(maxLatticeShell);
-        Vector kVector = lattice.getSpace().makeVector();
-        
-        
-        
-   
-        	
-        //calculation of self term
-        kVector.E(0.0);
-        summer.setK(kVector);
-        System.out.println("\n k:"+kVector.toString()+"   in NormalModesPotential");
-        DataGroupLSC sum0 = (DataGroupLSC)summer.calculateSum(function);
-        Function chopper = new Function.Chop(1e-9);
-        sum0.map(chopper);
-//        System.out.println(sum0.toString());
-        double[][] array = new double[eDim][eDim];
-        
-        try{
-
-        	FileWriter fileWriterK = null;
-        	FileWriter fileWriterVal = null;
-        	FileWriter fileWriterVec = null;
-
-        	if (fileName != null) {
-        	    fileWriterK = new FileWriter(getFileName()+".k");
-                fileWriterVal = new FileWriter(getFileName()+".val");
-                fileWriterVec = new FileWriter(getFileName()+".vec");
-        	}
-        	
-        	
-        double[] kCoefficients = kFactory.getCoefficients();	
-        	
-        for(int k=0; k<kDim; k++) {
-            kVector.E(kFactory.getWaveVectors()[k]);
-            
-            // output .k file
-            if (fileName != null) {
-                fileWriterK.write(Double.toString(kCoefficients[k]));
-                for (int n=0; n< kFactory.getWaveVectors()[k].getD(); n++){
-                	fileWriterK.write(" "+ kFactory.getWaveVectors()[k].getX(n));
-                }
-                fileWriterK.write("\n");
-            }
-            
-            
-            summer.setK(kVector);
-            System.out.println("k:"+kVector.toString());
-            DataGroupLSC sum = (DataGroupLSC)summer.calculateSum(function);
-            sum.map(chopper);
-            for(int j=0; j<basisDim; j++) {
-                for(int jp=0; jp<basisDim; jp++) {
-                    sum.getDataReal(j,j).ME(sum0.getDataReal(j, jp));
-                }
-            }
-            // impose symmetry on the matrix.  elements of the tensor can have elements that are different
-            // only in the last digit (due numerical precision issues).  With a not exactly symmetric
-            // matrix Jama assumes it's asymmetric and finds not-orthogonal eigenvectors.
-            for(int j=0; j<basisDim; j++) {
-                for(int jp=j+1; jp<basisDim; jp++) {
-                    // grab mirror blocks for j,jp and jp,j
-                    Tensor tensorj_jp = ((DataTensor)sum.getDataReal(j,jp)).x;
-                    Tensor tensorjp_j = ((DataTensor)sum.getDataReal(j,jp)).x;
-                    for(int alpha=0; alpha<spaceDim; alpha++) {
-                        for(int beta=0; beta<spaceDim; beta++) {
-                            // average opposite components from opposite blocks
-                            double v = 0.5*(tensorj_jp.component(alpha, beta) + tensorjp_j.component(beta, alpha));
-                            array[spaceDim*j+alpha][spaceDim*jp+beta] = v;
-                            array[spaceDim*jp+beta][spaceDim*j+alpha] = v;
-                        }
-                    }
-                }
-                // grab diagonal block
-                Tensor tensor = ((DataTensor)sum.getDataReal(j,j)).x;
-                for(int alpha=0; alpha<spaceDim; alpha++) {
-                    for(int beta=alpha+1; beta<spaceDim; beta++) {
-                        // average opposite components
-                        double v = 0.5*(tensor.component(alpha, beta) + tensor.component(beta, alpha));
-                        array[spaceDim*j+alpha][spaceDim*j+beta] = v;
-                        array[spaceDim*j+beta][spaceDim*j+alpha] = v;
-                    }
-                    // grab diagonal component
-                    array[spaceDim*j+alpha][spaceDim*j+alpha] = tensor.component(alpha, alpha);
-                }
-            }
-
-            Matrix matrix = new Matrix(array);
-            EigenvalueDecomposition ed = matrix.eig();
-            double[] eVals = ed.getRealEigenvalues();
-            double[][] eVecs = ed.getV().getArray();
-            
-            System.out.println("Real eigenvalues: " + Arrays.toString(eVals));
-            
-            if (fileName != null) {
-                // output .val file
-                for (int ival=0; ival<eVals.length; ival++){
-                	if (eVals[ival] < 1E-10){
-                		fileWriterVal.write("0.0 ");
-                	} else {
-                		fileWriterVal.write(1/eVals[ival]+ " ");
-                	}
-                }
-                fileWriterVal.write("\n");
+    }
 
-                // output .vec file
-                for (int ivec=0; ivec<eDim; ivec++ ){
-                	for(int jvec=0; jvec<eDim; jvec++){
-                		if (Math.abs(eVecs[jvec][ivec])<1e-10){
-                			fileWriterVec.write("0.0 ");
-                		} else {
-                			fileWriterVec.write(eVecs[jvec][ivec] + " ");
-                		}
-                	}
-                	fileWriterVec.write("\n");
-                }
-            }
-            
-//            System.out.println("Imag eigenvalues: " + Arrays.toString(ed.getImagEigenvalues()));
-            
-            for(int j=0; j<eDim; j++) {
-                if (eVals[j] < 1E-12) {
-                    omega2[k][j] = Double.POSITIVE_INFINITY;
-                }
-                else {
-                    omega2[k][j] = eVals[j];
-                }
-                for(int m=0; m<eDim; m++) {
-                    eigenvectors[k][j][m] = eVecs[m][j];//need to check if indexes are right
-                }
-            }
-//            System.out.println(sum[0].toString());
-//            System.out.println();
-//            System.out.println(sum[1].toString());
-        }
-        if (fileName != null) {
-            fileWriterK.close();
-            fileWriterVal.close();
-            fileWriterVec.close();
-        }
+    /**
+     * Sets the number of threads used to compute the modes for the wave
+     * vectors.  By default, one thread is used for each available processor.
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) throw new IllegalArgumentException("need at least one thread");
+        numThreads = newNumThreads;
     }
-        catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        
-        needToCalculateModes = false;
+
+    public int getNumThreads() {
+        return numThreads;
     }
-        
+
     public void setPotential(Potential2SoftSpherical potential) {
         needToCalculateModes = true;
         this.potential = potential;
@@ -283,7 +231,9 @@ public class NormalModesPotential implements NormalModes {
 	}
 
     protected final Space space;
-    private final BravaisLatticeCrystal lattice;
+    private final Primitive primitive;
+    private final Basis basis;
+    private int numThreads;
     private Potential2SoftSpherical potential;
     private WaveVectorFactory kFactory;
     private int maxLatticeShell;
@@ -0,0 +1,130 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.potential.IPotentialAtomic;
+import etomica.potential.Potential2SoftSpherical;
+import etomica.potential.PotentialCalculationForceSum;
+import etomica.space.Boundary;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+/**
+ * Sums the force on each iterated atom (as PotentialCalculationForceSum does)
+ * and, in the same pass over the pairs, collects the sums needed for the
+ * harmonically-mapped averages of the energy and pressure (as
+ * PotentialCalculationSolidSuper does).  When used as the integrator's force
+ * sum, the mapped averages for the current configuration are available after
+ * every step without another pass over the pairs; MeterSolidHMA reports them.
+ * <p>
+ * Only pair potentials that are Potential2SoftSpherical contribute to the
+ * sums; other potentials (including long-range corrections) contribute only
+ * forces.
+ */
+public class PotentialCalculationForceSumSolidSuper extends PotentialCalculationForceSum {
+
+    protected final CoordinateDefinition coordinateDefinition;
+    protected final Vector drSite0, drSite1, drA, dr, drB, pTmp;
+    protected final Vector pSumXYZ, dadbSumXYZ;
+    protected double pSum, virialSum, energySum, dadbSum;
+    protected double fac1;
+    protected Boundary boundary;
+
+    public PotentialCalculationForceSumSolidSuper(Space space, CoordinateDefinition coordinateDefinition) {
+        this.coordinateDefinition = coordinateDefinition;
+        drSite0 = space.makeVector();
+        drSite1 = space.makeVector();
+        drA = space.makeVector();
+        dr = space.makeVector();
+        drB = space.makeVector();
+        pTmp = space.makeVector();
+        pSumXYZ = space.makeVector();
+        dadbSumXYZ = space.makeVector();
+        boundary = coordinateDefinition.getBox().getBoundary();
+    }
+
+    /**
+     * Re-zeros the force vectors and the sums.
+     */
+    public void reset() {
+        super.reset();
+        pSum = virialSum = energySum = dadbSum = 0;
+        pSumXYZ.E(0);
+        dadbSumXYZ.E(0);
+        boundary = coordinateDefinition.getBox().getBoundary();
+        fac1 = 1.0/(boundary.getBoxSize().getD()*boundary.volume());
+    }
+
+    public void doCalculation(IAtomList atoms, IPotentialAtomic potential) {
+        if (atoms.size() != 2 || !(potential instanceof Potential2SoftSpherical)) {
+            super.doCalculation(atoms, potential);
+            return;
+        }
+        IAtom atom0 = atoms.get(0);
+        IAtom atom1 = atoms.get(1);
+        dr.Ev1Mv2(atom1.getPosition(), atom0.getPosition());
+        boundary.nearestImage(dr);
+        double r2 = dr.squared();
+        if (r2 < 1.e-10) return;
+        Potential2SoftSpherical potentialSoft = (Potential2SoftSpherical)potential;
+        double u = potentialSoft.u(r2);
+        double du = potentialSoft.du(r2);
+        double duOverR2 = du/r2;
+
+        integratorAgentManager.getAgent(atom0).PEa1Tv1(duOverR2, dr);
+        integratorAgentManager.getAgent(atom1).PEa1Tv1(-duOverR2, dr);
+
+        Vector site0 = coordinateDefinition.getLatticePosition(atom0);
+        Vector site1 = coordinateDefinition.getLatticePosition(atom1);
+        drSite0.Ev1Mv2(atom0.getPosition(), site0);
+        drSite1.Ev1Mv2(atom1.getPosition(), site1);
+        drA.Ev1Mv2(drSite1, drSite0);
+        drB.Ev1Mv2(site1, site0);
+        boundary.nearestImage(drB);
+
+        energySum += u;
+        virialSum += du;
+        pSum -= duOverR2*dr.dot(drB)*fac1;
+        pTmp.Ea1Tv1(-duOverR2*fac1, dr);
+        pTmp.TE(drB);
+        pSumXYZ.PE(pTmp);
+        dadbSum -= duOverR2*dr.dot(drA);
+        pTmp.Ea1Tv1(-duOverR2, dr);
+        pTmp.TE(drA);
+        dadbSumXYZ.PE(pTmp);
+    }
+
+    /**
+     * Returns the pair sum of -du/dr (rij . rij_lattice)/(rij D V)
+     */
+    public double getPressure1() {
+        return pSum;
+    }
+
+    public Vector getPressure1XYZ() {
+        return pSumXYZ;
+    }
+
+    public double getVirialSum() {
+        return virialSum;
+    }
+
+    public double getEnergySum() {
+        return energySum;
+    }
+
+    /**
+     * Returns sum of Fi dot ri
+     */
+    public double getDADBSum() {
+        return dadbSum;
+    }
+
+    public Vector getDADBXYZ() {
+        return dadbSumXYZ;
+    }
+}
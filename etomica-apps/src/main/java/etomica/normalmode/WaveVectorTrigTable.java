@@ -0,0 +1,108 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.normalmode.CoordinateDefinition.BasisCell;
+import etomica.space.Vector;
+
+/**
+ * Table of cos(k.R) and sin(k.R) for a set of wave vectors k and the lattice
+ * positions R of a set of basis cells.  The lattice positions never change,
+ * so harmonic moves and meters can look these up rather than calling cos and
+ * sin for every cell and wave vector on every trial.  Values are stored by
+ * cell, with the wave vectors for a cell adjacent.  The table can be stored
+ * in single precision to halve its size for very large systems.
+ * <p>
+ * Tables are normally obtained from CoordinateDefinition.getTrigTable, which
+ * shares them among all users of the same wave vectors.
+ */
+public class WaveVectorTrigTable {
+
+    public WaveVectorTrigTable(Vector[] waveVectors, BasisCell[] cells, boolean singlePrecision) {
+        this.cells = cells;
+        nWaveVectors = waveVectors.length;
+        dim = nWaveVectors > 0 ? waveVectors[0].getD() : 0;
+        kComponents = new double[nWaveVectors*dim];
+        for (int i=0; i<nWaveVectors; i++) {
+            for (int d=0; d<dim; d++) {
+                kComponents[i*dim+d] = waveVectors[i].getX(d);
+            }
+        }
+        int n = cells.length*nWaveVectors;
+        if (singlePrecision) {
+            cosFloat = new float[n];
+            sinFloat = new float[n];
+            cosDouble = sinDouble = null;
+        }
+        else {
+            cosDouble = new double[n];
+            sinDouble = new double[n];
+            cosFloat = sinFloat = null;
+        }
+        for (int iCell=0; iCell<cells.length; iCell++) {
+            Vector r = cells[iCell].cellPosition;
+            for (int iVector=0; iVector<nWaveVectors; iVector++) {
+                double kR = waveVectors[iVector].dot(r);
+                int j = iCell*nWaveVectors + iVector;
+                if (singlePrecision) {
+                    cosFloat[j] = (float)Math.cos(kR);
+                    sinFloat[j] = (float)Math.sin(kR);
+                }
+                else {
+                    cosDouble[j] = Math.cos(kR);
+                    sinDouble[j] = Math.sin(kR);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if this table was made for the given cells and wave
+     * vectors (the same values, not necessarily the same objects).
+     */
+    public boolean matches(Vector[] otherWaveVectors, BasisCell[] otherCells) {
+        if (otherCells != cells || otherWaveVectors.length != nWaveVectors) return false;
+        for (int i=0; i<nWaveVectors; i++) {
+            for (int d=0; d<dim; d++) {
+                if (kComponents[i*dim+d] != otherWaveVectors[i].getX(d)) return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isSinglePrecision() {
+        return cosFloat != null;
+    }
+
+    public int getNumWaveVectors() {
+        return nWaveVectors;
+    }
+
+    public int getNumCells() {
+        return cells.length;
+    }
+
+    /**
+     * Returns cos(k.R) for the given wave vector and cell.
+     */
+    public double cos(int iVector, int iCell) {
+        int j = iCell*nWaveVectors + iVector;
+        return cosFloat == null ? cosDouble[j] : cosFloat[j];
+    }
+
+    /**
+     * Returns sin(k.R) for the given wave vector and cell.
+     */
+    public double sin(int iVector, int iCell) {
+        int j = iCell*nWaveVectors + iVector;
+        return sinFloat == null ? sinDouble[j] : sinFloat[j];
+    }
+
+    protected final BasisCell[] cells;
+    protected final double[] kComponents;
+    protected final int nWaveVectors, dim;
+    protected final double[] cosDouble, sinDouble;
+    protected final float[] cosFloat, sinFloat;
+}
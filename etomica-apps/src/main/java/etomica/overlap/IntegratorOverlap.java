@@ -7,6 +7,10 @@ package etomica.overlap;
 import etomica.integrator.Integrator;
 import etomica.integrator.IntegratorManagerMC;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * This integrator class manages (2) sub-integrators for an overlap
  * sampling simulation.
@@ -202,6 +206,45 @@ public class IntegratorOverlap extends IntegratorManagerMC {
         return totTime[0] / (double) (totTime[0] + totTime[1]);
     }
 
+    /**
+     * Writes the step count and the step-fraction bookkeeping to the given
+     * output.  The sub-integrators' state is not included.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        int nIntegrators = this.integrators.size();
+        out.writeInt(nIntegrators);
+        out.writeLong(stepCount);
+        out.writeLong(numSubSteps);
+        out.writeBoolean(doAdjustStepFrac);
+        out.writeLong(adjustCountdown);
+        for (int i = 0; i < nIntegrators; i++) {
+            out.writeDouble(stepFrac[i]);
+            out.writeLong(totNumSubSteps[i]);
+            out.writeLong(totTime[i]);
+        }
+    }
+
+    /**
+     * Restores the state written by writeState.  This should be called after
+     * the integrator has been reset, since reset discards the step-fraction
+     * bookkeeping.
+     */
+    public void readState(DataInput in) throws IOException {
+        int nIntegrators = this.integrators.size();
+        if (in.readInt() != nIntegrators) {
+            throw new IOException("state was written for a different number of integrators");
+        }
+        stepCount = in.readLong();
+        numSubSteps = in.readLong();
+        doAdjustStepFrac = in.readBoolean();
+        adjustCountdown = in.readLong();
+        for (int i = 0; i < nIntegrators; i++) {
+            stepFrac[i] = in.readDouble();
+            totNumSubSteps[i] = in.readLong();
+            totTime[i] = in.readLong();
+        }
+    }
+
     public interface ReferenceFracSource {
         public double getIdealRefFraction(double oldFrac);
     }
@@ -0,0 +1,787 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Concurrent store of per-bin statistics for binned virial calculations.
+ * Each bin is identified by a property value (an array of ints, all of the
+ * same length) and holds the number of unscreened configurations, the number
+ * of sampled configurations, the sum and sum of squares of the sampled
+ * values, and the sampling weight.
+ * <p>
+ * The bins are divided among shards, each of which is an open-addressing hash
+ * table holding the keys and statistics in primitive arrays.  Each shard is
+ * locked independently, so threads sharing a store rarely contend with each
+ * other.
+ * <p>
+ * If spilling is enabled (setSpill), a shard whose size exceeds its share of
+ * the maximum number of resident bins writes its bins (statistics and
+ * weights), sorted by key, to a run file and then empties itself.  Nothing
+ * about a spilled bin is kept in memory.  When a bin that is not in memory
+ * is seen, the shard's run files are searched for its weight, so a bin seen
+ * again after being spilled starts over with the weight it had.  Each run
+ * file has a level; once a shard has mergeFanIn runs of the same level they
+ * are merged into one run of the next level, so a shard holds only a few
+ * runs per level and no merge reads more than mergeFanIn files at once.
+ * writeData and writeWeights merge the runs with the resident bins, in passes
+ * of at most mergeFanIn files, so the output is the same as if nothing had
+ * been spilled.  Weights are only recomputed from resident bins (forEach does
+ * not visit spilled bins), so spilling is meant for production runs where the
+ * weights are fixed.
+ */
+public class BinStore {
+
+    protected final Shard[] shards;
+    protected final int shardShift;
+    protected int keyLength = -1;
+    protected String spillPrefix;
+    protected int maxShardSize = Integer.MAX_VALUE;
+    protected int mergeFanIn = 8;
+    protected int spillCount;
+
+    public BinStore() {
+        this(16);
+    }
+
+    /**
+     * @param nShards the number of independently locked shards; rounded up to
+     *                a power of 2
+     */
+    public BinStore(int nShards) {
+        int n = 1;
+        while (n < nShards) n *= 2;
+        shards = new Shard[n];
+        for (int i=0; i<n; i++) {
+            shards[i] = new Shard();
+        }
+        shardShift = 32 - Integer.numberOfTrailingZeros(n);
+    }
+
+    /**
+     * Enables spilling bins to disk.  Once more than (about) maxResidentBins
+     * bins are held in memory, bins are written to files whose names begin
+     * with spillPrefix and dropped from memory.
+     */
+    public void setSpill(String spillPrefix, int maxResidentBins) {
+        this.spillPrefix = spillPrefix;
+        maxShardSize = Math.max(1, maxResidentBins / shards.length);
+    }
+
+    /**
+     * Sets the largest number of spill files merged (and held open) at once.
+     */
+    public void setMergeFanIn(int newMergeFanIn) {
+        if (newMergeFanIn < 2) throw new IllegalArgumentException("fan-in must be at least 2");
+        mergeFanIn = newMergeFanIn;
+    }
+
+    public int getMergeFanIn() {
+        return mergeFanIn;
+    }
+
+    /**
+     * Returns the number of bins held in memory.
+     */
+    public int size() {
+        int s = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                s += shard.size;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Counts an unscreened configuration for the given bin, creating the bin
+     * (with the given weight) if needed.
+     *
+     * @return the weight of the bin
+     */
+    public double countUnscreened(int[] key, double defaultWeight) {
+        int h = hash(key);
+        Shard shard = shards[shardIndex(h)];
+        synchronized (shard) {
+            int slot = shard.findOrCreate(key, h, defaultWeight, this);
+            shard.unscreenedCount[slot]++;
+            double w = shard.weight[slot];
+            checkSpill(shard);
+            return w;
+        }
+    }
+
+    /**
+     * Adds a sampled value to the given bin.
+     */
+    public void addSample(int[] key, double x) {
+        int h = hash(key);
+        Shard shard = shards[shardIndex(h)];
+        synchronized (shard) {
+            int slot = shard.findOrCreate(key, h, 1, this);
+            shard.sampleCount[slot]++;
+            shard.sum[slot] += x;
+            shard.sum2[slot] += x*x;
+            checkSpill(shard);
+        }
+    }
+
+    /**
+     * Adds the given statistics to the bin, creating the bin (with the given
+     * weight) if needed.
+     */
+    public void add(int[] key, long unscreenedCount, long sampleCount, double sum, double sum2, double defaultWeight) {
+        int h = hash(key);
+        Shard shard = shards[shardIndex(h)];
+        synchronized (shard) {
+            int slot = shard.findOrCreate(key, h, defaultWeight, this);
+            shard.unscreenedCount[slot] += unscreenedCount;
+            shard.sampleCount[slot] += sampleCount;
+            shard.sum[slot] += sum;
+            shard.sum2[slot] += sum2;
+            checkSpill(shard);
+        }
+    }
+
+    /**
+     * Sets the weight of the given bin, creating the bin if needed.
+     */
+    public void setWeight(int[] key, double w) {
+        int h = hash(key);
+        Shard shard = shards[shardIndex(h)];
+        synchronized (shard) {
+            int slot = shard.findOrCreate(key, h, w, this);
+            shard.weight[slot] = w;
+            checkSpill(shard);
+        }
+    }
+
+    /**
+     * Returns the weight of the given bin, or defaultWeight if the bin has
+     * never been seen.
+     */
+    public double getWeight(int[] key, double defaultWeight) {
+        int h = hash(key);
+        Shard shard = shards[shardIndex(h)];
+        synchronized (shard) {
+            int slot = shard.find(key, h);
+            if (slot >= 0) return shard.weight[slot];
+            return spilledWeight(shard, key, defaultWeight);
+        }
+    }
+
+    /**
+     * Visits each bin held in memory.  Each shard is locked while its bins
+     * are visited, and any change the visitor makes to the weight of the Bin
+     * it is handed is stored.
+     */
+    public void forEach(BinVisitor visitor) {
+        Bin bin = new Bin();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (int slot=0; slot<shard.capacity; slot++) {
+                    if (!shard.occupied[slot]) continue;
+                    shard.copyTo(slot, bin);
+                    visitor.visit(bin);
+                    shard.weight[slot] = bin.weight;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds all bins from the other store (including anything it has
+     * spilled) to this one.  Bins that are new to this store take the weight
+     * they had in the other store.  The other store's spill files are deleted
+     * and it should not be used afterwards.
+     */
+    public void merge(BinStore other) {
+        other.forEach(new BinVisitor() {
+            public void visit(Bin bin) {
+                add(bin.key, bin.unscreenedCount, bin.sampleCount, bin.sum, bin.sum2, bin.weight);
+            }
+        });
+        for (Shard otherShard : other.shards) {
+            synchronized (otherShard) {
+                // newest first, so that a bin new to this store takes the
+                // weight it had last
+                for (int i=otherShard.runs.size()-1; i>=0; i--) {
+                    FileRun run = null;
+                    try {
+                        run = new FileRun(otherShard.runs.get(i).file, other.keyLength);
+                        while (run.next()) {
+                            add(run.bin.key, run.bin.unscreenedCount, run.bin.sampleCount, run.bin.sum, run.bin.sum2, run.bin.weight);
+                        }
+                    }
+                    catch (IOException e) {
+                        throw new RuntimeException("couldn't read spill file "+otherShard.runs.get(i).file, e);
+                    }
+                    finally {
+                        if (run != null) run.close();
+                    }
+                }
+            }
+        }
+        other.deleteSpillFiles();
+    }
+
+    /**
+     * Writes the statistics for all bins, in order, to the given file.  Bins
+     * spilled to disk are merged with those in memory.  If bins have been
+     * spilled, no other thread may add to the store while this runs.
+     */
+    public void writeData(String filename, long totalCount) {
+        try {
+            final FileWriter fw = new FileWriter(filename);
+            fw.write(""+totalCount+"\n");
+            try {
+                mergeAll(bin -> fw.write(Arrays.toString(bin.key)+" "+bin.unscreenedCount+" "+bin.sampleCount+" "+bin.sum+" "+bin.sum2+"\n"));
+            }
+            finally {
+                fw.close();
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the weight of each bin (including those spilled to disk) to the
+     * given file.  If bins have been spilled, no other thread may add to the
+     * store while this runs.
+     */
+    public void writeWeights(String filename) {
+        try {
+            final FileWriter fw = new FileWriter(filename);
+            try {
+                mergeAll(bin -> fw.write(Arrays.toString(bin.key)+" "+bin.weight+"\n"));
+            }
+            finally {
+                fw.close();
+            }
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Deletes any files spilled by this store.  The spilled bins are lost.
+     */
+    public void deleteSpillFiles() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                for (RunFile run : shard.runs) {
+                    run.file.delete();
+                }
+                shard.runs.clear();
+            }
+        }
+    }
+
+    /**
+     * Spills the shard if it has grown too large.  Called with the shard
+     * locked.
+     */
+    protected void checkSpill(Shard shard) {
+        if (shard.size > maxShardSize && spillPrefix != null) {
+            spill(shard);
+        }
+    }
+
+    /**
+     * Writes the shard's bins to a new run file, merges runs if there are
+     * now too many of the same level, and empties the shard.  Called with the
+     * shard locked.
+     */
+    protected void spill(Shard shard) {
+        List<Run> runs = new ArrayList<Run>();
+        runs.add(new MemoryRun(shard.sorted()));
+        RunFile run = null;
+        try {
+            run = writeRun(runs, 0);
+            shard.runs.add(run);
+            compact(shard.runs);
+        }
+        catch (IOException e) {
+            throw new RuntimeException("couldn't write spill file"+(run == null ? "" : " "+run.file), e);
+        }
+        shard.clear();
+    }
+
+    /**
+     * Merges the newest runs into one of the next level as long as the
+     * newest mergeFanIn runs all have the same level, like carrying in a
+     * counter with base mergeFanIn.  Levels never increase from the oldest
+     * run to the newest, so at most mergeFanIn-1 runs of each level remain.
+     */
+    protected void compact(List<RunFile> runs) throws IOException {
+        while (runs.size() >= mergeFanIn) {
+            int n = runs.size();
+            int level = runs.get(n-1).level;
+            if (runs.get(n-mergeFanIn).level != level) return;
+            List<RunFile> newest = runs.subList(n-mergeFanIn, n);
+            RunFile merged = mergeFiles(newest, level+1);
+            for (RunFile r : newest) {
+                r.file.delete();
+            }
+            newest.clear();
+            runs.add(merged);
+        }
+    }
+
+    /**
+     * Merges the bins held in memory with all of the spilled bins and hands
+     * each bin to the sink, in order.  The spill files are first merged in
+     * groups of consecutive runs into temporary files until no more than
+     * mergeFanIn are left.
+     */
+    protected void mergeAll(BinSink sink) throws IOException {
+        List<RunFile> files = new ArrayList<RunFile>();
+        List<Run> memoryRuns = new ArrayList<Run>();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                files.addAll(shard.runs);
+                memoryRuns.add(new MemoryRun(shard.sorted()));
+            }
+        }
+        List<File> tmpFiles = new ArrayList<File>();
+        List<Run> runs = new ArrayList<Run>();
+        try {
+            while (files.size() > mergeFanIn) {
+                List<RunFile> next = new ArrayList<RunFile>();
+                for (int i=0; i<files.size(); i+=mergeFanIn) {
+                    List<RunFile> group = files.subList(i, Math.min(i+mergeFanIn, files.size()));
+                    if (group.size() == 1) {
+                        next.add(group.get(0));
+                        continue;
+                    }
+                    RunFile merged = mergeFiles(group, 0);
+                    tmpFiles.add(merged.file);
+                    next.add(merged);
+                }
+                files = next;
+            }
+            for (RunFile f : files) {
+                runs.add(new FileRun(f.file, keyLength));
+            }
+            // bins in memory are newer than any that were spilled
+            runs.addAll(memoryRuns);
+            mergeRuns(runs, sink);
+        }
+        finally {
+            for (Run r : runs) {
+                r.close();
+            }
+            for (File f : tmpFiles) {
+                f.delete();
+            }
+        }
+    }
+
+    /**
+     * Merges the given run files (oldest first) into a new one.
+     */
+    protected RunFile mergeFiles(List<RunFile> files, int level) throws IOException {
+        List<Run> runs = new ArrayList<Run>();
+        try {
+            for (RunFile f : files) {
+                runs.add(new FileRun(f.file, keyLength));
+            }
+            return writeRun(runs, level);
+        }
+        finally {
+            for (Run r : runs) {
+                r.close();
+            }
+        }
+    }
+
+    /**
+     * Merges the given runs (oldest first) into a new run file.
+     */
+    protected RunFile writeRun(List<Run> runs, int level) throws IOException {
+        File f;
+        synchronized (this) {
+            f = new File(spillPrefix+"_spill"+spillCount+".bin");
+            spillCount++;
+        }
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f)));
+        try {
+            mergeRuns(runs, bin -> {
+                for (int j=0; j<keyLength; j++) {
+                    out.writeInt(bin.key[j]);
+                }
+                out.writeLong(bin.unscreenedCount);
+                out.writeLong(bin.sampleCount);
+                out.writeDouble(bin.sum);
+                out.writeDouble(bin.sum2);
+                out.writeDouble(bin.weight);
+            });
+        }
+        finally {
+            out.close();
+        }
+        return new RunFile(f, level);
+    }
+
+    /**
+     * Merges the sorted runs, handing each bin to the sink with the
+     * statistics summed over all runs and the weight from the newest run
+     * (the last in the list) holding it.
+     */
+    protected static void mergeRuns(List<Run> runs, BinSink sink) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        for (int i=0; i<runs.size(); i++) {
+            Run r = runs.get(i);
+            r.position = i;
+            if (r.next()) queue.add(r);
+        }
+        Bin out = new Bin();
+        while (!queue.isEmpty()) {
+            Run r = queue.poll();
+            out.key = r.bin.key.clone();
+            out.unscreenedCount = out.sampleCount = 0;
+            out.sum = out.sum2 = 0;
+            int newest = -1;
+            while (true) {
+                out.unscreenedCount += r.bin.unscreenedCount;
+                out.sampleCount += r.bin.sampleCount;
+                out.sum += r.bin.sum;
+                out.sum2 += r.bin.sum2;
+                if (r.position > newest) {
+                    newest = r.position;
+                    out.weight = r.bin.weight;
+                }
+                if (r.next()) queue.add(r);
+                r = queue.peek();
+                if (r == null || compare(r.bin.key, out.key) != 0) break;
+                queue.poll();
+            }
+            sink.put(out);
+        }
+    }
+
+    /**
+     * Returns the weight of the bin from the newest of the shard's runs
+     * holding it, or defaultWeight if none do.  Called with the shard locked.
+     */
+    protected double spilledWeight(Shard shard, int[] key, double defaultWeight) {
+        if (shard.runs.isEmpty() || key.length != keyLength) return defaultWeight;
+        int recordSize = 4*keyLength + 40;
+        byte[] record = new byte[recordSize];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        for (int i=shard.runs.size()-1; i>=0; i--) {
+            File f = shard.runs.get(i).file;
+            try {
+                RandomAccessFile raf = new RandomAccessFile(f, "r");
+                try {
+                    // binary search of the sorted, fixed-size records
+                    long lo = 0, hi = raf.length()/recordSize - 1;
+                    while (lo <= hi) {
+                        long mid = (lo+hi) >>> 1;
+                        raf.seek(mid*recordSize);
+                        raf.readFully(record);
+                        int c = 0;
+                        for (int j=0; j<keyLength && c == 0; j++) {
+                            int x = buffer.getInt(4*j);
+                            if (x != key[j]) c = x > key[j] ? 1 : -1;
+                        }
+                        if (c < 0) lo = mid+1;
+                        else if (c > 0) hi = mid-1;
+                        else return buffer.getDouble(recordSize-8);
+                    }
+                }
+                finally {
+                    raf.close();
+                }
+            }
+            catch (IOException e) {
+                throw new RuntimeException("couldn't read spill file "+f, e);
+            }
+        }
+        return defaultWeight;
+    }
+
+    protected synchronized void checkKeyLength(int[] key) {
+        if (keyLength == -1) {
+            keyLength = key.length;
+        }
+        else if (key.length != keyLength) {
+            throw new IllegalArgumentException("all keys must have length "+keyLength);
+        }
+    }
+
+    protected int shardIndex(int h) {
+        return shardShift == 32 ? 0 : h >>> shardShift;
+    }
+
+    protected static int hash(int[] key) {
+        int h = Arrays.hashCode(key);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * Compares keys in the same order as IntSet.compareTo.
+     */
+    protected static int compare(int[] a, int[] b) {
+        for (int i=0; i<a.length; i++) {
+            if (a[i] == b[i]) continue;
+            return a[i] > b[i] ? 1 : -1;
+        }
+        return 0;
+    }
+
+    /**
+     * Statistics for one bin.
+     */
+    public static class Bin {
+        public int[] key;
+        public long unscreenedCount, sampleCount;
+        public double weight;
+        public double sum, sum2;
+
+        public double getAvg() {
+            return sum/sampleCount;
+        }
+
+        public double getVar() {
+            if (sampleCount < 1) return Double.NaN;
+            double avg = getAvg();
+            double avg2 = avg*avg;
+            double var = sum2/sampleCount - avg2;
+            if (var < avg2*1e-7) var = 0;
+            return var;
+        }
+    }
+
+    public interface BinVisitor {
+        void visit(Bin bin);
+    }
+
+    protected static class Shard {
+        protected int capacity, size, keyLength;
+        protected int[] keys;
+        protected boolean[] occupied;
+        protected long[] unscreenedCount, sampleCount;
+        protected double[] weight, sum, sum2;
+        // spilled runs, oldest first
+        protected final List<RunFile> runs = new ArrayList<RunFile>();
+
+        public Shard() {
+            allocate(16);
+        }
+
+        protected void allocate(int newCapacity) {
+            capacity = newCapacity;
+            keys = new int[capacity*keyLength];
+            occupied = new boolean[capacity];
+            unscreenedCount = new long[capacity];
+            sampleCount = new long[capacity];
+            weight = new double[capacity];
+            sum = new double[capacity];
+            sum2 = new double[capacity];
+            size = 0;
+        }
+
+        public void clear() {
+            allocate(16);
+        }
+
+        protected boolean keyEquals(int slot, int[] key) {
+            int offset = slot*keyLength;
+            for (int j=0; j<keyLength; j++) {
+                if (keys[offset+j] != key[j]) return false;
+            }
+            return true;
+        }
+
+        public int find(int[] key, int h) {
+            if (keyLength != key.length) return -1;
+            int mask = capacity-1;
+            for (int slot = h & mask; occupied[slot]; slot = (slot+1) & mask) {
+                if (keyEquals(slot, key)) return slot;
+            }
+            return -1;
+        }
+
+        public int findOrCreate(int[] key, int h, double defaultWeight, BinStore store) {
+            if (keyLength != key.length) {
+                store.checkKeyLength(key);
+                keyLength = key.length;
+                allocate(capacity);
+            }
+            int mask = capacity-1;
+            int slot = h & mask;
+            for ( ; occupied[slot]; slot = (slot+1) & mask) {
+                if (keyEquals(slot, key)) return slot;
+            }
+            if (2*(size+1) > capacity) {
+                rehash(capacity*2);
+                return findOrCreate(key, h, defaultWeight, store);
+            }
+            occupied[slot] = true;
+            System.arraycopy(key, 0, keys, slot*keyLength, keyLength);
+            weight[slot] = store.spilledWeight(this, key, defaultWeight);
+            size++;
+            return slot;
+        }
+
+        protected void rehash(int newCapacity) {
+            int oldCapacity = capacity;
+            int[] oldKeys = keys;
+            boolean[] oldOccupied = occupied;
+            long[] oldUnscreened = unscreenedCount, oldSampleCount = sampleCount;
+            double[] oldWeight = weight, oldSum = sum, oldSum2 = sum2;
+            allocate(newCapacity);
+            int mask = capacity-1;
+            int[] key = new int[keyLength];
+            for (int i=0; i<oldCapacity; i++) {
+                if (!oldOccupied[i]) continue;
+                System.arraycopy(oldKeys, i*keyLength, key, 0, keyLength);
+                int slot = hash(key) & mask;
+                while (occupied[slot]) slot = (slot+1) & mask;
+                occupied[slot] = true;
+                System.arraycopy(key, 0, keys, slot*keyLength, keyLength);
+                unscreenedCount[slot] = oldUnscreened[i];
+                sampleCount[slot] = oldSampleCount[i];
+                weight[slot] = oldWeight[i];
+                sum[slot] = oldSum[i];
+                sum2[slot] = oldSum2[i];
+                size++;
+            }
+        }
+
+        public void copyTo(int slot, Bin bin) {
+            bin.key = Arrays.copyOfRange(keys, slot*keyLength, (slot+1)*keyLength);
+            bin.unscreenedCount = unscreenedCount[slot];
+            bin.sampleCount = sampleCount[slot];
+            bin.weight = weight[slot];
+            bin.sum = sum[slot];
+            bin.sum2 = sum2[slot];
+        }
+
+        /**
+         * Returns copies of all bins, sorted by key.
+         */
+        public Bin[] sorted() {
+            Bin[] bins = new Bin[size];
+            int n = 0;
+            for (int slot=0; slot<capacity; slot++) {
+                if (!occupied[slot]) continue;
+                bins[n] = new Bin();
+                copyTo(slot, bins[n]);
+                n++;
+            }
+            Arrays.sort(bins, (a, b) -> compare(a.key, b.key));
+            return bins;
+        }
+    }
+
+    /**
+     * A file of spilled bins, sorted by key.  Each bin is a fixed-size
+     * record of the key, counts, sums and weight.
+     */
+    protected static class RunFile {
+        public final File file;
+        public final int level;
+
+        public RunFile(File file, int level) {
+            this.file = file;
+            this.level = level;
+        }
+    }
+
+    protected interface BinSink {
+        void put(Bin bin) throws IOException;
+    }
+
+    /**
+     * A sorted sequence of bins, used when merging spill files with the
+     * bins held in memory.
+     */
+    protected static abstract class Run implements Comparable<Run> {
+        protected final Bin bin = new Bin();
+        // position in the list of runs being merged; later runs are newer
+        protected int position;
+
+        public abstract boolean next() throws IOException;
+
+        public void close() {}
+
+        public int compareTo(Run o) {
+            return compare(bin.key, o.bin.key);
+        }
+    }
+
+    protected static class MemoryRun extends Run {
+        protected final Bin[] bins;
+        protected int index;
+
+        public MemoryRun(Bin[] bins) {
+            this.bins = bins;
+        }
+
+        public boolean next() {
+            if (index == bins.length) return false;
+            Bin b = bins[index++];
+            bin.key = b.key;
+            bin.unscreenedCount = b.unscreenedCount;
+            bin.sampleCount = b.sampleCount;
+            bin.sum = b.sum;
+            bin.sum2 = b.sum2;
+            bin.weight = b.weight;
+            return true;
+        }
+    }
+
+    protected static class FileRun extends Run {
+        protected final DataInputStream in;
+        protected final int keyLength;
+        protected long remaining;
+
+        public FileRun(File f, int keyLength) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(f)));
+            this.keyLength = keyLength;
+            remaining = f.length()/(4*keyLength + 40);
+        }
+
+        public boolean next() throws IOException {
+            if (remaining == 0) return false;
+            remaining--;
+            bin.key = new int[keyLength];
+            for (int j=0; j<keyLength; j++) {
+                bin.key[j] = in.readInt();
+            }
+            bin.unscreenedCount = in.readLong();
+            bin.sampleCount = in.readLong();
+            bin.sum = in.readDouble();
+            bin.sum2 = in.readDouble();
+            bin.weight = in.readDouble();
+            return true;
+        }
+
+        public void close() {
+            try {
+                in.close();
+            }
+            catch (IOException e) {
+                // we only read from it
+            }
+        }
+    }
+}
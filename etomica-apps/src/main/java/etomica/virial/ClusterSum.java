@@ -92,6 +92,10 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
         this.doCaching = doCaching;
     }
 
+    public boolean isCaching() {
+        return doCaching;
+    }
+
     // equal point count enforced in constructor 
     public int pointCount() {
         return clusters[0].pointCount();
@@ -127,8 +131,13 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
             lastValue = value;
             cPairID = thisCPairID;
         }
-        
-        updateF(box);
+
+        if (!doCaching || fValuesCPairID != cPairID) {
+            // a ClusterSumShell using our f values might have already
+            // computed them for this configuration
+            updateF(box);
+            fValuesCPairID = doCaching ? cPairID : -1;
+        }
 //        checkF(cPairs,aPairs);
         
         calcValue();
@@ -218,6 +227,8 @@ public class ClusterSum implements ClusterAbstract, java.io.Serializable {
     protected final double[][] fOld;
     protected long cPairID = -1, lastCPairID = -1;
     protected double value, lastValue;
+    // the configuration the f values were computed for
+    protected long fValuesCPairID = -1;
     protected double beta;
     protected boolean doCaching = true;
 }
@@ -28,7 +28,16 @@ public class ClusterSumShell extends ClusterSum {
     }
 
     protected void updateF(BoxCluster box) {
-        // our f values are always up to date
+        // the core computes the f values (which we share).  If the core has
+        // not seen this configuration yet, have it compute them now; the core
+        // will then skip the computation when its own value is requested.
+        // If the core does not cache, it must be evaluated before us.
+        if (!coreCluster.isCaching()) return;
+        long thisCPairID = box.getCPairSet().getID();
+        if (coreCluster.fValuesCPairID != thisCPairID) {
+            coreCluster.updateF(box);
+            coreCluster.fValuesCPairID = thisCPairID;
+        }
     }
 
     protected final ClusterSum coreCluster;
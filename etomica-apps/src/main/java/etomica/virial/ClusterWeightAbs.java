@@ -9,11 +9,23 @@ package etomica.virial;
  * @author andrew
  *
  * cluster weight wrapper (absolute value of wrapped cluster)
+ *
+ * The (signed) value of the wrapped cluster is remembered for the current and
+ * previous CoordinatePairSet ID, so the wrapped cluster is evaluated only
+ * once per configuration even if it does not cache its own value.  Meters
+ * that measure the wrapped cluster can retrieve the signed value with
+ * getSubClusterValue and avoid evaluating it again.  The number of
+ * evaluations and of reused values are counted; dividing by the number of
+ * steps gives the evaluations per step.
  */
 public class ClusterWeightAbs implements ClusterWeight, java.io.Serializable {
 	
     private static final long serialVersionUID = 1L;
     protected final ClusterAbstract weightCluster;
+    protected long cPairID = -1, lastCPairID = -1;
+    protected double value, lastValue;
+    protected long evaluationCount, reuseCount;
+    protected boolean doCaching = true;
 	
 	public ClusterWeightAbs(ClusterAbstract cluster) {
 		weightCluster = cluster;
@@ -47,10 +59,76 @@ public class ClusterWeightAbs implements ClusterWeight, java.io.Serializable {
 	}
 	
 	public double value(BoxCluster box) {
-		return Math.abs(weightCluster.value(box));
+		return Math.abs(getSubClusterValue(box));
 	}
+
+    /**
+     * Returns the (signed) value of the wrapped cluster for the box's current
+     * configuration, evaluating the wrapped cluster only if this is a new
+     * configuration.
+     */
+    public double getSubClusterValue(BoxCluster box) {
+        if (!doCaching || (weightCluster instanceof ClusterSum && !((ClusterSum)weightCluster).isCaching())) {
+            evaluationCount++;
+            return weightCluster.value(box);
+        }
+        long thisCPairID = box.getCPairSet().getID();
+        if (thisCPairID == cPairID) {
+            reuseCount++;
+            return value;
+        }
+        if (thisCPairID == lastCPairID) {
+            // we went back to the previous configuration, presumably because
+            // the trial was rejected.
+            lastCPairID = cPairID;
+            cPairID = thisCPairID;
+            double v = value;
+            value = lastValue;
+            lastValue = v;
+            reuseCount++;
+            return value;
+        }
+        lastCPairID = cPairID;
+        lastValue = value;
+        cPairID = thisCPairID;
+        value = weightCluster.value(box);
+        evaluationCount++;
+        return value;
+    }
+
+    /**
+     * Turns remembering of values on or off.  Caching must be turned off if
+     * the wrapped cluster's value can change without the configuration
+     * changing (as with MCMoveClusterDiagram).  Caching is also skipped
+     * if the wrapped cluster is a ClusterSum with caching turned off.
+     */
+    public void setCaching(boolean newDoCaching) {
+        doCaching = newDoCaching;
+        cPairID = lastCPairID = -1;
+    }
+
+    /**
+     * Returns the number of times the wrapped cluster has been evaluated.
+     */
+    public long getEvaluationCount() {
+        return evaluationCount;
+    }
+
+    /**
+     * Returns the number of times a remembered value was returned instead of
+     * evaluating the wrapped cluster.
+     */
+    public long getReuseCount() {
+        return reuseCount;
+    }
+
+    public void resetCounts() {
+        evaluationCount = reuseCount = 0;
+    }
     
     public void setTemperature(double temp) {
         weightCluster.setTemperature(temp);
+        // remembered values are no longer valid
+        cPairID = lastCPairID = -1;
     }
 }
@@ -0,0 +1,297 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.space.Vector;
+import etomica.util.random.IRandom;
+
+/**
+ * Direct sampling of hard-sphere chain and tree configurations in batches.
+ * This does the same job as an integrator with MCMoveClusterAtomHSChain and
+ * MCMoveClusterAtomHSTree (with frequencies chainFrac and 1-chainFrac) and a
+ * MeterVirialBDBinMultiThreaded listening to it, but generates a block of
+ * configurations at once into primitive arrays and computes the overlap
+ * bitmask of each one in a tight loop.
+ * <p>
+ * Configurations that cannot be biconnected (a point with fewer than two
+ * overlaps, an articulation point, or a bonded pair whose removal splits the
+ * graph) have no contribution to the virial coefficient; they are only
+ * counted.  The rest are copied into the box and handed to the meter.  Since
+ * most configurations for larger n are screened this way, the cost of
+ * updating the box and the clusters is avoided for nearly all of them.
+ * <p>
+ * Only positive (overlap) sphere diameters are handled.  Only 3 dimensions
+ * are handled.
+ */
+public class HSBatchSampler {
+
+    protected final IRandom random;
+    protected final int n;
+    protected final double sigma;
+    protected final double chainFrac;
+    protected final int batchSize;
+    protected final double[] x;
+    protected final int[] bondMask;
+    protected final boolean[] screened;
+    protected final int[] seq, degree, prufer, inserted;
+    protected final int[][] bonds;
+
+    /**
+     * @param random    the random number generator
+     * @param nPoints   the number of hard spheres
+     * @param sigma     the sphere diameter
+     * @param chainFrac the fraction of configurations generated as chains;
+     *                  the rest are generated as trees
+     * @param batchSize the number of configurations generated at once
+     */
+    public HSBatchSampler(IRandom random, int nPoints, double sigma, double chainFrac, int batchSize) {
+        if (nPoints > 31) throw new IllegalArgumentException("too many points for int bitmasks");
+        this.random = random;
+        n = nPoints;
+        this.sigma = sigma;
+        this.chainFrac = chainFrac;
+        this.batchSize = batchSize;
+        x = new double[batchSize*n*3];
+        bondMask = new int[batchSize*n];
+        screened = new boolean[batchSize];
+        seq = new int[n];
+        degree = new int[n];
+        prufer = new int[Math.max(n-2, 0)];
+        inserted = new int[n];
+        bonds = new int[Math.max(n-1, 0)][2];
+    }
+
+    /**
+     * Generates and measures the given number of configurations.
+     */
+    public void run(long steps, BoxCluster box, MeterVirialBDBinMultiThreaded meter) {
+        IAtomList leafAtoms = box.getLeafList();
+        if (leafAtoms.size() != n) {
+            throw new IllegalArgumentException("box should have "+n+" atoms");
+        }
+        while (steps > 0) {
+            int nb = (int)Math.min(batchSize, steps);
+            for (int b=0; b<nb; b++) {
+                if (chainFrac > 0 && (chainFrac == 1 || random.nextDouble() < chainFrac)) {
+                    generateChain(b*n*3);
+                }
+                else {
+                    generateTree(b*n*3);
+                }
+            }
+            computeBondMasks(nb);
+            long nScreened = 0;
+            for (int b=0; b<nb; b++) {
+                if (screened[b]) {
+                    nScreened++;
+                    continue;
+                }
+                // hand over the screened count first so that the total
+                // count the meter sees is the same as for sequential sampling
+                meter.addScreenedCount(nScreened);
+                nScreened = 0;
+                int offset = b*n*3;
+                for (int i=0; i<n; i++) {
+                    Vector p = leafAtoms.get(i).getPosition();
+                    p.setX(0, x[offset+3*i]);
+                    p.setX(1, x[offset+3*i+1]);
+                    p.setX(2, x[offset+3*i+2]);
+                }
+                box.trialNotify();
+                box.acceptNotify();
+                meter.actionPerformed();
+            }
+            meter.addScreenedCount(nScreened);
+            steps -= nb;
+        }
+    }
+
+    /**
+     * Computes the overlap bitmask for each point of the first nb
+     * configurations and flags those that cannot be biconnected.
+     */
+    protected void computeBondMasks(int nb) {
+        final double sig2 = sigma*sigma;
+        final int full = (1<<n)-1;
+        final int maxEdges = n*(n-1)/2;
+        for (int b=0; b<nb; b++) {
+            int xOffset = b*n*3;
+            int mOffset = b*n;
+            for (int i=0; i<n; i++) {
+                bondMask[mOffset+i] = 0;
+            }
+            int edgeCount = 0;
+            for (int i=0; i<n-1; i++) {
+                double xi = x[xOffset+3*i], yi = x[xOffset+3*i+1], zi = x[xOffset+3*i+2];
+                int mi = 0;
+                for (int j=i+1; j<n; j++) {
+                    double dx = x[xOffset+3*j] - xi;
+                    double dy = x[xOffset+3*j+1] - yi;
+                    double dz = x[xOffset+3*j+2] - zi;
+                    if (dx*dx + dy*dy + dz*dz < sig2) {
+                        mi |= 1<<j;
+                        bondMask[mOffset+j] |= 1<<i;
+                    }
+                }
+                bondMask[mOffset+i] |= mi;
+                edgeCount += Integer.bitCount(mi);
+            }
+            if (edgeCount == maxEdges) {
+                screened[b] = false;
+                continue;
+            }
+            // one missing bond gives a zero value (as in ClusterWheatleyHS)
+            boolean s = edgeCount == maxEdges-1;
+            for (int i=0; i<n && !s; i++) {
+                s = Integer.bitCount(bondMask[mOffset+i]) < 2;
+            }
+            // articulation points and bonded pairs that separate the graph
+            // (clique separators of 1 or 2 points) also give a zero value
+            for (int i=0; i<n && !s; i++) {
+                int iBit = 1<<i;
+                s = !connectedWithout(mOffset, iBit, full);
+                int nbrs = bondMask[mOffset+i] & ~((iBit<<1)-1);
+                while (nbrs != 0 && !s) {
+                    int jBit = nbrs & -nbrs;
+                    s = !connectedWithout(mOffset, iBit|jBit, full);
+                    nbrs ^= jBit;
+                }
+            }
+            screened[b] = s;
+        }
+    }
+
+    /**
+     * Returns true if the graph (described by bondMask starting at mOffset)
+     * remains connected when the points in skipMask are removed.
+     */
+    protected boolean connectedWithout(int mOffset, int skipMask, int full) {
+        int target = full & ~skipMask;
+        if (target == 0) return true;
+        int seen = target & -target;
+        int frontier = seen;
+        while (frontier != 0) {
+            int newSeen = seen;
+            while (frontier != 0) {
+                int lb = frontier & -frontier;
+                newSeen |= bondMask[mOffset+Integer.numberOfTrailingZeros(lb)];
+                frontier ^= lb;
+            }
+            newSeen &= target;
+            frontier = newSeen & ~seen;
+            seen = newSeen;
+        }
+        return seen == target;
+    }
+
+    /**
+     * Generates a chain of overlapping spheres in a random sequence, as
+     * MCMoveClusterAtomHSChain does.
+     */
+    protected void generateChain(int offset) {
+        for (int i=0; i<n; i++) {
+            seq[i] = i;
+        }
+        for (int i=0; i<n; i++) {
+            int j = i+random.nextInt(n-i);
+            int k = seq[j];
+            seq[j] = seq[i];
+            seq[i] = k;
+        }
+        int i0 = offset+3*seq[0];
+        x[i0] = x[i0+1] = x[i0+2] = 0;
+        for (int i=1; i<n; i++) {
+            insertNear(offset+3*seq[i], offset+3*seq[i-1]);
+        }
+    }
+
+    /**
+     * Generates a tree of overlapping spheres with a random Prufer sequence,
+     * as MCMoveClusterAtomHSTree does.
+     */
+    protected void generateTree(int offset) {
+        for (int i=0; i<n; i++) {
+            degree[i] = 1;
+        }
+        for (int i=0; i<n-2; i++) {
+            prufer[i] = random.nextInt(n);
+            degree[prufer[i]]++;
+        }
+
+        int numBonds = 0;
+        for (int i=0; i<n-2; i++) {
+            int ii = prufer[i];
+            for (int j=0; j<n; j++) {
+                if (degree[j] == 1) {
+                    bonds[numBonds][0] = ii;
+                    bonds[numBonds][1] = j;
+                    numBonds++;
+                    degree[ii]--;
+                    degree[j]--;
+                    break;
+                }
+            }
+        }
+        int u = -1, v = -1;
+        for (int i=0; i<n; i++) {
+            if (degree[i] == 1) {
+                if (u==-1) {
+                    u = i;
+                } else {
+                    v = i;
+                }
+            }
+        }
+        bonds[numBonds][0] = u;
+        bonds[numBonds][1] = v;
+        numBonds++;
+
+        x[offset] = x[offset+1] = x[offset+2] = 0;
+        inserted[0] = 0;
+        int numInserted = 1;
+        int coordinatedMask = 0;
+        while (numInserted > 0) {
+            int nbr = inserted[numInserted-1];
+            numInserted--;
+            coordinatedMask |= 1<<nbr;
+            for (int iBond = 0; iBond<numBonds; iBond++) {
+                int[] b = bonds[iBond];
+                int nbr2;
+                if (b[0] == nbr) {
+                    nbr2 = b[1];
+                } else if (b[1] == nbr) {
+                    nbr2 = b[0];
+                } else {
+                    continue;
+                }
+                if ((coordinatedMask & (1<<nbr2)) != 0) {
+                    continue;
+                }
+                insertNear(offset+3*nbr2, offset+3*nbr);
+                inserted[numInserted] = nbr2;
+                numInserted++;
+            }
+        }
+    }
+
+    /**
+     * Places the sphere at index i uniformly within sigma of the sphere at
+     * index j (the same way as Vector3D.setRandomInSphere).
+     */
+    protected void insertNear(int i, int j) {
+        double r = Math.cbrt(random.nextFixedDouble());
+        double u, v, s;
+        do {
+            u = 1.0 - 2.0*random.nextFixedDouble();
+            v = 1.0 - 2.0*random.nextFixedDouble();
+            s = u*u + v*v;
+        } while (s > 1);
+        double ra = 2.*r * Math.sqrt(1.-s);
+        x[i] = sigma*ra*u + x[j];
+        x[i+1] = sigma*ra*v + x[j+1];
+        x[i+2] = sigma*r*(2*s-1.) + x[j+2];
+    }
+}
@@ -24,6 +24,8 @@ public class MCMoveClusterDiagram extends MCMoveBox {
         ClusterAbstract cluster1;
         if (sampleCluster instanceof ClusterWeightAbs) {
             cluster1 = ((ClusterWeightAbs)sampleCluster).getSubCluster();
+            // the diagram changes without the configuration changing
+            ((ClusterWeightAbs)sampleCluster).setCaching(false);
         }
         else { // must be umbrella
             cluster1 = ((ClusterWeightUmbrella)sampleCluster).getClusters()[0];
@@ -35,11 +35,18 @@ public class MeterVirial implements IDataSource, java.io.Serializable {
     }
     
     public IData getData() {
-        double pi = box.getSampleCluster().value(box);
+        ClusterWeight sampleCluster = box.getSampleCluster();
+        double pi = sampleCluster.value(box);
         if (pi == 0 || pi == Double.POSITIVE_INFINITY || Double.isNaN(pi)) throw new RuntimeException("oops "+pi);
+        // if the sampling cluster wraps one of our clusters, reuse its value
+        ClusterAbstract shared = null;
+        if (sampleCluster instanceof ClusterWeightAbs) {
+            shared = ((ClusterWeightAbs)sampleCluster).getSubCluster();
+        }
         double x[] = data.getData();
         for (int i=0; i<clusters.length; i++) {
-            x[i] = clusters[i].value(box)/pi;
+            double v = clusters[i] == shared ? ((ClusterWeightAbs)sampleCluster).getSubClusterValue(box) : clusters[i].value(box);
+            x[i] = v/pi;
             if (Double.isNaN(x[i]) || Double.isInfinite(x[i])) throw new RuntimeException("oops "+clusters[i].value(box)+" "+x[i]+" "+pi);
         }
 //        System.out.println(box.getIndex()+" "+pi+" "+x[0]+" "+x[1]);
@@ -100,6 +100,14 @@ public class MeterVirialBDBinMultiThreaded implements IAction {
         quiet = newQuiet;
     }
 
+    /**
+     * Counts configurations that were generated and screened out before
+     * reaching this meter (see HSBatchSampler).
+     */
+    public void addScreenedCount(long n) {
+        totalCount[iThread] += n;
+    }
+
     public void actionPerformed() {
         
         if (iThread == 0) {
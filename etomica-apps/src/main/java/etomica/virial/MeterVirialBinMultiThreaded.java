@@ -7,17 +7,12 @@ package etomica.virial;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Set;
 
 import etomica.action.IAction;
 import etomica.util.random.IRandom;
+import etomica.virial.BinStore.Bin;
+import etomica.virial.BinStore.BinVisitor;
 import etomica.virial.IntSet.PropertyBin;
 
 /**
@@ -29,17 +24,17 @@ import etomica.virial.IntSet.PropertyBin;
  * each bin is visited.
  * 
  * Additionally, this class can be used in a threaded simulation.  Each thread
- * runs a separate simulation, sharing a Map of MyData.  This class ensures
- * that the various instances of the meter do not concurrently use the Map in
- * a way that causes problems.  Many of the operations need only be approximate
- * and the class avoids forcing synchronization for such operations.
+ * runs a separate simulation, sharing a BinStore.  The BinStore locks only
+ * the shard holding the bin being updated, so threads rarely wait on each
+ * other.  For very large numbers of bins, the BinStore can be told to spill
+ * bins to disk (see BinStore.setSpill).
  */
 public class MeterVirialBinMultiThreaded implements IAction {
 
     protected final IRandom random;
     protected final ClusterWheatley targetCluster;
     protected BoxCluster box;
-    protected final Map<IntSet,MyData> allMyData;
+    protected final BinStore allMyData;
     protected static double tRatio;
     protected long nextReweightStep = 100000L;
     protected final long[] totalCount;
@@ -58,11 +53,11 @@ public class MeterVirialBinMultiThreaded implements IAction {
         this(targetCluster, random, prop, new long[1], null, 0, true);
     }
 
-    public MeterVirialBinMultiThreaded(ClusterWheatley targetCluster, IRandom random, PropertyBin prop, long[] totalCount, Map<IntSet,MyData> allMyData, int iThread, boolean doReweight) {
+    public MeterVirialBinMultiThreaded(ClusterWheatley targetCluster, IRandom random, PropertyBin prop, long[] totalCount, BinStore allMyData, int iThread, boolean doReweight) {
         System.out.println("Bin2");
         this.targetCluster = targetCluster;
         this.random = random;
-        this.allMyData = allMyData == null ? new HashMap<IntSet,MyData>() : allMyData;
+        this.allMyData = allMyData == null ? new BinStore() : allMyData;
         property = prop;
         this.totalCount = totalCount;
         this.iThread = iThread;
@@ -106,9 +101,7 @@ public class MeterVirialBinMultiThreaded implements IAction {
             }
             if (tc >= nextReweightStep) {
                 // this thread will be recomputing weights for all threads
-                synchronized (allMyData) {
-                    recomputeWeights();
-                }
+                recomputeWeights();
                 nextReweightStep = tc*2;
             }
         }
@@ -123,26 +116,8 @@ public class MeterVirialBinMultiThreaded implements IAction {
 //            lastCPairID = box.getCPairSet().getID();
             return;
         }
-        IntSet propValue = property.value();
-        MyData amd;
-        synchronized (allMyData) {
-            // this needs to be synchronized to trying retrieving a value here
-            // and while adding that same key/value below.
-            amd = allMyData.get(propValue);
-            if (amd == null) {
-                IntSet pvCopy = propValue.copy();
-                amd = new MyData();
-                amd.weight = nominalWeight;
-                allMyData.put(pvCopy, amd);
-//                int foo = allMyData.size();
-//                if (foo == 1<<(int)(Math.log(foo)/Math.log(2))) {
-//                    System.out.println(foo+" sets, "+totalCount/foo+" steps/set");
-//                }
-            }
-
-            amd.unscreenedCount++;
-        }
-        double myWeight = amd.weight;
+        int[] propValue = property.value().v;
+        double myWeight = allMyData.countUnscreened(propValue, nominalWeight);
         if (myWeight < 1 && myWeight < random.nextDouble()) {
 //            lastLastCPairID = lastCPairID;
 //            lastCPairID = box.getCPairSet().getID();
@@ -157,10 +132,7 @@ public class MeterVirialBinMultiThreaded implements IAction {
             x = v/pi;
         }
 
-        synchronized (amd) {
-            // synchronize to prevent recomputeWeights from reading data now
-            amd.addData(x);
-        }
+        allMyData.addSample(propValue, x);
 //        lastLastCPairID = lastCPairID;
 //        lastCPairID = box.getCPairSet().getID();
     }
@@ -173,65 +145,22 @@ public class MeterVirialBinMultiThreaded implements IAction {
         writeData(filename, allMyData, tc);
     }
 
-    public static void writeData(String filename, Map<IntSet,MyData> allMyData, long totalCount) {
-        try {
-            FileWriter fw = new FileWriter(filename);
-            fw.write(""+totalCount+"\n");
-            List<IntSet> pvs = new ArrayList<IntSet>();
-            pvs.addAll(allMyData.keySet());
-            Collections.sort(pvs);
-            for (IntSet pv : pvs) {
-                MyData amd = allMyData.get(pv);
-                fw.write(pv+" "+amd.unscreenedCount+" "+amd.sampleCount+" "+amd.sum+" "+amd.sum2+"\n");
-            }
-            fw.close();
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    public static void writeData(String filename, BinStore allMyData, long totalCount) {
+        allMyData.writeData(filename, totalCount);
     }
 
     public void writeWeights(String filename) {
-        writeWeights(filename, allMyData);
-    }
-
-    public static void writeWeights(String filename, Map<IntSet,MyData> allMyData) {
-        try {
-            FileWriter fw = new FileWriter(filename);
-            List<IntSet> pvs = new ArrayList<IntSet>();
-            pvs.addAll(allMyData.keySet());
-            Collections.sort(pvs);
-            for (IntSet pv : pvs) {
-                fw.write(pv+" "+allMyData.get(pv).weight+"\n");
-            }
-            fw.close();
-        }
-        catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+        allMyData.writeWeights(filename);
     }
 
-    public void mergeData(Map<IntSet,MyData> moreData) {
-        Set<IntSet> pvs = moreData.keySet();
-        for (IntSet pv : pvs) {
-            MyData amd = allMyData.get(pv);
-            if (amd == null) {
-                amd = new MyData();
-                allMyData.put(pv, amd);
-            }
-            MyData amdMore = moreData.get(pv);
-            amd.sum += amdMore.sum;
-            amd.sum2 += amdMore.sum2;
-            amd.sampleCount += amdMore.sampleCount;
-            amd.unscreenedCount += amdMore.unscreenedCount;
-        }
+    /**
+     * Adds the data from another meter's BinStore to ours.
+     */
+    public void mergeData(BinStore moreData) {
+        allMyData.merge(moreData);
     }
 
     public void readData(String[] filenames) {
-        Map<IntSet,Double> sums = new HashMap<IntSet,Double>();
-        Map<IntSet,Double> sumSquares = new HashMap<IntSet,Double>();
-        Map<IntSet,Double> dsums = new HashMap<IntSet,Double>();
-        Map<IntSet,Long> sampleCounts = new HashMap<IntSet,Long>();
         try {
             for (String filename : filenames) {
                 File f = new File(filename);
@@ -241,35 +170,13 @@ public class MeterVirialBinMultiThreaded implements IAction {
                 String line = bufReader.readLine();
                 totalCount[iThread] += Long.parseLong(line);
                 while ((line=bufReader.readLine()) != null) {
-                    String pvStr = line.replaceFirst("].*", "").substring(1);
-                    String[] pvSplit = pvStr.split("[, ]+");
-                    int[] v = new int[pvSplit.length];
-                    for (int i=0; i<v.length; i++) {
-                        v[i] = Integer.parseInt(pvSplit[i]);
-                    }
-                    IntSet pv = new IntSet(v);
+                    int[] v = parseKey(line);
                     String[] values = line.replaceFirst(".*] ", "").split(" +");
                     long usc = Long.parseLong(values[0]);
                     long sampleCount = Long.parseLong(values[1]);
                     double sum = Double.parseDouble(values[2]);
                     double sumSquare = Double.parseDouble(values[3]);
-                    if (allMyData.containsKey(pv)) {
-                        MyData amd = allMyData.get(pv);
-                        amd.unscreenedCount += usc;
-                        sampleCounts.put(pv, sampleCounts.get(pv)+sampleCount);
-                        sums.put(pv, sums.get(pv) +sum);
-                        sumSquares.put(pv, sumSquares.get(pv) + sumSquare);
-                    }
-                    else {
-                        MyData amd = new MyData();
-                        amd.unscreenedCount = usc;
-                        amd.weight = nominalWeight;
-                        allMyData.put(pv, amd);
-                        sampleCounts.put(pv, sampleCount);
-                        sums.put(pv, sum);
-                        sumSquares.put(pv, sumSquare);
-                        dsums.put(pv, Double.parseDouble(values[2]));
-                    }
+                    allMyData.add(v, usc, sampleCount, sum, sumSquare, nominalWeight);
                 }
                 bufReader.close();
             }
@@ -277,12 +184,16 @@ public class MeterVirialBinMultiThreaded implements IAction {
         catch (IOException e) {
             throw new RuntimeException(e);
         }
-        for (IntSet pv : allMyData.keySet()) {
-            MyData amd = allMyData.get(pv);
-            amd.sampleCount = sampleCounts.get(pv);
-            amd.sum = sums.get(pv);
-            amd.sum2 = sumSquares.get(pv);
+    }
+
+    protected static int[] parseKey(String line) {
+        String pvStr = line.replaceFirst("].*", "").substring(1);
+        String[] pvSplit = pvStr.split("[, ]+");
+        int[] v = new int[pvSplit.length];
+        for (int i=0; i<v.length; i++) {
+            v[i] = Integer.parseInt(pvSplit[i]);
         }
+        return v;
     }
 
     public void readWeights(String filename) {
@@ -293,18 +204,9 @@ public class MeterVirialBinMultiThreaded implements IAction {
             BufferedReader bufReader = new BufferedReader(fr);
             String line = null;
             while ((line=bufReader.readLine()) != null) {
-                String pvStr = line.replaceAll("].*", "").substring(1);
-                String[] pvSplit = pvStr.split("[, ]+");
-                int[] v = new int[pvSplit.length];
-                for (int i=0; i<v.length; i++) {
-                    v[i] = Integer.parseInt(pvSplit[i]);
-                }
-                IntSet pv = new IntSet(v);
+                int[] v = parseKey(line);
                 String weightStr = line.replaceAll(".*] ", "");
-                MyData amd = new MyData();
-                amd.weight = Double.parseDouble(weightStr);
-                amd.unscreenedCount = 0;
-                allMyData.put(pv, amd);
+                allMyData.setWeight(v, Double.parseDouble(weightStr));
             }
             bufReader.close();
         }
@@ -324,75 +226,61 @@ public class MeterVirialBinMultiThreaded implements IAction {
         nextReweightStep = tc * 2;
     }
 
-    public static void recomputeWeights(Map<IntSet,MyData> allMyData, long totalCount) {
+    public static void recomputeWeights(BinStore allMyData, long totalCount) {
         recomputeWeights(allMyData, totalCount, true);
     }
     
     /**
-     * This method will read MyData.unscreenedCount and MyData.accumulator
-     * and write to MyData.weight.
+     * This method will read the unscreenedCount and statistics of each Bin
+     * and write to Bin.weight.
      */
-    public static void recomputeWeights(Map<IntSet,MyData> allMyData, long totalCount, boolean doPadVar) {
+    public static void recomputeWeights(BinStore allMyData, long totalCount, final boolean doPadVar) {
         // tRatio is the ratio of the time needed to compute the biconnected
         // value (and reference value) for one configuration to the time needed
         // to generate a configuration and screen it (and any other overhead).
-        long totalSampleCount = 0;
-        double totalSqValue = 0;
-        for (MyData amd : allMyData.values()) {
-            long sc = 0;
-            double average = 0;
-            double var = 0;
-            synchronized (amd) {
-                sc = amd.sampleCount;
-                average = amd.getAvg();
-                var = amd.getVar();
+        final long[] totalSampleCount = new long[1];
+        final double[] totalSqValue = new double[1];
+        allMyData.forEach(new BinVisitor() {
+            public void visit(Bin amd) {
+                long sc = amd.sampleCount;
+                double average = amd.getAvg();
+                double var = amd.getVar();
+                totalSampleCount[0] += sc;
+                totalSqValue[0] += sc * (var + average*average);
             }
-            totalSampleCount += sc;
-            totalSqValue += sc * (var + average*average);
-        }
-        double avgSqValue = totalSqValue / totalSampleCount;
+        });
+        final double avgSqValue = totalSqValue[0] / totalSampleCount[0];
         double t0 = totalCount;
-        double t1 = totalSampleCount*tRatio;
-        double E0a = 0, E0a2 = 0;
-        double E1 = 0;
+        double t1 = totalSampleCount[0]*tRatio;
         // E0 = sum(sci*(steps-sci)/steps * ai^2)
         // E1 = sum(sci*sci*stdev*stdev/sampci)
+        final double[] E = new double[3];
 
-        Map<IntSet,Double> localWeight = new HashMap<IntSet,Double>();
-        
-        for (IntSet pv : allMyData.keySet()) {
-            MyData amd = allMyData.get(pv);
-            long c = amd.unscreenedCount;
-            if (c == 0) continue;
-            long sampleCount = 0;
-            double average = 0;
-            double var = 0;
-            synchronized (amd) {
-                sampleCount = amd.sampleCount;
-                average = amd.getAvg();
-                var = amd.getVar();
-            }
-            double lwi = doPadVar ? (avgSqValue/sampleCount) : 0;
-
-            if (average != 0) {
-                // E0 = sum(sci*(steps-sci)/steps * ai^2)
-                E0a += c*average;
-                E0a2 += c*average*average;
-            }
+        allMyData.forEach(new BinVisitor() {
+            public void visit(Bin amd) {
+                long c = amd.unscreenedCount;
+                if (c == 0) return;
+                long sampleCount = amd.sampleCount;
+                double average = amd.getAvg();
+                double var = amd.getVar();
 
-            if (sampleCount<2) {
-                // we have never seen i bonds, or the configuration was always screened
-                // or we just have no statistics
-                localWeight.put(pv, Math.sqrt(lwi));
-                continue;
-            }
+                if (average != 0) {
+                    // E0 = sum(sci*(steps-sci)/steps * ai^2)
+                    E[0] += c*average;
+                    E[1] += c*average*average;
+                }
 
-            lwi += var;
-            localWeight.put(pv, Math.sqrt(lwi));
+                if (sampleCount<2) {
+                    // we have never seen i bonds, or the configuration was always screened
+                    // or we just have no statistics
+                    return;
+                }
 
-            // E1 = sum(sci*sci*stdev*stdev/sampci)
-            E1 += c*((double)c)/sampleCount * var;
-        }
+                // E1 = sum(sci*sci*stdev*stdev/sampci)
+                E[2] += c*((double)c)/sampleCount * var;
+            }
+        });
+        double E0a = E[0], E0a2 = E[1], E1 = E[2];
         if (E0a2 == 0) {
             return;
         }
@@ -401,41 +289,40 @@ public class MeterVirialBinMultiThreaded implements IAction {
         E1 /= totalCount;
         if (E1 == 0 && doPadVar) {
             // no value fluctuations, perhaps B4 or B5?
-            E1 = avgSqValue/totalSampleCount;
+            E1 = avgSqValue/totalSampleCount[0];
         }
-//        System.out.println("weights");
-        double k = Math.sqrt(1/(E0*tRatio));
-//        k=1e-8;
+        final double k = Math.sqrt(1/(E0*tRatio));
 
-        double newT1 = 0;
-        long totalUnscreened = 0;
-        double newE1 = 0;
-        double E1all = 0;
-        double allT1 = 0;
-        for (IntSet pv : allMyData.keySet()) {
-            MyData amd = allMyData.get(pv);
-            long c = amd.unscreenedCount;
-            if (c == 0) continue;
-            double w = localWeight.get(pv)*k;
-            if (w > 1 || amd.sampleCount < 2) {
-                w = 1;
-            }
-//            if (i>=targetCluster.pointCount()) System.out.println(String.format("%2d %12d  %6.4f  %6.4f  %6.4f", i, (count[i]-screenedCount[i]), weight[i], w, tRatio * (count[i]-screenedCount[i]) * w / totalCount));
-            amd.weight = w;
-            newT1 += c * w;
-            allT1 += c;
-            totalUnscreened += c;
-            double s = amd.getVar();
-            if (s > 0) {
-                newE1 += c*s/w;
-                E1all += c*s;
+        // newT1, totalUnscreened, newE1, E1all, allT1
+        final double[] sums = new double[5];
+        allMyData.forEach(new BinVisitor() {
+            public void visit(Bin amd) {
+                long c = amd.unscreenedCount;
+                if (c == 0) return;
+                double lwi = doPadVar ? (avgSqValue/amd.sampleCount) : 0;
+                if (amd.sampleCount >= 2) {
+                    lwi += amd.getVar();
+                }
+                double w = Math.sqrt(lwi)*k;
+                if (w > 1 || amd.sampleCount < 2) {
+                    w = 1;
+                }
+                amd.weight = w;
+                sums[0] += c * w;
+                sums[4] += c;
+                sums[1] += c;
+                double s = amd.getVar();
+                if (s > 0) {
+                    sums[2] += c*s/w;
+                    sums[3] += c*s;
+                }
             }
-        }
-        newT1 *= tRatio/totalCount;
-        allT1 *= tRatio/totalCount;
-        newE1 /= totalCount;
-        E1all /= totalCount;
-//        System.out.println(E0+" "+E1+" "+newE1+" "+newT1);
+        });
+        double newT1 = sums[0]*tRatio/totalCount;
+        double allT1 = sums[4]*tRatio/totalCount;
+        double totalUnscreened = sums[1];
+        double newE1 = sums[2]/totalCount;
+        double E1all = sums[3]/totalCount;
         if (!quiet) {
             System.out.print(String.format("var0 frac %8.5f (opt: %8.5f)  t0 frac %8.5f  k %8.2e  new t0 frac %5.3f   measure frac %7.5f\n", E0/(E0+E1), E0/(E0+newE1), t0/(t0+t1), k, 1/(1+newT1), newT1*(totalCount/tRatio/totalUnscreened)));
             // difficulty:   opt   actual   w=1    w=0
@@ -456,7 +343,7 @@ public class MeterVirialBinMultiThreaded implements IAction {
         box = newBox;
     }
     
-    public Map<IntSet,MyData> getAllMyData() {
+    public BinStore getAllMyData() {
         return allMyData;
     }
 
@@ -467,28 +354,4 @@ public class MeterVirialBinMultiThreaded implements IAction {
         }
         return tc;
     }
-
-    public static class MyData {
-        public long unscreenedCount, sampleCount;
-        public double weight;
-        public double sum, sum2;
-        
-        public double getAvg() {
-            return sum/sampleCount;
-        }
-        
-        public double getVar() {
-            if (sampleCount < 1) return Double.NaN;
-            double avg = getAvg();
-            double avg2 = avg*avg;
-            double var = sum2/sampleCount - avg2;
-            if (var < avg2*1e-7) var = 0;
-            return var;
-        }
-        
-        public void addData(double value) {
-            sum += value;
-            sum2 += value*value;
-            sampleCount++;
-        }
-    }}
+}
@@ -8,13 +8,21 @@ import etomica.atom.IAtomList;
 import etomica.box.Box;
 import etomica.molecule.IMoleculeList;
 import etomica.potential.IPotentialMolecular;
+import etomica.potential.Potential2SphericalBatch;
 import etomica.potential.PotentialGroup;
+import etomica.space.Boundary;
+import etomica.space.Vector;
+
+import java.util.Arrays;
 
 /**
  * PotentialGroup that calculates the energy between PI molecule pairs.
  * This class remembers the contribution from each set of beads and can return
  * those energies without additional computation once the full energy has been
  * calculated.
+ * <p>
+ * Bead-bead potentials that implement Potential2SphericalBatch are evaluated
+ * for all bead pairs of a molecule pair with a single call.
  * 
  * @author Andrew Schultz
  */
@@ -27,6 +35,9 @@ public class PotentialGroupPI extends PotentialGroup {
 
     public void setBox(Box box) {
         super.setBox(box);
+        if (dr == null) {
+            dr = box.getSpace().makeVector();
+        }
         int nMolecules = box.getMoleculeList().size();
         int nPairs = nMolecules*(nMolecules-1)/2;
         if (pairDone != null && pairDone.length == nPairs) return;
@@ -62,6 +73,29 @@ public class PotentialGroupPI extends PotentialGroup {
                 if(!link.enabled) continue;
                 link.iterator.setBasis(molecules);
                 link.iterator.reset();
+                if (link.potential instanceof Potential2SphericalBatch) {
+                    // gather all bead separations, then compute the energies
+                    // in one call
+                    Boundary boundary = box.getBoundary();
+                    int n = 0;
+                    for (IAtomList atoms = link.iterator.next(); atoms != null; atoms = link.iterator.next()) {
+                        if (n == r2Beads.length) {
+                            r2Beads = Arrays.copyOf(r2Beads, 2*n+1);
+                        }
+                        dr.Ev1Mv2(atoms.get(1).getPosition(), atoms.get(0).getPosition());
+                        boundary.nearestImage(dr);
+                        r2Beads[n] = dr.squared();
+                        n++;
+                    }
+                    if (uBeadPairs.length < n) {
+                        uBeadPairs = new double[r2Beads.length];
+                    }
+                    ((Potential2SphericalBatch)link.potential).u(r2Beads, uBeadPairs, n);
+                    for (int i=0; i<n; i++) {
+                        uBeads[i%beadFac][thisPairID] += uBeadPairs[i];
+                    }
+                    continue;
+                }
                 int i=0;
                 for (IAtomList atoms = link.iterator.next(); atoms != null; atoms = link.iterator.next()) {
                     uBeads[i%beadFac][thisPairID] += link.potential.energy(atoms);
@@ -115,4 +149,6 @@ public class PotentialGroupPI extends PotentialGroup {
     protected final double[][] uBeads;
     protected boolean[] pairDone;
     protected long lastPairID, lastBoxIndex;
+    protected Vector dr;
+    protected double[] r2Beads = new double[0], uBeadPairs = new double[0];
 }
@@ -4,9 +4,13 @@
 
 package etomica.virial.overlap;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.Arrays;
 
+import etomica.data.AccumulatorAverageFixed;
 import etomica.data.AccumulatorRatioAverageCovariance;
 import etomica.data.IData;
 import etomica.data.types.DataDoubleArray;
@@ -64,6 +68,7 @@ public class AccumulatorVirialOverlapSingleAverage extends AccumulatorRatioAvera
         overlapMostRecentBlock = new double[nBennetPoints];
         overlapCorrelationSum = new double[nBennetPoints];
         overlapBlockCovSum = new double[nBennetPoints];
+        overlapUnblockedSum = new double[nBennetPoints];
         if (alphaCenter > 0) {
             setBennetParam(alphaCenter, alphaSpan);
         }
@@ -170,7 +175,7 @@ public class AccumulatorVirialOverlapSingleAverage extends AccumulatorRatioAvera
      * Bennet parameter (value[1]/(value[1]+expX[iParam]).
      */
     public double getBennetAverage(int iParam) {
-        return (overlapSum[iParam]+blockOverlapSum[iParam])/((double)count*blockSize+(blockSize-blockCountDown));
+        return (overlapSum[iParam]+blockOverlapSum[iParam]+overlapUnblockedSum[iParam])/getSampleCount();
     }
 
     /**
@@ -186,6 +191,7 @@ public class AccumulatorVirialOverlapSingleAverage extends AccumulatorRatioAvera
             ((DataDoubleArray)firstBlock).getData()[1] = overlapFirstBlock[iParam];
             ((DataDoubleArray)mostRecentBlock).getData()[1] = overlapMostRecentBlock[iParam];
             ((DataDoubleArray)correlationSum).getData()[1] = overlapCorrelationSum[iParam];
+            ((DataDoubleArray)unblockedSum).getData()[1] = overlapUnblockedSum[iParam];
             double[] x = blockCovSum.getData();
             x[1] = overlapBlockCovSum[iParam];
             x[2] = overlapBlockCovSum[iParam];
@@ -207,9 +213,102 @@ public class AccumulatorVirialOverlapSingleAverage extends AccumulatorRatioAvera
             overlapSumSquare[i] = 0.0;
             overlapCorrelationSum[i] = 0.0;
             overlapBlockCovSum[i] = 0;
+            overlapUnblockedSum[i] = 0;
         }
         super.reset();
     }
+
+    /**
+     * Writes the sums (including the overlap sums for each Bennet parameter)
+     * to the given output.  The Bennet parameters themselves are not written;
+     * the accumulator reading the state must have the same number of them.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeInt(nBennetPoints);
+        out.writeLong(blockCounter);
+        writeArray(out, overlapSum);
+        writeArray(out, blockOverlapSum);
+        writeArray(out, overlapSumBlockSquare);
+        writeArray(out, overlapSumSquare);
+        writeArray(out, overlapFirstBlock);
+        writeArray(out, overlapMostRecentBlock);
+        writeArray(out, overlapCorrelationSum);
+        writeArray(out, overlapBlockCovSum);
+        writeArray(out, overlapUnblockedSum);
+    }
+
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+        int n = in.readInt();
+        if (n != nBennetPoints) {
+            throw new IOException("state has " + n + " Bennet parameters, not " + nBennetPoints);
+        }
+        blockCounter = in.readLong();
+        readArray(in, overlapSum);
+        readArray(in, blockOverlapSum);
+        readArray(in, overlapSumBlockSquare);
+        readArray(in, overlapSumSquare);
+        readArray(in, overlapFirstBlock);
+        readArray(in, overlapMostRecentBlock);
+        readArray(in, overlapCorrelationSum);
+        readArray(in, overlapBlockCovSum);
+        readArray(in, overlapUnblockedSum);
+    }
+
+    private static void writeArray(DataOutput out, double[] x) throws IOException {
+        for (double v : x) {
+            out.writeDouble(v);
+        }
+    }
+
+    private static void readArray(DataInput in, double[] x) throws IOException {
+        for (int i = 0; i < x.length; i++) {
+            x[i] = in.readDouble();
+        }
+    }
+
+    /**
+     * Adds the data collected by another accumulator to this one (see
+     * AccumulatorAverageFixed.merge), including the overlap sums for each
+     * Bennet parameter.  The other accumulator must have the same Bennet
+     * parameters and be for the same (reference or target) system.
+     */
+    public void merge(AccumulatorAverageFixed other) {
+        checkMerge(other);
+        AccumulatorVirialOverlapSingleAverage otherOverlap = (AccumulatorVirialOverlapSingleAverage)other;
+        for (int j=0; j<nBennetPoints; j++) {
+            if (otherOverlap.count > 0) {
+                if (count > 0) {
+                    // correlation between our last block and their first
+                    overlapCorrelationSum[j] += overlapMostRecentBlock[j]*otherOverlap.overlapFirstBlock[j];
+                }
+                else {
+                    overlapFirstBlock[j] = otherOverlap.overlapFirstBlock[j];
+                }
+                overlapMostRecentBlock[j] = otherOverlap.overlapMostRecentBlock[j];
+            }
+            overlapSum[j] += otherOverlap.overlapSum[j];
+            overlapSumBlockSquare[j] += otherOverlap.overlapSumBlockSquare[j];
+            overlapSumSquare[j] += otherOverlap.overlapSumSquare[j];
+            overlapCorrelationSum[j] += otherOverlap.overlapCorrelationSum[j];
+            overlapBlockCovSum[j] += otherOverlap.overlapBlockCovSum[j];
+            // their incomplete block doesn't belong to any block
+            overlapUnblockedSum[j] += otherOverlap.overlapUnblockedSum[j] + otherOverlap.blockOverlapSum[j];
+        }
+        super.merge(other);
+    }
+
+    protected void checkMerge(AccumulatorAverageFixed other) {
+        super.checkMerge(other);
+        AccumulatorVirialOverlapSingleAverage otherOverlap = (AccumulatorVirialOverlapSingleAverage)other;
+        if (otherOverlap.isReference != isReference) {
+            throw new IllegalArgumentException("cannot merge reference and target accumulators");
+        }
+        if (!Arrays.equals(otherOverlap.expX, expX)) {
+            throw new IllegalArgumentException("Bennet parameters differ");
+        }
+    }
     
     public void setFile(String fName){
         this.fnm = fName;
@@ -233,6 +332,8 @@ public class AccumulatorVirialOverlapSingleAverage extends AccumulatorRatioAvera
     private double[] overlapSum;
     protected double[] overlapFirstBlock, overlapMostRecentBlock, overlapCorrelationSum;
     protected double[] overlapBlockCovSum;
+    // overlap sums from the incomplete blocks of merged accumulators
+    protected double[] overlapUnblockedSum;
     private int nBennetPoints;
     private double[] expX;
     private final boolean isReference;
@@ -0,0 +1,322 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.simulations;
+
+import etomica.atom.IAtom;
+import etomica.atom.IAtomList;
+import etomica.atom.IAtomOriented;
+import etomica.integrator.IntegratorEvent;
+import etomica.integrator.IntegratorListener;
+import etomica.integrator.mcmove.MCMove;
+import etomica.integrator.mcmove.MCMoveManager;
+import etomica.space.IOrientation;
+import etomica.space.Vector;
+import etomica.space3d.IOrientationFull3D;
+import etomica.util.random.IRandom;
+import etomica.util.random.RandomMersenneTwister;
+import etomica.virial.BoxCluster;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Writes and reads checkpoints for a SimulationVirialOverlap2 production run.
+ * A checkpoint is a compact binary file holding the configuration of each
+ * box, the state of the random number generator, the MC move step sizes and
+ * acceptance trackers, the overlap integrator's step-fraction bookkeeping and
+ * the sums held by the overlap accumulators.
+ * <p>
+ * As an IntegratorListener added to the simulation's overlap integrator, this
+ * class rewrites the checkpoint every <i>interval</i> overlap steps.  Each
+ * checkpoint is written to a temporary file that is then moved over the old
+ * one, so a job killed in the middle of writing leaves the previous
+ * checkpoint intact.
+ * <p>
+ * To restart, construct the simulation exactly as before (same species,
+ * clusters and moves), call read() instead of initRefPref and equilibrate,
+ * set ai's maxSteps to the total number of production steps, and then call
+ * run().  The run continues from the checkpointed step and produces results
+ * bit-for-bit identical to an uninterrupted run, as long as the step
+ * fractions are not adjusted based on wall clock time (setDoAdjustOnTime).
+ * <p>
+ * The simulation's random number generator must be a RandomMersenneTwister.
+ * The MC moves grab the generator when the simulation is initialized, so any
+ * call to setRandom must come before init().
+ */
+public class CheckpointVirialOverlap implements IntegratorListener {
+
+    protected static final int MAGIC = 0x564f4350;
+    protected static final int VERSION = 1;
+
+    protected final SimulationVirialOverlap2 sim;
+    protected final String fileName;
+    protected long interval;
+    protected boolean restored;
+
+    /**
+     * @param sim      the simulation to checkpoint
+     * @param fileName the checkpoint file
+     * @param interval the number of overlap integrator steps between checkpoints
+     */
+    public CheckpointVirialOverlap(SimulationVirialOverlap2 sim, String fileName, long interval) {
+        this.sim = sim;
+        this.fileName = fileName;
+        setInterval(interval);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    /**
+     * Sets the number of overlap integrator steps between checkpoints.
+     */
+    public void setInterval(long newInterval) {
+        if (newInterval < 1) throw new IllegalArgumentException("interval must be positive");
+        interval = newInterval;
+    }
+
+    public void integratorInitialized(IntegratorEvent e) {}
+
+    public void integratorStepStarted(IntegratorEvent e) {}
+
+    public void integratorStepFinished(IntegratorEvent e) {
+        if (sim.integratorOS.getStepCount() % interval != 0) return;
+        write();
+    }
+
+    /**
+     * Returns true if the simulation state was restored from a checkpoint.
+     */
+    public boolean isRestored() {
+        return restored;
+    }
+
+    /**
+     * Writes the current state of the simulation to the checkpoint file.
+     * This should only be called between steps of the overlap integrator.
+     */
+    public void write() {
+        File file = new File(fileName);
+        File tmpFile = new File(fileName + ".tmp");
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+            writeState(out);
+            out.close();
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("couldn't write checkpoint file " + fileName, ex);
+        }
+    }
+
+    /**
+     * Restores the simulation from the checkpoint file, if it exists.  The
+     * simulation must have been initialized, but not yet run.
+     *
+     * @return true if the checkpoint was found and read
+     */
+    public boolean read() {
+        File file = new File(fileName);
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            readState(in);
+            in.close();
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("couldn't read checkpoint file " + fileName, ex);
+        }
+        restored = true;
+        return true;
+    }
+
+    /**
+     * Runs the overlap integrator until it has taken ai.getMaxSteps() steps.
+     * Unlike ActivityIntegrate, the integrator is not reset if the simulation
+     * was restored from a checkpoint, so the run picks up where the
+     * checkpointed run left off.
+     */
+    public void run() {
+        if (!restored) {
+            sim.integratorOS.reset();
+            sim.integratorOS.resetStepCount();
+        }
+        long maxSteps = sim.ai.getMaxSteps();
+        while (sim.integratorOS.getStepCount() < maxSteps) {
+            sim.integratorOS.doStep();
+        }
+    }
+
+    protected void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        out.writeDouble(sim.refPref);
+        for (int i = 0; i < 2; i++) {
+            out.writeInt(sim.dpVirialOverlap[i].getNumAlpha());
+            out.writeDouble(sim.dpVirialOverlap[i].getAlphaCenter());
+            out.writeDouble(sim.dpVirialOverlap[i].getAlphaSpan());
+        }
+
+        for (int i = 0; i < 2; i++) {
+            writeBox(out, sim.box[i]);
+        }
+
+        getRandom().writeState(out);
+
+        for (int i = 0; i < 2; i++) {
+            MCMoveManager moveManager = sim.integrators[i].getMoveManager();
+            out.writeBoolean(moveManager.isEquilibrating());
+            List<MCMove> moves = moveManager.getMCMoves();
+            out.writeInt(moves.size());
+            for (MCMove move : moves) {
+                move.getTracker().writeState(out);
+            }
+        }
+
+        sim.integratorOS.writeState(out);
+
+        for (int i = 0; i < 2; i++) {
+            sim.accumulators[i].writeState(out);
+        }
+        out.writeBoolean(sim.blockAccumulator != null);
+        if (sim.blockAccumulator != null) {
+            sim.blockAccumulator.writeState(out);
+        }
+    }
+
+    protected void readState(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException(fileName + " is not a virial overlap checkpoint");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported checkpoint version " + version);
+        }
+
+        // setting alpha causes the accumulators to receive new DataInfo (and
+        // reset), so this must happen before the accumulator sums are read
+        double refPref = in.readDouble();
+        for (int i = 0; i < 2; i++) {
+            int numAlpha = in.readInt();
+            double alphaCenter = in.readDouble();
+            double alphaSpan = in.readDouble();
+            sim.dpVirialOverlap[i].setNumAlpha(numAlpha);
+            sim.dpVirialOverlap[i].setBennetParam(alphaCenter, alphaSpan);
+        }
+        sim.refPref = refPref;
+
+        for (int i = 0; i < 2; i++) {
+            readBox(in, sim.box[i]);
+        }
+
+        // initialize the integrators now that we have our configurations.
+        // this also wipes out the overlap integrator's bookkeeping, which we
+        // read in below.
+        sim.integratorOS.reset();
+
+        getRandom().readState(in);
+
+        for (int i = 0; i < 2; i++) {
+            MCMoveManager moveManager = sim.integrators[i].getMoveManager();
+            moveManager.setEquilibrating(in.readBoolean());
+            List<MCMove> moves = moveManager.getMCMoves();
+            if (in.readInt() != moves.size()) {
+                throw new IOException("checkpoint has a different number of MC moves for box " + i);
+            }
+            for (MCMove move : moves) {
+                move.getTracker().readState(in);
+            }
+        }
+
+        sim.integratorOS.readState(in);
+
+        for (int i = 0; i < 2; i++) {
+            sim.accumulators[i].readState(in);
+        }
+        if (in.readBoolean()) {
+            if (sim.blockAccumulator == null) {
+                sim.initBlockAccumulator();
+            }
+            sim.blockAccumulator.readState(in);
+        }
+    }
+
+    protected RandomMersenneTwister getRandom() {
+        IRandom random = sim.getRandom();
+        if (!(random instanceof RandomMersenneTwister)) {
+            throw new RuntimeException("checkpoints require a RandomMersenneTwister");
+        }
+        return (RandomMersenneTwister) random;
+    }
+
+    protected void writeBox(DataOutputStream out, BoxCluster box) throws IOException {
+        IAtomList leafList = box.getLeafList();
+        out.writeInt(leafList.size());
+        for (int i = 0; i < leafList.size(); i++) {
+            IAtom a = leafList.get(i);
+            writeVector(out, a.getPosition());
+            if (a instanceof IAtomOriented) {
+                IOrientation orientation = ((IAtomOriented) a).getOrientation();
+                writeVector(out, orientation.getDirection());
+                if (orientation instanceof IOrientationFull3D) {
+                    writeVector(out, ((IOrientationFull3D) orientation).getSecondaryDirection());
+                }
+            }
+        }
+    }
+
+    protected void readBox(DataInputStream in, BoxCluster box) throws IOException {
+        IAtomList leafList = box.getLeafList();
+        if (in.readInt() != leafList.size()) {
+            throw new IOException("checkpoint has a different number of atoms");
+        }
+        Vector v = box.getSpace().makeVector();
+        Vector v2 = box.getSpace().makeVector();
+        for (int i = 0; i < leafList.size(); i++) {
+            IAtom a = leafList.get(i);
+            readVector(in, a.getPosition());
+            if (a instanceof IAtomOriented) {
+                IOrientation orientation = ((IAtomOriented) a).getOrientation();
+                readVector(in, v);
+                if (orientation instanceof IOrientationFull3D) {
+                    readVector(in, v2);
+                    ((IOrientationFull3D) orientation).setDirections(v, v2);
+                    // setDirections normalizes, which could perturb the last
+                    // bit.  copy the saved values back in.
+                    ((IOrientationFull3D) orientation).getSecondaryDirection().E(v2);
+                }
+                else {
+                    orientation.setDirection(v);
+                }
+                orientation.getDirection().E(v);
+            }
+        }
+        // rebuild the box's coordinate pairs for the new configuration
+        box.trialNotify();
+        box.acceptNotify();
+    }
+
+    protected static void writeVector(DataOutputStream out, Vector v) throws IOException {
+        for (int j = 0; j < v.getD(); j++) {
+            out.writeDouble(v.getX(j));
+        }
+    }
+
+    protected static void readVector(DataInputStream in, Vector v) throws IOException {
+        for (int j = 0; j < v.getD(); j++) {
+            v.setX(j, in.readDouble());
+        }
+    }
+}
@@ -200,7 +200,7 @@ public class VirialHSBinMultiThreaded {
             if (mySeeds != null) {
                 System.arraycopy(allRandomSeeds, allRandomSeeds.length/nThreads*it, mySeeds, 0, mySeeds.length);
             }
-            sw[it] = new SimulationWorker(it, nPtsTabulated, nPoints, fRef, fRefPos, ref, vhs, chainFrac, ringFrac, steps, space, params.runName, tRatio, allMyData, w, totalCount, doReweight, mySeeds, doWheatley);
+            sw[it] = new SimulationWorker(it, nPtsTabulated, nPoints, fRef, fRefPos, ref, vhs, chainFrac, ringFrac, steps, space, params.runName, tRatio, allMyData, w, totalCount, doReweight, mySeeds, doWheatley, params.batchSize);
         }
         for (int it=0; it<nThreads; it++) {
             sw[it].start();
@@ -347,12 +347,13 @@ public class VirialHSBinMultiThreaded {
         protected final int[] mySeeds;
         public MeterVirialBDBinMultiThreaded meter;
         protected final boolean doWheatley;
+        protected final int batchSize;
         
         public SimulationWorker(int iThread, int nPtsTabulated, int nPoints, MayerFunction fRef,
                                 MayerFunction fRefPos, int ref, double vhs, double chainFrac, double ringFrac,
                                 long steps, Space space, String runName, double tRatio,
                                 Map<IntSet,MeterVirialBDBinMultiThreaded.MyData> allMyData, double w, long[] totalCount,
-                                boolean doReweight, int[] mySeeds, boolean doWheatley) {
+                                boolean doReweight, int[] mySeeds, boolean doWheatley, int batchSize) {
             this.iThread = iThread;
             this.nPtsTabulated = nPtsTabulated;
             this.nPoints = nPoints;
@@ -372,6 +373,7 @@ public class VirialHSBinMultiThreaded {
             this.doReweight = doReweight;
             this.mySeeds = mySeeds;
             this.doWheatley = doWheatley;
+            this.batchSize = batchSize;
         }
         
         public void run() {
@@ -550,8 +552,14 @@ public class VirialHSBinMultiThreaded {
             }
             MeterVirialBDBinMultiThreaded.setTRatio(tRatio);
 
-            sim.ai.setMaxSteps(steps);
-            sim.getController().actionPerformed();
+            if (batchSize > 0 && ref != VirialHSBinParam.TREE_CHAIN_RING) {
+                HSBatchSampler sampler = new HSBatchSampler(sim.getRandom(), nPoints, 1, ref == VirialHSBinParam.TREE ? 0 : chainFrac, batchSize);
+                sampler.run(steps, sim.box, meter);
+            }
+            else {
+                sim.ai.setMaxSteps(steps);
+                sim.getController().actionPerformed();
+            }
             long t2 = System.currentTimeMillis();
             System.out.println("thread "+iThread+" time: "+(t2-t1)*0.001);
         }
@@ -614,6 +622,9 @@ public class VirialHSBinMultiThreaded {
 //        public boolean oldTRatio = false;
         public boolean shareData = true;
         public boolean doWheatley = true;
+        // if positive, chain/tree configurations are generated in batches of
+        // this size by HSBatchSampler rather than by MC moves
+        public int batchSize = 0;
     }
     
 }
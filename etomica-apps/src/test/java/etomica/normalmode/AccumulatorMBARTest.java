@@ -0,0 +1,72 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AccumulatorMBARTest {
+
+    /**
+     * Two 1D harmonic oscillators with spring constants 1 and 4 (beta=1).
+     * beta A = -ln sqrt(2 pi / k), so the difference is ln(2).
+     */
+    @Test
+    public void testHarmonic() {
+        double[] k = new double[]{1, 4};
+        AccumulatorMBAR acc = new AccumulatorMBAR(2);
+        RandomMersenneTwister random = new RandomMersenneTwister(3);
+        double[] u = new double[2];
+        for (int state = 0; state < 2; state++) {
+            for (int n = 0; n < 20000; n++) {
+                double x = random.nextGaussian() / Math.sqrt(k[state]);
+                u[0] = 0.5 * k[0] * x * x;
+                u[1] = 0.5 * k[1] * x * x;
+                acc.addSample(state, u);
+            }
+        }
+        Assertions.assertEquals(40000, acc.getSampleCount());
+        Assertions.assertEquals(20000, acc.getSampleCount(1));
+        Assertions.assertEquals(0, acc.getFreeEnergies()[0]);
+        Assertions.assertEquals(Math.log(2), acc.getFreeEnergyDifference(0, 1), 0.02);
+        Assertions.assertEquals(-Math.log(2), acc.getFreeEnergyDifference(1, 0), 0.02);
+
+        // each row of the overlap matrix sums to 1
+        double[][] o = acc.getOverlapMatrix();
+        for (int i = 0; i < 2; i++) {
+            Assertions.assertEquals(1, o[i][0] + o[i][1], 1e-8);
+            Assertions.assertTrue(o[i][1 - i] > 0.1);
+        }
+    }
+
+    /**
+     * A second state whose energy is the first shifted by a constant has a
+     * free energy higher by exactly that constant, whatever was sampled.
+     */
+    @Test
+    public void testShift() {
+        AccumulatorMBAR acc = new AccumulatorMBAR(2);
+        RandomMersenneTwister random = new RandomMersenneTwister(4);
+        double[] u = new double[2];
+        for (int n = 0; n < 1000; n++) {
+            double x = random.nextGaussian();
+            u[0] = 0.5 * x * x;
+            u[1] = u[0] + 1.5;
+            acc.addSample(n % 2, u);
+        }
+        Assertions.assertEquals(1.5, acc.getFreeEnergyDifference(0, 1), 1e-8);
+
+        acc.reset();
+        Assertions.assertEquals(0, acc.getSampleCount());
+        for (int n = 0; n < 1000; n++) {
+            double x = random.nextGaussian();
+            u[0] = 0.5 * x * x;
+            u[1] = u[0] - 0.5;
+            acc.addSample(0, u);
+        }
+        Assertions.assertEquals(-0.5, acc.getFreeEnergyDifference(0, 1), 1e-8);
+    }
+}
@@ -0,0 +1,83 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.lattice.crystal.PrimitiveCubic;
+import etomica.simulation.Simulation;
+import etomica.space.BoundaryRectangularPeriodic;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class CoordinateDefinitionTest {
+
+    @Test
+    public void testCalcTFFT() {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        // mixed radix: power of 2 along x and y, 3 along z
+        int[] nCells = new int[]{4, 4, 3};
+        Box box = sim.makeBox(new BoundaryRectangularPeriodic(space, new double[]{4, 4, 3}));
+        box.setNMolecules(species, 48);
+        PrimitiveCubic primitive = new PrimitiveCubic(space, 1);
+        CoordinateDefinitionLeaf coordinateDefinition = new CoordinateDefinitionLeaf(box, primitive, space);
+        coordinateDefinition.initializeCoordinates(nCells);
+
+        // every wave vector on the grid, plus one that isn't
+        Vector[] waveVectors = new Vector[4 * 4 * 3 + 1];
+        int n = 0;
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                for (int k = 0; k < 3; k++) {
+                    waveVectors[n++] = Vector.of(2 * Math.PI * i / 4, 2 * Math.PI * j / 4, 2 * Math.PI * k / 3);
+                }
+            }
+        }
+        waveVectors[n] = Vector.of(0.3, 0.1, 0.2);
+
+        RandomMersenneTwister random = new RandomMersenneTwister(5);
+        for (int iter = 0; iter < 3; iter++) {
+            IAtomList atoms = box.getLeafList();
+            for (int i = 0; i < atoms.size(); i++) {
+                Vector p = atoms.get(i).getPosition();
+                for (int j = 0; j < 3; j++) {
+                    p.setX(j, p.getX(j) + 0.1 * (random.nextDouble() - 0.5));
+                }
+            }
+            if (iter == 2) {
+                // different wave vectors in the same array must not reuse
+                // the cached grid indices
+                Vector t = waveVectors[1];
+                waveVectors[1] = waveVectors[n];
+                waveVectors[n] = t;
+            }
+            checkCalcT(coordinateDefinition, waveVectors);
+        }
+    }
+
+    private static void checkCalcT(CoordinateDefinition coordinateDefinition, Vector[] waveVectors) {
+        int dim = coordinateDefinition.getCoordinateDim();
+        double[][] realT = new double[waveVectors.length][dim];
+        double[][] imaginaryT = new double[waveVectors.length][dim];
+        coordinateDefinition.calcT(waveVectors, realT, imaginaryT);
+        double[] rT = new double[dim];
+        double[] iT = new double[dim];
+        for (int i = 0; i < waveVectors.length; i++) {
+            coordinateDefinition.calcT(waveVectors[i], rT, iT);
+            for (int j = 0; j < dim; j++) {
+                Assertions.assertEquals(rT[j], realT[i][j], 1e-12);
+                Assertions.assertEquals(iT[j], imaginaryT[i][j], 1e-12);
+            }
+        }
+    }
+}
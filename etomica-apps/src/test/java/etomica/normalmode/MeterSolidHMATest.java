@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.atom.AtomType;
+import etomica.box.Box;
+import etomica.data.IData;
+import etomica.integrator.IntegratorVelocityVerlet;
+import etomica.lattice.crystal.Basis;
+import etomica.lattice.crystal.BasisCubicFcc;
+import etomica.lattice.crystal.Primitive;
+import etomica.lattice.crystal.PrimitiveCubic;
+import etomica.potential.P2LennardJones;
+import etomica.potential.P2SoftSphericalTruncated;
+import etomica.potential.PotentialMasterMonatomic;
+import etomica.simulation.Simulation;
+import etomica.space.BoundaryRectangularPeriodic;
+import etomica.space.Space;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that MeterSolidHMA, using the sums from the integrator's force pass,
+ * gives the same results as MeterSolidDA, which does its own pass over the
+ * pairs.
+ */
+public class MeterSolidHMATest {
+
+    @Test
+    public void testLJ() {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        sim.setRandom(new RandomMersenneTwister(3));
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        species.setIsDynamic(true);
+        sim.addSpecies(species);
+
+        int n = 2;
+        double density = 1.0;
+        double temperature = 0.5;
+        double L = Math.pow(4 / density, 1.0 / 3.0);
+        Box box = sim.makeBox(new BoundaryRectangularPeriodic(space, n * L));
+        box.setNMolecules(species, 4 * n * n * n);
+        int[] nCells = new int[]{n, n, n};
+        Primitive primitive = new PrimitiveCubic(space, n * L);
+        Basis basis = new BasisBigCell(space, new BasisCubicFcc(), nCells);
+        CoordinateDefinitionLeaf coordinateDefinition = new CoordinateDefinitionLeaf(box, primitive, basis, space);
+        coordinateDefinition.initializeCoordinates(new int[]{1, 1, 1});
+
+        PotentialMasterMonatomic potentialMaster = new PotentialMasterMonatomic(sim);
+        P2SoftSphericalTruncated p2 = new P2SoftSphericalTruncated(space, new P2LennardJones(space), 0.495 * n * L);
+        AtomType leafType = species.getLeafType();
+        potentialMaster.addPotential(p2, new AtomType[]{leafType, leafType});
+
+        IntegratorVelocityVerlet integrator = new IntegratorVelocityVerlet(potentialMaster, sim.getRandom(), 0.005, temperature, box);
+        PotentialCalculationForceSumSolidSuper pcForceSum = new PotentialCalculationForceSumSolidSuper(space, coordinateDefinition);
+        integrator.setForceSum(pcForceSum);
+
+        // the meters find the lattice energy and pressure from the current
+        // (lattice) configuration
+        double pRes = 1.3;
+        MeterSolidDA meterDA = new MeterSolidDA(space, potentialMaster, coordinateDefinition, false);
+        meterDA.setTemperature(temperature);
+        meterDA.setPRes(pRes);
+        MeterSolidHMA meterHMA = new MeterSolidHMA(space, potentialMaster, coordinateDefinition, pcForceSum);
+        meterHMA.setTemperature(temperature);
+        meterHMA.setPRes(pRes);
+        Assertions.assertEquals(meterDA.latticeEnergy, meterHMA.getLatticeEnergy());
+        Assertions.assertEquals(meterDA.latticePressure, meterHMA.getLatticePressure());
+
+        integrator.reset();
+        for (int step = 0; step < 50; step++) {
+            integrator.doStep();
+            if (step % 10 != 9) continue;
+            IData hma = meterHMA.getData();
+            IData da = meterDA.getData();
+            for (int i = 0; i < da.getLength(); i++) {
+                Assertions.assertEquals(da.getValue(i), hma.getValue(i), 1e-10 * Math.max(1, Math.abs(da.getValue(i))), "step " + step + " quantity " + i);
+            }
+            // the atoms have moved off the lattice
+            Assertions.assertTrue(pcForceSum.getDADBSum() != 0);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.box.Box;
+import etomica.data.types.DataTensor;
+import etomica.lattice.LatticeSumCrystal;
+import etomica.lattice.crystal.BasisCubicFcc;
+import etomica.lattice.crystal.PrimitiveCubic;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space1d.Space1D;
+import etomica.space1d.Vector1D;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks that normal modes computed with several threads are the same as
+ * those computed serially.
+ */
+public class NormalModesParallelTest {
+
+    protected static void assertFilesEqual(String expected, String actual) throws IOException {
+        for (String ext : new String[]{".k", ".val", ".vec"}) {
+            Assertions.assertArrayEquals(Files.readAllBytes(new File(expected + ext).toPath()),
+                    Files.readAllBytes(new File(actual + ext).toPath()), ext);
+        }
+    }
+
+    protected static void deleteFiles(File dir) {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    /**
+     * Computes the modes of a small LJ FCC crystal with 1 and 4 threads.  The
+     * frequencies, eigenvectors and files must be identical, and each mode
+     * must be an eigenvector of the dynamical matrix from a serial lattice
+     * sum.
+     */
+    @Test
+    public void testPotential() throws IOException {
+        Space space = Space3D.getInstance();
+        int[] nCells = new int[]{3, 3, 3};
+        PrimitiveCubic primitive = new PrimitiveCubic(space, Math.pow(4 / 1.1, 1.0 / 3.0));
+        BasisCubicFcc basis = new BasisCubicFcc();
+        P2LennardJones p2 = new P2LennardJones(space);
+        File dir = Files.createTempDirectory("nm").toFile();
+
+        NormalModesPotential[] nm = new NormalModesPotential[2];
+        int[] numThreads = new int[]{1, 4};
+        for (int i = 0; i < 2; i++) {
+            nm[i] = new NormalModesPotential(nCells, primitive, basis, p2, space);
+            nm[i].setMaxLatticeShell(2);
+            nm[i].setNumThreads(numThreads[i]);
+            nm[i].setFileName(new File(dir, "lj" + numThreads[i]).getPath());
+            nm[i].calculateModes();
+        }
+        double[][] omega2 = nm[0].getOmegaSquared();
+        double[][][] eVecs = nm[0].getEigenvectors();
+        Vector[] waveVectors = nm[0].getWaveVectorFactory().getWaveVectors();
+        Assertions.assertTrue(waveVectors.length > 4);
+        for (int k = 0; k < waveVectors.length; k++) {
+            Assertions.assertArrayEquals(omega2[k], nm[1].getOmegaSquared()[k]);
+            for (int j = 0; j < eVecs[k].length; j++) {
+                Assertions.assertArrayEquals(eVecs[k][j], nm[1].getEigenvectors()[k][j]);
+            }
+        }
+        assertFilesEqual(nm[0].getFileName(), nm[1].getFileName());
+
+        // the files are read back as the same modes
+        NormalModesFromFile nmFile = new NormalModesFromFile(nm[1].getFileName(), 3);
+        nmFile.setTemperature(1);
+        for (int k = 0; k < waveVectors.length; k++) {
+            for (int j = 0; j < omega2[k].length; j++) {
+                Assertions.assertEquals(omega2[k][j], nmFile.getOmegaSquared()[k][j], 1e-12 * omega2[k][j]);
+                Assertions.assertArrayEquals(eVecs[k][j], nmFile.getEigenvectors()[k][j], 1e-10);
+            }
+        }
+
+        // D e = omega2 e, with D from one (shared) lattice sum per wave vector
+        Vector k0 = space.makeVector();
+        double[][] sum0 = dynamicalMatrix(nm[0], k0, null);
+        double tol = 0;
+        for (double[] w2 : omega2) {
+            for (double w : w2) {
+                if (w < Double.POSITIVE_INFINITY) tol = Math.max(tol, 1e-10 * w);
+            }
+        }
+        for (int k = 0; k < waveVectors.length; k++) {
+            double[][] d = dynamicalMatrix(nm[0], waveVectors[k], sum0);
+            for (int j = 0; j < d.length; j++) {
+                double w2 = omega2[k][j] == Double.POSITIVE_INFINITY ? 0 : omega2[k][j];
+                for (int m = 0; m < d.length; m++) {
+                    double de = 0;
+                    for (int n = 0; n < d.length; n++) {
+                        de += d[m][n] * eVecs[k][j][n];
+                    }
+                    Assertions.assertEquals(w2 * eVecs[k][j][m], de, tol);
+                }
+            }
+        }
+        deleteFiles(dir);
+    }
+
+    /**
+     * Returns the dynamical matrix for wave vector k, for an FCC lattice (4
+     * basis atoms), without imposing symmetry.  If sum0 is null, the k=0 lattice
+     * sum is returned without the self term.
+     */
+    protected static double[][] dynamicalMatrix(NormalModesPotential nm, Vector k, double[][] sum0) {
+        LatticeSumCrystal.DataGroupLSC sum = nm.calculateSum(k);
+        double[][] array = new double[12][12];
+        for (int j = 0; j < 4; j++) {
+            for (int jp = 0; jp < 4; jp++) {
+                for (int a = 0; a < 3; a++) {
+                    for (int b = 0; b < 3; b++) {
+                        array[3 * j + a][3 * jp + b] = ((DataTensor) sum.getDataReal(j, jp)).x.component(a, b);
+                        if (sum0 != null && j == jp) {
+                            for (int jpp = 0; jpp < 4; jpp++) {
+                                array[3 * j + a][3 * j + b] -= sum0[3 * j + a][3 * jpp + b];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Gives the 1D hard-rod frequencies (from NormalModes1DHR's S) as the
+     * dynamical matrix.  NormalModesParallel must return the same modes as
+     * NormalModes1DHR, for the same wave vectors, with any number of threads.
+     */
+    @Test
+    public void test1DHR() {
+        Space space = Space1D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        Box box = new Box(space);
+        sim.addBox(box);
+        int n = 20;
+        box.setNMolecules(species, n);
+        box.getBoundary().setBoxSize(new Vector1D(1.5 * n));
+        double temperature = 2;
+
+        NormalModes1DHR nm1DHR = new NormalModes1DHR(box.getBoundary(), n);
+        nm1DHR.setTemperature(temperature);
+        double[][] expectedOmega2 = nm1DHR.getOmegaSquared();
+        double[][][] expectedVecs = nm1DHR.getEigenvectors();
+
+        WaveVectorFactory1D kFactory = new WaveVectorFactory1D();
+        kFactory.makeWaveVectors(box);
+        double L = box.getBoundary().getBoxSize().getX(0);
+        NormalModesParallel.DynamicalMatrix matrix = k -> {
+            // wave vector k has m = k
+            Assertions.assertEquals(2 * Math.PI * k / L, kFactory.getWaveVectors()[k].getX(0), 1e-12);
+            return new double[][]{{k == 0 ? 0 : temperature / NormalModes1DHR.S1DHR(k, L, n)}};
+        };
+        for (int numThreads : new int[]{1, 4}) {
+            NormalModesParallel nm = new NormalModesParallel(kFactory, matrix);
+            nm.setNumThreads(numThreads);
+            double[][] omega2 = nm.getOmegaSquared();
+            double[][][] eVecs = nm.getEigenvectors();
+            Assertions.assertEquals(expectedOmega2.length, omega2.length);
+            for (int k = 0; k < omega2.length; k++) {
+                Assertions.assertArrayEquals(expectedOmega2[k], omega2[k]);
+                Assertions.assertArrayEquals(expectedVecs[k][0], eVecs[k][0]);
+            }
+        }
+    }
+
+    /**
+     * Assembles the Hessian of a small soft-sphere crystal with the rows in
+     * parallel and compares it to a serial assembly, with the self term
+     * done in a separate pass (as it used to be), and to the .h file.
+     */
+    @Test
+    public void testHessian() throws Exception {
+        File dir = Files.createTempDirectory("hessian").toFile();
+        String filename = new File(dir, "ss").getPath();
+        HessianDB sim = new HessianDB(Space3D.getInstance(), 32, 1.256, 1, 12, filename);
+        // move the atoms off the lattice so that the blocks are not all alike
+        for (int i = 0; i < 32; i++) {
+            Vector p = sim.box.getLeafList().get(i).getPosition();
+            for (int d = 0; d < 3; d++) {
+                p.setX(d, p.getX(d) + 0.05 * Math.sin(7 * i + d));
+            }
+        }
+        // the parallel stream runs on this pool, so it uses 4 threads
+        // even with fewer processors
+        ForkJoinPool pool = new ForkJoinPool(4);
+        double[][] parallel = pool.submit(() -> sim.makeHessian(sim.pTruncated, true)).get();
+        pool.shutdown();
+        double[][] serial = sim.makeHessian(sim.pTruncated, false);
+
+        double[][] expected = new double[96][96];
+        Vector dr = sim.getSpace().makeVector();
+        for (int a1 = 0; a1 < 32; a1++) {
+            for (int a2 = 0; a2 < 32; a2++) {
+                if (a1 == a2) continue;
+                dr.Ev1Mv2(sim.box.getLeafList().get(a2).getPosition(), sim.box.getLeafList().get(a1).getPosition());
+                sim.box.getBoundary().nearestImage(dr);
+                double[][] der2 = new double[3][3];
+                sim.derivative2nd(dr, sim.pTruncated).assignTo(der2);
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        expected[a1 * 3 + i][a2 * 3 + j] = der2[i][j];
+                    }
+                }
+            }
+        }
+        for (int a1 = 0; a1 < 32; a1++) {
+            for (int a2 = 0; a2 < 32; a2++) {
+                if (a1 == a2) continue;
+                for (int i = 0; i < 3; i++) {
+                    for (int j = 0; j < 3; j++) {
+                        expected[a1 * 3 + i][a1 * 3 + j] -= expected[a1 * 3 + i][a2 * 3 + j];
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < 96; i++) {
+            for (int j = i + 1; j < 96; j++) {
+                double ave = 0.5 * (expected[i][j] + expected[j][i]);
+                expected[i][j] = ave;
+                expected[j][i] = ave;
+            }
+        }
+        for (int i = 0; i < 96; i++) {
+            Assertions.assertArrayEquals(expected[i], serial[i]);
+            Assertions.assertArrayEquals(expected[i], parallel[i]);
+        }
+
+        // the lattice Hessian written by the constructor
+        HessianDB latticeSim = new HessianDB(Space3D.getInstance(), 32, 1.256, 1, 12, filename);
+        double[][] lattice = latticeSim.makeHessian(latticeSim.pTruncated, false);
+        String[] lines = new String(Files.readAllBytes(new File(filename + ".h").toPath())).split("\n");
+        Assertions.assertEquals(96, lines.length);
+        for (int i = 0; i < 96; i++) {
+            String[] fields = lines[i].trim().split(" ");
+            for (int j = 0; j < 96; j++) {
+                Assertions.assertEquals(lattice[i][j], Double.parseDouble(fields[j]));
+            }
+        }
+        deleteFiles(dir);
+    }
+}
@@ -0,0 +1,217 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.normalmode;
+
+import etomica.box.Box;
+import etomica.lattice.crystal.PrimitiveCubic;
+import etomica.normalmode.CoordinateDefinition.BasisCell;
+import etomica.simulation.Simulation;
+import etomica.space.BoundaryRectangularPeriodic;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class WaveVectorTrigTableTest {
+
+    /**
+     * Relative error bound for a value stored as a float (half an ulp of 1).
+     */
+    private static final double FLOAT_ERROR = Math.ulp(1.0f) / 2;
+
+    private static CoordinateDefinitionLeaf makeCoordinateDefinition() {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        double a = 1.1;
+        Box box = sim.makeBox(new BoundaryRectangularPeriodic(space, new double[]{4 * a, 4 * a, 3 * a}));
+        box.setNMolecules(species, 48);
+        CoordinateDefinitionLeaf coordinateDefinition = new CoordinateDefinitionLeaf(box, new PrimitiveCubic(space, a), space);
+        coordinateDefinition.initializeCoordinates(new int[]{4, 4, 3});
+        return coordinateDefinition;
+    }
+
+    private static Vector[] makeWaveVectors(CoordinateDefinition coordinateDefinition) {
+        WaveVectorFactorySimple kFactory = new WaveVectorFactorySimple(coordinateDefinition.getPrimitive(), Space3D.getInstance());
+        kFactory.makeWaveVectors(coordinateDefinition.getBox());
+        Vector[] gridVectors = kFactory.getWaveVectors();
+        Vector[] waveVectors = new Vector[gridVectors.length + 1];
+        System.arraycopy(gridVectors, 0, waveVectors, 0, gridVectors.length);
+        // and one that is not on the grid, with large k.R
+        waveVectors[gridVectors.length] = Vector.of(5.3, -2.9, 7.1);
+        return waveVectors;
+    }
+
+    /**
+     * The double precision table must have exactly the values from cos and
+     * sin, and the single precision table must be within half an ulp of
+     * them.
+     */
+    @Test
+    public void testTable() {
+        CoordinateDefinitionLeaf coordinateDefinition = makeCoordinateDefinition();
+        Vector[] waveVectors = makeWaveVectors(coordinateDefinition);
+        BasisCell[] cells = coordinateDefinition.getBasisCells();
+
+        WaveVectorTrigTable table = coordinateDefinition.getTrigTable(waveVectors);
+        Assertions.assertFalse(table.isSinglePrecision());
+        Assertions.assertEquals(waveVectors.length, table.getNumWaveVectors());
+        Assertions.assertEquals(cells.length, table.getNumCells());
+        WaveVectorTrigTable floatTable = new WaveVectorTrigTable(waveVectors, cells, true);
+        Assertions.assertTrue(floatTable.isSinglePrecision());
+        double maxError = 0;
+        for (int iCell = 0; iCell < cells.length; iCell++) {
+            for (int iVector = 0; iVector < waveVectors.length; iVector++) {
+                double kR = waveVectors[iVector].dot(cells[iCell].cellPosition);
+                double cos = Math.cos(kR), sin = Math.sin(kR);
+                Assertions.assertEquals(cos, table.cos(iVector, iCell));
+                Assertions.assertEquals(sin, table.sin(iVector, iCell));
+                Assertions.assertEquals(cos, floatTable.cos(iVector, iCell), FLOAT_ERROR * Math.abs(cos));
+                Assertions.assertEquals(sin, floatTable.sin(iVector, iCell), FLOAT_ERROR * Math.abs(sin));
+                maxError = Math.max(maxError, Math.abs(floatTable.cos(iVector, iCell) - cos));
+            }
+        }
+        // the float table really is rounded
+        Assertions.assertTrue(maxError > 0);
+    }
+
+    /**
+     * Tables are shared for equal wave vectors, and are replaced when the
+     * precision changes or the cells are rebuilt.
+     */
+    @Test
+    public void testCache() {
+        CoordinateDefinitionLeaf coordinateDefinition = makeCoordinateDefinition();
+        Vector[] waveVectors = makeWaveVectors(coordinateDefinition);
+        WaveVectorTrigTable table = coordinateDefinition.getTrigTable(waveVectors);
+
+        Vector[] copy = new Vector[waveVectors.length];
+        for (int i = 0; i < copy.length; i++) {
+            copy[i] = Vector.of(waveVectors[i].toArray());
+        }
+        Assertions.assertSame(table, coordinateDefinition.getTrigTable(copy));
+        copy[3].setX(0, copy[3].getX(0) + 1e-9);
+        Assertions.assertFalse(table.matches(copy, coordinateDefinition.getBasisCells()));
+        Assertions.assertNotSame(table, coordinateDefinition.getTrigTable(copy));
+
+        coordinateDefinition.setTrigTableSinglePrecision(true);
+        WaveVectorTrigTable floatTable = coordinateDefinition.getTrigTable(waveVectors);
+        Assertions.assertTrue(floatTable.isSinglePrecision());
+        Assertions.assertSame(floatTable, coordinateDefinition.getTrigTable(waveVectors));
+
+        coordinateDefinition.setTrigTableSinglePrecision(false);
+        coordinateDefinition.initializeCoordinates(new int[]{4, 4, 3});
+        WaveVectorTrigTable newTable = coordinateDefinition.getTrigTable(waveVectors);
+        Assertions.assertNotSame(table, newTable);
+        Assertions.assertTrue(newTable.matches(waveVectors, coordinateDefinition.getBasisCells()));
+    }
+
+    /**
+     * The displacements from MCMoveHarmonic must match a sum with cos and sin
+     * computed directly; exactly (to round-off in the positions) with the
+     * double precision table, and within the float error bound (times the
+     * sum of the magnitudes of the terms) with the single precision table.
+     */
+    @Test
+    public void testMCMoveHarmonic() {
+        for (boolean singlePrecision : new boolean[]{false, true}) {
+            CoordinateDefinitionLeaf coordinateDefinition = makeCoordinateDefinition();
+            coordinateDefinition.setTrigTableSinglePrecision(singlePrecision);
+            Vector[] waveVectors = makeWaveVectors(coordinateDefinition);
+            int nk = waveVectors.length;
+            double[][] omega2 = new double[nk][3];
+            double[][][] eigenVectors = new double[nk][3][3];
+            double[] coefficients = new double[nk];
+            for (int k = 0; k < nk; k++) {
+                coefficients[k] = k % 3 == 0 ? 0.5 : 1;
+                for (int i = 0; i < 3; i++) {
+                    omega2[k][i] = k == 0 ? Double.POSITIVE_INFINITY : 10 + k + i;
+                    // rotated (orthonormal) eigenvectors
+                    double c = Math.cos(0.3 * k), s = Math.sin(0.3 * k);
+                    eigenVectors[k][i][i] = 1;
+                    if (i < 2) {
+                        eigenVectors[k][i][0] = i == 0 ? c : -s;
+                        eigenVectors[k][i][1] = i == 0 ? s : c;
+                    }
+                }
+            }
+
+            MCMoveHarmonic move = new MCMoveHarmonic(new RandomMersenneTwister(11));
+            move.setCoordinateDefinition(coordinateDefinition);
+            move.setTemperature(1);
+            move.setOmegaSquared(omega2);
+            move.setEigenVectors(eigenVectors);
+            move.setWaveVectors(waveVectors);
+            move.setWaveVectorCoefficients(coefficients);
+            move.setBox(coordinateDefinition.getBox());
+            move.doTrial();
+
+            BasisCell[] cells = coordinateDefinition.getBasisCells();
+            double normalization = 1 / Math.sqrt(cells.length);
+            for (BasisCell cell : cells) {
+                double[] expected = new double[3];
+                double[] bound = new double[3];
+                for (int k = 0; k < nk; k++) {
+                    double kR = waveVectors[k].dot(cell.cellPosition);
+                    double cos = Math.cos(kR), sin = Math.sin(kR);
+                    double sqrtWVC = Math.sqrt(2 * coefficients[k]);
+                    for (int i = 0; i < 3; i++) {
+                        for (int j = 0; j < 3; j++) {
+                            double re = sqrtWVC * eigenVectors[k][i][j] * move.rRand[k][i];
+                            double im = sqrtWVC * eigenVectors[k][i][j] * move.iRand[k][i];
+                            expected[j] += re * cos - im * sin;
+                            bound[j] += Math.abs(re * cos) + Math.abs(im * sin);
+                        }
+                    }
+                }
+                double[] u = coordinateDefinition.calcU(cell.molecules);
+                for (int j = 0; j < 3; j++) {
+                    double tol = 1e-12 + (singlePrecision ? FLOAT_ERROR * bound[j] * normalization : 0);
+                    Assertions.assertEquals(expected[j] * normalization, u[j], tol);
+                }
+            }
+        }
+    }
+
+    /**
+     * calcT for a wave vector off the FFT grid uses the table, and must match
+     * a direct sum.
+     */
+    @Test
+    public void testCalcT() {
+        CoordinateDefinitionLeaf coordinateDefinition = makeCoordinateDefinition();
+        Vector[] waveVectors = makeWaveVectors(coordinateDefinition);
+        RandomMersenneTwister random = new RandomMersenneTwister(3);
+        BasisCell[] cells = coordinateDefinition.getBasisCells();
+        for (BasisCell cell : cells) {
+            Vector p = cell.molecules.get(0).getChildList().get(0).getPosition();
+            for (int j = 0; j < 3; j++) {
+                p.setX(j, p.getX(j) + 0.1 * (random.nextDouble() - 0.5));
+            }
+        }
+        int nk = waveVectors.length;
+        double[][] realT = new double[nk][3], imaginaryT = new double[nk][3];
+        coordinateDefinition.calcT(waveVectors, realT, imaginaryT);
+        Vector k = waveVectors[nk - 1];
+        double[] rT = new double[3], iT = new double[3];
+        for (BasisCell cell : cells) {
+            double kR = k.dot(cell.cellPosition);
+            double[] u = coordinateDefinition.calcU(cell.molecules);
+            for (int j = 0; j < 3; j++) {
+                rT[j] += Math.cos(kR) * u[j];
+                iT[j] -= Math.sin(kR) * u[j];
+            }
+        }
+        double sqrtCells = Math.sqrt(cells.length);
+        for (int j = 0; j < 3; j++) {
+            Assertions.assertEquals(rT[j] / sqrtCells, realT[nk - 1][j], 1e-12);
+            Assertions.assertEquals(iT[j] / sqrtCells, imaginaryT[nk - 1][j], 1e-12);
+        }
+    }
+}
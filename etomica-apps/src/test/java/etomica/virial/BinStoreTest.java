@@ -0,0 +1,209 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+
+class BinStoreTest {
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        BinStore store = new BinStore(4);
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int seed = i;
+            threads[i] = new Thread(() -> feed(store, seed, 20000, 50));
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        // the same data, added serially
+        Map<List<Integer>, double[]> expected = new HashMap<>();
+        for (int i = 0; i < threads.length; i++) {
+            RandomMersenneTwister random = new RandomMersenneTwister(i);
+            for (int j = 0; j < 20000; j++) {
+                int[] key = nextKey(random, 50);
+                double x = random.nextInt(10);
+                double[] stats = expected.computeIfAbsent(Arrays.asList(key[0], key[1]), k -> new double[4]);
+                stats[0]++;
+                stats[1]++;
+                stats[2] += x;
+                stats[3] += x * x;
+            }
+        }
+
+        Assertions.assertEquals(expected.size(), store.size());
+        store.forEach(bin -> {
+            double[] stats = expected.get(Arrays.asList(bin.key[0], bin.key[1]));
+            Assertions.assertNotNull(stats);
+            Assertions.assertEquals((long) stats[0], bin.unscreenedCount);
+            Assertions.assertEquals((long) stats[1], bin.sampleCount);
+            Assertions.assertEquals(stats[2], bin.sum);
+            Assertions.assertEquals(stats[3], bin.sum2);
+        });
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        BinStore a = new BinStore(4);
+        BinStore b = new BinStore(4);
+        BinStore all = new BinStore(4);
+        feed(a, 1, 5000, 30);
+        feed(b, 2, 5000, 30);
+        feed(all, 1, 5000, 30);
+        feed(all, 2, 5000, 30);
+        b.setWeight(new int[]{100, 0}, 0.25);
+        all.setWeight(new int[]{100, 0}, 0.25);
+
+        a.merge(b);
+        Assertions.assertEquals(0.25, a.getWeight(new int[]{100, 0}, 1));
+
+        File dir = Files.createTempDirectory("bins").toFile();
+        File merged = new File(dir, "merged.dat");
+        File direct = new File(dir, "direct.dat");
+        a.writeData(merged.getPath(), 10000);
+        all.writeData(direct.getPath(), 10000);
+        Assertions.assertEquals(Files.readAllLines(direct.toPath()), Files.readAllLines(merged.toPath()));
+        merged.delete();
+        direct.delete();
+        dir.delete();
+    }
+
+    @Test
+    public void testSpill() throws IOException {
+        File dir = Files.createTempDirectory("bins").toFile();
+        BinStore spilled = new BinStore(4);
+        spilled.setSpill(new File(dir, "test").getPath(), 16);
+        BinStore reference = new BinStore(4);
+        for (int i = 0; i < 20; i++) {
+            double w = 0.5 + i / 100.0;
+            spilled.setWeight(new int[]{i, 0}, w);
+            reference.setWeight(new int[]{i, 0}, w);
+        }
+        feed(spilled, 3, 5000, 100);
+        feed(reference, 3, 5000, 100);
+        Assertions.assertTrue(spilled.spillCount > 0);
+        Assertions.assertTrue(spilled.size() < reference.size());
+
+        // weights survive spilling, whether or not the bin came back
+        for (int i = 0; i < 20; i++) {
+            Assertions.assertEquals(0.5 + i / 100.0, spilled.getWeight(new int[]{i, 0}, 1));
+        }
+
+        File spilledData = new File(dir, "spilled.dat");
+        File referenceData = new File(dir, "reference.dat");
+        spilled.writeData(spilledData.getPath(), 5000);
+        reference.writeData(referenceData.getPath(), 5000);
+        Assertions.assertEquals(Files.readAllLines(referenceData.toPath()), Files.readAllLines(spilledData.toPath()));
+
+        spilled.writeWeights(spilledData.getPath());
+        reference.writeWeights(referenceData.getPath());
+        Assertions.assertEquals(new HashSet<>(Files.readAllLines(referenceData.toPath())),
+                new HashSet<>(Files.readAllLines(spilledData.toPath())));
+
+        spilled.deleteSpillFiles();
+        spilledData.delete();
+        referenceData.delete();
+        dir.delete();
+    }
+
+    /**
+     * Forces many spills (including weights set after bins were spilled) with
+     * a small fan-in, so that runs are merged at several levels and writeData
+     * needs more than one merge pass.  The output must match a store that
+     * never spilled, and the spilled store must never keep more than
+     * mergeFanIn-1 runs of a level.
+     */
+    @Test
+    public void testSpillMerge() throws IOException {
+        File dir = Files.createTempDirectory("bins").toFile();
+        BinStore spilled = new BinStore(4);
+        spilled.setSpill(new File(dir, "test").getPath(), 40);
+        spilled.setMergeFanIn(3);
+        BinStore reference = new BinStore(1);
+        RandomMersenneTwister random = new RandomMersenneTwister(4);
+        for (int i = 0; i < 400; i++) {
+            int[] key = new int[]{random.nextInt(200), random.nextInt(3)};
+            double w = random.nextInt(100) / 100.0;
+            spilled.setWeight(key, w);
+            reference.setWeight(key, w);
+            feed(spilled, i, 50, 300);
+            feed(reference, i, 50, 300);
+        }
+        Assertions.assertTrue(spilled.spillCount > 100);
+        int nRuns = 0, maxLevel = 0;
+        for (BinStore.Shard shard : spilled.shards) {
+            int[] levelCount = new int[20];
+            for (BinStore.RunFile run : shard.runs) {
+                levelCount[run.level]++;
+                Assertions.assertTrue(levelCount[run.level] < 3);
+                maxLevel = Math.max(maxLevel, run.level);
+            }
+            nRuns += shard.runs.size();
+        }
+        Assertions.assertTrue(maxLevel >= 2);
+        Assertions.assertTrue(nRuns > 3);
+        Assertions.assertEquals(nRuns, dir.list().length);
+
+        reference.forEach(bin -> Assertions.assertEquals(bin.weight, spilled.getWeight(bin.key, -1)));
+        Assertions.assertEquals(-1, spilled.getWeight(new int[]{1000, 0}, -1));
+
+        File spilledData = new File(dir, "spilled.dat");
+        File referenceData = new File(dir, "reference.dat");
+        spilled.writeData(spilledData.getPath(), 20000);
+        reference.writeData(referenceData.getPath(), 20000);
+        Assertions.assertEquals(Files.readAllLines(referenceData.toPath()), Files.readAllLines(spilledData.toPath()));
+        spilled.writeWeights(spilledData.getPath());
+        reference.writeWeights(referenceData.getPath());
+        Assertions.assertEquals(Files.readAllLines(referenceData.toPath()), Files.readAllLines(spilledData.toPath()));
+        // the temporary merge files are gone
+        Assertions.assertEquals(nRuns + 2, dir.list().length);
+
+        // merging a spilled store into another gives the same result
+        BinStore merged = new BinStore(4);
+        merged.setSpill(new File(dir, "merged").getPath(), 40);
+        merged.setMergeFanIn(3);
+        merged.merge(spilled);
+        merged.writeData(spilledData.getPath(), 20000);
+        reference.writeData(referenceData.getPath(), 20000);
+        Assertions.assertEquals(Files.readAllLines(referenceData.toPath()), Files.readAllLines(spilledData.toPath()));
+        merged.writeWeights(spilledData.getPath());
+        reference.writeWeights(referenceData.getPath());
+        Assertions.assertEquals(Files.readAllLines(referenceData.toPath()), Files.readAllLines(spilledData.toPath()));
+
+        merged.deleteSpillFiles();
+        spilledData.delete();
+        referenceData.delete();
+        Assertions.assertEquals(0, dir.list().length);
+        dir.delete();
+    }
+
+    private static int[] nextKey(RandomMersenneTwister random, int nKeys) {
+        return new int[]{random.nextInt(nKeys), random.nextInt(3)};
+    }
+
+    /**
+     * Adds n samples with integer values (so that sums don't depend on the
+     * order they are added in).
+     */
+    private static void feed(BinStore store, int seed, int n, int nKeys) {
+        RandomMersenneTwister random = new RandomMersenneTwister(seed);
+        for (int j = 0; j < n; j++) {
+            int[] key = nextKey(random, nKeys);
+            double x = random.nextInt(10);
+            store.countUnscreened(key, 1);
+            store.addSample(key, x);
+        }
+    }
+}
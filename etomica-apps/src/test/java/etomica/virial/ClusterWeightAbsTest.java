@@ -0,0 +1,142 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.chem.elements.ElementSimple;
+import etomica.data.IData;
+import etomica.potential.P2LennardJones;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the values remembered by ClusterWeightAbs, ClusterSum and
+ * ClusterSumShell (and reused by MeterVirial) match a fresh evaluation as
+ * trials are made, rejected and accepted.
+ */
+public class ClusterWeightAbsTest {
+
+    protected static final double temperature = 1.5;
+
+    // the core has every bond, so that it computes all f values
+    protected static final ClusterBonds[] coreBonds = new ClusterBonds[]{
+            new ClusterBonds(4, new int[][][]{{{0, 1}, {1, 2}, {2, 3}, {3, 0}}}),
+            new ClusterBonds(4, new int[][][]{{{0, 1}, {0, 2}, {0, 3}, {1, 2}, {1, 3}, {2, 3}}})};
+    protected static final double[] coreWeights = new double[]{-3, 1};
+    protected static final ClusterBonds[] shellBonds = new ClusterBonds[]{
+            new ClusterBonds(4, new int[][][]{{{0, 1}, {0, 2}, {1, 2}, {1, 3}, {2, 3}}}),
+            new ClusterBonds(4, new int[][][]{{{0, 1}, {0, 2}, {0, 3}, {1, 2}, {1, 3}, {2, 3}}})};
+    protected static final double[] shellWeights = new double[]{-6, 1};
+
+    protected static ClusterSum freshCluster(ClusterBonds[] bonds, double[] weights, MayerFunction f) {
+        ClusterSum cluster = new ClusterSum(bonds, weights, new MayerFunction[]{f});
+        cluster.setTemperature(temperature);
+        cluster.setCaching(false);
+        return cluster;
+    }
+
+    /**
+     * Makes random single-atom trials that are rejected or accepted, with the
+     * sampling cluster evaluated for each trial (as the MC move would), and
+     * the meter only sometimes.  This includes a shell evaluated after its
+     * core returned a remembered value for a rejected trial (so that the
+     * core's f values belong to the trial configuration).
+     */
+    @Test
+    public void testTrialRejectAccept() {
+        Space space = Space3D.getInstance();
+        MayerGeneralSpherical f = new MayerGeneralSpherical(new P2LennardJones(space));
+        ClusterSum freshCore = freshCluster(coreBonds, coreWeights, f);
+        ClusterSum freshShell = freshCluster(shellBonds, shellWeights, f);
+
+        for (boolean sampleShell : new boolean[]{false, true}) {
+            for (boolean shellCaching : new boolean[]{true, false}) {
+                ClusterSum core = new ClusterSum(coreBonds, coreWeights, new MayerFunction[]{f});
+                core.setTemperature(temperature);
+                ClusterSumShell shell = new ClusterSumShell(core, shellBonds, shellWeights, new MayerFunction[]{f});
+                shell.setTemperature(temperature);
+                shell.setCaching(shellCaching);
+                ClusterWeightAbs sampleCluster = new ClusterWeightAbs(sampleShell ? shell : core);
+                ClusterSum freshSample = sampleShell ? freshShell : freshCore;
+
+                Simulation sim = new Simulation(space);
+                SpeciesSpheresMono species = new SpeciesSpheresMono(space, new ElementSimple("A"));
+                sim.addSpecies(species);
+                BoxCluster box = new BoxCluster(sampleCluster, space);
+                sim.addBox(box);
+                box.setNMolecules(species, 4);
+                IAtomList atoms = box.getLeafList();
+                for (int i = 0; i < 4; i++) {
+                    atoms.get(i).getPosition().setX(0, 1.1 * i);
+                }
+                box.trialNotify();
+                box.acceptNotify();
+                Assertions.assertEquals(Math.abs(freshSample.value(box)), sampleCluster.value(box));
+
+                // the meter measures the sampled cluster first, so that a
+                // shell comes after a core whose value was reused
+                MeterVirial meter = new MeterVirial(sampleShell ? new ClusterAbstract[]{shell, core} : new ClusterAbstract[]{core, shell});
+                meter.setBox(box);
+                ClusterSum[] freshMeter = sampleShell ? new ClusterSum[]{freshShell, freshCore} : new ClusterSum[]{freshCore, freshShell};
+
+                RandomMersenneTwister random = new RandomMersenneTwister(sampleShell ? 1 : 2);
+                Vector old = space.makeVector();
+                int nTrials = 400, nRejected = 0, nMeasured = 0;
+                for (int iTrial = 0; iTrial < nTrials; iTrial++) {
+                    Vector p = atoms.get(random.nextInt(4)).getPosition();
+                    old.E(p);
+                    for (int d = 0; d < 3; d++) {
+                        p.setX(d, p.getX(d) + 0.6 * (random.nextDouble() - 0.5));
+                    }
+                    box.trialNotify();
+                    Assertions.assertEquals(Math.abs(freshSample.value(box)), sampleCluster.value(box));
+
+                    boolean reject = random.nextInt(2) == 0;
+                    if (reject) {
+                        p.E(old);
+                        box.rejectNotify();
+                        nRejected++;
+                    }
+                    else {
+                        box.acceptNotify();
+                    }
+                    if (random.nextInt(2) == 0) continue;
+                    nMeasured++;
+                    double pi = Math.abs(freshSample.value(box));
+                    IData data = meter.getData();
+                    for (int i = 0; i < 2; i++) {
+                        Assertions.assertEquals(freshMeter[i].value(box) / pi, data.getValue(i),
+                                "trial " + iTrial + (reject ? " (rejected)" : "") + " cluster " + i);
+                    }
+                    Assertions.assertEquals(freshCore.value(box), core.value(box));
+                    Assertions.assertEquals(freshShell.value(box), shell.value(box));
+                }
+                Assertions.assertTrue(nRejected > nTrials / 4 && nMeasured > nTrials / 4);
+
+                long evaluations = sampleCluster.getEvaluationCount();
+                if (sampleShell && !shellCaching) {
+                    // nothing is remembered for a ClusterSum that doesn't cache;
+                    // the meter asks for the weight and the signed value
+                    Assertions.assertEquals(0, sampleCluster.getReuseCount());
+                    Assertions.assertEquals(nTrials + 1 + 2 * nMeasured, evaluations);
+                }
+                else {
+                    // one evaluation for each trial and the initial
+                    // configuration, plus at most one for each measurement
+                    // (after a rejected trial, the configuration before might
+                    // not be remembered)
+                    Assertions.assertTrue(evaluations >= nTrials + 1 && evaluations <= nTrials + 1 + nMeasured);
+                    Assertions.assertTrue(sampleCluster.getReuseCount() >= nMeasured);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.chem.elements.ElementSimple;
+import etomica.math.SpecialFunctions;
+import etomica.molecule.IMoleculeList;
+import etomica.potential.IPotential;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.IRandom;
+import etomica.virial.IntSet.PropertyBin;
+import etomica.virial.simulations.SimulationVirial;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Checks that batched, screened sampling gives a meter the same data as
+ * handing it every configuration.
+ */
+class HSBatchSamplerTest {
+
+    protected static final int nPoints = 5;
+    protected static final double chainFrac = 0.4;
+    protected static final long steps = 20000;
+
+    @Test
+    public void testBatchedMatchesUnbatched() {
+        Map<IntSet, MeterVirialBDBinMultiThreaded.MyData> batchedData = new HashMap<>();
+        long[] batchedCount = new long[1];
+        Setup batched = new Setup(batchedData, batchedCount);
+        new HSBatchSampler(batched.sim.getRandom(), nPoints, 1, chainFrac, 64).run(steps, batched.sim.box, batched.meter);
+
+        // the same configurations (same seeds, same random draws), each
+        // handed to the meter
+        Map<IntSet, MeterVirialBDBinMultiThreaded.MyData> directData = new HashMap<>();
+        long[] directCount = new long[1];
+        Setup direct = new Setup(directData, directCount);
+        IRandom random = direct.sim.getRandom();
+        HSBatchSampler sampler = new HSBatchSampler(random, nPoints, 1, chainFrac, 1);
+        IAtomList atoms = direct.sim.box.getLeafList();
+        long nScreened = 0;
+        for (long i = 0; i < steps; i++) {
+            if (random.nextDouble() < chainFrac) {
+                sampler.generateChain(0);
+            }
+            else {
+                sampler.generateTree(0);
+            }
+            sampler.computeBondMasks(1);
+            for (int j = 0; j < nPoints; j++) {
+                Vector p = atoms.get(j).getPosition();
+                for (int k = 0; k < 3; k++) {
+                    p.setX(k, sampler.x[3 * j + k]);
+                }
+            }
+            direct.sim.box.trialNotify();
+            direct.sim.box.acceptNotify();
+            direct.meter.actionPerformed();
+            if (sampler.screened[0]) {
+                nScreened++;
+                Assertions.assertEquals(0, direct.targetCluster.value(direct.sim.box), "screened configuration " + i + " has a value");
+            }
+        }
+        Assertions.assertTrue(nScreened > 0);
+
+        Assertions.assertEquals(steps, batchedCount[0]);
+        Assertions.assertEquals(directCount[0], batchedCount[0]);
+        // configurations the sampler screens may still reach a bin through
+        // the meter (with a value of 0), but every nonzero sample must match
+        for (Map.Entry<IntSet, MeterVirialBDBinMultiThreaded.MyData> e : batchedData.entrySet()) {
+            MeterVirialBDBinMultiThreaded.MyData d = directData.get(e.getKey());
+            Assertions.assertTrue(d != null, "bin " + e.getKey() + " missing");
+            Assertions.assertEquals(0, d.sum.compareTo(e.getValue().sum), "bin " + e.getKey());
+            Assertions.assertEquals(d.dsum2, e.getValue().dsum2, "bin " + e.getKey());
+        }
+        for (Map.Entry<IntSet, MeterVirialBDBinMultiThreaded.MyData> e : directData.entrySet()) {
+            if (batchedData.containsKey(e.getKey())) continue;
+            Assertions.assertEquals(0, e.getValue().sum.signum(), "bin " + e.getKey() + " missing from batched data");
+        }
+    }
+
+    /**
+     * Builds a simulation and meter as VirialHSBinMultiThreaded does for
+     * the chain/tree reference, with fixed seeds and no reweighting.
+     */
+    protected static class Setup {
+        public final SimulationVirial sim;
+        public final ClusterWheatleyHS targetCluster;
+        public final MeterVirialBDBinMultiThreaded meter;
+
+        public Setup(Map<IntSet, MeterVirialBDBinMultiThreaded.MyData> allMyData, long[] totalCount) {
+            Space space = Space3D.getInstance();
+            MayerHardSphere fRef = new MayerHardSphere(1);
+            MayerFunction fRefPos = new MayerFunction() {
+                public void setBox(Box box) {}
+
+                public IPotential getPotential() {
+                    return null;
+                }
+
+                public double f(IMoleculeList pair, double r2, double beta) {
+                    return r2 < 1 ? 1 : 0;
+                }
+            };
+            targetCluster = new ClusterWheatleyHS(nPoints, fRef);
+            targetCluster.setTemperature(1);
+            ClusterChainHS cc = new ClusterChainHS(nPoints, fRefPos);
+            ClusterSinglyConnected ct = new ClusterSinglyConnected(nPoints, fRefPos);
+            ClusterWeightUmbrella refCluster = new ClusterWeightUmbrella(new ClusterAbstract[]{cc, ct});
+            long numTreeDiagrams = 1;
+            for (int i = 0; i < nPoints - 2; i++) {
+                numTreeDiagrams *= nPoints;
+            }
+            refCluster.setWeightCoefficients(new double[]{chainFrac / (SpecialFunctions.factorial(nPoints) / 2), (1 - chainFrac) / numTreeDiagrams});
+            refCluster.setTemperature(1);
+
+            sim = new SimulationVirial(space, new SpeciesSpheresMono(space, new ElementSimple("A")), 1.0,
+                    ClusterWeightAbs.makeWeightCluster(refCluster), refCluster, new ClusterAbstract[]{targetCluster},
+                    false, new int[]{1, 2, 3, 4});
+            sim.setMeter(null);
+            PropertyBin pod = new PropertyBin() {
+                final IntSet pv = new IntSet(new int[1]);
+
+                public IntSet value() {
+                    pv.v[0] = targetCluster.getEdgeCount();
+                    return pv;
+                }
+            };
+            MeterVirialBDBinMultiThreaded.setQuiet(true);
+            meter = new MeterVirialBDBinMultiThreaded(targetCluster, sim.getRandom(), pod, totalCount, allMyData, 0, false);
+            meter.setBox(sim.box);
+            meter.setWeight(1);
+        }
+    }
+}
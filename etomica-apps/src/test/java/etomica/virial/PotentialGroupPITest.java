@@ -0,0 +1,154 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial;
+
+import etomica.atom.AtomPair;
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.atom.iterator.ApiIntergroupCoupled;
+import etomica.box.Box;
+import etomica.chem.elements.ElementSimple;
+import etomica.config.ConformationLinear;
+import etomica.molecule.IMoleculeList;
+import etomica.molecule.MoleculePair;
+import etomica.potential.IPotentialAtomic;
+import etomica.potential.P2HePCKLJS;
+import etomica.potential.P2HeSimplified;
+import etomica.potential.Potential2SoftSpherical;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheres;
+import etomica.units.BohrRadius;
+import etomica.units.Hartree;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that PotentialGroupPI gives the same energies from the batched bead
+ * pair potentials as from one energy(IAtomList) call per bead pair.
+ */
+public class PotentialGroupPITest {
+
+    protected static final int nBeads = 8, beadFac = 2;
+
+    /**
+     * Wraps a potential so that PotentialGroupPI can't use its batched
+     * method.
+     */
+    protected static IPotentialAtomic perPair(final Potential2SoftSpherical p2) {
+        return new IPotentialAtomic() {
+            public double energy(IAtomList atoms) {
+                return p2.energy(atoms);
+            }
+
+            public double getRange() {
+                return p2.getRange();
+            }
+
+            public void setBox(Box box) {
+                p2.setBox(box);
+            }
+
+            public int nBody() {
+                return 2;
+            }
+        };
+    }
+
+    @Test
+    public void testBatch() {
+        Space space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheres species = new SpeciesSpheres(space, nBeads, new AtomType(new ElementSimple("He")), new ConformationLinear(space, 0));
+        sim.addSpecies(species);
+        BoxCluster box = new BoxCluster(new ClusterWeightAbs(new ClusterWheatleyHS(3, new MayerHardSphere(1))), space);
+        sim.addBox(box);
+        box.setNMolecules(species, 3);
+        IMoleculeList molecules = box.getMoleculeList();
+        RandomMersenneTwister random = new RandomMersenneTwister(7);
+
+        for (Potential2SoftSpherical p2 : new Potential2SoftSpherical[]{new P2HePCKLJS(space), new P2HePCKLJS(space, 1), new P2HeSimplified(space)}) {
+            PotentialGroupPI batched = new PotentialGroupPI(beadFac);
+            batched.addPotential(p2, new ApiIntergroupCoupled());
+            PotentialGroupPI.PotentialGroupPISkip[] batchedSkip = new PotentialGroupPI.PotentialGroupPISkip[beadFac];
+            PotentialGroupPI unbatched = new PotentialGroupPI(beadFac);
+            unbatched.addPotential(perPair(p2), new ApiIntergroupCoupled());
+            PotentialGroupPI.PotentialGroupPISkip[] unbatchedSkip = new PotentialGroupPI.PotentialGroupPISkip[beadFac];
+            for (int i = 0; i < beadFac; i++) {
+                batchedSkip[i] = batched.new PotentialGroupPISkip(i);
+                unbatchedSkip[i] = unbatched.new PotentialGroupPISkip(i);
+            }
+            batched.setBox(box);
+            unbatched.setBox(box);
+            p2.setBox(box);
+
+            for (int iConfig = 0; iConfig < 20; iConfig++) {
+                // molecules 3 Angstroms apart along x, with beads spread over 1
+                // Angstrom; the last configurations put some beads inside
+                // the hard cores
+                double spread = iConfig < 15 ? 1 : 3;
+                for (int m = 0; m < 3; m++) {
+                    IAtomList beads = molecules.get(m).getChildList();
+                    for (int k = 0; k < nBeads; k++) {
+                        Vector p = beads.get(k).getPosition();
+                        for (int d = 0; d < 3; d++) {
+                            p.setX(d, (d == 0 ? 3 * m : 0) + spread * (random.nextDouble() - 0.5));
+                        }
+                    }
+                }
+                box.trialNotify();
+                box.acceptNotify();
+
+                for (int m0 = 0; m0 < 3; m0++) {
+                    for (int m1 = m0 + 1; m1 < 3; m1++) {
+                        MoleculePair pair = new MoleculePair(molecules.get(m0), molecules.get(m1));
+                        // the energy of each bead pair, summed directly
+                        double[] expected = new double[beadFac];
+                        IAtomList beads0 = molecules.get(m0).getChildList();
+                        IAtomList beads1 = molecules.get(m1).getChildList();
+                        for (int k = 0; k < nBeads; k++) {
+                            expected[k % beadFac] += p2.energy(new AtomPair(beads0.get(k), beads1.get(k)));
+                        }
+                        Assertions.assertEquals(expected[0] + expected[1], batched.energy(pair));
+                        Assertions.assertEquals(unbatched.energy(pair), batched.energy(pair));
+                        for (int i = 0; i < beadFac; i++) {
+                            Assertions.assertEquals(expected[i], batchedSkip[i].energy(pair));
+                            Assertions.assertEquals(unbatchedSkip[i].energy(pair), batchedSkip[i].energy(pair));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks the batched P2HePCKLJS against the reference values from
+     * Przybytek et al. (also printed by P2HePCKLJS.main).
+     */
+    @Test
+    public void testHePCKLJS() {
+        P2HePCKLJS p2 = new P2HePCKLJS(Space3D.getInstance());
+        double[] rTest = new double[]{1.00, 1.50, 2.00, 2.50, 3.00, 3.50, 4.00, 4.50, 5.00, 5.30, 5.60, 6.00, 6.50, 7.00, 8.00, 9.00, 12.00};
+        double[] VTotRet = new double[]{9.07505678537836e-01, 3.30439541259472e-01, 1.14486105544985e-01, 3.78887051832271e-02, 1.19356572795740e-02, 3.51858623016233e-03, 9.26991759357220e-04, 1.85096029792210e-04, -1.44666519197000e-06, -2.89977763063000e-05, -3.48209516983400e-05, -3.06464226675000e-05, -2.18216351894100e-05, -1.46331763646000e-05, -6.54141208063000e-06, -3.13153787265000e-06, -5.24252133480000e-07};
+        int n = rTest.length;
+        double[] r2 = new double[n + 1], u = new double[n + 1];
+        for (int i = 0; i < n; i++) {
+            double r = BohrRadius.UNIT.toSim(rTest[i]);
+            r2[i] = r * r;
+        }
+        // inside the hard core
+        double r = BohrRadius.UNIT.toSim(0.3);
+        r2[n] = r * r;
+        p2.u(r2, u, n + 1);
+        for (int i = 0; i < n; i++) {
+            Assertions.assertEquals(VTotRet[i], Hartree.UNIT.fromSim(u[i]), 1e-12 + 1e-9 * Math.abs(VTotRet[i]));
+            Assertions.assertEquals(p2.u(r2[i]), u[i]);
+        }
+        Assertions.assertEquals(Double.POSITIVE_INFINITY, u[n]);
+    }
+}
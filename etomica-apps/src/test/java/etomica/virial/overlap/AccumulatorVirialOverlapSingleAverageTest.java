@@ -0,0 +1,122 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.overlap;
+
+import etomica.data.IData;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataGroup;
+import etomica.units.dimensions.Null;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+
+class AccumulatorVirialOverlapSingleAverageTest {
+
+    @Test
+    public void testStateRoundTrip() throws IOException {
+        for (boolean isReference : new boolean[]{true, false}) {
+            AccumulatorVirialOverlapSingleAverage acc = makeAccumulator(isReference);
+            RandomMersenneTwister rng = new RandomMersenneTwister(7);
+            DataDoubleArray data = new DataDoubleArray(2);
+            // stop in the middle of a block
+            addData(acc, data, rng, 1037);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            acc.writeState(out);
+            rng.writeState(out);
+            out.close();
+
+            AccumulatorVirialOverlapSingleAverage restored = makeAccumulator(isReference);
+            RandomMersenneTwister rng2 = new RandomMersenneTwister(8);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+            restored.readState(in);
+            rng2.readState(in);
+
+            for (int i = 0; i < acc.getNBennetPoints(); i++) {
+                Assertions.assertEquals(acc.getBennetAverage(i), restored.getBennetAverage(i));
+            }
+
+            addData(acc, data, rng, 1000);
+            addData(restored, data, rng2, 1000);
+            for (int i = 0; i < acc.getNBennetPoints(); i++) {
+                Assertions.assertEquals(acc.getBennetAverage(i), restored.getBennetAverage(i));
+                assertDataEquals(acc.getData(i), restored.getData(i), 0);
+            }
+        }
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        for (boolean isReference : new boolean[]{true, false}) {
+            // data split between two accumulators (the second saved and
+            // restored, with an incomplete block) must give the same results
+            // as a single accumulator that got all of it
+            AccumulatorVirialOverlapSingleAverage all = makeAccumulator(isReference);
+            AccumulatorVirialOverlapSingleAverage first = makeAccumulator(isReference);
+            AccumulatorVirialOverlapSingleAverage second = makeAccumulator(isReference);
+            DataDoubleArray data = new DataDoubleArray(2);
+            addData(all, data, new RandomMersenneTwister(7), 2037);
+            RandomMersenneTwister rng = new RandomMersenneTwister(7);
+            addData(first, data, rng, 1000);
+            addData(second, data, rng, 1037);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            second.writeState(new DataOutputStream(bytes));
+            AccumulatorVirialOverlapSingleAverage restored = makeAccumulator(isReference);
+            restored.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+            first.merge(restored);
+
+            Assertions.assertEquals(all.getSampleCount(), first.getSampleCount());
+            Assertions.assertEquals(all.getBlockCount(), first.getBlockCount());
+            for (int i = 0; i < all.getNBennetPoints(); i++) {
+                double expected = all.getBennetAverage(i);
+                Assertions.assertEquals(expected, first.getBennetAverage(i), 1e-12 * Math.abs(expected));
+                assertDataEquals(all.getData(i), first.getData(i), 1e-8);
+            }
+
+            Assertions.assertThrows(IllegalArgumentException.class, () -> first.merge(makeAccumulator(!isReference)));
+            AccumulatorVirialOverlapSingleAverage otherAlpha = makeAccumulator(isReference);
+            otherAlpha.setBennetParam(2, 5);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> first.merge(otherAlpha));
+        }
+    }
+
+    private static AccumulatorVirialOverlapSingleAverage makeAccumulator(boolean isReference) {
+        AccumulatorVirialOverlapSingleAverage acc = new AccumulatorVirialOverlapSingleAverage(100, 5, isReference);
+        acc.putDataInfo(new DataDoubleArray.DataInfoDoubleArray("overlap", Null.DIMENSION, new int[]{2}));
+        return acc;
+    }
+
+    private static void addData(AccumulatorVirialOverlapSingleAverage acc, DataDoubleArray data,
+                                RandomMersenneTwister rng, int n) {
+        double[] x = data.getData();
+        for (int i = 0; i < n; i++) {
+            x[0] = 2 * rng.nextDouble() - 1;
+            x[1] = Math.exp(rng.nextGaussian());
+            acc.putData(data);
+        }
+    }
+
+    private static void assertDataEquals(IData expected, IData actual, double tolerance) {
+        DataGroup expectedGroup = (DataGroup) expected;
+        DataGroup actualGroup = (DataGroup) actual;
+        for (int j = 0; j < expectedGroup.getNData(); j++) {
+            IData e = expectedGroup.getData(j);
+            IData a = actualGroup.getData(j);
+            for (int k = 0; k < e.getLength(); k++) {
+                double x = e.getValue(k);
+                if (Double.isNaN(x)) {
+                    Assertions.assertTrue(Double.isNaN(a.getValue(k)));
+                }
+                else {
+                    Assertions.assertEquals(x, a.getValue(k), tolerance * Math.abs(x));
+                }
+            }
+        }
+    }
+}
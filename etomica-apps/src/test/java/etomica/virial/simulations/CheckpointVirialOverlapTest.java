@@ -0,0 +1,131 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.virial.simulations;
+
+import etomica.atom.IAtomList;
+import etomica.chem.elements.ElementSimple;
+import etomica.data.IData;
+import etomica.potential.P2LennardJones;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.ISpecies;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import etomica.virial.*;
+import etomica.virial.cluster.Standard;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Checks that a simulation restored from a checkpoint continues exactly as
+ * the checkpointed simulation does.
+ */
+public class CheckpointVirialOverlapTest {
+
+    protected static SimulationVirialOverlap2 makeSim(int seed) {
+        Space space = Space3D.getInstance();
+        double temperature = 1;
+        double sigmaHSRef = 1.5;
+        MayerHardSphere fRef = new MayerHardSphere(sigmaHSRef);
+        MayerEHardSphere eRef = new MayerEHardSphere(sigmaHSRef);
+        P2LennardJones pTarget = new P2LennardJones(space, 1.0, 1.0);
+        MayerGeneralSpherical fTarget = new MayerGeneralSpherical(pTarget);
+        MayerESpherical eTarget = new MayerESpherical(pTarget);
+        ClusterAbstract targetCluster = Standard.virialCluster(3, fTarget, false, eTarget, true);
+        targetCluster.setTemperature(temperature);
+        ClusterAbstract refCluster = Standard.virialCluster(3, fRef, false, eRef, true);
+        refCluster.setTemperature(temperature);
+
+        SimulationVirialOverlap2 sim = new SimulationVirialOverlap2(space, new ISpecies[]{new SpeciesSpheresMono(space, new ElementSimple("LJ"))},
+                new int[]{3}, temperature, refCluster, targetCluster);
+        // the MC moves take the random number generator in init
+        sim.setRandom(new RandomMersenneTwister(seed));
+        sim.init();
+        sim.integratorOS.setNumSubSteps(100);
+        return sim;
+    }
+
+    protected static byte[] randomState(SimulationVirialOverlap2 sim) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ((RandomMersenneTwister) sim.getRandom()).writeState(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    protected static void assertDataEquals(IData expected, IData actual) {
+        Assertions.assertEquals(expected.getLength(), actual.getLength());
+        for (int i = 0; i < expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), actual.getValue(i));
+        }
+    }
+
+    /**
+     * Runs N steps, checkpoints and runs M more steps, then restores the
+     * checkpoint into a new simulation and runs it for M steps.  The overlap
+     * averages, random number generator state, step sizes, acceptance and
+     * configurations must be identical.
+     */
+    @Test
+    public void testRestart() throws IOException {
+        long n = 30, m = 20;
+        File dir = Files.createTempDirectory("checkpoint").toFile();
+        File file = new File(dir, "virial.chk");
+
+        SimulationVirialOverlap2 sim = makeSim(1);
+        sim.initRefPref(null, 10);
+        sim.equilibrate(null, 20);
+        CheckpointVirialOverlap checkpoint = new CheckpointVirialOverlap(sim, file.getPath(), n);
+        sim.integratorOS.getEventManager().addListener(checkpoint);
+        sim.ai.setMaxSteps(n);
+        checkpoint.run();
+        Assertions.assertTrue(file.exists());
+        while (sim.integratorOS.getStepCount() < n + m) {
+            sim.integratorOS.doStep();
+        }
+
+        // a different seed, so that nothing matches unless it is restored
+        SimulationVirialOverlap2 restored = makeSim(2);
+        CheckpointVirialOverlap restoredCheckpoint = new CheckpointVirialOverlap(restored, file.getPath(), n);
+        Assertions.assertTrue(restoredCheckpoint.read());
+        Assertions.assertTrue(restoredCheckpoint.isRestored());
+        Assertions.assertEquals(n, restored.integratorOS.getStepCount());
+        restored.ai.setMaxSteps(n + m);
+        restoredCheckpoint.run();
+
+        Assertions.assertEquals(n + m, restored.integratorOS.getStepCount());
+        Assertions.assertEquals(sim.refPref, restored.refPref);
+        Assertions.assertEquals(sim.dvo.getOverlapAverage(), restored.dvo.getOverlapAverage());
+        Assertions.assertArrayEquals(sim.dvo.getAverageAndError(), restored.dvo.getAverageAndError());
+        for (int i = 0; i < 2; i++) {
+            assertDataEquals(sim.accumulators[i].getData(), restored.accumulators[i].getData());
+            Assertions.assertEquals(sim.mcMoveTranslate[i].getStepSize(), restored.mcMoveTranslate[i].getStepSize());
+            Assertions.assertEquals(sim.mcMoveTranslate[i].getTracker().acceptanceProbability(),
+                    restored.mcMoveTranslate[i].getTracker().acceptanceProbability());
+            IAtomList atoms = sim.box[i].getLeafList();
+            IAtomList restoredAtoms = restored.box[i].getLeafList();
+            for (int j = 0; j < atoms.size(); j++) {
+                Vector p = atoms.get(j).getPosition();
+                Vector restoredP = restoredAtoms.get(j).getPosition();
+                for (int k = 0; k < 3; k++) {
+                    Assertions.assertEquals(p.getX(k), restoredP.getX(k));
+                }
+            }
+        }
+        Assertions.assertEquals(sim.integratorOS.getRefStepFraction(), restored.integratorOS.getRefStepFraction());
+        Assertions.assertArrayEquals(randomState(sim), randomState(restored));
+        Assertions.assertEquals(sim.getRandom().nextDouble(), restored.getRandom().nextDouble());
+
+        file.delete();
+        dir.delete();
+    }
+}
@@ -0,0 +1,121 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.box;
+
+import etomica.atom.IAtomList;
+import etomica.integrator.IntegratorEvent;
+import etomica.integrator.IntegratorListener;
+import etomica.space.Boundary;
+import etomica.space.Vector;
+import etomica.util.SnapshotBuffer;
+
+import java.util.function.Function;
+
+/**
+ * Keeps a copy of the atom positions and box size of a box, taken between
+ * integrator steps, that other threads can read at any time without
+ * pausing the simulation (as Controller.doActionNow would) and without locks.
+ * Added as a listener to the integrator, the snapshot copies the box at the
+ * end of a step, but only if the previous copy has been read, so that an
+ * unwatched box costs almost nothing.  The copy is published through a
+ * SnapshotBuffer, so readers always see positions from a single step.
+ * <p>
+ * Changes made to the box between steps (while the integrator is paused, for
+ * instance) are not seen until the next step, unless publish is called.
+ */
+public class BoxSnapshot implements IntegratorListener {
+
+    public BoxSnapshot(Box box) {
+        this.box = box;
+        buffer = new SnapshotBuffer<>(Frame::new);
+        requested = true;
+    }
+
+    public Box getBox() {
+        return box;
+    }
+
+    /**
+     * Copies the box and publishes the copy.  This must be called from the
+     * thread that runs the integrator, or while the integrator is not
+     * running.
+     */
+    public void publish() {
+        Frame frame = buffer.getBackBuffer();
+        IAtomList leafList = box.getLeafList();
+        int n = leafList.size();
+        Boundary boundary = box.getBoundary();
+        Vector boxSize = boundary.getBoxSize();
+        int dim = boxSize.getD();
+        if (frame.coordinates == null || frame.coordinates.length != n || frame.boxSize.length != dim) {
+            frame.coordinates = new double[n][dim];
+            frame.boxSize = new double[dim];
+            frame.periodic = new boolean[dim];
+        }
+        for (int i = 0; i < n; i++) {
+            leafList.get(i).getPosition().assignTo(frame.coordinates[i]);
+        }
+        boxSize.assignTo(frame.boxSize);
+        for (int d = 0; d < dim; d++) {
+            frame.periodic[d] = boundary.getPeriodicity(d);
+        }
+        frame.step = step;
+        requested = false;
+        buffer.publish();
+    }
+
+    /**
+     * Applies the reader to the latest copy of the box and returns the
+     * result, or returns null if no copy has been made.  The reader must not
+     * keep a reference to the Frame or its arrays.
+     */
+    public <R> R read(Function<? super Frame, R> reader) {
+        requested = true;
+        return buffer.read(reader);
+    }
+
+    /**
+     * Returns the number of copies that have been published, so that readers
+     * can tell whether anything has changed since they last read.
+     */
+    public long getVersion() {
+        return buffer.getVersion();
+    }
+
+    public void integratorInitialized(IntegratorEvent e) {
+        step = e.getIntegrator().getStepCount();
+        publish();
+    }
+
+    public void integratorStepStarted(IntegratorEvent e) {}
+
+    public void integratorStepFinished(IntegratorEvent e) {
+        if (requested) {
+            step = e.getIntegrator().getStepCount();
+            publish();
+        }
+    }
+
+    /**
+     * A copy of the box.
+     */
+    public static class Frame {
+        /**
+         * The position of each leaf atom.
+         */
+        public double[][] coordinates;
+        public double[] boxSize;
+        public boolean[] periodic;
+        /**
+         * The integrator's step count when the copy was made.
+         */
+        public long step;
+    }
+
+    protected final Box box;
+    protected final SnapshotBuffer<Frame> buffer;
+    protected volatile boolean requested;
+    protected long step;
+}
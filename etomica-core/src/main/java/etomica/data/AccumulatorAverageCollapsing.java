@@ -20,7 +20,7 @@ import java.util.Arrays;
  * <p>
  * This accumulator can only operate on Data with a single value.
  */
-public class AccumulatorAverageCollapsing extends AccumulatorAverage {
+public class AccumulatorAverageCollapsing extends AccumulatorAverage implements IDataSinkPrimitive {
 
     protected int maxBlocks;
     protected double[] blockSums;
@@ -112,9 +112,35 @@ public class AccumulatorAverageCollapsing extends AccumulatorAverage {
      * @param data Data to be added.
      */
     public boolean addData(IData data) {
-        if (data.isNaN())
+        return addData(data.getValue(0));
+    }
+
+    /**
+     * Adds the single value x, like putData with a DataDouble holding x.
+     */
+    public void putData(double x) {
+        if (!active) return;
+        dataAdded(addData(x));
+    }
+
+    /**
+     * Adds the value in x, which must hold a single value.
+     */
+    public void putData(double[] x) {
+        if (!active) return;
+        if (x.length != 1) {
+            throw new IllegalArgumentException("AccumulatorAverageCollapsing can only handle single data");
+        }
+        dataAdded(addData(x[0]));
+    }
+
+    /**
+     * Add the given value to the sums and block sums. If the value is NaN,
+     * method returns with no effect on accumulation sums.
+     */
+    protected boolean addData(double value) {
+        if (Double.isNaN(value))
             return false;
-        double value = data.getValue(0);
         currentBlockSum += value;
         totalSumSquare += value * value;
         mostRecent.E(value);
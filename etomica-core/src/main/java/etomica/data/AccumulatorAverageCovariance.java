@@ -10,6 +10,10 @@ import etomica.data.types.DataGroup.DataInfoGroup;
 import etomica.units.dimensions.CompoundDimension;
 import etomica.units.dimensions.Dimension;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Class that does the work of AccumulatorAverageFixed and also calculates the
  * covariance of the incoming data values (the covariance of each value with
@@ -41,6 +45,11 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
         this.fullCovariance = fullCovariance;
     }
 
+    protected boolean supportsPrimitiveData() {
+        // the covariance sums are updated in addData(IData)
+        return false;
+    }
+
     public boolean addData(IData data) {
         if (data.isNaN())
             return false;
@@ -104,7 +113,7 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
 
         int n = average.getLength();
         covariance.E(covSum);
-        long nTotalData = count*blockSize + (blockCountDown-blockSize);
+        long nTotalData = getSampleCount();
         covariance.TE(1.0/nTotalData);
         double[] x = covariance.getData();
 
@@ -112,6 +121,7 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
             // we need all the data
             work.E(sum);
             work.PE(currentBlockSum);
+            work.PE(unblockedSum);
             work.TE(1.0 / nTotalData);
         }
         else {
@@ -178,6 +188,35 @@ public class AccumulatorAverageCovariance extends AccumulatorAverageFixed {
         blockCovSum.E(0);
     }
 
+    public void merge(AccumulatorAverageFixed other) {
+        checkMerge(other);
+        AccumulatorAverageCovariance otherCov = (AccumulatorAverageCovariance) other;
+        if (otherCov.fullCovariance != fullCovariance) {
+            throw new IllegalArgumentException("cannot merge accumulators with and without full covariance");
+        }
+        super.merge(other);
+        if (otherCov.covSum != null) {
+            covSum.PE(otherCov.covSum);
+            blockCovSum.PE(otherCov.blockCovSum);
+        }
+    }
+
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        if (covSum != null) {
+            writeData(out, covSum);
+            writeData(out, blockCovSum);
+        }
+    }
+
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+        if (covSum != null) {
+            readData(in, covSum);
+            readData(in, blockCovSum);
+        }
+    }
+
     public IDataInfo processDataInfo(IDataInfo incomingDataInfo) {
         int n = incomingDataInfo.getLength();
         if (fullCovariance) {
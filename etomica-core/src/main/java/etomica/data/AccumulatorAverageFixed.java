@@ -4,17 +4,24 @@
 
 package etomica.data;
 
+import etomica.data.types.DataDouble;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataGroup;
 import etomica.data.types.DataGroup.DataInfoGroup;
 import etomica.math.function.Function;
 import etomica.math.function.IFunction;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * AccumulatorAverage that maintains a fixed block size.
  * This is standard accumulator for collecting averages in production runs.
  * <p>
  * This accumulator accepts any type of Data
  */
-public class AccumulatorAverageFixed extends AccumulatorAverage {
+public class AccumulatorAverageFixed extends AccumulatorAverage implements IDataSinkPrimitive {
 
     protected final IFunction negativeChop, sanityCheckBC;
     protected IData sum; //sum(value)
@@ -22,9 +29,19 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
     protected IData currentBlockSum;//block_sum(value)
     protected IData sumSquare;//sum(value^2)
     protected IData mostRecentBlock, correlationSum, firstBlock;
+    // samples from the incomplete blocks of merged accumulators, which
+    // contribute to the average and standard deviation but not to any block
+    protected IData unblockedSum;
+    protected long unblockedCount;
     protected IData work, work2;
     protected boolean doStrictBlockData = false;
     protected IDataSink blockDataSink;
+    // backing arrays of the per-sample sums, for the primitive fast lane
+    // (null unless the incoming data is a DataDoubleArray)
+    protected double[] mostRecentArray, currentBlockSumArray, sumSquareArray;
+    protected IData primitiveInput;
+    protected final double[] primitiveScalar = new double[1];
+    protected boolean primitiveFastLane;
 
     /**
      * Default constructor sets block size to 1000 and sets the
@@ -125,6 +142,84 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
         return true;
     }
     
+    /**
+     * Adds the single value x, like putData with a DataDouble holding x.
+     */
+    public void putData(double x) {
+        if (!active) return;
+        dataAdded(addData(x));
+    }
+
+    /**
+     * Adds the values in x, like putData with Data holding those values.
+     */
+    public void putData(double[] x) {
+        if (!active) return;
+        dataAdded(addData(x));
+    }
+
+    /**
+     * Adds a single value.  For scalar data, this updates the sums without
+     * going through IData.
+     *
+     * @return true if x is not NaN.
+     */
+    protected boolean addData(double x) {
+        if (!primitiveFastLane || !(currentBlockSum instanceof DataDouble)) {
+            primitiveScalar[0] = x;
+            return addData(primitiveScalar);
+        }
+        if (Double.isNaN(x)) {
+            return false;
+        }
+        ((DataDouble) mostRecent).x = x;
+        ((DataDouble) currentBlockSum).x += x;
+        ((DataDouble) sumSquare).x += x * x;
+        if (--blockCountDown == 0) {
+            doBlockSum();
+            if (blockDataSink != null) {
+                blockDataSink.putData(mostRecentBlock);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Adds the given values.  For array data, this updates the sums without
+     * going through IData; otherwise the values are copied into Data and
+     * passed to addData(IData).
+     *
+     * @return true if none of the values are NaN.
+     */
+    protected boolean addData(double[] x) {
+        if (x.length != primitiveInput.getLength()) {
+            throw new IllegalArgumentException("expected " + primitiveInput.getLength() + " values, but got " + x.length);
+        }
+        if (primitiveFastLane && currentBlockSum instanceof DataDouble) {
+            return addData(x[0]);
+        }
+        if (!primitiveFastLane || currentBlockSumArray == null) {
+            setValues(primitiveInput, x, 0);
+            return addData(primitiveInput);
+        }
+        for (double v : x) {
+            if (Double.isNaN(v)) return false;
+        }
+        for (int i = 0; i < x.length; i++) {
+            double v = x[i];
+            mostRecentArray[i] = v;
+            currentBlockSumArray[i] += v;
+            sumSquareArray[i] += v * v;
+        }
+        if (--blockCountDown == 0) {
+            doBlockSum();
+            if (blockDataSink != null) {
+                blockDataSink.putData(mostRecentBlock);
+            }
+        }
+        return true;
+    }
+
     public void putDataInfo(IDataInfo inputDataInfo) {
         super.putDataInfo(inputDataInfo);
         if (blockDataSink != null) {
@@ -203,18 +298,20 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
             blockCorrelation.E(Double.NaN);
         }
 
-        long nTotalData = count * blockSize + (blockSize - blockCountDown);
+        long nTotalData = getSampleCount();
         if (nTotalData > 0) {
             // now use *all* of the data
             if (!doStrictBlockData) {
                 average.E(sum);
                 average.PE(currentBlockSum);
+                average.PE(unblockedSum);
                 average.DE(nTotalData);
                 work.E(average);
                 work.TE(average);
             } else {
                 work.E(sum);
                 work.PE(currentBlockSum);
+                work.PE(unblockedSum);
                 work.DE(nTotalData);
                 work.TE(average);
             }
@@ -230,12 +327,86 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
         return dataGroup;
     }
 
+    public long getSampleCount() {
+        return super.getSampleCount() + unblockedCount;
+    }
+
+    /**
+     * Adds the data collected by another accumulator (of the same class, with
+     * the same block size and the same DataInfo) to this one.  Afterwards,
+     * this accumulator's average, error, standard deviation and block
+     * correlation are those it would have had if it had received the other
+     * accumulator's blocks after its own, so independent runs or threads can
+     * be reduced to a single result.
+     * <p>
+     * Samples in the other accumulator's incomplete block (which do not
+     * belong to any block) are included in the average and standard deviation
+     * only.  This accumulator's own incomplete block is kept, and continues
+     * to fill as more data is added.  The other accumulator is not modified.
+     * <p>
+     * To combine results from separate processes, each process can save its
+     * accumulator with writeState; the state is then read via readState into
+     * an accumulator that has received the same DataInfo and merged.
+     */
+    public void merge(AccumulatorAverageFixed other) {
+        checkMerge(other);
+        if (other.sum == null) {
+            return;
+        }
+        if (other.count > 0) {
+            if (count > 0) {
+                // correlation between our last block and their first
+                work.E(mostRecentBlock);
+                work.TE(other.firstBlock);
+                correlationSum.PE(work);
+            } else {
+                firstBlock.E(other.firstBlock);
+            }
+            mostRecentBlock.E(other.mostRecentBlock);
+        }
+        if (other.getSampleCount() > 0) {
+            mostRecent.E(other.mostRecent);
+        }
+        count += other.count;
+        sum.PE(other.sum);
+        sumBlockSquare.PE(other.sumBlockSquare);
+        correlationSum.PE(other.correlationSum);
+        sumSquare.PE(other.sumSquare);
+        unblockedSum.PE(other.unblockedSum);
+        unblockedSum.PE(other.currentBlockSum);
+        unblockedCount += other.unblockedCount + (other.blockSize - other.blockCountDown);
+    }
+
+    /**
+     * Throws an exception if the other accumulator cannot be merged into
+     * this one.
+     */
+    protected void checkMerge(AccumulatorAverageFixed other) {
+        if (other.getClass() != getClass()) {
+            throw new IllegalArgumentException("cannot merge " + other.getClass().getName() + " into " + getClass().getName());
+        }
+        if (other.blockSize != blockSize) {
+            throw new IllegalArgumentException("block sizes differ (" + blockSize + " and " + other.blockSize + ")");
+        }
+        if (other.sum == null) {
+            return;
+        }
+        if (sum == null) {
+            throw new IllegalStateException("DataInfo must be given before merging");
+        }
+        if (other.sum.getLength() != sum.getLength()) {
+            throw new IllegalArgumentException("data lengths differ (" + sum.getLength() + " and " + other.sum.getLength() + ")");
+        }
+    }
+
     public void reset() {
         super.reset();
+        unblockedCount = 0;
         if (sum == null) {
             return;
         }
         sum.E(0);
+        unblockedSum.E(0);
         sumBlockSquare.E(0);
         currentBlockSum.E(0);
         sumSquare.E(0);
@@ -252,8 +423,135 @@ public class AccumulatorAverageFixed extends AccumulatorAverage {
         firstBlock = incomingDataInfo.makeData();
         correlationSum = incomingDataInfo.makeData();
         mostRecentBlock = incomingDataInfo.makeData();
+        unblockedSum = incomingDataInfo.makeData();
         work = incomingDataInfo.makeData();
         work2 = incomingDataInfo.makeData();
-        return super.processDataInfo(incomingDataInfo);
+        IDataInfo outputInfo = super.processDataInfo(incomingDataInfo);
+        primitiveInput = incomingDataInfo.makeData();
+        if (currentBlockSum instanceof DataDoubleArray && mostRecent instanceof DataDoubleArray) {
+            mostRecentArray = ((DataDoubleArray) mostRecent).getData();
+            currentBlockSumArray = ((DataDoubleArray) currentBlockSum).getData();
+            sumSquareArray = ((DataDoubleArray) sumSquare).getData();
+        } else {
+            mostRecentArray = currentBlockSumArray = sumSquareArray = null;
+        }
+        primitiveFastLane = supportsPrimitiveData();
+        return outputInfo;
+    }
+
+    /**
+     * Returns true if values from putData(double) and putData(double[]) may
+     * update the sums directly instead of going through addData(IData).
+     * Subclasses that keep more sums in addData(IData) must override this to
+     * return false.
+     */
+    protected boolean supportsPrimitiveData() {
+        return true;
+    }
+
+    /**
+     * Writes the accumulated sums and block bookkeeping to the given output.
+     * An accumulator that has received the same DataInfo can read this state
+     * via readState and continue accumulating exactly as this one would have.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeLong(blockSize);
+        out.writeBoolean(sum != null);
+        if (sum == null) {
+            return;
+        }
+        out.writeLong(count);
+        out.writeLong(blockCountDown);
+        writeData(out, mostRecent);
+        writeData(out, sum);
+        writeData(out, sumBlockSquare);
+        writeData(out, currentBlockSum);
+        writeData(out, sumSquare);
+        writeData(out, mostRecentBlock);
+        writeData(out, correlationSum);
+        writeData(out, firstBlock);
+        out.writeLong(unblockedCount);
+        writeData(out, unblockedSum);
+    }
+
+    /**
+     * Restores the state written by writeState.  This accumulator must
+     * already have received DataInfo of the same shape as the accumulator
+     * that wrote the state.
+     */
+    public void readState(DataInput in) throws IOException {
+        blockSize = in.readLong();
+        boolean hasData = in.readBoolean();
+        if (hasData != (sum != null)) {
+            throw new IOException("accumulator state does not match this accumulator's DataInfo");
+        }
+        if (!hasData) {
+            reset();
+            return;
+        }
+        count = in.readLong();
+        blockCountDown = in.readLong();
+        readData(in, mostRecent);
+        readData(in, sum);
+        readData(in, sumBlockSquare);
+        readData(in, currentBlockSum);
+        readData(in, sumSquare);
+        readData(in, mostRecentBlock);
+        readData(in, correlationSum);
+        readData(in, firstBlock);
+        unblockedCount = in.readLong();
+        readData(in, unblockedSum);
+    }
+
+    /**
+     * Writes the length and values of the given data to the output.
+     */
+    protected static void writeData(DataOutput out, IData data) throws IOException {
+        int n = data.getLength();
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            out.writeDouble(data.getValue(i));
+        }
+    }
+
+    /**
+     * Reads values written by writeData into the given data, which must have
+     * the same length as the data that was written.
+     */
+    protected static void readData(DataInput in, IData data) throws IOException {
+        int n = in.readInt();
+        if (n != data.getLength()) {
+            throw new IOException("expected " + data.getLength() + " values, but found " + n);
+        }
+        double[] x = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = in.readDouble();
+        }
+        setValues(data, x, 0);
+    }
+
+    /**
+     * Copies values from x (starting at offset) into the given data.
+     *
+     * @return the offset of the first value in x not used by data
+     */
+    private static int setValues(IData data, double[] x, int offset) {
+        if (data instanceof DataDoubleArray) {
+            double[] y = ((DataDoubleArray) data).getData();
+            System.arraycopy(x, offset, y, 0, y.length);
+            return offset + y.length;
+        }
+        if (data instanceof DataDouble) {
+            ((DataDouble) data).x = x[offset];
+            return offset + 1;
+        }
+        if (data instanceof DataGroup) {
+            DataGroup group = (DataGroup) data;
+            for (int i = 0; i < group.getNData(); i++) {
+                offset = setValues(group.getData(i), x, offset);
+            }
+            return offset;
+        }
+        throw new IllegalArgumentException("Don't know how to restore values for " + data.getClass());
     }
 }
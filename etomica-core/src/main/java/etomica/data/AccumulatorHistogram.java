@@ -18,7 +18,7 @@ import etomica.units.dimensions.Null;
  * <p>
  * Input Data must implement DataArithmetic.
  */
-public class AccumulatorHistogram extends DataAccumulator {
+public class AccumulatorHistogram extends DataAccumulator implements IDataSinkPrimitive {
 
     protected Histogram histogram;
     protected DataSourceIndependentSimple xDataSource;
@@ -66,6 +66,37 @@ public class AccumulatorHistogram extends DataAccumulator {
     	return true;
     }
 
+    /**
+     * Adds x to the histogram, like putData with a DataDouble holding x.
+     * Histograms that take a value and a weight need putData(double[]).
+     */
+    public void putData(double x) {
+        if (!active) return;
+        if (histogram instanceof HistogramNotSoSimple || histogram instanceof HistogramReweightedData) {
+            throw new IllegalStateException("histogram needs a value and a weight");
+        }
+        histogram.addValue(x);
+        dataAdded(true);
+    }
+
+    /**
+     * Adds the value (and weight, for histograms that take one) in x to the
+     * histogram.
+     */
+    public void putData(double[] x) {
+        if (!active) return;
+        if (histogram instanceof HistogramNotSoSimple) {
+            ((HistogramNotSoSimple)histogram).addValue(x[0], x[1]);
+        }
+        else if (histogram instanceof HistogramReweightedData) {
+            ((HistogramReweightedData)histogram).addValue(x[0], x[1]);
+        }
+        else {
+            histogram.addValue(x[0]);
+        }
+        dataAdded(true);
+    }
+
     /**
      * Returns the set of histograms.
      */
@@ -0,0 +1,284 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.data.types.DataDoubleArray.DataInfoDoubleArray;
+import etomica.data.types.DataFunction;
+import etomica.data.types.DataFunction.DataInfoFunction;
+import etomica.units.dimensions.CompoundDimension;
+import etomica.units.dimensions.Dimension;
+import etomica.units.dimensions.Time;
+
+/**
+ * Accumulator that computes a time correlation function of its incoming data
+ * on the fly, using a multiple-tau correlator.  The data at each step are a
+ * set of values (for instance the unwrapped coordinates of every atom, from
+ * MeterUnwrappedPositions, or their velocities, from MeterVelocities), taken
+ * in groups of groupSize values (the dimension of the space, for vectors).
+ * <p>
+ * In MSD mode the result at lag t is the mean (over groups) of the sum (over
+ * values in the group) of (x(t0+t) - x(t0))^2, the mean square displacement.
+ * In CORRELATION mode the result is the mean of sum x(t0) x(t0+t), so that
+ * velocities give the velocity autocorrelation function.  Results are
+ * averaged over all time origins t0.
+ * <p>
+ * The correlator keeps p samples at each of a series of levels.  Level 0
+ * holds the latest samples and gives lags 0 to p-1.  Every m samples at one
+ * level are averaged into one sample of the next level, which gives lags
+ * p/m to p-1 in units of m^level.  The memory needed grows only as the log
+ * of the length of the run, and the work per sample is about 2p times the
+ * number of values.  At long lags, the result is that of the averaged
+ * samples; the averaging smooths the result over times short compared to the
+ * lag.
+ * <p>
+ * The output is a DataFunction of the lag time (the lag in samples times
+ * the time step set by setTimeStep).  It only includes lags that have been
+ * sampled, so it grows (with a new DataInfo) as the run proceeds.
+ */
+public class AccumulatorMultipleTau extends DataAccumulator implements IDataSinkPrimitive {
+
+    public enum Mode {MSD, CORRELATION}
+
+    /**
+     * Makes a correlator with 16 points per level, averaging 2 samples for
+     * each sample at the next level.
+     */
+    public AccumulatorMultipleTau(Mode mode, int groupSize) {
+        this(mode, groupSize, 16, 2);
+    }
+
+    /**
+     * @param mode      whether to compute the mean square displacement or
+     *                  the correlation function
+     * @param groupSize the number of values that make up each group (the
+     *                  dimension, for vectors)
+     * @param p         the number of points at each level
+     * @param m         the number of samples averaged for each sample at the
+     *                  next level; p must be a multiple of m
+     */
+    public AccumulatorMultipleTau(Mode mode, int groupSize, int p, int m) {
+        if (m < 2 || p < m || p % m != 0) {
+            throw new IllegalArgumentException("p must be a multiple of m, and m must be at least 2");
+        }
+        this.mode = mode;
+        this.groupSize = groupSize;
+        this.p = p;
+        this.m = m;
+        timeStep = 1;
+        levels = new Level[0];
+    }
+
+    /**
+     * Sets the time between samples, used for the lag times in the output.
+     * The default is 1, so lags are given in samples.
+     */
+    public void setTimeStep(double newTimeStep) {
+        timeStep = newTimeStep;
+        if (lagTimes != null) {
+            setupData(lagTimes.length);
+        }
+    }
+
+    public double getTimeStep() {
+        return timeStep;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Returns the number of levels in use, which grows as the log of the
+     * number of samples.
+     */
+    public int getLevelCount() {
+        return nLevels;
+    }
+
+    protected boolean addData(IData data) {
+        for (int i = 0; i < nValues; i++) {
+            x[i] = data.getValue(i);
+        }
+        add(0, x);
+        return true;
+    }
+
+    public void putData(double value) {
+        if (!active) return;
+        if (nValues != 1) {
+            throw new IllegalArgumentException("expected " + nValues + " values, but got 1");
+        }
+        x[0] = value;
+        add(0, x);
+        dataAdded(true);
+    }
+
+    public void putData(double[] values) {
+        if (!active) return;
+        if (values.length != nValues) {
+            throw new IllegalArgumentException("expected " + nValues + " values, but got " + values.length);
+        }
+        add(0, values);
+        dataAdded(true);
+    }
+
+    /**
+     * Adds the sample to the given level, correlates it with the samples
+     * already there and passes it (averaged) to the next level.
+     */
+    protected void add(int iLevel, double[] sample) {
+        if (iLevel == nLevels) {
+            if (nLevels == levels.length) {
+                Level[] newLevels = new Level[Math.max(4, 2 * nLevels)];
+                System.arraycopy(levels, 0, newLevels, 0, nLevels);
+                levels = newLevels;
+            }
+            levels[nLevels++] = new Level(p, nValues);
+        }
+        Level level = levels[iLevel];
+        level.head = (level.head + 1) % p;
+        System.arraycopy(sample, 0, level.samples, level.head * nValues, nValues);
+        if (level.nStored < p) level.nStored++;
+
+        double[] s = level.samples;
+        int newOffset = level.head * nValues;
+        for (int j = iLevel == 0 ? 0 : p / m; j < level.nStored; j++) {
+            int oldOffset = ((level.head - j + p) % p) * nValues;
+            double sum = 0;
+            if (mode == Mode.MSD) {
+                for (int i = 0; i < nValues; i++) {
+                    double d = s[newOffset + i] - s[oldOffset + i];
+                    sum += d * d;
+                }
+            }
+            else {
+                for (int i = 0; i < nValues; i++) {
+                    sum += s[newOffset + i] * s[oldOffset + i];
+                }
+            }
+            level.sum[j] += sum;
+            level.count[j]++;
+        }
+
+        double[] a = level.average;
+        for (int i = 0; i < nValues; i++) {
+            a[i] += sample[i];
+        }
+        if (++level.nAveraged == m) {
+            for (int i = 0; i < nValues; i++) {
+                a[i] /= m;
+            }
+            level.nAveraged = 0;
+            add(iLevel + 1, a);
+            for (int i = 0; i < nValues; i++) {
+                a[i] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the correlation function for all lags sampled so far.
+     */
+    public IData getData() {
+        if (inputDataInfo == null) return null;
+        int n = 0;
+        for (int l = 0; l < nLevels; l++) {
+            for (int j = l == 0 ? 0 : p / m; j < p; j++) {
+                if (levels[l].count[j] > 0) n++;
+            }
+        }
+        if (lagTimes == null || n != lagTimes.length) {
+            setupData(n);
+        }
+        double[] y = data.getData();
+        int k = 0;
+        long lagUnit = 1;
+        for (int l = 0; l < nLevels; l++) {
+            Level level = levels[l];
+            for (int j = l == 0 ? 0 : p / m; j < p; j++) {
+                if (level.count[j] == 0) continue;
+                lagTimes[k] = j * lagUnit * timeStep;
+                y[k] = level.sum[j] / (level.count[j] * nGroups);
+                k++;
+            }
+            lagUnit *= m;
+        }
+        return data;
+    }
+
+    /**
+     * Makes the output Data and DataInfo for n lags.
+     */
+    protected void setupData(int n) {
+        lagTimes = new double[n];
+        DataInfoDoubleArray lagInfo = new DataInfoDoubleArray("time", Time.DIMENSION, new int[]{n});
+        if (xDataSource == null) {
+            xDataSource = new DataSourceIndependentSimple(lagTimes, lagInfo);
+        }
+        else {
+            xDataSource.update(lagTimes, lagInfo);
+        }
+        data = new DataFunction(new int[]{n});
+        String label = inputDataInfo.getLabel() + (mode == Mode.MSD ? " MSD" : " correlation");
+        dataInfo = new DataInfoFunction(label, new CompoundDimension(
+                new Dimension[]{inputDataInfo.getDimension()}, new double[]{2}), xDataSource);
+        dataInfo.addTag(tag);
+        if (dataSink != null) {
+            dataSink.putDataInfo(dataInfo);
+        }
+    }
+
+    /**
+     * Discards all samples and results.
+     */
+    public void reset() {
+        if (inputDataInfo == null) return;
+        levels = new Level[0];
+        nLevels = 0;
+        setupData(0);
+    }
+
+    protected IDataInfo processDataInfo(IDataInfo incomingDataInfo) {
+        inputDataInfo = incomingDataInfo;
+        nValues = incomingDataInfo.getLength();
+        if (nValues % groupSize != 0) {
+            throw new IllegalArgumentException("data length " + nValues + " is not a multiple of the group size " + groupSize);
+        }
+        nGroups = nValues / groupSize;
+        x = new double[nValues];
+        levels = new Level[0];
+        nLevels = 0;
+        lagTimes = null;
+        setupData(0);
+        return dataInfo;
+    }
+
+    /**
+     * The samples and correlation sums for one level.
+     */
+    protected static class Level {
+        public final double[] samples, average, sum;
+        public final long[] count;
+        public int head, nStored, nAveraged;
+
+        public Level(int p, int nValues) {
+            samples = new double[p * nValues];
+            average = new double[nValues];
+            sum = new double[p];
+            count = new long[p];
+            head = -1;
+        }
+    }
+
+    protected final Mode mode;
+    protected final int groupSize, p, m;
+    protected double timeStep;
+    protected IDataInfo inputDataInfo;
+    protected int nValues, nGroups, nLevels;
+    protected double[] x, lagTimes;
+    protected Level[] levels;
+    protected DataFunction data;
+    protected DataSourceIndependentSimple xDataSource;
+}
@@ -69,7 +69,7 @@ public class AccumulatorRatioAverageCovariance extends AccumulatorAverageCovaria
                 ratioError.map(Function.Sqrt.INSTANCE);
             }
         }
-        long nTotalData = count*blockSize + (blockSize-blockCountDown);
+        long nTotalData = getSampleCount();
         if (nTotalData > 0 && !doStrictBlockData) {
             if (count == 0) super.getData();
             // now use *all* of the data
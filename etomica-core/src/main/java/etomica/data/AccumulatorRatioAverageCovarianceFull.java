@@ -77,7 +77,7 @@ public class AccumulatorRatioAverageCovarianceFull extends AccumulatorAverageCov
         else {
         	ratioError.E(Double.NaN);
         }
-        if (count > 0 || blockCountDown < blockSize) {
+        if (getSampleCount() > 0) {
             // now use *all* of the data to calculate ratios
             for (int i=0; i<n; i++) {
                 r[i*n+i] = 1;
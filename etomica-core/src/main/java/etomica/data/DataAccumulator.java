@@ -72,6 +72,26 @@ public abstract class DataAccumulator extends DataProcessorForked implements IDa
         return null;
     }
 
+    /**
+     * Does the bookkeeping of processData for data that was added directly
+     * (by a primitive putData method), pushing getData() to the sinks when
+     * it is due.
+     *
+     * @param added true if the accumulator's getData method will now return
+     *              different data.
+     */
+    protected void dataAdded(boolean added) {
+        hasUnpushedData = added || hasUnpushedData;
+        if (--putCount <= 0 && hasUnpushedData) {
+            hasUnpushedData = false;
+            putCount = pushInterval;
+            IData outputData = getData();
+            if (outputData != null) {
+                dataSink.putData(outputData);
+            }
+        }
+    }
+
     /**
      * @return true if accumulation is being performed in response to interval events.
      */
@@ -0,0 +1,189 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads files written by DataSinkBinary, one chunk at a time.  Each call to
+ * nextChunk returns the values of the next chunk by column; getColumnNames
+ * returns the names of those columns (which can change from one chunk to the
+ * next if the DataInfo changed while writing).
+ * <p>
+ * The main method writes a file out as text, one row per line.
+ */
+public class DataBinaryReader implements AutoCloseable {
+
+    public DataBinaryReader(String fileName) throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 16));
+        if (in.readInt() != DataSinkBinary.MAGIC) {
+            in.close();
+            throw new IOException(fileName + " was not written by DataSinkBinary");
+        }
+        int version = in.readInt();
+        if (version != DataSinkBinary.VERSION) {
+            in.close();
+            throw new IOException("unknown version " + version);
+        }
+        columns = new String[0];
+    }
+
+    /**
+     * Returns the names of the columns of the chunk most recently returned
+     * by nextChunk.
+     */
+    public String[] getColumnNames() {
+        return columns.clone();
+    }
+
+    /**
+     * Returns the values of the next chunk, indexed by column and then row,
+     * or null at the end of the file.
+     */
+    public double[][] nextChunk() throws IOException {
+        while (true) {
+            int type;
+            try {
+                type = in.readByte();
+            }
+            catch (EOFException e) {
+                return null;
+            }
+            if (type == 'S') {
+                columns = new String[in.readInt()];
+                for (int i = 0; i < columns.length; i++) {
+                    columns[i] = in.readUTF();
+                }
+                continue;
+            }
+            if (type != 'C') {
+                throw new IOException("corrupt file (record type " + type + ")");
+            }
+            int nRows = in.readInt();
+            boolean compressed = in.readByte() == 1;
+            int nBytes = in.readInt();
+            byte[] payload = new byte[nBytes];
+            in.readFully(payload);
+            int nValues = columns.length * nRows;
+            byte[] bytes = payload;
+            if (compressed) {
+                bytes = new byte[nValues * 8];
+                if (inflater == null) {
+                    inflater = new Inflater();
+                }
+                inflater.reset();
+                inflater.setInput(payload);
+                try {
+                    int n = 0;
+                    while (n < bytes.length && !inflater.finished()) {
+                        n += inflater.inflate(bytes, n, bytes.length - n);
+                    }
+                    if (n != bytes.length) {
+                        throw new IOException("corrupt chunk");
+                    }
+                }
+                catch (DataFormatException e) {
+                    throw new IOException(e);
+                }
+            }
+            double[][] values = new double[columns.length][nRows];
+            int k = 0;
+            for (int c = 0; c < columns.length; c++) {
+                for (int r = 0; r < nRows; r++) {
+                    long bits = 0;
+                    for (int b = 0; b < 8; b++) {
+                        int j = compressed ? b * nValues + k : k * 8 + b;
+                        bits = (bits << 8) | (bytes[j] & 0xff);
+                    }
+                    values[c][r] = Double.longBitsToDouble(bits);
+                    k++;
+                }
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Reads the rest of the file and returns the values by column.  All
+     * remaining chunks must have the same columns.
+     */
+    public double[][] readAll() throws IOException {
+        double[][] all = null;
+        String[] allColumns = null;
+        int nRows = 0;
+        for (double[][] chunk = nextChunk(); chunk != null; chunk = nextChunk()) {
+            if (all == null) {
+                allColumns = columns;
+                all = new double[columns.length][Math.max(chunk.length > 0 ? chunk[0].length : 0, 16)];
+            }
+            else if (!Arrays.equals(allColumns, columns)) {
+                throw new IOException("columns changed within the file");
+            }
+            int n = chunk.length > 0 ? chunk[0].length : 0;
+            for (int c = 0; c < chunk.length; c++) {
+                if (nRows + n > all[c].length) {
+                    all[c] = Arrays.copyOf(all[c], Math.max(2 * all[c].length, nRows + n));
+                }
+                System.arraycopy(chunk[c], 0, all[c], nRows, n);
+            }
+            nRows += n;
+        }
+        if (all == null) {
+            return new double[columns.length][0];
+        }
+        for (int c = 0; c < all.length; c++) {
+            all[c] = Arrays.copyOf(all[c], nRows);
+        }
+        return all;
+    }
+
+    public void close() throws IOException {
+        in.close();
+        if (inflater != null) {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Writes the given file as text, with column names as a header whenever
+     * they change.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: DataBinaryReader file");
+            System.exit(1);
+        }
+        try (DataBinaryReader reader = new DataBinaryReader(args[0])) {
+            String[] lastColumns = null;
+            StringBuilder sb = new StringBuilder();
+            for (double[][] chunk = reader.nextChunk(); chunk != null; chunk = reader.nextChunk()) {
+                if (!Arrays.equals(lastColumns, reader.columns)) {
+                    lastColumns = reader.columns;
+                    System.out.println("# " + String.join("\t", lastColumns));
+                }
+                int n = chunk.length > 0 ? chunk[0].length : 0;
+                for (int r = 0; r < n; r++) {
+                    sb.setLength(0);
+                    for (int c = 0; c < chunk.length; c++) {
+                        if (c > 0) sb.append('\t');
+                        sb.append(chunk[c][r]);
+                    }
+                    System.out.println(sb);
+                }
+            }
+        }
+    }
+
+    protected final DataInputStream in;
+    protected String[] columns;
+    protected Inflater inflater;
+}
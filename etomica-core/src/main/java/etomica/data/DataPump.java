@@ -5,6 +5,7 @@
 package etomica.data;
 
 import etomica.action.IAction;
+import etomica.data.types.DataDoubleArray;
 
 /**
  * A DataProcessor whose action is to actively take Data from a DataSource and send it to
@@ -33,14 +34,43 @@ public class DataPump extends DataProcessor implements IAction {
      * a call to putDataInfo in the sink will be invoked before passing along the Data.
 	 */
 	public void actionPerformed() {
+        if (primitiveSink != null && dataSource instanceof DataSourceScalar) {
+            // fast lane; the value goes straight into the sink
+            double x = ((DataSourceScalar)dataSource).getDataAsScalar();
+            checkDataInfo();
+            primitiveSink.putData(x);
+            return;
+        }
         IData data = dataSource.getData();
+        checkDataInfo();
+        if (primitiveSink != null && data instanceof DataDoubleArray) {
+            primitiveSink.putData(((DataDoubleArray)data).getData());
+            return;
+        }
+        putData(data);
+    }
+
+    /**
+     * Passes the source's DataInfo to the sink if it has changed since the
+     * last call.
+     */
+    protected void checkDataInfo() {
         if (dataSourceInfo != dataSource.getDataInfo()) {
             dataSourceInfo = dataSource.getDataInfo();
             if (dataSink != null) {
                 dataSink.putDataInfo(dataSourceInfo);
             }
         }
-        putData(data);
+    }
+
+    /**
+     * Sets the sink receiving the data.  If the sink is an
+     * IDataSinkPrimitive, scalar and array data are passed to it as
+     * primitives.
+     */
+    public void setDataSink(IDataSink newDataSink) {
+        super.setDataSink(newDataSink);
+        primitiveSink = newDataSink instanceof IDataSinkPrimitive ? (IDataSinkPrimitive)newDataSink : null;
     }
     
     /**
@@ -68,4 +98,5 @@ public class DataPump extends DataProcessor implements IAction {
 
     protected IDataInfo dataSourceInfo;
     protected final IDataSource dataSource;
+    protected IDataSinkPrimitive primitiveSink;
 }
@@ -0,0 +1,243 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.data.types.DataDoubleArray;
+import etomica.integrator.IntegratorEvent;
+
+/**
+ * DataPumpListener that chooses its own interval.  The pump measures how long
+ * the data source (and everything downstream) takes per call and how long the
+ * rest of each integrator step takes, and it estimates the autocorrelation
+ * time of the data.  From these, the interval is set to give the most
+ * independent samples per CPU second, while keeping the time spent on this
+ * pump below a fraction (the overhead budget) of the time spent on the steps.
+ * <p>
+ * The correlation time comes from an AccumulatorAverageFixed kept by the pump
+ * that sees only data taken at the current interval.  The autocorrelation is
+ * taken to decay exponentially, and the statistical inefficiency (the number
+ * of samples per independent sample) is N error^2 / stdev^2.  If the block
+ * correlation is large, the blocks are too short for the error to be trusted,
+ * so the block size is doubled and the estimate starts over.  For data with
+ * several values, the value with the shortest correlation time is used, so
+ * that no value is sampled less often than it decorrelates.
+ * <p>
+ * The interval is first reconsidered after minBlocks blocks, and then each
+ * time the number of blocks doubles.  If the interval changes, the estimate
+ * starts over.
+ */
+public class DataPumpListenerAdaptive extends DataPumpListener {
+
+    public DataPumpListenerAdaptive(IDataSource dataSource, IDataSink dataSink) {
+        this(dataSource, dataSink, 1);
+    }
+
+    /**
+     * @param interval the initial interval
+     */
+    public DataPumpListenerAdaptive(IDataSource dataSource, IDataSink dataSink, int interval) {
+        super(dataSource, dataSink, interval);
+        probe = new AccumulatorAverageFixed(10);
+        probe.putDataInfo(dataSource.getDataInfo());
+        overheadBudget = 0.1;
+        minBlocks = 20;
+        nextCheck = minBlocks;
+        maxBlockCorrelation = 0.3;
+        maxInterval = Long.MAX_VALUE;
+        correlationSteps = Double.NaN;
+    }
+
+    /**
+     * Sets the largest fraction of the integrator's time that may be spent
+     * on this pump.  The default is 0.1.
+     */
+    public void setOverheadBudget(double newOverheadBudget) {
+        if (!(newOverheadBudget > 0)) throw new IllegalArgumentException("overhead budget must be positive");
+        overheadBudget = newOverheadBudget;
+    }
+
+    public double getOverheadBudget() {
+        return overheadBudget;
+    }
+
+    /**
+     * Sets the number of blocks that must be collected (at one interval)
+     * before the interval is reconsidered.  The default is 20.
+     */
+    public void setMinBlocks(int newMinBlocks) {
+        minBlocks = newMinBlocks;
+        nextCheck = minBlocks;
+    }
+
+    public int getMinBlocks() {
+        return minBlocks;
+    }
+
+    /**
+     * Sets the largest block correlation for which the error (and therefore
+     * the correlation time) is trusted.  The default is 0.3.
+     */
+    public void setMaxBlockCorrelation(double newMaxBlockCorrelation) {
+        maxBlockCorrelation = newMaxBlockCorrelation;
+    }
+
+    public double getMaxBlockCorrelation() {
+        return maxBlockCorrelation;
+    }
+
+    /**
+     * Sets the largest interval the pump will choose.
+     */
+    public void setMaxInterval(long newMaxInterval) {
+        maxInterval = newMaxInterval;
+    }
+
+    public long getMaxInterval() {
+        return maxInterval;
+    }
+
+    /**
+     * Returns the most recent estimate of the autocorrelation time of the
+     * data, in steps, or NaN if no estimate has been made.
+     */
+    public double getCorrelationSteps() {
+        return correlationSteps;
+    }
+
+    /**
+     * Returns the average time (in ns) taken by each call to actionPerformed.
+     */
+    public double getActionTime() {
+        return nActions == 0 ? Double.NaN : (double) actionTime / nActions;
+    }
+
+    /**
+     * Returns the average time (in ns) taken by each integrator step, not
+     * counting this pump.  Steps are timed from the integrator's step started
+     * event to its step finished event, so time spent between steps (while
+     * the simulation is paused, for instance) is not counted.
+     */
+    public double getStepTime() {
+        return nSteps == 0 ? Double.NaN : (double) stepTime / nSteps;
+    }
+
+    public void integratorInitialized(IntegratorEvent e) {
+        stepStartTime = 0;
+    }
+
+    public void integratorStepStarted(IntegratorEvent e) {
+        stepStartTime = nanoTime();
+    }
+
+    public void integratorStepFinished(IntegratorEvent e) {
+        long now = nanoTime();
+        if (stepStartTime != 0) {
+            stepTime += now - stepStartTime;
+            nSteps++;
+            stepStartTime = 0;
+        }
+        if (++intervalCount < interval) {
+            return;
+        }
+        intervalCount = 0;
+        actionPerformed();
+        actionTime += nanoTime() - now;
+        nActions++;
+        if (probe.getBlockCount() >= nextCheck) {
+            adjustInterval();
+        }
+    }
+
+    /**
+     * Returns the current time, in ns, used to time steps and actions.
+     */
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    public void actionPerformed() {
+        IData data = dataSource.getData();
+        checkDataInfo();
+        if (primitiveSink != null && data instanceof DataDoubleArray) {
+            primitiveSink.putData(((DataDoubleArray) data).getData());
+        }
+        else {
+            putData(data);
+        }
+        probe.putData(data);
+    }
+
+    protected void checkDataInfo() {
+        if (dataSourceInfo != dataSource.getDataInfo()) {
+            probe.putDataInfo(dataSource.getDataInfo());
+        }
+        super.checkDataInfo();
+    }
+
+    /**
+     * Estimates the correlation time from the data taken at the current
+     * interval and sets the interval that gives the most independent samples
+     * per CPU second.
+     */
+    protected void adjustInterval() {
+        IData error = probe.getData(AccumulatorAverage.ERROR);
+        IData stdev = probe.getData(AccumulatorAverage.STANDARD_DEVIATION);
+        IData blockCorrelation = probe.getData(AccumulatorAverage.BLOCK_CORRELATION);
+        long n = probe.getSampleCount();
+        double tau = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < error.getLength(); i++) {
+            double err = error.getValue(i), sd = stdev.getValue(i);
+            if (!(sd > 0) || Double.isNaN(err)) continue;
+            if (blockCorrelation.getValue(i) > maxBlockCorrelation) {
+                // blocks are too short; start over with longer ones
+                probe.setBlockSize(2 * probe.getBlockSize());
+                nextCheck = minBlocks;
+                return;
+            }
+            double s = n * err * err / (sd * sd);
+            // correlation between successive samples; if they look
+            // independent, we only know the correlation time is short
+            double rho = Math.max((s - 1) / (s + 1), 0.1);
+            tau = Math.min(tau, -interval / Math.log(rho));
+        }
+        nextCheck *= 2;
+        if (Double.isInfinite(tau)) return;
+        correlationSteps = tau;
+
+        double tStep = getStepTime(), tAction = getActionTime();
+        if (!(tStep > 0)) return;
+        // sampling more often than this would exceed the budget
+        double minInterval = Math.max(1, tAction / (overheadBudget * tStep));
+        double bestInterval = Math.ceil(minInterval);
+        double bestCost = Double.POSITIVE_INFINITY;
+        double upper = Math.max(minInterval, 100 * tau);
+        // CPU time per independent sample is (steps * tStep + tAction) times
+        // the inefficiency (1+rho)/(1-rho), with rho = exp(-steps/tau)
+        for (double steps = Math.ceil(minInterval); steps <= upper; steps = Math.max(steps + 1, Math.floor(steps * 1.02))) {
+            double rho = Math.exp(-steps / tau);
+            double cost = (steps * tStep + tAction) * (1 + rho) / (1 - rho);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestInterval = steps;
+            }
+        }
+        long newInterval = Math.max(1, Math.min(maxInterval, (long) bestInterval));
+        // small changes aren't worth losing the data collected so far
+        if (Math.abs(newInterval - interval) > 0.1 * interval) {
+            setInterval(newInterval);
+            probe.reset();
+            nextCheck = minBlocks;
+        }
+    }
+
+    protected final AccumulatorAverageFixed probe;
+    protected double overheadBudget;
+    protected int minBlocks;
+    protected long nextCheck;
+    protected double maxBlockCorrelation;
+    protected long maxInterval;
+    protected double correlationSteps;
+    protected long stepStartTime, stepTime, nSteps, actionTime, nActions;
+}
@@ -0,0 +1,354 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.atom.IAtomKinetic;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.simulation.Simulation;
+import etomica.space.Vector;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * DataPumpListener that moves the work of measuring and processing data off
+ * the integrator thread.  There are two modes.
+ * <p>
+ * In snapshot mode, the listener copies the box state (box size, atom
+ * positions and velocities) into a reusable buffer and a worker restores it
+ * into a shadow box, where the data source (which must measure the shadow box)
+ * and the whole downstream chain run.  This is meant for expensive meters
+ * that only need the configuration, like MeterRDF.
+ * <p>
+ * In data mode, the data source runs on the integrator thread and only the
+ * downstream processors and accumulators run on the worker.
+ * <p>
+ * At most queueSize measurements wait for the worker.  When the queue is full
+ * the policy decides what happens: BLOCK waits for room, DROP discards the
+ * new measurement and COALESCE replaces the newest queued measurement with the
+ * new one.  Measurements from one pump are always handled one at a time and
+ * in order, so accumulators see them in the same order as they would
+ * synchronously.  Call waitForIdle before reading results.
+ */
+public class DataPumpListenerAsync extends DataPumpListener {
+
+    public enum Policy {BLOCK, DROP, COALESCE}
+
+    protected static ExecutorService defaultExecutor;
+
+    /**
+     * Constructs a pump in data mode.
+     */
+    public DataPumpListenerAsync(IDataSource dataSource, IDataSink dataSink, int interval, int queueSize, Policy policy) {
+        this(dataSource, dataSink, interval, null, null, queueSize, policy);
+    }
+
+    /**
+     * Constructs a pump in snapshot mode.  The data source must measure
+     * shadowBox, which must hold the same atoms (in the same order) as box.
+     * makeShadowBox will make a suitable shadow box.
+     */
+    public DataPumpListenerAsync(IDataSource shadowDataSource, IDataSink dataSink, int interval, Box box, Box shadowBox, int queueSize, Policy policy) {
+        super(shadowDataSource, dataSink, interval);
+        if (queueSize < 1) throw new IllegalArgumentException("queue size must be positive");
+        if ((box == null) != (shadowBox == null)) throw new IllegalArgumentException("need both box and shadow box");
+        if (box != null && box.getLeafList().size() != shadowBox.getLeafList().size()) {
+            throw new IllegalArgumentException("shadow box must have the same atoms as the box");
+        }
+        this.box = box;
+        this.shadowBox = shadowBox;
+        this.policy = policy;
+        pending = new ArrayDeque<>(queueSize);
+        free = new ArrayDeque<>(queueSize+1);
+        // one more slot than the queue holds, for the one being processed
+        for (int i = 0; i < queueSize+1; i++) {
+            free.add(new Slot());
+        }
+        lock = new Object();
+        lastInfo = dataSource.getDataInfo();
+        if (shadowBox != null) {
+            work = shadowBox.getSpace().makeVector();
+        }
+        else {
+            work = null;
+        }
+    }
+
+    /**
+     * Returns a box holding the same species and molecules as the given box,
+     * but not added to the simulation.  Meters constructed for this box can
+     * be used as the data source of a snapshot-mode pump.
+     */
+    public static Box makeShadowBox(Simulation sim, Box box) {
+        Box shadow = new Box(box.getSpace());
+        for (int i = 0; i < sim.getSpeciesCount(); i++) {
+            shadow.addSpeciesNotify(sim.getSpecies(i));
+            shadow.setNMolecules(sim.getSpecies(i), box.getNMolecules(sim.getSpecies(i)));
+        }
+        shadow.getBoundary().setBoxSize(box.getBoundary().getBoxSize());
+        return shadow;
+    }
+
+    /**
+     * Sets the executor used to run the worker.  Measurements from this pump
+     * are still handled one at a time, so one executor can be shared by many
+     * pumps.  By default, a shared pool of daemon threads is used.
+     */
+    public void setExecutor(Executor newExecutor) {
+        executor = newExecutor;
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the number of measurements discarded by the DROP policy.
+     */
+    public long getDroppedCount() {
+        synchronized (lock) {
+            return droppedCount;
+        }
+    }
+
+    /**
+     * Returns the number of measurements replaced by newer ones with the
+     * COALESCE policy.
+     */
+    public long getCoalescedCount() {
+        synchronized (lock) {
+            return coalescedCount;
+        }
+    }
+
+    /**
+     * Queues a measurement of the current state.
+     */
+    public void actionPerformed() {
+        checkFailure();
+        Slot slot;
+        synchronized (lock) {
+            slot = free.poll();
+            if (slot == null && policy == Policy.DROP) {
+                droppedCount++;
+                return;
+            }
+            if (slot == null && policy == Policy.COALESCE) {
+                slot = pending.pollLast();
+                if (slot != null) coalescedCount++;
+            }
+            while (slot == null) {
+                // BLOCK, or COALESCE with nothing waiting to replace
+                try {
+                    lock.wait();
+                }
+                catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+                slot = free.poll();
+            }
+        }
+
+        fill(slot);
+
+        boolean startWorker = false;
+        synchronized (lock) {
+            pending.addLast(slot);
+            if (!draining) {
+                draining = true;
+                startWorker = true;
+            }
+        }
+        if (startWorker) {
+            getExecutor().execute(this::drain);
+        }
+    }
+
+    /**
+     * Copies what the worker needs into the slot.
+     */
+    protected void fill(Slot slot) {
+        if (box == null) {
+            IData data = dataSource.getData();
+            IDataInfo info = dataSource.getDataInfo();
+            if (info != lastInfo) {
+                lastInfo = info;
+                slot.dataInfo = info;
+            }
+            if (slot.data == null || slot.dataMadeFrom != info) {
+                slot.data = info.makeData();
+                slot.dataMadeFrom = info;
+            }
+            slot.data.E(data);
+            return;
+        }
+        IAtomList atoms = box.getLeafList();
+        int n = atoms.size();
+        int D = box.getSpace().D();
+        boolean kinetic = n > 0 && atoms.get(0) instanceof IAtomKinetic;
+        int size = D + n*D*(kinetic ? 2 : 1);
+        if (slot.state == null || slot.state.length != size) {
+            slot.state = new double[size];
+        }
+        double[] s = slot.state;
+        Vector boxSize = box.getBoundary().getBoxSize();
+        for (int j = 0; j < D; j++) {
+            s[j] = boxSize.getX(j);
+        }
+        int k = D;
+        for (int i = 0; i < n; i++) {
+            Vector p = atoms.get(i).getPosition();
+            for (int j = 0; j < D; j++) {
+                s[k++] = p.getX(j);
+            }
+        }
+        if (kinetic) {
+            for (int i = 0; i < n; i++) {
+                Vector v = ((IAtomKinetic) atoms.get(i)).getVelocity();
+                for (int j = 0; j < D; j++) {
+                    s[k++] = v.getX(j);
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles queued measurements until the queue is empty.  Runs on the
+     * executor.
+     */
+    protected void drain() {
+        while (true) {
+            Slot slot;
+            synchronized (lock) {
+                slot = pending.poll();
+                if (slot == null) {
+                    draining = false;
+                    lock.notifyAll();
+                    return;
+                }
+            }
+            try {
+                process(slot);
+            }
+            catch (Throwable t) {
+                synchronized (lock) {
+                    if (failure == null) failure = t;
+                }
+            }
+            synchronized (lock) {
+                free.add(slot);
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Sends the measurement in the slot downstream.  Runs on the executor.
+     */
+    protected void process(Slot slot) {
+        if (box == null) {
+            if (slot.dataInfo != null) {
+                dataSourceInfo = slot.dataInfo;
+                slot.dataInfo = null;
+                if (dataSink != null) {
+                    dataSink.putDataInfo(dataSourceInfo);
+                }
+            }
+            putData(slot.data);
+            return;
+        }
+        IAtomList atoms = shadowBox.getLeafList();
+        int n = atoms.size();
+        int D = shadowBox.getSpace().D();
+        double[] s = slot.state;
+        for (int j = 0; j < D; j++) {
+            work.setX(j, s[j]);
+        }
+        if (!work.equals(shadowBox.getBoundary().getBoxSize())) {
+            shadowBox.getBoundary().setBoxSize(work);
+        }
+        int k = D;
+        for (int i = 0; i < n; i++) {
+            Vector p = atoms.get(i).getPosition();
+            for (int j = 0; j < D; j++) {
+                p.setX(j, s[k++]);
+            }
+        }
+        if (s.length > k) {
+            for (int i = 0; i < n; i++) {
+                Vector v = ((IAtomKinetic) atoms.get(i)).getVelocity();
+                for (int j = 0; j < D; j++) {
+                    v.setX(j, s[k++]);
+                }
+            }
+        }
+        super.actionPerformed();
+    }
+
+    /**
+     * Waits until all queued measurements have been handled.  Any exception
+     * thrown by the worker is rethrown here.
+     */
+    public void waitForIdle() {
+        synchronized (lock) {
+            while (draining || !pending.isEmpty()) {
+                try {
+                    lock.wait();
+                }
+                catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    protected void checkFailure() {
+        Throwable t;
+        synchronized (lock) {
+            t = failure;
+            failure = null;
+        }
+        if (t != null) {
+            throw new RuntimeException("asynchronous data pump failed", t);
+        }
+    }
+
+    protected Executor getExecutor() {
+        if (executor == null) {
+            synchronized (DataPumpListenerAsync.class) {
+                if (defaultExecutor == null) {
+                    defaultExecutor = Executors.newCachedThreadPool(r -> {
+                        Thread t = new Thread(r, "DataPumpListenerAsync");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                }
+            }
+            executor = defaultExecutor;
+        }
+        return executor;
+    }
+
+    protected static class Slot {
+        public double[] state;
+        public IData data;
+        public IDataInfo dataInfo, dataMadeFrom;
+    }
+
+    protected final Box box, shadowBox;
+    protected final Policy policy;
+    protected final ArrayDeque<Slot> pending, free;
+    protected final Object lock;
+    protected final Vector work;
+    protected Executor executor;
+    protected IDataInfo lastInfo;
+    protected boolean draining;
+    protected long droppedCount, coalescedCount;
+    protected Throwable failure;
+}
@@ -0,0 +1,405 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.action.activity.ControllerEvent;
+import etomica.data.types.DataGroup.DataInfoGroup;
+import etomica.util.IEvent;
+import etomica.util.IListener;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+/**
+ * DataSink that writes each piece of data it receives as a row of doubles in
+ * a binary file.  This is meant for time series that are sampled too often
+ * for DataLogger's text output (an energy or pressure at every step).
+ * <p>
+ * Rows are collected into chunks that are stored by column, and each chunk is
+ * written (and optionally compressed) on a background thread while the next
+ * one fills.  The column names are taken from the DataInfo (one column for
+ * each value of the Data, with sub-Data of a DataGroup in order) and written
+ * ahead of the first chunk, and again whenever the DataInfo changes.  Files
+ * can be read back with DataBinaryReader.
+ * <p>
+ * The file must be closed to write the last partial chunk.  If added as a
+ * listener to the Controller, the sink closes itself when the controller
+ * finishes.
+ * <p>
+ * File layout (big-endian): the int MAGIC and the int VERSION, then records.
+ * A schema record is the byte 'S', the number of columns and the column names
+ * (as UTF).  A chunk record is the byte 'C', the number of rows, a flags byte
+ * (1 if compressed), the number of payload bytes and the payload.  The
+ * payload holds the values column by column; when compressed, the bytes of
+ * the values are grouped by significance (all first bytes, then all second
+ * bytes...) before deflating, which compresses much better than raw doubles.
+ */
+public class DataSinkBinary implements IDataSinkPrimitive, IListener {
+
+    public static final int MAGIC = 0x45544442;
+    public static final int VERSION = 1;
+
+    public DataSinkBinary(String fileName) {
+        this(fileName, true);
+    }
+
+    /**
+     * @param fileName   the name of the file to write
+     * @param compressed whether to deflate the chunks
+     */
+    public DataSinkBinary(String fileName, boolean compressed) {
+        this.compressed = compressed;
+        chunkSize = 4096;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        lock = new Object();
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "DataSinkBinary");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Sets the number of rows in each chunk.  This must be called before any
+     * data is received.  The default is 4096.
+     */
+    public void setChunkSize(int newChunkSize) {
+        if (free != null) throw new IllegalStateException("chunk size must be set before data is received");
+        if (newChunkSize < 1) throw new IllegalArgumentException("chunk size must be positive");
+        chunkSize = newChunkSize;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Returns the number of rows received so far.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public void putDataInfo(IDataInfo dataInfo) {
+        checkFailure();
+        List<String> names = new ArrayList<>();
+        columnNames(dataInfo, names);
+        String[] newColumns = names.toArray(new String[0]);
+        if (columns != null && Arrays.equals(columns, newColumns)) return;
+        if (current != null && current.nRows > 0) {
+            submit();
+        }
+        columns = newColumns;
+        if (free == null) {
+            // one chunk filling, one waiting and one being written
+            free = new ArrayBlockingQueue<>(3);
+            for (int i = 0; i < 3; i++) {
+                free.add(new Chunk());
+            }
+        }
+        if (current == null) {
+            current = takeFree();
+        }
+        current.prepare(columns, chunkSize);
+        current.schema = columns;
+    }
+
+    /**
+     * Adds the names of the columns for the given DataInfo to the list.
+     */
+    protected static void columnNames(IDataInfo dataInfo, List<String> names) {
+        if (dataInfo instanceof DataInfoGroup) {
+            DataInfoGroup group = (DataInfoGroup) dataInfo;
+            for (int i = 0; i < group.getNDataInfo(); i++) {
+                columnNames(group.getSubDataInfo(i), names);
+            }
+            return;
+        }
+        int n = dataInfo.getLength();
+        if (n == 1) {
+            names.add(dataInfo.getLabel());
+            return;
+        }
+        for (int i = 0; i < n; i++) {
+            names.add(dataInfo.getLabel() + "[" + i + "]");
+        }
+    }
+
+    public void putData(IData data) {
+        checkRow(data.getLength());
+        double[] v = current.values;
+        int row = current.nRows;
+        for (int i = 0; i < columns.length; i++) {
+            v[i*chunkSize + row] = data.getValue(i);
+        }
+        endRow();
+    }
+
+    public void putData(double x) {
+        checkRow(1);
+        current.values[current.nRows] = x;
+        endRow();
+    }
+
+    public void putData(double[] x) {
+        checkRow(x.length);
+        double[] v = current.values;
+        int row = current.nRows;
+        for (int i = 0; i < x.length; i++) {
+            v[i*chunkSize + row] = x[i];
+        }
+        endRow();
+    }
+
+    private void checkRow(int nValues) {
+        if (columns == null) throw new IllegalStateException("DataInfo must be given before Data");
+        if (closed) throw new IllegalStateException("sink has been closed");
+        if (nValues != columns.length) {
+            throw new IllegalArgumentException("expected " + columns.length + " values, but got " + nValues);
+        }
+    }
+
+    private void endRow() {
+        current.nRows++;
+        rowCount++;
+        if (current.nRows == chunkSize) {
+            submit();
+            current = takeFree();
+            current.prepare(columns, chunkSize);
+        }
+    }
+
+    /**
+     * Hands the current chunk to the writer thread.
+     */
+    protected void submit() {
+        checkFailure();
+        final Chunk chunk = current;
+        current = null;
+        synchronized (lock) {
+            pending++;
+        }
+        executor.execute(() -> {
+            try {
+                write(chunk);
+            }
+            catch (Throwable t) {
+                synchronized (lock) {
+                    if (failure == null) failure = t;
+                }
+            }
+            finally {
+                chunk.nRows = 0;
+                chunk.schema = null;
+                free.add(chunk);
+                synchronized (lock) {
+                    pending--;
+                    lock.notifyAll();
+                }
+            }
+        });
+    }
+
+    private Chunk takeFree() {
+        try {
+            return free.take();
+        }
+        catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes the chunk (and its schema, if any).  Runs on the writer thread.
+     */
+    protected void write(Chunk chunk) throws IOException {
+        if (chunk.schema != null) {
+            out.writeByte('S');
+            out.writeInt(chunk.schema.length);
+            for (String name : chunk.schema) {
+                out.writeUTF(name);
+            }
+        }
+        int nRows = chunk.nRows;
+        if (nRows == 0) return;
+        int nValues = chunk.nColumns*nRows;
+        int nBytes = nValues*8;
+        if (bytes == null || bytes.length < nBytes) {
+            bytes = new byte[nBytes];
+        }
+        int k = 0;
+        for (int c = 0; c < chunk.nColumns; c++) {
+            int offset = c*chunk.capacity;
+            for (int r = 0; r < nRows; r++) {
+                long bits = Double.doubleToRawLongBits(chunk.values[offset + r]);
+                if (compressed) {
+                    // group bytes by significance
+                    for (int b = 0; b < 8; b++) {
+                        bytes[b*nValues + k] = (byte) (bits >>> (56 - 8*b));
+                    }
+                    k++;
+                }
+                else {
+                    for (int b = 0; b < 8; b++) {
+                        bytes[k++] = (byte) (bits >>> (56 - 8*b));
+                    }
+                }
+            }
+        }
+        out.writeByte('C');
+        out.writeInt(nRows);
+        if (!compressed) {
+            out.writeByte(0);
+            out.writeInt(nBytes);
+            out.write(bytes, 0, nBytes);
+            return;
+        }
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.BEST_SPEED);
+        }
+        deflater.reset();
+        deflater.setInput(bytes, 0, nBytes);
+        deflater.finish();
+        if (compressedBytes == null || compressedBytes.length < nBytes + 64) {
+            compressedBytes = new byte[nBytes + 64];
+        }
+        int n = 0;
+        while (!deflater.finished()) {
+            if (n == compressedBytes.length) {
+                compressedBytes = Arrays.copyOf(compressedBytes, 2*n);
+            }
+            n += deflater.deflate(compressedBytes, n, compressedBytes.length - n);
+        }
+        out.writeByte(1);
+        out.writeInt(n);
+        out.write(compressedBytes, 0, n);
+    }
+
+    /**
+     * Waits until all complete chunks have been written and flushes the file.
+     * The current partial chunk is not written.
+     */
+    public void flush() {
+        waitForWriter();
+        try {
+            out.flush();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Writes any remaining data and closes the file.
+     */
+    public void close() {
+        if (closed) return;
+        if (current != null && (current.nRows > 0 || current.schema != null)) {
+            submit();
+        }
+        waitForWriter();
+        closed = true;
+        executor.shutdown();
+        try {
+            out.close();
+        }
+        catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (deflater != null) {
+            deflater.end();
+        }
+    }
+
+    protected void waitForWriter() {
+        synchronized (lock) {
+            while (pending > 0) {
+                try {
+                    lock.wait();
+                }
+                catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    protected void checkFailure() {
+        Throwable t;
+        synchronized (lock) {
+            t = failure;
+            failure = null;
+        }
+        if (t != null) {
+            throw new RuntimeException("writing binary data failed", t);
+        }
+    }
+
+    /**
+     * Closes the file when the controller is done.
+     */
+    public void actionPerformed(IEvent evt) {
+        if (evt instanceof ControllerEvent) {
+            if (((ControllerEvent) evt).getType() == ControllerEvent.Type.NO_MORE_ACTIONS ||
+                    ((ControllerEvent) evt).getType() == ControllerEvent.Type.HALTED) {
+                close();
+            }
+        }
+    }
+
+    /**
+     * Rows of values, stored by column.
+     */
+    protected static class Chunk {
+        public double[] values;
+        public int capacity, nColumns, nRows;
+        public String[] schema;
+
+        public void prepare(String[] columns, int chunkSize) {
+            nColumns = columns.length;
+            capacity = chunkSize;
+            if (values == null || values.length < nColumns*chunkSize) {
+                values = new double[nColumns*chunkSize];
+            }
+        }
+    }
+
+    protected final boolean compressed;
+    protected final DataOutputStream out;
+    protected final ExecutorService executor;
+    protected final Object lock;
+    protected int chunkSize;
+    protected String[] columns;
+    protected ArrayBlockingQueue<Chunk> free;
+    protected Chunk current;
+    protected long rowCount;
+    protected int pending;
+    protected boolean closed;
+    protected Throwable failure;
+    // used only by the writer thread
+    protected byte[] bytes, compressedBytes;
+    protected Deflater deflater;
+}
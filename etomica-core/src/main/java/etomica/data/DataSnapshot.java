@@ -0,0 +1,73 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.util.SnapshotBuffer;
+
+import java.util.function.Function;
+
+/**
+ * DataSink that keeps a copy of the latest data it received, which other
+ * threads can read at any time without locks and without pausing the
+ * simulation.  This is like DataDump, except that DataDump holds the data
+ * object it was given, which the source may change while it is being read;
+ * DataSnapshot copies the data (through a SnapshotBuffer) as it arrives, so
+ * readers always see the values from a single putData.
+ */
+public class DataSnapshot implements IDataSink {
+
+    public DataSnapshot() {
+        buffer = new SnapshotBuffer<>(Frame::new);
+    }
+
+    public void putDataInfo(IDataInfo inputDataInfo) {
+        dataInfo = inputDataInfo;
+    }
+
+    /**
+     * Returns the DataInfo most recently received.
+     */
+    public IDataInfo getDataInfo() {
+        return dataInfo;
+    }
+
+    public void putData(IData data) {
+        Frame frame = buffer.getBackBuffer();
+        if (frame.dataInfo != dataInfo || frame.data == null) {
+            frame.dataInfo = dataInfo;
+            frame.data = dataInfo.makeData();
+        }
+        frame.data.E(data);
+        buffer.publish();
+    }
+
+    /**
+     * Applies the reader to the latest copy of the data and returns the
+     * result, or returns null if no data has been received.  The reader must
+     * not keep a reference to the Frame or its data.
+     */
+    public <R> R read(Function<? super Frame, R> reader) {
+        return buffer.read(reader);
+    }
+
+    /**
+     * Returns the number of times data has been received, so that readers can
+     * tell whether anything has changed since they last read.
+     */
+    public long getVersion() {
+        return buffer.getVersion();
+    }
+
+    /**
+     * A copy of the data, with the DataInfo that describes it.
+     */
+    public static class Frame {
+        public IData data;
+        public IDataInfo dataInfo;
+    }
+
+    protected final SnapshotBuffer<Frame> buffer;
+    protected volatile IDataInfo dataInfo;
+}
@@ -0,0 +1,27 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+/**
+ * A DataSink that can also take its data as primitive values, without an
+ * IData wrapper.  DataPump uses these methods when the source is a
+ * DataSourceScalar or returns a DataDoubleArray, and the pump's sink
+ * implements this interface, so that data sampled every step goes from the
+ * meter into the accumulator's sums without any IData calls.  putDataInfo
+ * must still be called first, as with any DataSink.
+ */
+public interface IDataSinkPrimitive extends IDataSink {
+
+    /**
+     * Equivalent to putData with Data holding the single value x.
+     */
+    void putData(double x);
+
+    /**
+     * Equivalent to putData with Data holding the values in x, in the order
+     * given by IData.getValue.  The array is not retained.
+     */
+    void putData(double[] x);
+}
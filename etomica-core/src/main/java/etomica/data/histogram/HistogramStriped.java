@@ -0,0 +1,194 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.histogram;
+
+import etomica.math.DoubleRange;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Histogram that can take values from many threads at once.  Each thread
+ * counts into its own shard of bins, so threads do not contend with each
+ * other; the shards are merged into the wrapped histogram whenever the
+ * histogram is read or its range has to change.
+ * <p>
+ * The wrapped HistogramSimple (or HistogramCollapsing or HistogramExpanding)
+ * determines the bins and what happens to values outside the range.  A value
+ * that would make a HistogramCollapsing collapse or a HistogramExpanding
+ * expand is handled by the wrapped histogram itself, after all shards have
+ * been merged, so the result is what the wrapped histogram would have
+ * collected from the same values.  Such range changes are rare once the
+ * range has settled.  The wrapped histogram should not be used directly
+ * after it has been wrapped.
+ */
+public class HistogramStriped implements Histogram {
+
+    /**
+     * Wraps the given histogram, which should have no data.
+     */
+    public HistogramStriped(HistogramSimple histogram) {
+        this.histogram = histogram;
+        shards = new CopyOnWriteArrayList<>();
+        myShard = ThreadLocal.withInitial(() -> {
+            Shard shard = new Shard();
+            synchronized (this) {
+                configure(shard);
+                shards.add(shard);
+            }
+            return shard;
+        });
+        growing = histogram instanceof HistogramCollapsing || histogram instanceof HistogramExpanding;
+    }
+
+    /**
+     * Returns the wrapped histogram, after merging data from all threads.
+     */
+    public synchronized HistogramSimple getHistogramSimple() {
+        merge(false);
+        return histogram;
+    }
+
+    public void addValue(double x) {
+        Shard shard = myShard.get();
+        synchronized (shard) {
+            if (shard.blocked) {
+                // the bins are changing; wait for that below
+            } else if (shard.nBins > 0 && x >= shard.xMin && x <= shard.xMax) {
+                int i = (int) Math.floor((x - shard.xMin) / shard.deltaX);
+                if (i == shard.nBins) i--;
+                shard.counts[i]++;
+                shard.sum++;
+                return;
+            } else if (!growing) {
+                // HistogramSimple drops it, but counts it
+                shard.sum++;
+                return;
+            }
+        }
+        // the range needs to change (or be set up)
+        synchronized (this) {
+            merge(true);
+            histogram.addValue(x);
+            configureAll();
+        }
+    }
+
+    /**
+     * Adds the counts from all shards into the wrapped histogram.  If block
+     * is true, the shards stop taking values (which then go to the wrapped
+     * histogram) until configureAll is called, so that the bins can be
+     * changed.  The caller must hold the lock on this histogram.
+     */
+    protected void merge(boolean block) {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                shard.blocked = block;
+                if (shard.sum == 0) continue;
+                for (int i = 0; i < shard.nBins; i++) {
+                    histogram.counts[i] += shard.counts[i];
+                    shard.counts[i] = 0;
+                }
+                histogram.sum += shard.sum;
+                shard.sum = 0;
+            }
+        }
+    }
+
+    /**
+     * Gives all shards the current bins of the wrapped histogram.  The
+     * caller must hold the lock on this histogram, and must have merged and
+     * blocked the shards.
+     */
+    protected void configureAll() {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                configure(shard);
+            }
+        }
+    }
+
+    /**
+     * Gives the shard the current bins of the wrapped histogram, or no bins
+     * if the histogram's range is not yet known.
+     */
+    protected void configure(Shard shard) {
+        HistogramSimple h = histogram;
+        boolean ready = h.nBins > 0 && h.deltaX > 0 && !Double.isNaN(h.xMin);
+        if (h instanceof HistogramCollapsing && ((HistogramCollapsing) h).firstValueCount == h.sum) {
+            // still waiting for a second value to set the range
+            ready = false;
+        }
+        shard.blocked = false;
+        shard.nBins = ready ? h.nBins : 0;
+        shard.xMin = h.xMin;
+        shard.xMax = h.xMax;
+        shard.deltaX = h.deltaX;
+        if (shard.counts == null || shard.counts.length < shard.nBins) {
+            shard.counts = new long[shard.nBins];
+        }
+    }
+
+    public synchronized double[] getHistogram() {
+        merge(false);
+        return histogram.getHistogram();
+    }
+
+    public synchronized double[] xValues() {
+        return histogram.xValues();
+    }
+
+    public synchronized long getCount() {
+        long count = histogram.getCount();
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                count += shard.sum;
+            }
+        }
+        return count;
+    }
+
+    public synchronized void setNBins(int n) {
+        merge(true);
+        histogram.setNBins(n);
+        configureAll();
+    }
+
+    public synchronized int getNBins() {
+        return histogram.getNBins();
+    }
+
+    public synchronized void setXRange(DoubleRange range) {
+        merge(true);
+        histogram.setXRange(range);
+        configureAll();
+    }
+
+    public synchronized DoubleRange getXRange() {
+        return histogram.getXRange();
+    }
+
+    public synchronized void reset() {
+        merge(true);
+        histogram.reset();
+        configureAll();
+    }
+
+    /**
+     * Bins for one thread.  Only the owning thread adds to the counts; other
+     * threads hold the shard's lock to merge or change the bins.
+     */
+    protected static class Shard {
+        public long[] counts;
+        public long sum;
+        public int nBins;
+        public boolean blocked;
+        public double xMin, xMax, deltaX;
+    }
+
+    protected final HistogramSimple histogram;
+    protected final CopyOnWriteArrayList<Shard> shards;
+    protected final ThreadLocal<Shard> myShard;
+    protected final boolean growing;
+}
@@ -0,0 +1,66 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.history;
+
+/**
+ * Scrolling history of an exponentially decaying average of the data.  Each
+ * point is the mean of all values added so far, with the weight of a value
+ * falling by a factor of e for every decayLength values that come after it.
+ * The average is normalized by the total weight, so it is not biased toward
+ * zero before many values have been added.  This smooths noisy data without
+ * the lag of a long rolling window, and without keeping the values.
+ * <p>
+ * Adding a value takes constant time; the points are kept in the ring
+ * buffer of HistoryScrolling.
+ */
+public class HistoryExponential extends HistoryScrolling {
+
+    public HistoryExponential() {
+        this(100, 10);
+    }
+
+    /**
+     * @param n           the number of points kept
+     * @param decayLength the number of values over which the weight of a
+     *                    value falls by a factor of e
+     */
+    public HistoryExponential(int n, double decayLength) {
+        super(n);
+        setDecayLength(decayLength);
+    }
+
+    /**
+     * Sets the number of values over which the weight of a value falls by a
+     * factor of e.  This resets the history.
+     */
+    public void setDecayLength(double decayLength) {
+        if (!(decayLength > 0)) {
+            throw new IllegalArgumentException("decay length must be positive");
+        }
+        this.decayLength = decayLength;
+        decay = Math.exp(-1 / decayLength);
+        reset();
+    }
+
+    public double getDecayLength() {
+        return decayLength;
+    }
+
+    public void reset() {
+        super.reset();
+        weightedSum = 0;
+        totalWeight = 0;
+    }
+
+    public boolean addValue(double x, double y) {
+        if (Double.isNaN(y)) return false;
+        weightedSum = decay * weightedSum + y;
+        totalWeight = decay * totalWeight + 1;
+        return super.addValue(x, weightedSum / totalWeight);
+    }
+
+    protected double decayLength, decay;
+    protected double weightedSum, totalWeight;
+}
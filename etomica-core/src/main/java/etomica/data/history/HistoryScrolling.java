@@ -11,6 +11,10 @@ package etomica.data.history;
  * getHistory method will have the earliest first in the array, and the
  * most recent last.  If presented as a plot, the effect will be to 
  * scroll the data across the plot window. 
+ * <p>
+ * Adding a value takes constant time.  The arrays returned by getHistory and
+ * getXValues are only rebuilt if values were added since the last call, and
+ * getValue and getXValue read single values without copying anything.
  * @author kofke, schultz, cribbin
  */
 public class HistoryScrolling implements History, java.io.Serializable {
@@ -54,6 +58,7 @@ public class HistoryScrolling implements History, java.io.Serializable {
         }
         tempX = new double[n];
         tempY = new double[n];
+        xChanged = yChanged = true;
     }
     
     public int getHistoryLength() {
@@ -74,9 +79,28 @@ public class HistoryScrolling implements History, java.io.Serializable {
 	    }
 	    cursor = 0;
 	    full = false;
+	    xChanged = yChanged = true;
 	}
+
+    /**
+     * Returns the i-th y value held by the history, with 0 being the
+     * earliest.  i must be less than getSampleCount().
+     */
+    public double getValue(int i) {
+        return history[full ? (cursor + i) % history.length : i];
+    }
+
+    /**
+     * Returns the i-th x value held by the history, with 0 being the
+     * earliest.  i must be less than getSampleCount().
+     */
+    public double getXValue(int i) {
+        return xValues[full ? (cursor + i) % history.length : i];
+    }
     
     public double[] getXValues() {
+        if (!xChanged) return tempX;
+        xChanged = false;
         int n=history.length;
 
         System.arraycopy(xValues,cursor,tempX,0,n-cursor);
@@ -89,6 +113,7 @@ public class HistoryScrolling implements History, java.io.Serializable {
         xValues[cursor] = x;
         history[cursor] = y;
         cursor++;
+        xChanged = yChanged = true;
         if(cursor == history.length) {
             cursor = 0;
             full = true;
@@ -100,6 +125,8 @@ public class HistoryScrolling implements History, java.io.Serializable {
      * Returns an array with the most recent history at the end.
      */
     public double[] getHistory() {
+        if (!yChanged) return tempY;
+        yChanged = false;
 		int n=history.length;
 
 		System.arraycopy(history,cursor,tempY,0,n-cursor);
@@ -118,5 +145,6 @@ public class HistoryScrolling implements History, java.io.Serializable {
     protected double[] tempX = new double[0];
     protected double[] xValues = new double[0];
     protected boolean full = false;
+    protected boolean xChanged = true, yChanged = true;
 
 }
@@ -0,0 +1,270 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.history;
+
+/**
+ * History that keeps the recent data in full and older data at progressively
+ * lower resolution, so that a long run can be shown with a fixed number of
+ * points.  The history is made of tiers, each a ring buffer of the same
+ * length.  Tier 0 holds the latest values; each point in tier t summarizes
+ * factor^t consecutive values, keeping their mean, minimum and maximum (and
+ * the x value of the last of them).  Each tier therefore covers factor times
+ * as much of the run as the one before it.
+ * <p>
+ * getHistory returns the points of all tiers in order, earliest first; the y
+ * value of a summarized point is the mean.  Where two tiers overlap, the
+ * finer tier is used from the first point of the coarser tier that it covers
+ * completely, so the tiers meet without gaps.  getMinHistory and getMaxHistory return
+ * the corresponding minima and maxima, so that the spread of the data hidden
+ * by the averaging can be shown.  Before the history is full, the arrays
+ * start with NaN.
+ * <p>
+ * Adding a value takes constant time (amortized over the tiers), and the
+ * arrays are only rebuilt if values were added since they were last
+ * retrieved.
+ */
+public class HistoryTiered implements History {
+
+    /**
+     * Makes a history with 4 tiers of 100 points, each tier summarizing 10
+     * times as many values as the one before it.
+     */
+    public HistoryTiered() {
+        this(100, 4, 10);
+    }
+
+    /**
+     * @param tierLength the number of points in each tier; with more than
+     *                   one tier, this must be at least factor
+     * @param nTiers     the number of tiers
+     * @param factor     the number of points of one tier summarized by each
+     *                   point of the next
+     */
+    public HistoryTiered(int tierLength, int nTiers, int factor) {
+        if (nTiers < 1 || factor < 2) {
+            throw new IllegalArgumentException("need at least 1 tier and a factor of at least 2");
+        }
+        this.nTiers = nTiers;
+        this.factor = factor;
+        tiers = new Tier[nTiers];
+        setTierLength(tierLength);
+    }
+
+    /**
+     * Sets the total number of points, which must be a multiple of the
+     * number of tiers.  This resets the history.
+     */
+    public void setHistoryLength(int n) {
+        if (n % nTiers != 0) {
+            throw new IllegalArgumentException("History length (" + n + ") must be a multiple of the # of tiers (" + nTiers + ")");
+        }
+        setTierLength(n / nTiers);
+    }
+
+    protected void setTierLength(int tierLength) {
+        if (tierLength < 1) {
+            throw new IllegalArgumentException("tier length must be positive");
+        }
+        if (nTiers > 1 && tierLength < factor) {
+            // a tier would not reach back to where the next one begins
+            throw new IllegalArgumentException("tier length (" + tierLength + ") must be at least the factor (" + factor + ")");
+        }
+        for (int t = 0; t < nTiers; t++) {
+            tiers[t] = new Tier(tierLength);
+        }
+        int n = tierLength * nTiers;
+        xValues = new double[n];
+        history = new double[n];
+        minHistory = new double[n];
+        maxHistory = new double[n];
+        reset();
+    }
+
+    public int getHistoryLength() {
+        return history.length;
+    }
+
+    public int getTierLength() {
+        return tiers[0].x.length;
+    }
+
+    public int getNumTiers() {
+        return nTiers;
+    }
+
+    public int getFactor() {
+        return factor;
+    }
+
+    /**
+     * Returns the number of points held in all tiers.  This does not count
+     * points of one tier that are hidden by another tier.
+     */
+    public int getSampleCount() {
+        build();
+        return nPoints;
+    }
+
+    public void reset() {
+        for (Tier tier : tiers) {
+            tier.reset();
+        }
+        nValues = 0;
+        changed = true;
+    }
+
+    public boolean addValue(double x, double y) {
+        add(0, x, y, y, y, nValues);
+        nValues++;
+        changed = true;
+        return true;
+    }
+
+    /**
+     * Adds a point to the given tier and to the summary being collected for
+     * the next tier.
+     */
+    protected void add(int t, double x, double mean, double min, double max, long first) {
+        Tier tier = tiers[t];
+        tier.add(x, mean, min, max, first);
+        if (t + 1 == nTiers) return;
+        if (tier.nPending == 0) {
+            tier.pendingFirst = first;
+            tier.pendingMin = min;
+            tier.pendingMax = max;
+        }
+        else {
+            if (min < tier.pendingMin) tier.pendingMin = min;
+            if (max > tier.pendingMax) tier.pendingMax = max;
+        }
+        tier.pendingSum += mean;
+        if (++tier.nPending == factor) {
+            double pendingMean = tier.pendingSum / factor;
+            tier.nPending = 0;
+            tier.pendingSum = 0;
+            add(t + 1, x, pendingMean, tier.pendingMin, tier.pendingMax, tier.pendingFirst);
+        }
+    }
+
+    public double[] getXValues() {
+        build();
+        return xValues;
+    }
+
+    /**
+     * Returns the means of the points, earliest first.
+     */
+    public double[] getHistory() {
+        build();
+        return history;
+    }
+
+    /**
+     * Returns the minimum of the values summarized by each point.
+     */
+    public double[] getMinHistory() {
+        build();
+        return minHistory;
+    }
+
+    /**
+     * Returns the maximum of the values summarized by each point.
+     */
+    public double[] getMaxHistory() {
+        build();
+        return maxHistory;
+    }
+
+    /**
+     * Fills the arrays from the tiers if anything has changed.
+     */
+    protected void build() {
+        if (!changed) return;
+        changed = false;
+        int n = history.length;
+        // work back from the end, finest tier first.  Each tier is used for
+        // the values from "from" up to (not including) "before", where the
+        // finer tier begins.
+        int k = n;
+        long before = Long.MAX_VALUE;
+        long span = 1;
+        for (int t = 0; t < nTiers && k > 0; t++) {
+            Tier tier = tiers[t];
+            if (tier.nStored == 0) break;
+            int len = tier.x.length;
+            long from = Long.MIN_VALUE;
+            if (t + 1 < nTiers && tiers[t + 1].nStored > 0) {
+                // points of the next tier begin at multiples of its span;
+                // start at the first one that this tier covers completely.
+                // Because the tier is at least factor points long, the next
+                // tier has every point before that.
+                long nextSpan = span * factor;
+                long oldest = tier.first[(tier.head - tier.nStored + 1 + len) % len];
+                from = (oldest + nextSpan - 1) / nextSpan * nextSpan;
+            }
+            for (int i = 0; i < tier.nStored && k > 0; i++) {
+                int j = (tier.head - i + len) % len;
+                if (tier.first[j] >= before) continue;
+                if (tier.first[j] < from) break;
+                k--;
+                xValues[k] = tier.x[j];
+                history[k] = tier.mean[j];
+                minHistory[k] = tier.min[j];
+                maxHistory[k] = tier.max[j];
+            }
+            before = from;
+            span *= factor;
+        }
+        nPoints = n - k;
+        for (int i = 0; i < k; i++) {
+            xValues[i] = history[i] = minHistory[i] = maxHistory[i] = Double.NaN;
+        }
+    }
+
+    /**
+     * A ring buffer of points.
+     */
+    protected static class Tier {
+        public final double[] x, mean, min, max;
+        // index (in the whole run) of the first value summarized by each point
+        public final long[] first;
+        public int head, nStored;
+        public int nPending;
+        public double pendingSum, pendingMin, pendingMax;
+        public long pendingFirst;
+
+        public Tier(int n) {
+            x = new double[n];
+            mean = new double[n];
+            min = new double[n];
+            max = new double[n];
+            first = new long[n];
+        }
+
+        public void reset() {
+            head = -1;
+            nStored = 0;
+            nPending = 0;
+            pendingSum = 0;
+        }
+
+        public void add(double newX, double newMean, double newMin, double newMax, long newFirst) {
+            head = (head + 1) % x.length;
+            x[head] = newX;
+            mean[head] = newMean;
+            min[head] = newMin;
+            max[head] = newMax;
+            first[head] = newFirst;
+            if (nStored < x.length) nStored++;
+        }
+    }
+
+    protected final int nTiers, factor;
+    protected final Tier[] tiers;
+    protected double[] xValues, history, minHistory, maxHistory;
+    protected long nValues;
+    protected int nPoints;
+    protected boolean changed;
+}
@@ -0,0 +1,534 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.data.DataTag;
+import etomica.data.IData;
+import etomica.data.IDataInfo;
+import etomica.data.IDataSource;
+import etomica.data.types.DataFunction;
+import etomica.data.types.DataFunction.DataInfoFunction;
+import etomica.space.Boundary;
+import etomica.space.BoundaryRectangular;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.units.dimensions.Null;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * RDF meter that bins atoms into cells no smaller than xMax, so that only
+ * pairs in the same or adjacent cells are examined.  The cost of a
+ * measurement is proportional to the number of atoms rather than the number
+ * of pairs.  Cells are rebuilt from the atom positions for each measurement,
+ * so the meter does not need (or interfere with) the integrator's neighbor
+ * lists.
+ * <p>
+ * Besides the RDF returned by getData (all pairs, or the pair given to
+ * setAtomTypes), any number of additional type pairs can be tabulated in the
+ * same sweep with addTypePair; the RDF for each is available from the data
+ * source returned by getTypePairDataSource.  As with MeterRDF, the pair given
+ * to setAtomTypes is ordered: only pairs where the atom of type1 comes first
+ * in the box's leaf list are counted.  Pairs given to addTypePair are
+ * unordered, so they use every pair of atoms with those types.
+ * <p>
+ * The cells are divided among numThreads threads, each with its own
+ * histograms, which are summed at the end of each measurement.  The threads
+ * are kept between measurements; call dispose when the meter is no longer
+ * needed to stop them.  Cells are only used for rectangular boundaries; for
+ * other boundaries all pairs are examined on a single thread.
+ */
+public class MeterRDFCell extends MeterRDF {
+
+    private static final long serialVersionUID = 1L;
+
+    public MeterRDFCell(Space space) {
+        super(space);
+        pairTypes = new ArrayList<>();
+        pairSources = new ArrayList<>();
+        pairSums = new long[0][0];
+        numThreads = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Sets the number of threads used to sweep the cells.  The default is
+     * the number of available processors.
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) throw new IllegalArgumentException("need at least one thread");
+        if (newNumThreads != numThreads && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        numThreads = newNumThreads;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Shuts down the threads used to sweep the cells.  The meter can still be
+     * used afterwards; new threads are started if needed.
+     */
+    public void dispose() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Adds a pair of atom types whose RDF is tabulated along with the main
+     * RDF.  Pairs are unordered, so (a,b) and (b,a) are the same.
+     *
+     * @return the index of the pair, to be passed to getTypePairDataSource
+     */
+    public int addTypePair(AtomType typeA, AtomType typeB) {
+        pairTypes.add(new AtomType[]{typeA, typeB});
+        pairSources.add(new TypePairDataSource(pairTypes.size()-1));
+        pairSums = new long[pairTypes.size()][gSum.length];
+        return pairTypes.size()-1;
+    }
+
+    public int getNumTypePairs() {
+        return pairTypes.size();
+    }
+
+    /**
+     * Returns a data source for the RDF of the given type pair.
+     */
+    public IDataSource getTypePairDataSource(int iPair) {
+        return pairSources.get(iPair);
+    }
+
+    public void reset() {
+        super.reset();
+        pairSums = new long[pairTypes.size()][gSum.length];
+    }
+
+    /**
+     * Takes the RDF for the current configuration of the given box.
+     */
+    public void actionPerformed() {
+        if (rData != xDataSource.getData() ||
+            data.getLength() != rData.getLength() ||
+            xDataSource.getXMax() != xMax) {
+            reset();
+        }
+
+        IAtomList atoms = box.getLeafList();
+        setupTypes(atoms);
+        if (!(box.getBoundary() instanceof BoundaryRectangular)) {
+            sweepAllPairs(atoms);
+            callCount++;
+            return;
+        }
+
+        setupCells(atoms);
+
+        int nChunks = numThreads == 1 ? 1 : Math.min(numThreads*4, nCells);
+        if (chunkSums == null || chunkSums.length != nChunks || chunkSums[0][0].length != gSum.length
+                || chunkSums[0].length != pairSums.length+1) {
+            chunkSums = new long[nChunks][pairSums.length+1][gSum.length];
+        }
+        if (nChunks == 1) {
+            sweepCells(0, nCells, chunkSums[0]);
+        }
+        else {
+            List<Callable<Object>> tasks = new ArrayList<>(nChunks);
+            for (int i=0; i<nChunks; i++) {
+                final int start = (int)((long)nCells*i/nChunks);
+                final int end = (int)((long)nCells*(i+1)/nChunks);
+                final long[][] sums = chunkSums[i];
+                tasks.add(() -> {
+                    sweepCells(start, end, sums);
+                    return null;
+                });
+            }
+            if (pool == null) {
+                pool = new ForkJoinPool(numThreads);
+            }
+            try {
+                for (Future<Object> f : pool.invokeAll(tasks)) {
+                    f.get();
+                }
+            }
+            catch (InterruptedException | ExecutionException ex) {
+                throw new RuntimeException(ex);
+            }
+        }
+
+        for (long[][] sums : chunkSums) {
+            for (int j=0; j<gSum.length; j++) {
+                gSum[j] += sums[0][j];
+                sums[0][j] = 0;
+            }
+            for (int k=0; k<pairSums.length; k++) {
+                long[] s = sums[k+1];
+                for (int j=0; j<gSum.length; j++) {
+                    pairSums[k][j] += s[j];
+                    s[j] = 0;
+                }
+            }
+        }
+        callCount++;
+    }
+
+    /**
+     * Assigns each atom a code for its type (its position in the list of
+     * types we care about, or -1) and builds the table of type-pair
+     * histograms to increment for each pair of codes.
+     */
+    protected void setupTypes(IAtomList atoms) {
+        List<AtomType> types = new ArrayList<>();
+        if (type1 != null) {
+            addType(types, type1);
+            addType(types, type2);
+        }
+        typeCode1 = types.indexOf(type1);
+        typeCode2 = types.indexOf(type2);
+        for (AtomType[] pair : pairTypes) {
+            addType(types, pair[0]);
+            addType(types, pair[1]);
+        }
+        nTypeCodes = types.size();
+        int[][] table = new int[nTypeCodes*nTypeCodes][];
+        for (int c1=0; c1<nTypeCodes; c1++) {
+            for (int c2=0; c2<nTypeCodes; c2++) {
+                AtomType t1 = types.get(c1), t2 = types.get(c2);
+                List<Integer> hists = new ArrayList<>();
+                for (int k=0; k<pairTypes.size(); k++) {
+                    AtomType[] pair = pairTypes.get(k);
+                    if ((t1 == pair[0] && t2 == pair[1]) || (t1 == pair[1] && t2 == pair[0])) {
+                        hists.add(k+1);
+                    }
+                }
+                int[] h = new int[hists.size()];
+                for (int i=0; i<h.length; i++) {
+                    h[i] = hists.get(i);
+                }
+                table[c1*nTypeCodes+c2] = h;
+            }
+        }
+        pairHistograms = table;
+
+        int n = atoms.size();
+        if (typeCode == null || typeCode.length != n) {
+            typeCode = new int[n];
+        }
+        for (int i=0; i<n; i++) {
+            typeCode[i] = types.indexOf(atoms.get(i).getType());
+        }
+    }
+
+    private static void addType(List<AtomType> types, AtomType type) {
+        if (!types.contains(type)) types.add(type);
+    }
+
+    /**
+     * Copies the atom positions and sorts the atoms into cells.
+     */
+    protected void setupCells(IAtomList atoms) {
+        int n = atoms.size();
+        int D = space.D();
+        Boundary boundary = box.getBoundary();
+        Vector boxSize = boundary.getBoxSize();
+        if (cellCount == null) {
+            cellCount = new int[D];
+            boxLength = new double[D];
+            periodic = new boolean[D];
+        }
+        nCells = 1;
+        for (int d=0; d<D; d++) {
+            boxLength[d] = boxSize.getX(d);
+            periodic[d] = boundary.getPeriodicity(d);
+            int nc = (int)(boxLength[d]/xMax);
+            // with periodic boundaries, fewer than 3 cells would let one
+            // neighbor be visited from both sides
+            if (nc < 1 || (periodic[d] && nc < 3)) nc = 1;
+            cellCount[d] = nc;
+            nCells *= nc;
+        }
+        makeStencil();
+
+        if (position == null || position.length != n*D) {
+            position = new double[n*D];
+            cellNext = new int[n];
+        }
+        if (cellHead == null || cellHead.length != nCells) {
+            cellHead = new int[nCells];
+        }
+        for (int c=0; c<nCells; c++) {
+            cellHead[c] = -1;
+        }
+        for (int i=0; i<n; i++) {
+            Vector p = atoms.get(i).getPosition();
+            int c = 0;
+            for (int d=0; d<D; d++) {
+                double x = p.getX(d);
+                position[i*D+d] = x;
+                int nc = cellCount[d];
+                int cd = (int)Math.floor((x/boxLength[d] + 0.5)*nc);
+                if (periodic[d]) {
+                    cd %= nc;
+                    if (cd < 0) cd += nc;
+                }
+                else if (cd < 0) cd = 0;
+                else if (cd >= nc) cd = nc-1;
+                c = c*nc + cd;
+            }
+            cellNext[i] = cellHead[c];
+            cellHead[c] = i;
+        }
+    }
+
+    /**
+     * Builds the half stencil of neighboring cell offsets: those whose first
+     * nonzero component is positive.  Dimensions with one cell only get
+     * offset 0.
+     */
+    protected void makeStencil() {
+        int D = space.D();
+        List<int[]> offsets = new ArrayList<>();
+        int[] o = new int[D];
+        int nTotal = 1;
+        for (int d=0; d<D; d++) nTotal *= 3;
+        for (int m=0; m<nTotal; m++) {
+            int mm = m;
+            boolean ok = true;
+            for (int d=D-1; d>=0; d--) {
+                o[d] = mm%3 - 1;
+                mm /= 3;
+                if (o[d] != 0 && cellCount[d] == 1) ok = false;
+            }
+            if (!ok) continue;
+            int first = 0;
+            for (int d=0; d<D && first == 0; d++) {
+                first = o[d];
+            }
+            if (first > 0) offsets.add(o.clone());
+        }
+        stencil = offsets.toArray(new int[0][]);
+    }
+
+    /**
+     * Tabulates pairs with the first atom in cells start to end-1.
+     */
+    protected void sweepCells(int start, int end, long[][] sums) {
+        int D = space.D();
+        int[] coord = new int[D];
+        for (int c=start; c<end; c++) {
+            if (cellHead[c] < 0) continue;
+            int cc = c;
+            for (int d=D-1; d>=0; d--) {
+                coord[d] = cc%cellCount[d];
+                cc /= cellCount[d];
+            }
+            for (int i=cellHead[c]; i>=0; i=cellNext[i]) {
+                for (int j=cellNext[i]; j>=0; j=cellNext[j]) {
+                    tabulate(i, j, sums);
+                }
+            }
+            for (int[] o : stencil) {
+                int c2 = 0;
+                boolean inside = true;
+                for (int d=0; d<D; d++) {
+                    int nc = cellCount[d];
+                    int cd = coord[d] + o[d];
+                    if (cd < 0 || cd >= nc) {
+                        if (!periodic[d]) {
+                            inside = false;
+                            break;
+                        }
+                        cd = (cd+nc)%nc;
+                    }
+                    c2 = c2*nc + cd;
+                }
+                if (!inside || cellHead[c2] < 0) continue;
+                for (int i=cellHead[c]; i>=0; i=cellNext[i]) {
+                    for (int j=cellHead[c2]; j>=0; j=cellNext[j]) {
+                        tabulate(i, j, sums);
+                    }
+                }
+            }
+        }
+    }
+
+    protected void tabulate(int i, int j, long[][] sums) {
+        int D = boxLength.length;
+        double r2 = 0;
+        for (int d=0; d<D; d++) {
+            double dx = position[j*D+d] - position[i*D+d];
+            if (periodic[d]) {
+                dx -= boxLength[d]*Math.rint(dx/boxLength[d]);
+            }
+            r2 += dx*dx;
+        }
+        if (r2 >= xMax*xMax) return;
+        int index = xDataSource.getIndex(Math.sqrt(r2));
+        int ci = typeCode[i], cj = typeCode[j];
+        if (type1 == null || (i < j ? (ci == typeCode1 && cj == typeCode2) : (cj == typeCode1 && ci == typeCode2))) {
+            sums[0][index]++;
+        }
+        if (ci < 0 || cj < 0) return;
+        for (int h : pairHistograms[ci*nTypeCodes+cj]) {
+            sums[h][index]++;
+        }
+    }
+
+    /**
+     * Tabulates all pairs, for boundaries that cannot use cells.
+     */
+    protected void sweepAllPairs(IAtomList atoms) {
+        Boundary boundary = box.getBoundary();
+        Vector dr = space.makeVector();
+        double xMaxSquared = xMax*xMax;
+        int n = atoms.size();
+        for (int i=0; i<n; i++) {
+            Vector pi = atoms.get(i).getPosition();
+            int ci = typeCode[i];
+            for (int j=i+1; j<n; j++) {
+                dr.Ev1Mv2(atoms.get(j).getPosition(), pi);
+                boundary.nearestImage(dr);
+                double r2 = dr.squared();
+                if (r2 >= xMaxSquared) continue;
+                int index = xDataSource.getIndex(Math.sqrt(r2));
+                int cj = typeCode[j];
+                if (type1 == null || (ci == typeCode1 && cj == typeCode2)) gSum[index]++;
+                if (ci < 0 || cj < 0) continue;
+                for (int h : pairHistograms[ci*nTypeCodes+cj]) {
+                    pairSums[h-1][index]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the RDF, averaged over the calls to actionPerformed since the
+     * meter was reset or had some parameter changed (xMax or # of bins).
+     */
+    public IData getData() {
+        if (rData != xDataSource.getData() ||
+            data.getLength() != rData.getLength() ||
+            xDataSource.getXMax() != xMax) {
+            reset();
+            return data;
+        }
+        long numAtomPairs;
+        if (type1 == null) {
+            long numAtoms = box.getLeafList().size();
+            numAtomPairs = numAtoms*(numAtoms-1)/2;
+        }
+        else {
+            numAtomPairs = countOrderedPairs(type1, type2);
+        }
+        normalize(gSum, numAtomPairs, data.getData());
+        return data;
+    }
+
+    /**
+     * Returns the number of distinct pairs of atoms with the given types,
+     * found from the number of atoms of each type.
+     */
+    protected long countPairs(AtomType typeA, AtomType typeB) {
+        long nA = 0, nB = 0;
+        IAtomList atoms = box.getLeafList();
+        for (int i=0; i<atoms.size(); i++) {
+            AtomType t = atoms.get(i).getType();
+            if (t == typeA) nA++;
+            if (t == typeB) nB++;
+        }
+        return typeA == typeB ? nA*(nA-1)/2 : nA*nB;
+    }
+
+    /**
+     * Returns the number of pairs of atoms where an atom of typeA comes
+     * before an atom of typeB in the leaf list (the pairs MeterRDF counts).
+     */
+    protected long countOrderedPairs(AtomType typeA, AtomType typeB) {
+        long nA = 0, nPairs = 0;
+        IAtomList atoms = box.getLeafList();
+        for (int i=0; i<atoms.size(); i++) {
+            AtomType t = atoms.get(i).getType();
+            if (t == typeB) nPairs += nA;
+            if (t == typeA) nA++;
+        }
+        return nPairs;
+    }
+
+    protected void normalize(long[] sum, long numAtomPairs, double[] y) {
+        double norm = numAtomPairs * callCount / box.getBoundary().volume();
+        double[] r = rData.getData();
+        double dx2 = 0.5*(xMax - xDataSource.getXMin())/r.length;
+        for (int i=0; i<r.length; i++) {
+            double vShell = space.sphereVolume(r[i]+dx2)-space.sphereVolume(r[i]-dx2);
+            y[i] = sum[i] / (norm*vShell);
+        }
+    }
+
+    /**
+     * Data source for the RDF of one of the additional type pairs.
+     */
+    protected class TypePairDataSource implements IDataSource, java.io.Serializable {
+        private static final long serialVersionUID = 1L;
+        protected final int iPair;
+        protected final DataTag pairTag;
+        protected DataFunction pairData;
+        protected DataInfoFunction pairDataInfo;
+
+        public TypePairDataSource(int iPair) {
+            this.iPair = iPair;
+            pairTag = new DataTag();
+        }
+
+        public IData getData() {
+            if (rData != xDataSource.getData() ||
+                data.getLength() != rData.getLength() ||
+                xDataSource.getXMax() != xMax) {
+                reset();
+            }
+            getDataInfo();
+            AtomType[] types = pairTypes.get(iPair);
+            normalize(pairSums[iPair], countPairs(types[0], types[1]), pairData.getData());
+            return pairData;
+        }
+
+        public IDataInfo getDataInfo() {
+            if (pairData == null || pairData.getLength() != rData.getLength()) {
+                pairData = new DataFunction(new int[]{rData.getLength()});
+                pairDataInfo = new DataInfoFunction("g(r)", Null.DIMENSION, MeterRDFCell.this);
+                pairDataInfo.addTag(pairTag);
+            }
+            return pairDataInfo;
+        }
+
+        public DataTag getTag() {
+            return pairTag;
+        }
+    }
+
+    protected final List<AtomType[]> pairTypes;
+    protected final List<TypePairDataSource> pairSources;
+    protected long[][] pairSums;
+    protected int numThreads;
+    protected transient ForkJoinPool pool;
+    protected transient long[][][] chunkSums;
+    protected transient int[] typeCode;
+    protected transient int[][] pairHistograms;
+    protected transient int nTypeCodes, typeCode1, typeCode2;
+    protected transient double[] position, boxLength;
+    protected transient boolean[] periodic;
+    protected transient int[] cellCount, cellHead, cellNext;
+    protected transient int[][] stencil;
+    protected transient int nCells;
+}
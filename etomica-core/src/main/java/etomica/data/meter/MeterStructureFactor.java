@@ -11,8 +11,7 @@ import etomica.data.types.DataDoubleArray;
 import etomica.data.types.DataDoubleArray.DataInfoDoubleArray;
 import etomica.data.types.DataFunction;
 import etomica.data.types.DataFunction.DataInfoFunction;
-import etomica.lattice.crystal.Primitive;
-import etomica.lattice.crystal.PrimitiveGeneral;
+import etomica.math.numerical.GridFourierTransform;
 import etomica.space.Space;
 import etomica.space.Vector;
 import etomica.units.dimensions.Null;
@@ -64,13 +63,15 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
 	protected int makeWaveVector(double cutoff) {
         int nVec = 0;
         double[] x = xData == null ? null : xData.getData();
-        Vector[] edges = new Vector[3];
-        edges[0] = box.getBoundary().getEdgeVector(0);
-        edges[1] = box.getBoundary().getEdgeVector(1);
-        edges[2] = box.getBoundary().getEdgeVector(2);
-        Primitive primitiveBox = new PrimitiveGeneral(space, edges);
-        Primitive recip = primitiveBox.makeReciprocal();
-        Vector[] basis = recip.vectors();
+        int D = space.D();
+        Vector[] edges = new Vector[D];
+        for (int i=0; i<D; i++) {
+            edges[i] = box.getBoundary().getEdgeVector(i);
+        }
+        Vector[] basis = makeReciprocal(space, edges);
+        if (basis == null) {
+            throw new RuntimeException("box edge vectors are not independent");
+        }
 
         double cutoff2 = cutoff*cutoff;
 
@@ -83,9 +84,7 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
         }
 
         int[] idx = new int[space.D()];
-        idx[0] = 0;
-        idx[1] = 0;
-        idx[2] = 1;
+        idx[idx.length-1] = 1;
         while (true) {
             Vector v = space.makeVector();
             boolean success = false;
@@ -115,6 +114,24 @@ public class MeterStructureFactor implements IDataSource, DataSourceIndependent
         return nVec;
 	}
 
+    /**
+     * Returns the reciprocal vectors b_i of the given edge vectors a_j, with
+     * b_i.a_j = 2 pi delta_ij, or null if the edge vectors are not linearly
+     * independent.
+     */
+    protected static Vector[] makeReciprocal(Space space, Vector[] edges) {
+        double[][] dual = GridFourierTransform.dualVectors(edges);
+        if (dual == null) return null;
+        Vector[] reciprocal = new Vector[dual.length];
+        for (int i=0; i<dual.length; i++) {
+            reciprocal[i] = space.makeVector();
+            for (int j=0; j<dual.length; j++) {
+                reciprocal[i].setX(j, 2*Math.PI*dual[i][j]);
+            }
+        }
+        return reciprocal;
+    }
+
     /**
      * Sets the wave vector cutoff.  All wave vectors consistent with the box
      * shape that have a magnitude less than the cutoff will be computed.
@@ -0,0 +1,366 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.box.Box;
+import etomica.data.IData;
+import etomica.math.numerical.GridFourierTransform;
+import etomica.space.Boundary;
+import etomica.space.Space;
+import etomica.space.Vector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Structure factor meter for large sets of wave vectors.  Atoms are assigned
+ * to a periodic grid spanning the box (nearest grid point, cloud-in-cell or
+ * triangular-shaped-cloud assignment) and the density is Fourier transformed
+ * with an FFT, giving rho(k) for every wave vector commensurate with the box
+ * at once.  The smoothing from the assignment can be divided out
+ * (deconvolution), which is on by default.  The result is approximate; the
+ * error from aliasing drops with higher assignment order and a finer grid
+ * (see setOversampling).
+ * <p>
+ * For small sets of wave vectors, or wave vectors that are not commensurate
+ * with the current box (custom wave vectors, or after the box has changed
+ * size), S(k) is computed exactly by direct summation, with the wave vectors
+ * divided among numThreads threads.
+ */
+public class MeterStructureFactorFFT extends MeterStructureFactor {
+
+    public enum Method {AUTO, FFT, DIRECT}
+
+    public MeterStructureFactorFFT(Space space, Box aBox, double cutoff) {
+        super(space, aBox, cutoff);
+        method = Method.AUTO;
+        assignmentOrder = 3;
+        deconvolute = true;
+        oversampling = 2;
+        numThreads = Runtime.getRuntime().availableProcessors();
+        fft = new GridFourierTransform();
+    }
+
+    /**
+     * Sets how S(k) is computed.  AUTO uses the FFT when all wave vectors
+     * are commensurate with the box and the FFT is expected to be cheaper.
+     * FFT throws if some wave vector is not commensurate.
+     */
+    public void setMethod(Method newMethod) {
+        method = newMethod;
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * Returns true if the last call to getData used the FFT.
+     */
+    public boolean getLastUsedFFT() {
+        return lastUsedFFT;
+    }
+
+    /**
+     * Sets the order of the assignment of atoms to the grid: 1 (nearest grid
+     * point), 2 (cloud-in-cell) or 3 (triangular-shaped cloud, the default).
+     */
+    public void setAssignmentOrder(int newAssignmentOrder) {
+        if (newAssignmentOrder < 1 || newAssignmentOrder > 3) {
+            throw new IllegalArgumentException("assignment order must be 1, 2 or 3");
+        }
+        assignmentOrder = newAssignmentOrder;
+    }
+
+    public int getAssignmentOrder() {
+        return assignmentOrder;
+    }
+
+    /**
+     * Sets whether rho(k) is divided by the Fourier transform of the
+     * assignment function.
+     */
+    public void setDeconvolute(boolean newDeconvolute) {
+        deconvolute = newDeconvolute;
+    }
+
+    public boolean getDeconvolute() {
+        return deconvolute;
+    }
+
+    /**
+     * Sets the ratio of grid points to the minimum needed to resolve the
+     * largest wave vector, in each direction.  The grid is then rounded up
+     * to a power of 2.  The default is 2.
+     */
+    public void setOversampling(double newOversampling) {
+        if (newOversampling < 1) throw new IllegalArgumentException("oversampling must be at least 1");
+        oversampling = newOversampling;
+    }
+
+    public double getOversampling() {
+        return oversampling;
+    }
+
+    /**
+     * Sets the number of threads used for the direct sum.  The default is
+     * the number of available processors.
+     */
+    public void setNumThreads(int newNumThreads) {
+        if (newNumThreads < 1) throw new IllegalArgumentException("need at least one thread");
+        if (newNumThreads != numThreads && pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+        numThreads = newNumThreads;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public IData getData() {
+        int n = atomList.size();
+        int D = space.D();
+        if (position == null || position.length != n*D) {
+            position = new double[n*D];
+        }
+        for (int i=0; i<n; i++) {
+            Vector p = atomList.get(i).getPosition();
+            for (int d=0; d<D; d++) {
+                position[i*D+d] = p.getX(d);
+            }
+        }
+
+        lastUsedFFT = false;
+        if (method != Method.DIRECT) {
+            boolean commensurate = setupGrid();
+            if (!commensurate && method == Method.FFT) {
+                throw new IllegalStateException("wave vectors are not commensurate with the box");
+            }
+            if (commensurate) {
+                double fftCost = gridTotal*(Math.log(gridTotal)/Math.log(2)+1) + n*Math.pow(assignmentOrder, D);
+                if (method == Method.FFT || fftCost < 4.0*n*waveVec.length) {
+                    computeFFT(n);
+                    lastUsedFFT = true;
+                    return data;
+                }
+            }
+        }
+        computeDirect(n);
+        return data;
+    }
+
+    /**
+     * Finds the grid index of each wave vector and sizes the grid.
+     *
+     * @return false if some wave vector is not commensurate with the box
+     *         (or the box has no reciprocal lattice)
+     */
+    protected boolean setupGrid() {
+        int D = space.D();
+        Boundary boundary = box.getBoundary();
+        if (gridSize == null) {
+            gridSize = new int[D];
+            edges = new Vector[D];
+        }
+        for (int d=0; d<D; d++) {
+            edges[d] = boundary.getEdgeVector(d);
+        }
+        reciprocal = makeReciprocal(space, edges);
+        if (reciprocal == null) return false;
+        if (waveVectorIndex == null || waveVectorIndex.length != waveVec.length*D) {
+            waveVectorIndex = new int[waveVec.length*D];
+        }
+        int[] mMax = new int[D];
+        for (int k=0; k<waveVec.length; k++) {
+            for (int d=0; d<D; d++) {
+                double x = waveVec[k].dot(edges[d])/(2*Math.PI);
+                long m = Math.round(x);
+                if (Math.abs(x-m) > 1e-6) return false;
+                waveVectorIndex[k*D+d] = (int)m;
+                mMax[d] = Math.max(mMax[d], (int)Math.abs(m));
+            }
+        }
+        gridTotal = 1;
+        for (int d=0; d<D; d++) {
+            int minSize = (int)Math.ceil(oversampling*(2*mMax[d]+1));
+            int g = 1;
+            while (g < minSize) g <<= 1;
+            gridSize[d] = g;
+            gridTotal *= g;
+        }
+        return true;
+    }
+
+    /**
+     * Assigns the atoms to the grid, transforms it and picks out S(k) for
+     * each wave vector.
+     */
+    protected void computeFFT(int n) {
+        int D = space.D();
+        if (gridReal == null || gridReal.length != gridTotal) {
+            gridReal = new double[gridTotal];
+            gridImaginary = new double[gridTotal];
+        }
+        else {
+            for (int i=0; i<gridTotal; i++) {
+                gridReal[i] = 0;
+                gridImaginary[i] = 0;
+            }
+        }
+        int p = assignmentOrder;
+        int[] first = new int[D];
+        double[][] w = new double[D][p];
+        int nStencil = 1;
+        for (int d=0; d<D; d++) nStencil *= p;
+
+        for (int i=0; i<n; i++) {
+            for (int d=0; d<D; d++) {
+                // fractional coordinate, in grid units
+                double s = 0;
+                for (int e=0; e<D; e++) {
+                    s += reciprocal[d].getX(e)*position[i*D+e];
+                }
+                double u = s/(2*Math.PI)*gridSize[d];
+                assignmentWeights(u, w[d], first, d);
+            }
+            for (int m=0; m<nStencil; m++) {
+                int mm = m;
+                double wt = 1;
+                int idx = 0, scale = 1;
+                for (int d=D-1; d>=0; d--) {
+                    int j = mm%p;
+                    mm /= p;
+                    wt *= w[d][j];
+                    idx += scale*Math.floorMod(first[d]+j, gridSize[d]);
+                    scale *= gridSize[d];
+                }
+                gridReal[idx] += wt;
+            }
+        }
+
+        fft.transform(gridReal, gridImaginary, gridSize);
+
+        double n2 = (double)n*n;
+        for (int k=0; k<waveVec.length; k++) {
+            int idx = 0;
+            double window = 1;
+            for (int d=0; d<D; d++) {
+                int m = waveVectorIndex[k*D+d];
+                idx = idx*gridSize[d] + Math.floorMod(m, gridSize[d]);
+                if (deconvolute && m != 0) {
+                    double x = Math.PI*m/gridSize[d];
+                    window *= Math.pow(Math.sin(x)/x, p);
+                }
+            }
+            double re = gridReal[idx], im = gridImaginary[idx];
+            struct[k] = (re*re + im*im)/(window*window*n2);
+        }
+    }
+
+    /**
+     * Computes the weights of the grid points that an atom at grid
+     * coordinate u is assigned to, and the first of those points.
+     */
+    protected void assignmentWeights(double u, double[] w, int[] first, int d) {
+        switch (assignmentOrder) {
+            case 1: {
+                first[d] = (int)Math.floor(u+0.5);
+                w[0] = 1;
+                break;
+            }
+            case 2: {
+                int g = (int)Math.floor(u);
+                double f = u - g;
+                first[d] = g;
+                w[0] = 1-f;
+                w[1] = f;
+                break;
+            }
+            default: {
+                int g = (int)Math.floor(u+0.5);
+                double f = u - g;
+                first[d] = g-1;
+                w[0] = 0.5*(0.5-f)*(0.5-f);
+                w[1] = 0.75-f*f;
+                w[2] = 0.5*(0.5+f)*(0.5+f);
+            }
+        }
+    }
+
+    /**
+     * Computes S(k) by direct summation over atoms, with the wave vectors
+     * divided among threads.
+     */
+    protected void computeDirect(int n) {
+        int nk = waveVec.length;
+        int nChunks = numThreads == 1 ? 1 : Math.min(numThreads*4, nk);
+        if (nChunks <= 1) {
+            directSum(0, nk, n);
+            return;
+        }
+        List<Callable<Object>> tasks = new ArrayList<>(nChunks);
+        for (int i=0; i<nChunks; i++) {
+            final int start = nk*i/nChunks;
+            final int end = nk*(i+1)/nChunks;
+            tasks.add(() -> {
+                directSum(start, end, n);
+                return null;
+            });
+        }
+        if (pool == null) {
+            pool = new ForkJoinPool(numThreads);
+        }
+        try {
+            for (Future<Object> f : pool.invokeAll(tasks)) {
+                f.get();
+            }
+        }
+        catch (InterruptedException | ExecutionException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    protected void directSum(int start, int end, int n) {
+        int D = space.D();
+        double n2 = (double)n*n;
+        double[] k = new double[D];
+        for (int ik=start; ik<end; ik++) {
+            for (int d=0; d<D; d++) {
+                k[d] = waveVec[ik].getX(d);
+            }
+            double term1 = 0;
+            double term2 = 0;
+            for (int i=0; i<n; i++) {
+                double dotprod = 0;
+                for (int d=0; d<D; d++) {
+                    dotprod += k[d]*position[i*D+d];
+                }
+                term1 += Math.cos(dotprod);
+                term2 += Math.sin(dotprod);
+            }
+            struct[ik] = (term1*term1 + term2*term2)/n2;
+        }
+    }
+
+    protected Method method;
+    protected boolean lastUsedFFT;
+    protected int assignmentOrder;
+    protected boolean deconvolute;
+    protected double oversampling;
+    protected int numThreads;
+    protected ForkJoinPool pool;
+    protected final GridFourierTransform fft;
+    protected double[] position;
+    protected Vector[] edges, reciprocal;
+    protected int[] gridSize, waveVectorIndex;
+    protected int gridTotal;
+    protected double[] gridReal, gridImaginary;
+}
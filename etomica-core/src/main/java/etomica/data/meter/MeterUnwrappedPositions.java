@@ -0,0 +1,89 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.data.DataTag;
+import etomica.data.IData;
+import etomica.data.IDataInfo;
+import etomica.data.IDataSource;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataDoubleArray.DataInfoDoubleArray;
+import etomica.space.Vector;
+import etomica.units.dimensions.Length;
+
+/**
+ * Returns the coordinates of all leaf atoms in a box, unwrapped from the
+ * periodic boundaries: each call adds the (nearest image) displacement of
+ * each atom since the previous call to its unwrapped position.  This is only
+ * correct if atoms move less than half the box length between calls.  The
+ * values are in atom order, with the components of each atom together, as
+ * needed by AccumulatorMultipleTau in MSD mode.
+ */
+public class MeterUnwrappedPositions implements IDataSource {
+
+    public MeterUnwrappedPositions(Box box) {
+        this.box = box;
+        tag = new DataTag();
+        dr = box.getSpace().makeVector();
+        reset();
+    }
+
+    /**
+     * Takes the current positions as the starting (unwrapped) positions.
+     */
+    public void reset() {
+        IAtomList atoms = box.getLeafList();
+        int n = atoms.size();
+        int dim = box.getSpace().D();
+        data = new DataDoubleArray(new int[]{n, dim});
+        dataInfo = new DataInfoDoubleArray("unwrapped positions", Length.DIMENSION, new int[]{n, dim});
+        dataInfo.addTag(tag);
+        rLast = new Vector[n];
+        double[] x = data.getData();
+        for (int i = 0; i < n; i++) {
+            rLast[i] = box.getSpace().makeVector();
+            rLast[i].E(atoms.get(i).getPosition());
+            for (int k = 0; k < dim; k++) {
+                x[i * dim + k] = rLast[i].getX(k);
+            }
+        }
+    }
+
+    public IData getData() {
+        IAtomList atoms = box.getLeafList();
+        if (atoms.size() != rLast.length) {
+            throw new IllegalStateException("number of atoms changed");
+        }
+        double[] x = data.getData();
+        int dim = dr.getD();
+        for (int i = 0; i < rLast.length; i++) {
+            Vector r = atoms.get(i).getPosition();
+            dr.Ev1Mv2(r, rLast[i]);
+            box.getBoundary().nearestImage(dr);
+            rLast[i].E(r);
+            for (int k = 0; k < dim; k++) {
+                x[i * dim + k] += dr.getX(k);
+            }
+        }
+        return data;
+    }
+
+    public IDataInfo getDataInfo() {
+        return dataInfo;
+    }
+
+    public DataTag getTag() {
+        return tag;
+    }
+
+    protected final Box box;
+    protected final DataTag tag;
+    protected final Vector dr;
+    protected Vector[] rLast;
+    protected DataDoubleArray data;
+    protected DataInfoDoubleArray dataInfo;
+}
@@ -0,0 +1,67 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.atom.IAtomKinetic;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.data.DataTag;
+import etomica.data.IData;
+import etomica.data.IDataInfo;
+import etomica.data.IDataSource;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataDoubleArray.DataInfoDoubleArray;
+import etomica.space.Vector;
+import etomica.units.dimensions.Velocity;
+
+/**
+ * Returns the velocities of all leaf atoms in a box, in atom order with the
+ * components of each atom together, as needed by AccumulatorMultipleTau to
+ * compute the velocity autocorrelation function.
+ */
+public class MeterVelocities implements IDataSource {
+
+    public MeterVelocities(Box box) {
+        this.box = box;
+        tag = new DataTag();
+    }
+
+    public IData getData() {
+        IAtomList atoms = box.getLeafList();
+        int n = atoms.size();
+        int dim = box.getSpace().D();
+        if (data == null || data.getLength() != n * dim) {
+            data = new DataDoubleArray(new int[]{n, dim});
+            dataInfo = null;
+        }
+        double[] x = data.getData();
+        for (int i = 0; i < n; i++) {
+            Vector v = ((IAtomKinetic) atoms.get(i)).getVelocity();
+            for (int k = 0; k < dim; k++) {
+                x[i * dim + k] = v.getX(k);
+            }
+        }
+        return data;
+    }
+
+    public IDataInfo getDataInfo() {
+        int n = box.getLeafList().size();
+        int dim = box.getSpace().D();
+        if (dataInfo == null || dataInfo.getLength() != n * dim) {
+            dataInfo = new DataInfoDoubleArray("velocities", Velocity.DIMENSION, new int[]{n, dim});
+            dataInfo.addTag(tag);
+        }
+        return dataInfo;
+    }
+
+    public DataTag getTag() {
+        return tag;
+    }
+
+    protected final Box box;
+    protected final DataTag tag;
+    protected DataDoubleArray data;
+    protected DataInfoDoubleArray dataInfo;
+}
@@ -137,6 +137,13 @@ public class MCMoveManager {
         }
     }
     
+    /**
+     * Returns true if the moves are currently being tuned (equilibration).
+     */
+    public boolean isEquilibrating() {
+        return isEquilibrating;
+    }
+
     public void setEquilibrating(boolean equilibrating) {
         isEquilibrating = equilibrating;
         for (int i=0; i<mcMoveList.size(); i++) {
@@ -4,6 +4,10 @@
 
 package etomica.integrator.mcmove;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * This Class tracks acceptance statistics for an MCMove and also manages the
  * move's step size.  Given an acceptance target, it can adjust the 
@@ -227,6 +231,41 @@ public class MCMoveStepTracker extends MCMoveTracker {
         tunable = b;
     }
 
+    /**
+     * Writes the acceptance statistics, the step size adjustment state and
+     * the move's current step size to the given output.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeLong(adjustInterval);
+        out.writeLong(lastAdjust);
+        out.writeDouble(adjustStep);
+        out.writeBoolean(tunable);
+        out.writeDouble(mcMove == null ? Double.NaN : mcMove.getStepSize());
+    }
+
+    /**
+     * Restores the state written by writeState, including the move's step
+     * size.
+     */
+    public void readState(DataInput in) throws IOException {
+        super.readState(in);
+        long newAdjustInterval = in.readLong();
+        long newLastAdjust = in.readLong();
+        double newAdjustStep = in.readDouble();
+        tunable = in.readBoolean();
+        double stepSize = in.readDouble();
+        if (mcMove != null && !Double.isNaN(stepSize)) {
+            // setStepSize will call resetAdjustStep, which is bad, so prevent it
+            noReset = true;
+            mcMove.setStepSize(stepSize);
+            noReset = false;
+        }
+        adjustInterval = newAdjustInterval;
+        lastAdjust = newLastAdjust;
+        adjustStep = newAdjustStep;
+    }
+
     public boolean getNoisyAdjustment() {
         return noisyAdjustment;
     }
@@ -4,6 +4,9 @@
 
 package etomica.integrator.mcmove;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
  * This class is responsible for tracking acceptance statistics for an MCMove.
@@ -54,6 +57,24 @@ public class MCMoveTracker {
         nTrials = nAccept = 0;
         chiSum = 0;
     }
+
+    /**
+     * Writes the acceptance statistics to the given output.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        out.writeLong(nTrials);
+        out.writeLong(nAccept);
+        out.writeDouble(chiSum);
+    }
+
+    /**
+     * Restores the acceptance statistics written by writeState.
+     */
+    public void readState(DataInput in) throws IOException {
+        nTrials = in.readLong();
+        nAccept = in.readLong();
+        chiSum = in.readDouble();
+    }
     
     protected long nTrials, nAccept;
     protected double chiSum;
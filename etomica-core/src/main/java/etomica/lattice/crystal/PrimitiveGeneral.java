@@ -70,12 +70,13 @@ public class PrimitiveGeneral extends Primitive {
         if (space.D() == 2) {
             Vector aStar = space.makeVector();
             Vector bStar = space.makeVector();
-            aStar.setX(0, -latticeVectors[0].getX(1));
-            aStar.setX(1, latticeVectors[0].getX(0));
-            aStar.TE(2.0*Math.PI/aStar.dot(latticeVectors[1]));
-            bStar.setX(0, -latticeVectors[1].getX(1));
-            bStar.setX(1, latticeVectors[1].getX(0));
-            bStar.TE(2.0*Math.PI/aStar.dot(latticeVectors[0]));
+            // aStar is perpendicular to b, bStar is perpendicular to a
+            aStar.setX(0, -latticeVectors[1].getX(1));
+            aStar.setX(1, latticeVectors[1].getX(0));
+            aStar.TE(2.0*Math.PI/aStar.dot(latticeVectors[0]));
+            bStar.setX(0, -latticeVectors[0].getX(1));
+            bStar.setX(1, latticeVectors[0].getX(0));
+            bStar.TE(2.0*Math.PI/bStar.dot(latticeVectors[1]));
             return new PrimitiveGeneral(space, new Vector[]{aStar, bStar});
         }
         throw new RuntimeException("can't make a "+space.D()+"D reciprocal");
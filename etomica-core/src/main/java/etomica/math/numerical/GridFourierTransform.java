@@ -0,0 +1,170 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.math.numerical;
+
+import etomica.space.Vector;
+
+/**
+ * Discrete Fourier transform of data on a periodic grid in any number of
+ * dimensions, along with the dual vectors that map positions to grid
+ * coordinates.  The grid is stored row-major (the last dimension varies
+ * fastest) and is transformed in place, one dimension at a time.  Each line
+ * is transformed with a radix-2 FFT if its length is a power of 2, and
+ * otherwise by a direct sum with tabulated twiddle factors.
+ * <p>
+ * The transform is forward and unnormalized:
+ * F(j) = sum_m f(m) exp(-2 pi i j.m/n).  An instance keeps work arrays and
+ * must not be used by more than one thread at a time.
+ */
+public class GridFourierTransform implements java.io.Serializable {
+
+    /**
+     * Returns the dual vectors b_i of the given vectors a_j, with
+     * b_i.a_j = delta_ij, as rows of the returned array, or null if the
+     * vectors are not linearly independent.  The reciprocal lattice vectors
+     * are 2 pi b_i, and the grid coordinates of a position r are b_i.r.
+     */
+    public static double[][] dualVectors(Vector[] a) {
+        int D = a.length;
+        if (D == 0 || a[0].getD() != D) return null;
+        // invert the matrix with the vectors as columns by Gauss-Jordan
+        // elimination; the rows of the inverse are the dual vectors
+        double[][] m = new double[D][2*D];
+        for (int i=0; i<D; i++) {
+            for (int j=0; j<D; j++) {
+                m[i][j] = a[j].getX(i);
+            }
+            m[i][D+i] = 1;
+        }
+        for (int c=0; c<D; c++) {
+            int pivot = c;
+            for (int r=c+1; r<D; r++) {
+                if (Math.abs(m[r][c]) > Math.abs(m[pivot][c])) pivot = r;
+            }
+            if (m[pivot][c] == 0) return null;
+            double[] t = m[c]; m[c] = m[pivot]; m[pivot] = t;
+            double f = 1/m[c][c];
+            for (int j=0; j<2*D; j++) m[c][j] *= f;
+            for (int r=0; r<D; r++) {
+                if (r == c || m[r][c] == 0) continue;
+                double g = m[r][c];
+                for (int j=0; j<2*D; j++) m[r][j] -= g*m[c][j];
+            }
+        }
+        double[][] b = new double[D][D];
+        for (int i=0; i<D; i++) {
+            for (int j=0; j<D; j++) {
+                double x = m[i][D+j];
+                if (Double.isNaN(x) || Double.isInfinite(x)) return null;
+                b[i][j] = x;
+            }
+        }
+        return b;
+    }
+
+    /**
+     * Transforms the row-major grid with the given size in place.
+     *
+     * @param re       the real part of the data
+     * @param im       the imaginary part of the data
+     * @param gridSize the number of grid points in each dimension
+     */
+    public void transform(double[] re, double[] im, int[] gridSize) {
+        int D = gridSize.length;
+        int stride = 1;
+        for (int d=D-1; d>=0; d--) {
+            int n = gridSize[d];
+            if (n > 1) {
+                if (lineReal == null || lineReal.length < n) {
+                    lineReal = new double[n];
+                    lineImaginary = new double[n];
+                }
+                int block = stride*n;
+                for (int start=0; start<re.length; start+=block) {
+                    for (int s=0; s<stride; s++) {
+                        int first = start+s;
+                        for (int m=0; m<n; m++) {
+                            lineReal[m] = re[first+m*stride];
+                            lineImaginary[m] = im[first+m*stride];
+                        }
+                        transform1D(lineReal, lineImaginary, n);
+                        for (int m=0; m<n; m++) {
+                            re[first+m*stride] = lineReal[m];
+                            im[first+m*stride] = lineImaginary[m];
+                        }
+                    }
+                }
+            }
+            stride *= n;
+        }
+    }
+
+    /**
+     * Transforms the first n elements in place.
+     */
+    public void transform1D(double[] re, double[] im, int n) {
+        if ((n & (n-1)) == 0) {
+            for (int i=1, j=0; i<n; i++) {
+                int bit = n>>1;
+                for ( ; (j & bit) != 0; bit>>=1) {
+                    j ^= bit;
+                }
+                j ^= bit;
+                if (i < j) {
+                    double t = re[i]; re[i] = re[j]; re[j] = t;
+                    t = im[i]; im[i] = im[j]; im[j] = t;
+                }
+            }
+            for (int len=2; len<=n; len<<=1) {
+                double ang = -2*Math.PI/len;
+                double wRe = Math.cos(ang), wIm = Math.sin(ang);
+                for (int i=0; i<n; i+=len) {
+                    double cRe = 1, cIm = 0;
+                    for (int j=0; j<len/2; j++) {
+                        int p = i+j, q = i+j+len/2;
+                        double tRe = re[q]*cRe - im[q]*cIm;
+                        double tIm = re[q]*cIm + im[q]*cRe;
+                        re[q] = re[p] - tRe;
+                        im[q] = im[p] - tIm;
+                        re[p] += tRe;
+                        im[p] += tIm;
+                        double nRe = cRe*wRe - cIm*wIm;
+                        cIm = cRe*wIm + cIm*wRe;
+                        cRe = nRe;
+                    }
+                }
+            }
+            return;
+        }
+        if (twiddleN != n) {
+            twiddleCos = new double[n];
+            twiddleSin = new double[n];
+            for (int m=0; m<n; m++) {
+                twiddleCos[m] = Math.cos(2*Math.PI*m/n);
+                twiddleSin[m] = Math.sin(2*Math.PI*m/n);
+            }
+            dftReal = new double[n];
+            dftImaginary = new double[n];
+            twiddleN = n;
+        }
+        for (int j=0; j<n; j++) {
+            double sRe = 0, sIm = 0;
+            for (int m=0, jm=0; m<n; m++, jm+=j) {
+                if (jm >= n) jm -= n;
+                // multiply by exp(-2 pi i j m / n)
+                sRe += re[m]*twiddleCos[jm] + im[m]*twiddleSin[jm];
+                sIm += im[m]*twiddleCos[jm] - re[m]*twiddleSin[jm];
+            }
+            dftReal[j] = sRe;
+            dftImaginary[j] = sIm;
+        }
+        System.arraycopy(dftReal, 0, re, 0, n);
+        System.arraycopy(dftImaginary, 0, im, 0, n);
+    }
+
+    protected double[] lineReal, lineImaginary;
+    protected int twiddleN;
+    protected double[] twiddleCos, twiddleSin, dftReal, dftImaginary;
+}
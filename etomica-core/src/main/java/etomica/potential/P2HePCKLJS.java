@@ -22,7 +22,7 @@ import etomica.util.Constants;
  *
  * @author Kate Shaul and Andrew Schultz
  */
-public class P2HePCKLJS extends Potential2SoftSpherical {
+public class P2HePCKLJS extends Potential2SoftSpherical implements Potential2SphericalBatch {
 
 	public P2HePCKLJS(Space space) {
 		this(space, 0);
@@ -82,63 +82,81 @@ public class P2HePCKLJS extends Potential2SoftSpherical {
     }
 
     /**
-     * The energy u.
+     * The energy u.  This is computed by the batched method, so the two
+     * always agree.
      */
     public double u(double r2) {
+        r2One[0] = r2;
+        u(r2One, uOne, 1);
+        return uOne[0];
+    }
 
-    	double r = Math.sqrt(r2);
-    	r = BohrRadius.UNIT.fromSim(r);
-
-    	if (r < sigmaHC) {
-    		return Double.POSITIVE_INFINITY;
-    	}
-
-    	double u1 = (P[0] + P[1]*r + P[2]*r*r)*Math.exp(-a*r);
-
-    	double u2 = (Q[0] + Q[1]*r)*Math.exp(-b*r);
-    	
-    	double invr = 1.0/r;
-    	
-    	double br = eta*r;
-        double m = Math.exp(-br);
-        double term = 1.0;
-        double sum = term;
-        double invri = invr;
-        double u3 = 0;
-        for (int i=1; i<17; i++) {
-            term *= br/i;
-            sum = sum + term;
-            u3 += (-1.0+m*sum)*C[i]*invri;
-            invri *= invr;
+    /**
+     * Computes the energy for n pairs.  The work is done in two passes over
+     * the pairs.  The first finds each separation (in bohr) and the
+     * retardation-damped dispersion, which is plain arithmetic with no
+     * function calls; the second adds the terms that need exponentials.
+     * Constants and unit conversions are hoisted out of both loops.
+     */
+    public void u(double[] r2, double[] u, int n) {
+        if (rWork.length < n) {
+            rWork = new double[n];
+        }
+        final double[] r = rWork;
+        final double[] C = this.C, A = this.A, B = this.B;
+        final double C3 = C[3], C4 = C[4];
+        final double bohrFromSim = BohrRadius.UNIT.fromSim(1);
+        for (int j=0; j<n; j++) {
+            double rj = Math.sqrt(r2[j])*bohrFromSim;
+            r[j] = rj;
+            double invr = 1.0/rj;
+            // damp_ret: g = sumA/sumB, with the polynomials by Horner's rule
+            double x = alpha*rj;
+            double sumA = A[6], sumB = B[6];
+            for (int k=5; k>0; k--) {
+                sumA = sumA*x + A[k];
+                sumB = sumB*x + B[k];
+            }
+            double g = (sumA*x + 1.0)/(sumB*x + 1.0);
+            double invr3 = invr*invr*invr;
+            u[j] = (C3 + C4*invr + C6BO*(1.0-g)*invr3)*invr3;
         }
 
-    	/// damp_ret ////
+        final double P0 = P[0], P1 = P[1], P2 = P[2], Q0 = Q[0], Q1 = Q[1];
+        final double[] aErr = this.aErr, cErr = this.cErr;
+        final double errMult = this.errMult;
+        final double hartreeToSim = Hartree.UNIT.toSim(1);
+        for (int j=0; j<n; j++) {
+            double rj = r[j];
+            if (rj < sigmaHC) {
+                u[j] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            double uj = u[j] + (P0 + (P1 + P2*rj)*rj)*Math.exp(-a*rj) + (Q0 + Q1*rj)*Math.exp(-b*rj);
 
-        double sumA = 1.0;
-        double sumB = 1.0;
+            // Tang-Toennies damped dispersion
+            double invr = 1.0/rj;
+            double br = eta*rj;
+            double m = Math.exp(-br);
+            double term = 1.0;
+            double sum = term;
+            double invri = invr;
+            for (int i=1; i<17; i++) {
+                term *= br/i;
+                sum += term;
+                uj += (m*sum - 1.0)*C[i]*invri;
+                invri *= invr;
+            }
 
-        double x = alpha*r;
-        double xn=1.0;
-        for (int n=1;n<7;n++) {
-            xn *= x;
-            sumA += A[n]*xn;
-            sumB += B[n]*xn;
+            if (errMult != 0) {
+                double s = 0;
+                for (int i=0; i<3; i++) {
+                    s += cErr[i]*Math.exp(-aErr[i]*rj);
+                }
+                uj += errMult*s;
+            }
+            u[j] = uj*hartreeToSim;
         }
-        double g = sumA/sumB;
-        
-        double invr3 = invr*invr*invr;
-    	double Vret = (C[3] + C[4]*invr + C6BO*(1.0-g)*invr3)*invr3;
-    	double uSigma = 0;
-    	if (errMult != 0) {
-    		double s = 0;
-        	for (int i=0; i<3; i++) {
-        		s += cErr[i]*Math.exp(-aErr[i]*r);
-        	}
-    		uSigma = errMult*s;
-    	}
- 
-    	return  Hartree.UNIT.toSim(u1 + u2 + u3 + Vret + uSigma);
-    	
     }
 
     /**
@@ -679,4 +697,6 @@ public class P2HePCKLJS extends Potential2SoftSpherical {
     protected static double sigmaHC = 0.4; //bohr radii
     protected final double[] aErr, cErr;
     protected double errMult;
+    protected final double[] r2One = new double[1], uOne = new double[1];
+    protected double[] rWork = new double[0];
 }
@@ -16,27 +16,43 @@ import etomica.util.Constants;
  *
  * @author Andrew Schultz
  */
-public class P2HeSimplified extends Potential2SoftSpherical {
+public class P2HeSimplified extends Potential2SoftSpherical implements Potential2SphericalBatch {
     
     public P2HeSimplified(Space space) {
         super(space);
     }
 
     /**
-     * The energy u.
+     * The energy u.  This is computed by the batched method, so the two
+     * always agree.
      */
     public double u(double r2) {
+        r2One[0] = r2;
+        u(r2One, uOne, 1);
+        return uOne[0];
+    }
 
-    	if (r2 < sigmaHC2) {
-    		return Double.POSITIVE_INFINITY;
-    	}
-
-    	double r = Math.sqrt(r2);
-        double r4 = r2*r2;
-        double r6 = r4*r2;
-        double r8 = r4*r4;
-        double r10 = r6*r4;
-        return A0*Math.exp(-A1*r)-A2/r6-A3/(useC10 ? r10 : r8);
+    /**
+     * Computes the energy for n pairs.  The dispersion terms are computed
+     * for all pairs in one pass with no function calls other than the square
+     * root, and the exponential repulsion is added in a second pass.
+     */
+    public void u(double[] r2, double[] u, int n) {
+        final double A0 = this.A0, A1 = this.A1, A2 = this.A2, A3 = this.A3;
+        for (int j=0; j<n; j++) {
+            double r2j = r2[j];
+            double r4 = r2j*r2j;
+            double r6 = r4*r2j;
+            u[j] = -A2/r6 - A3/(useC10 ? r6*r4 : r4*r4);
+        }
+        for (int j=0; j<n; j++) {
+            double r2j = r2[j];
+            if (r2j < sigmaHC2) {
+                u[j] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            u[j] += A0*Math.exp(-A1*Math.sqrt(r2j));
+        }
     }
 
     /**
@@ -255,4 +271,5 @@ public class P2HeSimplified extends Potential2SoftSpherical {
     protected double A2 = Kelvin.UNIT.toSim(8.70770913e3);
     protected double A3 = Kelvin.UNIT.toSim(6.14848434e4);
     protected final double sigmaHC2 = 1.6*1.6;
+    protected final double[] r2One = new double[1], uOne = new double[1];
 }
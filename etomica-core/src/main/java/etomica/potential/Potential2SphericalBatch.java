@@ -0,0 +1,29 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.potential;
+
+/**
+ * Interface for spherical 2-body potentials that can compute the energy of
+ * many pairs in a single call.  Path-integral molecules interact through a
+ * sum over many pairs of beads, and computing those energies together avoids
+ * a virtual call per bead pair and lets the potential hoist its constants out
+ * of the loop.
+ * <p>
+ * Implementations must return, for each pair, the same energy that
+ * energy(IAtomList) would return for that pair: u(r2[i]) with any
+ * truncation the potential applies.
+ */
+public interface Potential2SphericalBatch extends Potential2Spherical {
+
+    /**
+     * Computes the pair energy for each of the first n squared distances in
+     * r2 and stores the results in u.
+     *
+     * @param r2 the squared distances between the particles of each pair
+     * @param u  array to receive the energies; must hold at least n values
+     * @param n  the number of pairs
+     */
+    void u(double[] r2, double[] u, int n);
+}
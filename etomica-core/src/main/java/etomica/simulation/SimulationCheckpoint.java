@@ -0,0 +1,360 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.simulation;
+
+import etomica.atom.IAtom;
+import etomica.atom.IAtomKinetic;
+import etomica.atom.IAtomList;
+import etomica.atom.IAtomOriented;
+import etomica.atom.IAtomOrientedKinetic;
+import etomica.box.Box;
+import etomica.data.AccumulatorAverageFixed;
+import etomica.integrator.Integrator;
+import etomica.integrator.IntegratorBox;
+import etomica.integrator.IntegratorMC;
+import etomica.integrator.IntegratorMD;
+import etomica.integrator.IntegratorManagerMC;
+import etomica.integrator.mcmove.MCMove;
+import etomica.integrator.mcmove.MCMoveManager;
+import etomica.space.IOrientation;
+import etomica.space.Vector;
+import etomica.space3d.IOrientationFull3D;
+import etomica.util.random.IRandom;
+import etomica.util.random.RandomMersenneTwister;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes and reads checkpoints of a general Simulation, so that a run can be
+ * stopped and later resumed, perhaps by another process.  A checkpoint is a
+ * compact binary file holding the class of the simulation, and for each box
+ * its size, the number of molecules of each species and the position (and
+ * velocity and orientation, where the atoms have them) of each atom.  It also
+ * holds the state of the random number generator, the settings of the
+ * simulation's integrator (temperature, time step and thermostat for MD, and
+ * the MC move step sizes and acceptance trackers for MC, including those of
+ * the sub-integrators of an IntegratorManagerMC) and the sums of any
+ * accumulators that were added to the checkpoint.
+ * <p>
+ * To resume, construct a new instance of the same simulation class (see
+ * readSimulationClass), add the corresponding accumulators in the same order
+ * and call read before starting the simulation.  The integrator's step count
+ * is not saved, because ActivityIntegrate starts it over anyway.  Other
+ * state that the simulation sets up in its constructor (potentials, species,
+ * meters) is expected to be the same in the new instance.
+ * <p>
+ * Checkpoints are written to a temporary file that is then moved over the
+ * old one, so a process killed while writing leaves the previous checkpoint
+ * intact.
+ */
+public class SimulationCheckpoint {
+
+    protected static final int MAGIC = 0x45544350;
+    protected static final int VERSION = 1;
+
+    protected final Simulation sim;
+    protected final List<AccumulatorAverageFixed> accumulators;
+
+    public SimulationCheckpoint(Simulation sim) {
+        this.sim = sim;
+        accumulators = new ArrayList<>();
+    }
+
+    /**
+     * Adds an accumulator whose sums will be saved.  Accumulators must be
+     * added in the same order when the checkpoint is read.
+     */
+    public void addAccumulator(AccumulatorAverageFixed accumulator) {
+        accumulators.add(accumulator);
+    }
+
+    public List<AccumulatorAverageFixed> getAccumulators() {
+        return accumulators;
+    }
+
+    /**
+     * Writes the state of the simulation to the given file.  This should only
+     * be called between integrator steps, or while the simulation is paused.
+     */
+    public void write(File file) {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)))) {
+                writeState(out);
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("couldn't write checkpoint file " + file, ex);
+        }
+        finally {
+            // left behind only if something went wrong
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Restores the simulation from the given file.  The simulation should not
+     * be running.
+     */
+    public void read(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            readState(in);
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("couldn't read checkpoint file " + file, ex);
+        }
+    }
+
+    /**
+     * Returns the name of the class of the simulation saved in the given
+     * checkpoint file, so that an instance can be made to read it into.
+     */
+    public static String readSimulationClass(File file) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            readHeader(in);
+            return in.readUTF();
+        }
+        catch (IOException ex) {
+            throw new RuntimeException("couldn't read checkpoint file " + file, ex);
+        }
+    }
+
+    public void writeState(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(sim.getClass().getName());
+
+        out.writeInt(sim.getBoxCount());
+        for (int i = 0; i < sim.getBoxCount(); i++) {
+            writeBox(out, sim.getBox(i));
+        }
+
+        IRandom random = sim.getRandom();
+        out.writeBoolean(random instanceof RandomMersenneTwister);
+        if (random instanceof RandomMersenneTwister) {
+            ((RandomMersenneTwister) random).writeState(out);
+        }
+
+        Integrator integrator = sim.getIntegrator();
+        out.writeBoolean(integrator != null);
+        if (integrator != null) {
+            writeIntegrator(out, integrator);
+        }
+
+        out.writeInt(accumulators.size());
+        for (AccumulatorAverageFixed accumulator : accumulators) {
+            accumulator.writeState(out);
+        }
+    }
+
+    public void readState(DataInputStream in) throws IOException {
+        readHeader(in);
+        String className = in.readUTF();
+        if (!className.equals(sim.getClass().getName())) {
+            throw new IOException("checkpoint is for " + className + ", not " + sim.getClass().getName());
+        }
+
+        if (in.readInt() != sim.getBoxCount()) {
+            throw new IOException("checkpoint has a different number of boxes");
+        }
+        for (int i = 0; i < sim.getBoxCount(); i++) {
+            readBox(in, sim.getBox(i));
+        }
+
+        if (in.readBoolean()) {
+            IRandom random = sim.getRandom();
+            if (!(random instanceof RandomMersenneTwister)) {
+                throw new IOException("checkpoint has the state of a RandomMersenneTwister");
+            }
+            ((RandomMersenneTwister) random).readState(in);
+        }
+
+        Integrator integrator = sim.getIntegrator();
+        if (in.readBoolean() != (integrator != null)) {
+            throw new IOException("checkpoint does not match the simulation's integrator");
+        }
+        if (integrator != null) {
+            readIntegrator(in, integrator);
+        }
+
+        if (in.readInt() != accumulators.size()) {
+            throw new IOException("checkpoint has a different number of accumulators");
+        }
+        for (AccumulatorAverageFixed accumulator : accumulators) {
+            accumulator.readState(in);
+        }
+    }
+
+    protected static void readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("not a simulation checkpoint");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported checkpoint version " + version);
+        }
+    }
+
+    protected void writeBox(DataOutputStream out, Box box) throws IOException {
+        writeVector(out, box.getBoundary().getBoxSize());
+        out.writeInt(sim.getSpeciesCount());
+        for (int j = 0; j < sim.getSpeciesCount(); j++) {
+            out.writeInt(box.getNMolecules(sim.getSpecies(j)));
+        }
+        IAtomList leafList = box.getLeafList();
+        out.writeInt(leafList.size());
+        for (int i = 0; i < leafList.size(); i++) {
+            IAtom a = leafList.get(i);
+            writeVector(out, a.getPosition());
+            if (a instanceof IAtomKinetic) {
+                writeVector(out, ((IAtomKinetic) a).getVelocity());
+            }
+            if (a instanceof IAtomOriented) {
+                IOrientation orientation = ((IAtomOriented) a).getOrientation();
+                writeVector(out, orientation.getDirection());
+                if (orientation instanceof IOrientationFull3D) {
+                    writeVector(out, ((IOrientationFull3D) orientation).getSecondaryDirection());
+                }
+            }
+            if (a instanceof IAtomOrientedKinetic) {
+                writeVector(out, ((IAtomOrientedKinetic) a).getAngularVelocity());
+            }
+        }
+    }
+
+    protected void readBox(DataInputStream in, Box box) throws IOException {
+        Vector v = box.getSpace().makeVector();
+        readVector(in, v);
+        box.getBoundary().setBoxSize(v);
+        if (in.readInt() != sim.getSpeciesCount()) {
+            throw new IOException("checkpoint has a different number of species");
+        }
+        for (int j = 0; j < sim.getSpeciesCount(); j++) {
+            box.setNMolecules(sim.getSpecies(j), in.readInt());
+        }
+        IAtomList leafList = box.getLeafList();
+        if (in.readInt() != leafList.size()) {
+            throw new IOException("checkpoint has a different number of atoms");
+        }
+        Vector v2 = box.getSpace().makeVector();
+        for (int i = 0; i < leafList.size(); i++) {
+            IAtom a = leafList.get(i);
+            readVector(in, a.getPosition());
+            if (a instanceof IAtomKinetic) {
+                readVector(in, ((IAtomKinetic) a).getVelocity());
+            }
+            if (a instanceof IAtomOriented) {
+                IOrientation orientation = ((IAtomOriented) a).getOrientation();
+                readVector(in, v);
+                if (orientation instanceof IOrientationFull3D) {
+                    readVector(in, v2);
+                    ((IOrientationFull3D) orientation).setDirections(v, v2);
+                    // setDirections normalizes, which could perturb the last
+                    // bit.  copy the saved values back in.
+                    ((IOrientationFull3D) orientation).getSecondaryDirection().E(v2);
+                }
+                else {
+                    orientation.setDirection(v);
+                }
+                orientation.getDirection().E(v);
+            }
+            if (a instanceof IAtomOrientedKinetic) {
+                readVector(in, ((IAtomOrientedKinetic) a).getAngularVelocity());
+            }
+        }
+    }
+
+    protected void writeIntegrator(DataOutputStream out, Integrator integrator) throws IOException {
+        out.writeUTF(integrator.getClass().getName());
+        if (integrator instanceof IntegratorBox) {
+            out.writeDouble(((IntegratorBox) integrator).getTemperature());
+            out.writeBoolean(((IntegratorBox) integrator).isIsothermal());
+        }
+        if (integrator instanceof IntegratorMD) {
+            IntegratorMD integratorMD = (IntegratorMD) integrator;
+            out.writeDouble(integratorMD.getTimeStep());
+            out.writeInt(integratorMD.getThermostat().ordinal());
+            out.writeInt(integratorMD.getThermostatInterval());
+        }
+        if (integrator instanceof IntegratorMC) {
+            writeMoveManager(out, ((IntegratorMC) integrator).getMoveManager());
+        }
+        if (integrator instanceof IntegratorManagerMC) {
+            writeMoveManager(out, ((IntegratorManagerMC) integrator).getMoveManager());
+            Integrator[] integrators = ((IntegratorManagerMC) integrator).getIntegrators();
+            out.writeInt(integrators.length);
+            for (Integrator subIntegrator : integrators) {
+                writeIntegrator(out, subIntegrator);
+            }
+        }
+    }
+
+    protected void readIntegrator(DataInputStream in, Integrator integrator) throws IOException {
+        String className = in.readUTF();
+        if (!className.equals(integrator.getClass().getName())) {
+            throw new IOException("checkpoint has a " + className + ", not a " + integrator.getClass().getName());
+        }
+        if (integrator instanceof IntegratorBox) {
+            ((IntegratorBox) integrator).setTemperature(in.readDouble());
+            ((IntegratorBox) integrator).setIsothermal(in.readBoolean());
+        }
+        if (integrator instanceof IntegratorMD) {
+            IntegratorMD integratorMD = (IntegratorMD) integrator;
+            integratorMD.setTimeStep(in.readDouble());
+            integratorMD.setThermostat(IntegratorMD.ThermostatType.values()[in.readInt()]);
+            integratorMD.setThermostatInterval(in.readInt());
+        }
+        if (integrator instanceof IntegratorMC) {
+            readMoveManager(in, ((IntegratorMC) integrator).getMoveManager());
+        }
+        if (integrator instanceof IntegratorManagerMC) {
+            readMoveManager(in, ((IntegratorManagerMC) integrator).getMoveManager());
+            Integrator[] integrators = ((IntegratorManagerMC) integrator).getIntegrators();
+            if (in.readInt() != integrators.length) {
+                throw new IOException("checkpoint has a different number of sub-integrators");
+            }
+            for (Integrator subIntegrator : integrators) {
+                readIntegrator(in, subIntegrator);
+            }
+        }
+    }
+
+    protected void writeMoveManager(DataOutputStream out, MCMoveManager moveManager) throws IOException {
+        out.writeBoolean(moveManager.isEquilibrating());
+        List<MCMove> moves = moveManager.getMCMoves();
+        out.writeInt(moves.size());
+        for (MCMove move : moves) {
+            move.getTracker().writeState(out);
+        }
+    }
+
+    protected void readMoveManager(DataInputStream in, MCMoveManager moveManager) throws IOException {
+        moveManager.setEquilibrating(in.readBoolean());
+        List<MCMove> moves = moveManager.getMCMoves();
+        if (in.readInt() != moves.size()) {
+            throw new IOException("checkpoint has a different number of MC moves");
+        }
+        for (MCMove move : moves) {
+            move.getTracker().readState(in);
+        }
+    }
+
+    protected static void writeVector(DataOutputStream out, Vector v) throws IOException {
+        for (int j = 0; j < v.getD(); j++) {
+            out.writeDouble(v.getX(j));
+        }
+    }
+
+    protected static void readVector(DataInputStream in, Vector v) throws IOException {
+        for (int j = 0; j < v.getD(); j++) {
+            v.setX(j, in.readDouble());
+        }
+    }
+}
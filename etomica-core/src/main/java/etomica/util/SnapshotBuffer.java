@@ -0,0 +1,101 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Hands the latest copy of some state from one thread (the writer) to any
+ * number of other threads (readers) without locks, so that neither has to
+ * wait for the other.  The writer fills the back buffer and publishes it,
+ * which makes it the front buffer; readers always see the most recently
+ * published buffer.
+ * <p>
+ * Normally there are just two buffers, which swap roles with each publish.
+ * If a reader is still reading a buffer when the writer wants to fill it, the
+ * writer takes a new buffer instead and the old one is dropped once the
+ * reader is done with it.  Readers must not keep a reference to the buffer
+ * after read returns.
+ * <p>
+ * Only one thread may write (call getBackBuffer and publish).
+ */
+public class SnapshotBuffer<T> {
+
+    /**
+     * @param factory makes a new, empty buffer
+     */
+    public SnapshotBuffer(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the buffer for the writer to fill, which no reader is using.
+     * This may hold the state from an earlier publish.
+     */
+    public T getBackBuffer() {
+        if (back == null || back.readers.get() > 0) {
+            // a reader still has it; let them keep it
+            back = new Slot<>(factory.get());
+        }
+        return back.value;
+    }
+
+    /**
+     * Makes the back buffer (as filled since getBackBuffer) the one seen by
+     * readers.
+     */
+    public void publish() {
+        Slot<T> oldFront = front;
+        front = back;
+        back = oldFront;
+        version++;
+    }
+
+    /**
+     * Applies the reader to the most recently published buffer and returns
+     * the result.  Returns null if nothing has been published.
+     */
+    public <R> R read(Function<? super T, R> reader) {
+        while (true) {
+            Slot<T> slot = front;
+            if (slot == null) return null;
+            slot.readers.incrementAndGet();
+            try {
+                // if the writer has taken the buffer back since we got it,
+                // it might be filling it now; try again
+                if (slot == front) {
+                    return reader.apply(slot.value);
+                }
+            } finally {
+                slot.readers.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of times a buffer has been published.  Readers can
+     * use this to tell whether anything has changed since they last read.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    protected static class Slot<T> {
+        public final T value;
+        public final AtomicInteger readers;
+
+        public Slot(T value) {
+            this.value = value;
+            readers = new AtomicInteger();
+        }
+    }
+
+    protected final Supplier<T> factory;
+    protected volatile Slot<T> front;
+    protected Slot<T> back;
+    protected volatile long version;
+}
@@ -49,6 +49,10 @@ package etomica.util.random;
 
 import etomica.meta.annotations.IgnoreProperty;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
 /**
  * Mersenne Twister RNG.  seed initialization and nextInt() methods written in
  * C by Takuji Nishimura and Makoto Matsumoto as described above, and
@@ -309,4 +313,34 @@ public class RandomMersenneTwister implements IRandom {
 
         return y / shiftFac;
     }
+
+    /**
+     * Writes the complete internal state of the generator (not just the seeds)
+     * to the given output.  A generator that reads this state via readState
+     * will produce exactly the same sequence of numbers as this one.
+     */
+    public void writeState(DataOutput out) throws IOException {
+        for (int i = 0; i < N; i++) {
+            out.writeInt(mt[i]);
+        }
+        out.writeInt(mti);
+        out.writeBoolean(hasNextGaussian);
+        out.writeDouble(nextGaussian);
+    }
+
+    /**
+     * Restores the internal state of the generator from the given input, as
+     * written by writeState.  The saved seeds are not restored.
+     */
+    public void readState(DataInput in) throws IOException {
+        for (int i = 0; i < N; i++) {
+            mt[i] = in.readInt();
+        }
+        mti = in.readInt();
+        if (mti < 0 || mti > N + 1) {
+            throw new IOException("invalid Mersenne Twister state index " + mti);
+        }
+        hasNextGaussian = in.readBoolean();
+        nextGaussian = in.readDouble();
+    }
 }
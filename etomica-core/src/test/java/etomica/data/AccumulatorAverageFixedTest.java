@@ -5,12 +5,15 @@
 package etomica.data;
 
 import etomica.data.types.DataDouble;
+import etomica.data.types.DataDoubleArray;
 import etomica.units.dimensions.Null;
 import etomica.util.random.RandomMersenneTwister;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.*;
+
 import static etomica.data.AccumulatorAverageTestBase.simpleTest;
 
 class AccumulatorAverageFixedTest {
@@ -62,4 +65,146 @@ class AccumulatorAverageFixedTest {
         double error = accData.getValue(accumulator.ERROR.index);
         Assertions.assertTrue(error / 1.35e-4 + 1.35e-4 / error - 2 < 0.02, "error " + error);
     }
+
+    @Test
+    public void testStateRoundTrip() throws IOException {
+        accumulator.putDataInfo(new DataDouble.DataInfoDouble("test", Null.DIMENSION));
+        DataDouble rawData = new DataDouble();
+        RandomMersenneTwister rng = new RandomMersenneTwister(4);
+        accumulator.setBlockSize(10);
+        for (int i=0; i<1005; i++) {
+            rawData.x = rng.nextDouble();
+            accumulator.putData(rawData);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        ((AccumulatorAverageFixed)accumulator).writeState(out);
+        rng.writeState(out);
+        out.close();
+
+        AccumulatorAverageFixed restored = new AccumulatorAverageFixed();
+        restored.putDataInfo(new DataDouble.DataInfoDouble("test", Null.DIMENSION));
+        RandomMersenneTwister rng2 = new RandomMersenneTwister(5);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        restored.readState(in);
+        rng2.readState(in);
+        Assertions.assertEquals(10, restored.getBlockSize());
+        Assertions.assertEquals(accumulator.getSampleCount(), restored.getSampleCount());
+
+        // both should now continue identically
+        for (int i=0; i<1000; i++) {
+            rawData.x = rng.nextDouble();
+            accumulator.putData(rawData);
+            rawData.x = rng2.nextDouble();
+            restored.putData(rawData);
+        }
+        IData accData = accumulator.getData();
+        IData restoredData = restored.getData();
+        for (int i=0; i<accData.getLength(); i++) {
+            Assertions.assertEquals(accData.getValue(i), restoredData.getValue(i));
+        }
+    }
+
+    @Test
+    public void testPrimitive() {
+        // scalar and array data given as primitives must give the same
+        // results as the IData path, including NaN handling and block data
+        AccumulatorAverageFixed scalar = new AccumulatorAverageFixed(10);
+        scalar.putDataInfo(new DataDouble.DataInfoDouble("test", Null.DIMENSION));
+        accumulator.setBlockSize(10);
+        accumulator.putDataInfo(new DataDouble.DataInfoDouble("test", Null.DIMENSION));
+        AccumulatorAverageFixed array = new AccumulatorAverageFixed(10);
+        array.putDataInfo(new DataDoubleArray.DataInfoDoubleArray("test", Null.DIMENSION, new int[]{2}));
+        AccumulatorAverageFixed arrayRef = new AccumulatorAverageFixed(10);
+        arrayRef.putDataInfo(new DataDoubleArray.DataInfoDoubleArray("test", Null.DIMENSION, new int[]{2}));
+
+        DataDouble rawData = new DataDouble();
+        DataDoubleArray rawArray = new DataDoubleArray(2);
+        double[] x = new double[2];
+        RandomMersenneTwister rng = new RandomMersenneTwister(4);
+        for (int i=0; i<1005; i++) {
+            rawData.x = i == 500 ? Double.NaN : rng.nextDouble();
+            accumulator.putData(rawData);
+            scalar.putData(rawData.x);
+            x[0] = rng.nextDouble();
+            x[1] = i == 700 ? Double.NaN : rng.nextDouble();
+            System.arraycopy(x, 0, rawArray.getData(), 0, 2);
+            arrayRef.putData(rawArray);
+            array.putData(x);
+        }
+        Assertions.assertEquals(accumulator.getSampleCount(), scalar.getSampleCount());
+        Assertions.assertEquals(arrayRef.getSampleCount(), array.getSampleCount());
+        IData expected = accumulator.getData(), actual = scalar.getData();
+        for (int i=0; i<expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), actual.getValue(i));
+        }
+        expected = arrayRef.getData();
+        actual = array.getData();
+        for (int i=0; i<expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), actual.getValue(i));
+        }
+
+        // subclasses that keep more sums still get primitives through addData(IData)
+        AccumulatorAverageCovariance covariance = new AccumulatorAverageCovariance(10);
+        covariance.putDataInfo(new DataDoubleArray.DataInfoDoubleArray("test", Null.DIMENSION, new int[]{2}));
+        AccumulatorAverageCovariance covarianceRef = new AccumulatorAverageCovariance(10);
+        covarianceRef.putDataInfo(new DataDoubleArray.DataInfoDoubleArray("test", Null.DIMENSION, new int[]{2}));
+        for (int i=0; i<100; i++) {
+            x[0] = rng.nextDouble();
+            x[1] = x[0] + rng.nextDouble();
+            System.arraycopy(x, 0, rawArray.getData(), 0, 2);
+            covarianceRef.putData(rawArray);
+            covariance.putData(x);
+        }
+        expected = covarianceRef.getData(AccumulatorAverageCovariance.COVARIANCE);
+        actual = covariance.getData(AccumulatorAverageCovariance.COVARIANCE);
+        Assertions.assertTrue(expected.getValue(1) > 0);
+        for (int i=0; i<expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), actual.getValue(i));
+        }
+    }
+
+    @Test
+    public void testMerge() throws IOException {
+        // data split between two accumulators (one saved and restored) must
+        // give the same results as a single accumulator that got all of it
+        DataDoubleArray.DataInfoDoubleArray info = new DataDoubleArray.DataInfoDoubleArray("test", Null.DIMENSION, new int[]{2});
+        AccumulatorAverageCovariance all = new AccumulatorAverageCovariance(10);
+        all.putDataInfo(info);
+        AccumulatorAverageCovariance first = new AccumulatorAverageCovariance(10);
+        first.putDataInfo(info);
+        AccumulatorAverageCovariance second = new AccumulatorAverageCovariance(10);
+        second.putDataInfo(info);
+
+        DataDoubleArray rawData = new DataDoubleArray(2);
+        double[] x = rawData.getData();
+        RandomMersenneTwister rng = new RandomMersenneTwister(5);
+        double y = 0;
+        for (int i=0; i<2003; i++) {
+            y = 0.9*y + rng.nextGaussian();
+            x[0] = y;
+            x[1] = y + rng.nextDouble();
+            all.putData(rawData);
+            (i < 1000 ? first : second).putData(rawData);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        second.writeState(new DataOutputStream(bytes));
+        AccumulatorAverageCovariance restored = new AccumulatorAverageCovariance(10);
+        restored.putDataInfo(info);
+        restored.readState(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        first.merge(restored);
+
+        Assertions.assertEquals(all.getSampleCount(), first.getSampleCount());
+        Assertions.assertEquals(all.getBlockCount(), first.getBlockCount());
+        IData expected = all.getData(), actual = first.getData();
+        for (int i=0; i<expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), actual.getValue(i), 1e-10*Math.abs(expected.getValue(i)));
+        }
+
+        AccumulatorAverageFixed other = new AccumulatorAverageFixed(10);
+        other.putDataInfo(info);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> first.merge(other));
+    }
 }
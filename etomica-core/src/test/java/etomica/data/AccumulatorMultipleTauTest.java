@@ -0,0 +1,65 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataFunction;
+import etomica.units.dimensions.Length;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class AccumulatorMultipleTauTest {
+
+    @Test
+    public void testShortLags() {
+        // lags at the first level have no averaging, so they must match
+        // the direct calculation over all time origins
+        int nAtoms = 3, dim = 2, nSteps = 1000;
+        double[][] x = new double[nSteps][nAtoms * dim];
+        RandomMersenneTwister rng = new RandomMersenneTwister(7);
+        for (int t = 1; t < nSteps; t++) {
+            for (int i = 0; i < nAtoms * dim; i++) {
+                x[t][i] = x[t - 1][i] + rng.nextGaussian();
+            }
+        }
+        for (AccumulatorMultipleTau.Mode mode : AccumulatorMultipleTau.Mode.values()) {
+            AccumulatorMultipleTau correlator = new AccumulatorMultipleTau(mode, dim, 8, 2);
+            correlator.setTimeStep(0.5);
+            correlator.putDataInfo(new DataDoubleArray.DataInfoDoubleArray("x", Length.DIMENSION, new int[]{nAtoms, dim}));
+            DataDoubleArray data = new DataDoubleArray(new int[]{nAtoms, dim});
+            for (int t = 0; t < nSteps; t++) {
+                if (t % 2 == 0) {
+                    correlator.putData(x[t]);
+                } else {
+                    System.arraycopy(x[t], 0, data.getData(), 0, x[t].length);
+                    correlator.putData(data);
+                }
+            }
+            DataFunction f = (DataFunction) correlator.getData();
+            DataDoubleArray lags = ((DataFunction.DataInfoFunction) correlator.getDataInfo()).getXDataSource().getIndependentData(0);
+            for (int lag = 0; lag < 8; lag++) {
+                Assertions.assertEquals(lag * 0.5, lags.getValue(lag));
+                double sum = 0;
+                for (int t = lag; t < nSteps; t++) {
+                    for (int i = 0; i < nAtoms * dim; i++) {
+                        if (mode == AccumulatorMultipleTau.Mode.MSD) {
+                            double d = x[t][i] - x[t - lag][i];
+                            sum += d * d;
+                        } else {
+                            sum += x[t][i] * x[t - lag][i];
+                        }
+                    }
+                }
+                double expected = sum / ((nSteps - lag) * nAtoms);
+                Assertions.assertEquals(expected, f.getValue(lag), 1e-10 * Math.abs(expected));
+            }
+            // lags double at each level after the first
+            Assertions.assertEquals(8 * 0.5, lags.getValue(8));
+            Assertions.assertEquals(10 * 0.5, lags.getValue(9));
+            Assertions.assertTrue(correlator.getLevelCount() > 5);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.units.dimensions.Null;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DataPumpListenerAdaptiveTest {
+
+    /**
+     * An AR(1) process x' = phi x + noise, advanced once per step, with
+     * phi = exp(-1/tau) so that its correlation time is tau steps.  Time is
+     * simulated: each step takes stepTime ns and each measurement takes
+     * actionTime ns.
+     */
+    private static class AR1 extends DataSourceScalar {
+        final RandomMersenneTwister random = new RandomMersenneTwister(17);
+        final double phi, noise;
+        final long actionTime;
+        long clock = 1;
+        double x;
+
+        AR1(double tau, long actionTime) {
+            super("x", Null.DIMENSION);
+            phi = Math.exp(-1 / tau);
+            noise = Math.sqrt(1 - phi * phi);
+            this.actionTime = actionTime;
+        }
+
+        void step() {
+            x = phi * x + noise * random.nextGaussian();
+        }
+
+        public double getDataAsScalar() {
+            clock += actionTime;
+            return x;
+        }
+    }
+
+    private static DataPumpListenerAdaptive makePump(AR1 source) {
+        return new DataPumpListenerAdaptive(source, new AccumulatorAverageFixed(10)) {
+            protected long nanoTime() {
+                return source.clock;
+            }
+        };
+    }
+
+    private static void run(DataPumpListenerAdaptive pump, AR1 source, int nSteps, long stepTime, long pauseTime) {
+        for (int i = 0; i < nSteps; i++) {
+            pump.integratorStepStarted(null);
+            source.step();
+            source.clock += stepTime;
+            pump.integratorStepFinished(null);
+            // time between steps (a paused simulation) isn't part of a step
+            source.clock += pauseTime;
+        }
+    }
+
+    @Test
+    public void testCorrelationTime() {
+        double tau = 20;
+        AR1 source = new AR1(tau, 100);
+        DataPumpListenerAdaptive pump = makePump(source);
+        run(pump, source, 400000, 1000, 0);
+
+        Assertions.assertEquals(1000, pump.getStepTime(), 1e-10);
+        Assertions.assertEquals(100, pump.getActionTime(), 1e-10);
+        double tauEstimate = pump.getCorrelationSteps();
+        Assertions.assertTrue(tauEstimate > 0.5 * tau && tauEstimate < 2 * tau, "correlation time " + tauEstimate);
+        // the cost per independent sample is lowest at 6 steps
+        long interval = pump.getInterval();
+        Assertions.assertTrue(interval >= 3 && interval <= 15, "interval " + interval);
+    }
+
+    @Test
+    public void testBudget() {
+        // measurements are expensive, so the overhead budget (10%) sets the
+        // interval: at least 5000 / (0.1 * 1000) = 50 steps
+        AR1 source = new AR1(20, 5000);
+        DataPumpListenerAdaptive pump = makePump(source);
+        run(pump, source, 400000, 1000, 0);
+        long interval = pump.getInterval();
+        Assertions.assertTrue(interval >= 50 && interval <= 60, "interval " + interval);
+    }
+
+    @Test
+    public void testPause() {
+        AR1 source = new AR1(20, 100);
+        DataPumpListenerAdaptive pump = makePump(source);
+        run(pump, source, 1000, 1000, 1000000);
+        Assertions.assertEquals(1000, pump.getStepTime(), 1e-10);
+
+        // a reset between steps isn't counted either
+        pump.integratorInitialized(null);
+        source.clock += 1000000;
+        pump.integratorStepFinished(null);
+        Assertions.assertEquals(1000, pump.getStepTime(), 1e-10);
+    }
+}
@@ -0,0 +1,92 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.units.dimensions.Null;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+class DataPumpListenerAsyncTest {
+
+    /**
+     * Returns 0, 1, 2, ... on successive calls.
+     */
+    static class DataSourceCounter extends DataSourceScalar {
+        int count;
+
+        DataSourceCounter() {
+            super("count", Null.DIMENSION);
+        }
+
+        public double getDataAsScalar() {
+            return count++;
+        }
+    }
+
+    static class DataSinkList implements IDataSink {
+        final List<Double> values = new ArrayList<>();
+        CountDownLatch gate;
+
+        public void putData(IData data) {
+            if (gate != null) {
+                try {
+                    gate.await();
+                }
+                catch (InterruptedException ex) {
+                    throw new RuntimeException(ex);
+                }
+            }
+            values.add(data.getValue(0));
+        }
+
+        public void putDataInfo(IDataInfo dataInfo) {}
+    }
+
+    @Test
+    public void testOrder() {
+        DataSinkList sink = new DataSinkList();
+        DataPumpListenerAsync pump = new DataPumpListenerAsync(new DataSourceCounter(), sink, 1, 3, DataPumpListenerAsync.Policy.BLOCK);
+        for (int i = 0; i < 1000; i++) {
+            pump.actionPerformed();
+        }
+        pump.waitForIdle();
+        Assertions.assertEquals(1000, sink.values.size());
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(i, sink.values.get(i), 0);
+        }
+    }
+
+    @Test
+    public void testDropAndCoalesce() {
+        for (DataPumpListenerAsync.Policy policy : new DataPumpListenerAsync.Policy[]{DataPumpListenerAsync.Policy.DROP, DataPumpListenerAsync.Policy.COALESCE}) {
+            DataSinkList sink = new DataSinkList();
+            sink.gate = new CountDownLatch(1);
+            DataPumpListenerAsync pump = new DataPumpListenerAsync(new DataSourceCounter(), sink, 1, 2, policy);
+            for (int i = 0; i < 10; i++) {
+                pump.actionPerformed();
+            }
+            sink.gate.countDown();
+            pump.waitForIdle();
+            // the sink is stuck on the first value until the gate opens, so
+            // at most one more and the queue (2) were kept
+            Assertions.assertTrue(sink.values.size() <= 4);
+            for (int i = 1; i < sink.values.size(); i++) {
+                Assertions.assertTrue(sink.values.get(i) > sink.values.get(i-1));
+            }
+            if (policy == DataPumpListenerAsync.Policy.DROP) {
+                Assertions.assertEquals(10, sink.values.size() + pump.getDroppedCount());
+            }
+            else {
+                // the newest value is never lost
+                Assertions.assertEquals(9, sink.values.get(sink.values.size()-1), 0);
+                Assertions.assertEquals(10, sink.values.size() + pump.getCoalescedCount());
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data;
+
+import etomica.data.types.DataDouble;
+import etomica.data.types.DataDoubleArray;
+import etomica.data.types.DataGroup;
+import etomica.units.dimensions.Null;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+class DataSinkBinaryTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (boolean compressed : new boolean[]{false, true}) {
+            File file = File.createTempFile("DataSinkBinaryTest", ".bin");
+            file.deleteOnExit();
+            DataSinkBinary sink = new DataSinkBinary(file.getPath(), compressed);
+            sink.setChunkSize(100);
+
+            // a group with a scalar and a 2-element array
+            DataDouble.DataInfoDouble infoE = new DataDouble.DataInfoDouble("E", Null.DIMENSION);
+            DataDoubleArray.DataInfoDoubleArray infoP = new DataDoubleArray.DataInfoDoubleArray("P", Null.DIMENSION, new int[]{2});
+            DataGroup.DataInfoGroup infoGroup = new DataGroup.DataInfoGroup("group", Null.DIMENSION, new IDataInfo[]{infoE, infoP});
+            DataDouble e = new DataDouble();
+            DataDoubleArray p = new DataDoubleArray(2);
+            DataGroup group = new DataGroup(new IData[]{e, p});
+            sink.putDataInfo(infoGroup);
+            RandomMersenneTwister rng = new RandomMersenneTwister(1);
+            double[][] expected = new double[3][250];
+            for (int i = 0; i < 250; i++) {
+                e.x = rng.nextGaussian();
+                p.getData()[0] = i;
+                p.getData()[1] = -rng.nextDouble();
+                if (i % 2 == 0) {
+                    sink.putData(group);
+                }
+                else {
+                    sink.putData(new double[]{e.x, p.getData()[0], p.getData()[1]});
+                }
+                expected[0][i] = e.x;
+                expected[1][i] = i;
+                expected[2][i] = p.getData()[1];
+            }
+            // new schema partway through a chunk
+            sink.putDataInfo(infoE);
+            for (int i = 0; i < 30; i++) {
+                sink.putData(i * 0.5);
+            }
+            sink.close();
+            Assertions.assertEquals(280, sink.getRowCount());
+
+            try (DataBinaryReader reader = new DataBinaryReader(file.getPath())) {
+                double[][] chunk = reader.nextChunk();
+                Assertions.assertArrayEquals(new String[]{"E", "P[0]", "P[1]"}, reader.getColumnNames());
+                int row = 0;
+                while (reader.getColumnNames().length == 3) {
+                    for (int c = 0; c < 3; c++) {
+                        for (int r = 0; r < chunk[c].length; r++) {
+                            Assertions.assertEquals(expected[c][row + r], chunk[c][r]);
+                        }
+                    }
+                    row += chunk[0].length;
+                    chunk = reader.nextChunk();
+                }
+                Assertions.assertEquals(250, row);
+                Assertions.assertArrayEquals(new String[]{"E"}, reader.getColumnNames());
+                Assertions.assertEquals(30, chunk[0].length);
+                for (int i = 0; i < 30; i++) {
+                    Assertions.assertEquals(i * 0.5, chunk[0][i]);
+                }
+                Assertions.assertNull(reader.nextChunk());
+            }
+        }
+    }
+}
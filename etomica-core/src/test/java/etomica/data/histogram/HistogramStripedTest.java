@@ -0,0 +1,77 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.histogram;
+
+import etomica.math.DoubleRange;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class HistogramStripedTest {
+
+    /**
+     * Adds values from several threads to the striped histogram and the same
+     * values from one thread to the reference.
+     */
+    private static void fill(HistogramStriped striped, Histogram reference) throws InterruptedException {
+        int nThreads = 4;
+        double[][] values = new double[nThreads][20000];
+        RandomMersenneTwister rng = new RandomMersenneTwister(6);
+        for (int t = 0; t < nThreads; t++) {
+            for (int i = 0; i < values[t].length; i++) {
+                // slowly widening distribution, so the range keeps changing
+                values[t][i] = rng.nextGaussian() * (1 + i * 0.001);
+                reference.addValue(values[t][i]);
+            }
+        }
+        Thread[] threads = new Thread[nThreads];
+        for (int t = 0; t < nThreads; t++) {
+            final double[] myValues = values[t];
+            threads[t] = new Thread(() -> {
+                for (double x : myValues) {
+                    striped.addValue(x);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testSimple() throws InterruptedException {
+        HistogramStriped striped = new HistogramStriped(new HistogramSimple(50, new DoubleRange(-3, 3)));
+        HistogramSimple reference = new HistogramSimple(50, new DoubleRange(-3, 3));
+        fill(striped, reference);
+        Assertions.assertEquals(reference.getCount(), striped.getCount());
+        Assertions.assertArrayEquals(reference.getHistogram(), striped.getHistogram());
+    }
+
+    @Test
+    public void testExpanding() throws InterruptedException {
+        HistogramStriped striped = new HistogramStriped(new HistogramExpanding(0.1));
+        HistogramExpanding reference = new HistogramExpanding(0.1);
+        fill(striped, reference);
+        Assertions.assertEquals(reference.getCount(), striped.getCount());
+        Assertions.assertEquals(reference.getXRange().minimum(), striped.getXRange().minimum(), 1e-10);
+        Assertions.assertEquals(reference.getNBins(), striped.getNBins());
+        Assertions.assertArrayEquals(reference.getHistogram(), striped.getHistogram(), 1e-12);
+    }
+
+    @Test
+    public void testCollapsing() throws InterruptedException {
+        // the bins depend on the order of the values, so only check that
+        // nothing was lost
+        HistogramStriped striped = new HistogramStriped(new HistogramCollapsing(40));
+        fill(striped, new HistogramCollapsing(40));
+        Assertions.assertEquals(80000, striped.getCount());
+        long total = 0;
+        for (long c : striped.getHistogramSimple().getBinCounts()) {
+            total += c;
+        }
+        Assertions.assertEquals(80000, total);
+    }
+}
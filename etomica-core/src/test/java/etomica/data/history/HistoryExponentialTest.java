@@ -0,0 +1,49 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.history;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class HistoryExponentialTest {
+
+    @Test
+    public void testAverage() {
+        double decayLength = 4;
+        HistoryExponential history = new HistoryExponential(5, decayLength);
+        double decay = Math.exp(-1 / decayLength);
+        int nValues = 12;
+        for (int i = 0; i < nValues; i++) {
+            history.addValue(i, i * i);
+        }
+        Assertions.assertEquals(5, history.getSampleCount());
+        double[] x = history.getXValues();
+        double[] y = history.getHistory();
+        for (int k = 0; k < 5; k++) {
+            int last = nValues - 5 + k;
+            Assertions.assertEquals(last, x[k]);
+            // weighted sum over all values up to last, done directly
+            double sum = 0, weight = 0;
+            for (int i = 0; i <= last; i++) {
+                double w = Math.pow(decay, last - i);
+                sum += w * i * i;
+                weight += w;
+            }
+            Assertions.assertEquals(sum / weight, y[k], 1e-10);
+        }
+
+        // NaN is not added, and does not spoil later values
+        Assertions.assertFalse(history.addValue(nValues, Double.NaN));
+        Assertions.assertEquals(nValues - 1, history.getXValues()[4]);
+
+        // the first value after a reset is taken as is
+        history.reset();
+        history.addValue(0, 3);
+        Assertions.assertEquals(1, history.getSampleCount());
+        Assertions.assertEquals(3, history.getHistory()[4]);
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> history.setDecayLength(0));
+    }
+}
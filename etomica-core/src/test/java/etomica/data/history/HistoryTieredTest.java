@@ -0,0 +1,70 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.history;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class HistoryTieredTest {
+
+    /**
+     * Adds the values 0, 1, 2... (with x = y) so that each point's minimum
+     * and maximum are the first and last values it summarizes.  After every
+     * value, the points must cover a contiguous range of values ending with
+     * the latest, with the mean of each point in the middle of its range.
+     */
+    @Test
+    public void testRollover() {
+        for (int[] p : new int[][]{{5, 3, 2}, {4, 3, 4}, {10, 4, 3}}) {
+            int tierLength = p[0], nTiers = p[1], factor = p[2];
+            HistoryTiered history = new HistoryTiered(tierLength, nTiers, factor);
+            int n = tierLength * nTiers;
+            // enough for every tier to roll over several times
+            int nValues = 5 * tierLength * (int) Math.pow(factor, nTiers - 1);
+            for (int i = 0; i < nValues; i++) {
+                history.addValue(i, i);
+                checkHistory(history, i, tierLength);
+            }
+            // the coarsest tier reaches back tierLength points of
+            // factor^(nTiers-1) values
+            double oldest = history.getMinHistory()[n - history.getSampleCount()];
+            Assertions.assertTrue(oldest <= nValues - tierLength * Math.pow(factor, nTiers - 1), "oldest " + oldest);
+
+            history.reset();
+            Assertions.assertEquals(0, history.getSampleCount());
+            Assertions.assertTrue(Double.isNaN(history.getHistory()[n - 1]));
+        }
+    }
+
+    private static void checkHistory(HistoryTiered history, int last, int tierLength) {
+        double[] x = history.getXValues();
+        double[] y = history.getHistory();
+        double[] min = history.getMinHistory();
+        double[] max = history.getMaxHistory();
+        int n = x.length;
+        int nPoints = history.getSampleCount();
+        for (int k = 0; k < n - nPoints; k++) {
+            Assertions.assertTrue(Double.isNaN(x[k]) && Double.isNaN(y[k]) && Double.isNaN(min[k]) && Double.isNaN(max[k]));
+        }
+        Assertions.assertEquals(last, x[n - 1]);
+        Assertions.assertEquals(last, max[n - 1]);
+        for (int k = n - nPoints; k < n; k++) {
+            Assertions.assertEquals(max[k], x[k]);
+            Assertions.assertEquals(0.5 * (min[k] + max[k]), y[k], 1e-10);
+            if (k > n - nPoints) {
+                Assertions.assertEquals(max[k - 1] + 1, min[k], "gap before point " + k + " after " + last);
+            }
+        }
+    }
+
+    @Test
+    public void testTierLength() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HistoryTiered(5, 3, 10));
+        HistoryTiered history = new HistoryTiered(10, 3, 10);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> history.setHistoryLength(15));
+        // a single tier is never summarized
+        new HistoryTiered(5, 1, 10);
+    }
+}
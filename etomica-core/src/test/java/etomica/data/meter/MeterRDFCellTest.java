@@ -0,0 +1,126 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.atom.AtomType;
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.data.IData;
+import etomica.simulation.Simulation;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MeterRDFCellTest {
+    Space space;
+    Box box;
+    AtomType typeA, typeB;
+    RandomMersenneTwister random;
+
+    @BeforeEach
+    public void setUp() {
+        space = Space3D.getInstance();
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono speciesA = new SpeciesSpheresMono(sim, space);
+        SpeciesSpheresMono speciesB = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(speciesA);
+        sim.addSpecies(speciesB);
+        typeA = speciesA.getLeafType();
+        typeB = speciesB.getLeafType();
+        box = sim.makeBox();
+        Vector L = space.makeVector();
+        L.E(new double[]{10, 11, 12});
+        box.getBoundary().setBoxSize(L);
+        box.setNMolecules(speciesA, 40);
+        box.setNMolecules(speciesB, 40);
+        // these come after the B atoms in the leaf list
+        for (int i = 0; i < 20; i++) {
+            box.addMolecule(speciesA.makeMolecule());
+        }
+        random = new RandomMersenneTwister(9);
+    }
+
+    private void randomize() {
+        IAtomList atoms = box.getLeafList();
+        Vector L = box.getBoundary().getBoxSize();
+        for (int i = 0; i < atoms.size(); i++) {
+            Vector p = atoms.get(i).getPosition();
+            for (int j = 0; j < 3; j++) {
+                p.setX(j, (random.nextDouble() - 0.5) * L.getX(j));
+            }
+        }
+    }
+
+    private MeterRDF setupMeter(MeterRDF meter) {
+        meter.setBox(box);
+        meter.getXDataSource().setXMax(3);
+        meter.getXDataSource().setNValues(30);
+        meter.reset();
+        return meter;
+    }
+
+    private static void assertDataEquals(IData expected, IData actual) {
+        Assertions.assertEquals(expected.getLength(), actual.getLength());
+        for (int i = 0; i < expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), actual.getValue(i), 1e-10);
+        }
+    }
+
+    @Test
+    public void testAllPairs() {
+        MeterRDF rdf = setupMeter(new MeterRDF(space));
+        MeterRDFCell rdfCell = (MeterRDFCell) setupMeter(new MeterRDFCell(space));
+        rdfCell.setNumThreads(4);
+        for (int i = 0; i < 5; i++) {
+            randomize();
+            rdf.actionPerformed();
+            rdfCell.actionPerformed();
+            if (i == 2) {
+                // threads are started again as needed
+                rdfCell.dispose();
+            }
+        }
+        assertDataEquals(rdf.getData(), rdfCell.getData());
+        rdfCell.dispose();
+    }
+
+    @Test
+    public void testTypes() {
+        for (AtomType[] types : new AtomType[][]{{typeA, typeA}, {typeA, typeB}, {typeB, typeA}}) {
+            MeterRDF rdf = setupMeter(new MeterRDF(space));
+            rdf.setAtomTypes(types[0], types[1]);
+            MeterRDFCell rdfCell = (MeterRDFCell) setupMeter(new MeterRDFCell(space));
+            rdfCell.setNumThreads(1);
+            rdfCell.setAtomTypes(types[0], types[1]);
+            // unordered, so it matches MeterRDF with all A-B pairs
+            MeterRDF rdfAB = setupMeter(new MeterRDF(space));
+            rdfAB.setAtomTypes(typeA, typeB);
+            MeterRDF rdfBA = setupMeter(new MeterRDF(space));
+            rdfBA.setAtomTypes(typeB, typeA);
+            int iPair = rdfCell.addTypePair(typeB, typeA);
+            for (int i = 0; i < 5; i++) {
+                randomize();
+                rdf.actionPerformed();
+                rdfCell.actionPerformed();
+                rdfAB.actionPerformed();
+                rdfBA.actionPerformed();
+            }
+            assertDataEquals(rdf.getData(), rdfCell.getData());
+
+            // 40*40 ordered A-B pairs and 40*20 ordered B-A pairs
+            IData dataAB = rdfAB.getData();
+            IData dataBA = rdfBA.getData();
+            IData pairData = rdfCell.getTypePairDataSource(iPair).getData();
+            for (int i = 0; i < pairData.getLength(); i++) {
+                Assertions.assertEquals((1600 * dataAB.getValue(i) + 800 * dataBA.getValue(i)) / 2400, pairData.getValue(i), 1e-10);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.data.meter;
+
+import etomica.atom.IAtomList;
+import etomica.box.Box;
+import etomica.data.IData;
+import etomica.simulation.Simulation;
+import etomica.space.Boundary;
+import etomica.space.BoundaryDeformablePeriodic;
+import etomica.space.BoundaryRectangularPeriodic;
+import etomica.space.Space;
+import etomica.space.Vector;
+import etomica.space2d.Space2D;
+import etomica.space3d.Space3D;
+import etomica.species.SpeciesSpheresMono;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class MeterStructureFactorFFTTest {
+
+    @Test
+    public void test2D() {
+        Space space = Space2D.getInstance();
+        // slanted box, so the reciprocal vectors are not along the edges
+        Boundary boundary = new BoundaryDeformablePeriodic(space, new Vector[]{Vector.of(6, 0), Vector.of(1.5, 5)});
+        check(space, boundary, 4, 5);
+    }
+
+    @Test
+    public void test3D() {
+        Space space = Space3D.getInstance();
+        check(space, new BoundaryRectangularPeriodic(space, new double[]{4, 5, 6}), 4, 3);
+    }
+
+    /**
+     * Puts atoms on a lattice of nCells per edge, displaced randomly, and
+     * compares S(k) from each method to MeterStructureFactor.
+     */
+    private static void check(Space space, Boundary boundary, int nCells, double cutoff) {
+        Simulation sim = new Simulation(space);
+        SpeciesSpheresMono species = new SpeciesSpheresMono(sim, space);
+        sim.addSpecies(species);
+        Box box = sim.makeBox(boundary);
+        int D = space.D();
+        int n = (int) Math.round(Math.pow(nCells, D));
+        box.setNMolecules(species, n);
+        IAtomList atoms = box.getLeafList();
+        RandomMersenneTwister random = new RandomMersenneTwister(11);
+        for (int i = 0; i < n; i++) {
+            Vector p = atoms.get(i).getPosition();
+            p.E(0);
+            int ii = i;
+            for (int d = 0; d < D; d++) {
+                double s = (ii % nCells + 0.2 * (random.nextDouble() - 0.5)) / nCells - 0.5;
+                ii /= nCells;
+                p.PEa1Tv1(s, boundary.getEdgeVector(d));
+            }
+        }
+
+        MeterStructureFactor meter = new MeterStructureFactor(space, box, cutoff);
+        IData expected = meter.getData();
+        Assertions.assertTrue(expected.getLength() > 10);
+
+        MeterStructureFactorFFT meterFFT = new MeterStructureFactorFFT(space, box, cutoff);
+        meterFFT.setNumThreads(1);
+        meterFFT.setMethod(MeterStructureFactorFFT.Method.DIRECT);
+        IData direct = meterFFT.getData();
+        Assertions.assertFalse(meterFFT.getLastUsedFFT());
+        Assertions.assertEquals(expected.getLength(), direct.getLength());
+        for (int i = 0; i < expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), direct.getValue(i), 1e-10);
+        }
+
+        meterFFT.setMethod(MeterStructureFactorFFT.Method.FFT);
+        meterFFT.setOversampling(4);
+        IData fft = meterFFT.getData();
+        Assertions.assertTrue(meterFFT.getLastUsedFFT());
+        for (int i = 0; i < expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), fft.getValue(i), 1e-4);
+        }
+
+        // wave vectors that aren't commensurate with the box
+        Vector[] waveVectors = new Vector[]{space.makeVector(), space.makeVector()};
+        waveVectors[0].E(0.3);
+        waveVectors[1].E(0.7);
+        meter.setWaveVec(waveVectors);
+        meterFFT.setWaveVec(waveVectors);
+        meterFFT.setMethod(MeterStructureFactorFFT.Method.AUTO);
+        expected = meter.getData();
+        direct = meterFFT.getData();
+        Assertions.assertFalse(meterFFT.getLastUsedFFT());
+        for (int i = 0; i < expected.getLength(); i++) {
+            Assertions.assertEquals(expected.getValue(i), direct.getValue(i), 1e-10);
+        }
+    }
+}
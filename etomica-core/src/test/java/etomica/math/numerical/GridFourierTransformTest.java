@@ -0,0 +1,64 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.math.numerical;
+
+import etomica.space.Vector;
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class GridFourierTransformTest {
+
+    @Test
+    public void testDualVectors() {
+        Vector[] a = new Vector[]{Vector.of(2, 0, 0), Vector.of(0.5, 3, 0), Vector.of(0.3, -0.7, 4)};
+        double[][] b = GridFourierTransform.dualVectors(a);
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                double dot = 0;
+                for (int k = 0; k < 3; k++) {
+                    dot += b[i][k] * a[j].getX(k);
+                }
+                Assertions.assertEquals(i == j ? 1 : 0, dot, 1e-12);
+            }
+        }
+        Assertions.assertNull(GridFourierTransform.dualVectors(new Vector[]{Vector.of(1, 2), Vector.of(2, 4)}));
+    }
+
+    /**
+     * Compares the transform of a grid with power-of-2 and other sizes to a
+     * direct sum.
+     */
+    @Test
+    public void testTransform() {
+        int[] gridSize = new int[]{3, 4, 5};
+        int n = 60;
+        RandomMersenneTwister random = new RandomMersenneTwister(5);
+        double[] re = new double[n], im = new double[n];
+        for (int i = 0; i < n; i++) {
+            re[i] = random.nextDouble() - 0.5;
+            im[i] = random.nextDouble() - 0.5;
+        }
+        double[] re0 = re.clone(), im0 = im.clone();
+        new GridFourierTransform().transform(re, im, gridSize);
+
+        for (int j = 0; j < n; j++) {
+            double sRe = 0, sIm = 0;
+            for (int m = 0; m < n; m++) {
+                // phase 2 pi sum_d j_d m_d / n_d, with the last index fastest
+                double phase = 0;
+                for (int d = 2, jj = j, mm = m; d >= 0; d--) {
+                    phase += 2 * Math.PI * (jj % gridSize[d]) * (mm % gridSize[d]) / gridSize[d];
+                    jj /= gridSize[d];
+                    mm /= gridSize[d];
+                }
+                sRe += re0[m] * Math.cos(phase) + im0[m] * Math.sin(phase);
+                sIm += im0[m] * Math.cos(phase) - re0[m] * Math.sin(phase);
+            }
+            Assertions.assertEquals(sRe, re[j], 1e-10);
+            Assertions.assertEquals(sIm, im[j], 1e-10);
+        }
+    }
+}
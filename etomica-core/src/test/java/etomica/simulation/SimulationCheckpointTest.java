@@ -0,0 +1,93 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.simulation;
+
+import etomica.atom.IAtomList;
+import etomica.data.AccumulatorAverage;
+import etomica.data.AccumulatorAverageFixed;
+import etomica.data.DataPumpListener;
+import etomica.data.meter.MeterPotentialEnergy;
+import etomica.simulation.prototypes.SoftSphere3d;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+class SimulationCheckpointTest {
+
+    @Test
+    public void testResume() throws IOException {
+        SoftSphere3d sim = new SoftSphere3d();
+        AccumulatorAverageFixed acc = addEnergy(sim);
+        sim.integrator.reset();
+        for (int i = 0; i < 1000; i++) {
+            sim.integrator.doStep();
+        }
+
+        File file = File.createTempFile("sim", ".ckpt");
+        file.deleteOnExit();
+        SimulationCheckpoint checkpoint = new SimulationCheckpoint(sim);
+        checkpoint.addAccumulator(acc);
+        checkpoint.write(file);
+        Assertions.assertEquals(SoftSphere3d.class.getName(), SimulationCheckpoint.readSimulationClass(file));
+
+        SoftSphere3d sim2 = new SoftSphere3d();
+        AccumulatorAverageFixed acc2 = addEnergy(sim2);
+        SimulationCheckpoint checkpoint2 = new SimulationCheckpoint(sim2);
+        checkpoint2.addAccumulator(acc2);
+        checkpoint2.read(file);
+
+        // both should now follow exactly the same trajectory
+        sim.integrator.reset();
+        sim2.integrator.reset();
+        for (int i = 0; i < 1000; i++) {
+            sim.integrator.doStep();
+            sim2.integrator.doStep();
+        }
+
+        IAtomList atoms = sim.box.getLeafList();
+        IAtomList atoms2 = sim2.box.getLeafList();
+        for (int i = 0; i < atoms.size(); i++) {
+            for (int j = 0; j < 3; j++) {
+                Assertions.assertEquals(atoms.get(i).getPosition().getX(j), atoms2.get(i).getPosition().getX(j));
+            }
+        }
+        Assertions.assertEquals(sim.mcMoveAtom.getStepSize(), sim2.mcMoveAtom.getStepSize());
+        Assertions.assertEquals(acc.getSampleCount(), acc2.getSampleCount());
+        Assertions.assertEquals(acc.getData(AccumulatorAverage.AVERAGE).getValue(0),
+                acc2.getData(AccumulatorAverage.AVERAGE).getValue(0));
+    }
+
+    @Test
+    public void testFailedWrite() throws IOException {
+        SoftSphere3d sim = new SoftSphere3d();
+        File file = File.createTempFile("sim", ".ckpt");
+        file.deleteOnExit();
+        SimulationCheckpoint checkpoint = new SimulationCheckpoint(sim);
+        checkpoint.write(file);
+        long length = file.length();
+
+        SimulationCheckpoint failing = new SimulationCheckpoint(sim) {
+            public void writeState(DataOutputStream out) throws IOException {
+                out.writeInt(0);
+                throw new IOException("disk full");
+            }
+        };
+        Assertions.assertThrows(RuntimeException.class, () -> failing.write(file));
+        // the old checkpoint is still there, and the partial one is gone
+        Assertions.assertEquals(length, file.length());
+        Assertions.assertEquals(SoftSphere3d.class.getName(), SimulationCheckpoint.readSimulationClass(file));
+        Assertions.assertFalse(new File(file.getPath() + ".tmp").exists());
+    }
+
+    private static AccumulatorAverageFixed addEnergy(SoftSphere3d sim) {
+        MeterPotentialEnergy meter = new MeterPotentialEnergy(sim.potentialMaster, sim.box);
+        AccumulatorAverageFixed acc = new AccumulatorAverageFixed(10);
+        sim.integrator.getEventManager().addListener(new DataPumpListener(meter, acc, 10));
+        return acc;
+    }
+}
@@ -0,0 +1,49 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package etomica.util;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class SnapshotBufferTest {
+
+    @Test
+    public void testConsistent() throws InterruptedException {
+        SnapshotBuffer<long[]> buffer = new SnapshotBuffer<>(() -> new long[1000]);
+        Assertions.assertNull(buffer.read(a -> a[0]));
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread writer = new Thread(() -> {
+            for (long k = 1; k <= 20000; k++) {
+                long[] a = buffer.getBackBuffer();
+                for (int i = 0; i < a.length; i++) {
+                    a[i] = k;
+                }
+                buffer.publish();
+            }
+            done.set(true);
+        });
+        writer.start();
+
+        // every read must see a single publish, and never an older one
+        long last = 0;
+        while (!done.get()) {
+            Long k = buffer.read(a -> {
+                for (long x : a) {
+                    if (x != a[0]) return -1L;
+                }
+                return a[0];
+            });
+            if (k == null) continue;
+            Assertions.assertTrue(k >= last);
+            last = k;
+        }
+        writer.join();
+        Assertions.assertEquals(20000, (long) buffer.read(a -> a[a.length - 1]));
+        Assertions.assertEquals(20000, buffer.getVersion());
+    }
+}
@@ -10,6 +10,7 @@ import etomica.data.IDataSource;
 import etomica.meta.ComponentIndex;
 import etomica.meta.DataSourceIndex;
 import etomica.server.health.BasicHealthCheck;
+import etomica.server.resources.ConfigurationBinaryWebsocket;
 import etomica.server.resources.ConfigurationWebsocket;
 import etomica.server.resources.EchoServer;
 import etomica.server.resources.data.DataStreamWebsocket;
@@ -73,6 +74,7 @@ public class EtomicaServer extends Application<EtomicaServerConfig> {
         WebsocketBundle wsBundle = new WebsocketBundle(wsConfigurator);
         wsBundle.addEndpoint(EchoServer.class);
         wsBundle.addEndpoint(ConfigurationWebsocket.class);
+        wsBundle.addEndpoint(ConfigurationBinaryWebsocket.class);
         wsBundle.addEndpoint(DataStreamWebsocket.class);
 
         bootstrap.addBundle(wsBundle);
@@ -10,6 +10,35 @@ public class EtomicaServerConfig extends Configuration {
     @NotEmpty
     private String hello;
 
+    /**
+     * The largest number of simulations the server will hold at once.
+     */
+    @JsonProperty
+    private int maxSimulations = 50;
+
+    /**
+     * The largest number of simulations that run at once; others wait for
+     * their time slice.
+     */
+    @JsonProperty
+    private int maxRunningSimulations = Runtime.getRuntime().availableProcessors();
+
+    @JsonProperty
+    private long timeSliceMillis = 200;
+
+    /**
+     * Simulations that have had no requests and no viewers for this long are
+     * removed.
+     */
+    @JsonProperty
+    private long idleTimeoutMinutes = 30;
+
+    /**
+     * The directory where simulation checkpoints are written.
+     */
+    @JsonProperty
+    private String checkpointDirectory = "checkpoints";
+
     public String getHello() {
         return hello;
     }
@@ -17,4 +46,44 @@ public class EtomicaServerConfig extends Configuration {
     public void setHello(String hello) {
         this.hello = hello;
     }
+
+    public int getMaxSimulations() {
+        return maxSimulations;
+    }
+
+    public void setMaxSimulations(int maxSimulations) {
+        this.maxSimulations = maxSimulations;
+    }
+
+    public int getMaxRunningSimulations() {
+        return maxRunningSimulations;
+    }
+
+    public void setMaxRunningSimulations(int maxRunningSimulations) {
+        this.maxRunningSimulations = maxRunningSimulations;
+    }
+
+    public long getTimeSliceMillis() {
+        return timeSliceMillis;
+    }
+
+    public void setTimeSliceMillis(long timeSliceMillis) {
+        this.timeSliceMillis = timeSliceMillis;
+    }
+
+    public long getIdleTimeoutMinutes() {
+        return idleTimeoutMinutes;
+    }
+
+    public void setIdleTimeoutMinutes(long idleTimeoutMinutes) {
+        this.idleTimeoutMinutes = idleTimeoutMinutes;
+    }
+
+    public String getCheckpointDirectory() {
+        return checkpointDirectory;
+    }
+
+    public void setCheckpointDirectory(String checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
+    }
 }
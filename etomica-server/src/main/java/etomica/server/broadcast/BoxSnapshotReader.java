@@ -0,0 +1,73 @@
+package etomica.server.broadcast;
+
+import etomica.box.BoxSnapshot;
+
+/**
+ * Copies the latest frames from a simulation's BoxSnapshots into arrays that
+ * a FrameEncoder can take its time over.  Copying is cheap compared with
+ * encoding, and it lets the snapshots' buffers go back to the simulation
+ * right away.
+ */
+public class BoxSnapshotReader {
+    private final BoxSnapshot[] snapshots;
+    private final long[] versions;
+    private final double[][][] coordinates;
+    private final double[][] boxSizes;
+    private final boolean[][] periodicity;
+
+    public BoxSnapshotReader(BoxSnapshot[] snapshots) {
+        this.snapshots = snapshots;
+        versions = new long[snapshots.length];
+        coordinates = new double[snapshots.length][][];
+        boxSizes = new double[snapshots.length][];
+        periodicity = new boolean[snapshots.length][];
+    }
+
+    /**
+     * Copies the latest frames.
+     *
+     * @return false if no snapshot has changed since the last call, in which
+     * case nothing is copied
+     */
+    public boolean update() {
+        boolean changed = false;
+        for (int i = 0; i < snapshots.length; i++) {
+            if (snapshots[i].getVersion() != versions[i]) {
+                changed = true;
+            }
+        }
+        if (!changed) return false;
+        for (int i = 0; i < snapshots.length; i++) {
+            final int iBox = i;
+            versions[i] = snapshots[i].getVersion();
+            snapshots[i].read(frame -> {
+                double[][] c = coordinates[iBox];
+                if (c == null || c.length != frame.coordinates.length) {
+                    c = coordinates[iBox] = new double[frame.coordinates.length][];
+                }
+                for (int j = 0; j < c.length; j++) {
+                    if (c[j] == null || c[j].length != frame.coordinates[j].length) {
+                        c[j] = new double[frame.coordinates[j].length];
+                    }
+                    System.arraycopy(frame.coordinates[j], 0, c[j], 0, c[j].length);
+                }
+                boxSizes[iBox] = frame.boxSize.clone();
+                periodicity[iBox] = frame.periodic.clone();
+                return null;
+            });
+        }
+        return true;
+    }
+
+    public double[][][] getCoordinates() {
+        return coordinates;
+    }
+
+    public double[][] getBoxSizes() {
+        return boxSizes;
+    }
+
+    public boolean[][] getPeriodicity() {
+        return periodicity;
+    }
+}
@@ -0,0 +1,205 @@
+package etomica.server.broadcast;
+
+import etomica.simulation.Simulation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends one stream of frames from a simulation to any number of websocket
+ * sessions.  Each tick, the state is encoded once and the same frame is sent
+ * to every session.  The FrameEncoder reads the state from snapshots (such
+ * as BoxSnapshot or DataSnapshot) published by the simulation between steps,
+ * so the simulation is never paused to take a frame.  Each session has at
+ * most one frame in flight; if a session is still sending the previous
+ * frame, the new one is dropped for that session, so that a slow client only
+ * sees fewer frames and does not hold up the others or make frames pile up
+ * on the server.
+ * <p>
+ * Frames that depend on earlier ones (such as those from
+ * ConfigurationFrameEncoder) are handled by the FrameEncoder's keyFrame
+ * method: a session that has just subscribed, or that missed a frame, is
+ * sent a key frame instead.  The key frame is encoded at most once per tick,
+ * however many sessions need it.
+ */
+public class Broadcaster {
+
+    /**
+     * Makes the frames for a Broadcaster.  Frames are Strings (sent as text)
+     * or ByteBuffers (sent as binary).
+     */
+    public interface FrameEncoder {
+        /**
+         * Returns the frame for the current state of the simulation, or null
+         * if nothing has changed since the last frame.  This is called once
+         * per tick, from the broadcaster's thread, so the state must be read
+         * from snapshots rather than from the running simulation.
+         */
+        Object encode();
+
+        /**
+         * Returns a frame for the same state as the given frame (the last one
+         * returned by encode) that a client can use without having received
+         * any earlier frames.  By default, frames are self-contained and the
+         * given frame is returned.
+         */
+        default Object keyFrame(Object frame) {
+            return frame;
+        }
+    }
+
+    /**
+     * @param sim      the simulation
+     * @param encoder  makes the frames
+     * @param executor runs the ticks
+     * @param period   the time between ticks, in milliseconds
+     */
+    public Broadcaster(Simulation sim, FrameEncoder encoder, ScheduledThreadPoolExecutor executor, long period) {
+        this.sim = sim;
+        this.encoder = encoder;
+        this.executor = executor;
+        this.period = period;
+        subscribers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Starts sending frames to the session.  Ticks start with the first
+     * subscriber.
+     */
+    public synchronized void subscribe(Session session) {
+        subscribers.put(session, new Subscriber(session));
+        if (task == null) {
+            task = executor.scheduleWithFixedDelay(this::tick, 0, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Stops sending frames to the session.  Ticks stop with the last
+     * subscriber.
+     *
+     * @return true if there are no subscribers left
+     */
+    public synchronized boolean unsubscribe(Session session) {
+        subscribers.remove(session);
+        if (subscribers.isEmpty() && task != null) {
+            task.cancel(false);
+            task = null;
+        }
+        return subscribers.isEmpty();
+    }
+
+    public Simulation getSimulation() {
+        return sim;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Returns the number of frames that were not sent because a session was
+     * still busy with an earlier one.
+     */
+    public long getDroppedFrameCount() {
+        long dropped = 0;
+        for (Subscriber subscriber : subscribers.values()) {
+            dropped += subscriber.dropped;
+        }
+        return dropped;
+    }
+
+    protected void tick() {
+        try {
+            if (subscribers.isEmpty()) return;
+            Object frame = encoder.encode();
+            if (frame != null) {
+                lastFrame = frame;
+            }
+            boolean keyFrameNeeded = false;
+            for (Subscriber subscriber : subscribers.values()) {
+                if (subscriber.keyFrameNeeded && !subscriber.sending) {
+                    keyFrameNeeded = true;
+                    break;
+                }
+            }
+            // new subscribers get the last frame even if nothing has changed
+            Object keyFrame = keyFrameNeeded && lastFrame != null ? encoder.keyFrame(lastFrame) : null;
+
+            for (Subscriber subscriber : subscribers.values()) {
+                if (subscriber.sending) {
+                    if (frame != null) {
+                        // this client is behind; skip it this time
+                        subscriber.dropped++;
+                        subscriber.keyFrameNeeded = true;
+                    }
+                    continue;
+                }
+                if (subscriber.keyFrameNeeded) {
+                    if (keyFrame == null) continue;
+                    subscriber.keyFrameNeeded = false;
+                    subscriber.send(keyFrame);
+                }
+                else if (frame != null) {
+                    subscriber.send(frame);
+                }
+            }
+        } catch (RuntimeException e) {
+            // an exception would stop the ticks altogether
+            log.warn("Error broadcasting frame", e);
+        }
+    }
+
+    protected static class Subscriber {
+        public final Session session;
+        public volatile boolean sending;
+        public volatile boolean keyFrameNeeded;
+        public volatile long dropped;
+
+        public Subscriber(Session session) {
+            this.session = session;
+            keyFrameNeeded = true;
+        }
+
+        public void send(Object frame) {
+            sending = true;
+            try {
+                if (frame instanceof ByteBuffer) {
+                    // each session reads the frame with its own position
+                    session.getAsyncRemote().sendBinary(((ByteBuffer) frame).duplicate(), this::sent);
+                }
+                else {
+                    session.getAsyncRemote().sendText((String) frame, this::sent);
+                }
+            } catch (RuntimeException e) {
+                sending = false;
+                keyFrameNeeded = true;
+                throw e;
+            }
+        }
+
+        protected void sent(SendResult result) {
+            if (!result.isOK()) {
+                keyFrameNeeded = true;
+            }
+            sending = false;
+        }
+    }
+
+    private static final Logger log = LoggerFactory.getLogger(Broadcaster.class);
+
+    protected final Simulation sim;
+    protected final FrameEncoder encoder;
+    protected final ScheduledThreadPoolExecutor executor;
+    protected final long period;
+    protected final Map<Session, Subscriber> subscribers;
+    protected ScheduledFuture<?> task;
+    protected Object lastFrame;
+}
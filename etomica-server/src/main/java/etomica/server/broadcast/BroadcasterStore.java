@@ -0,0 +1,54 @@
+package etomica.server.broadcast;
+
+import etomica.simulation.Simulation;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import javax.websocket.Session;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.function.Supplier;
+
+/**
+ * Holds the Broadcaster for each stream that has subscribers, so that all
+ * sessions watching the same stream share one.  Streams are identified by
+ * a key, which should include the simulation (or data stream) and anything
+ * that changes the frames, such as their format.  A Broadcaster is made
+ * for the first subscriber and dropped after the last unsubscribes.
+ */
+@Singleton
+public class BroadcasterStore extends ConcurrentHashMap<String, Broadcaster> {
+    private final ScheduledThreadPoolExecutor executor;
+
+    @Inject
+    public BroadcasterStore(ScheduledThreadPoolExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Subscribes the session to the stream with the given key, making the
+     * Broadcaster for it if needed.
+     *
+     * @param encoderFactory makes the FrameEncoder if a Broadcaster is made
+     * @param period         the time between frames, in milliseconds, if a
+     *                       Broadcaster is made
+     */
+    public void subscribe(String key, Session session, Simulation sim, Supplier<Broadcaster.FrameEncoder> encoderFactory, long period) {
+        compute(key, (k, broadcaster) -> {
+            if (broadcaster == null) {
+                broadcaster = new Broadcaster(sim, encoderFactory.get(), executor, period);
+            }
+            broadcaster.subscribe(session);
+            return broadcaster;
+        });
+    }
+
+    /**
+     * Unsubscribes the session from the stream with the given key, and drops
+     * the stream's Broadcaster if it has no subscribers left.
+     */
+    public void unsubscribe(String key, Session session) {
+        if (key == null) return;
+        computeIfPresent(key, (k, broadcaster) -> broadcaster.unsubscribe(session) ? null : broadcaster);
+    }
+}
@@ -0,0 +1,175 @@
+package etomica.server.dao;
+
+import etomica.data.AccumulatorAverageFixed;
+import etomica.data.DataAccumulator;
+import etomica.data.IDataSink;
+import etomica.meta.SimulationModel;
+import etomica.server.EtomicaServerConfig;
+import etomica.simulation.Simulation;
+import etomica.simulation.SimulationCheckpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps simulation checkpoints as files in the checkpoint directory, one file
+ * per simulation named by its id.  The accumulators saved with a simulation
+ * are its AccumulatorAverageFixed instances, in the order the SimulationModel
+ * finds them, so a new instance of the same class finds the same ones.
+ * Because the files hold everything needed, a checkpoint written by one
+ * server can be copied to another and resumed there.
+ * <p>
+ * Only what the simulation class itself builds can be restored.  Other
+ * kinds of accumulators in the simulation (histories, histograms and so on)
+ * start over when the checkpoint is resumed, and data streams and
+ * accumulators added through DataStreamResource are not saved at all; a
+ * client must add them again after resuming.  A warning naming them is
+ * logged when the checkpoint is written.
+ */
+@Singleton
+public class CheckpointStore {
+    private final File directory;
+    private final DataStreamStore dataStore;
+
+    private final Logger log = LoggerFactory.getLogger(CheckpointStore.class);
+
+    @Inject
+    public CheckpointStore(EtomicaServerConfig config, DataStreamStore dataStore) {
+        this.directory = new File(config.getCheckpointDirectory());
+        this.dataStore = dataStore;
+    }
+
+    public File getFile(UUID id) {
+        return new File(directory, id + ".ckpt");
+    }
+
+    public boolean contains(UUID id) {
+        return getFile(id).isFile();
+    }
+
+    public List<UUID> list() {
+        List<UUID> ids = new ArrayList<>();
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".ckpt"));
+        if (files == null) return ids;
+        for (File file : files) {
+            String name = file.getName();
+            try {
+                ids.add(UUID.fromString(name.substring(0, name.length() - ".ckpt".length())));
+            } catch (IllegalArgumentException e) {
+                // not one of ours
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Writes a checkpoint of the simulation, replacing any previous
+     * checkpoint with the same id.  A running simulation is paused between
+     * steps while it is written.  Accumulators and data streams that will
+     * not be restored are logged.
+     */
+    public void write(UUID id, SimulationModel model) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("couldn't create checkpoint directory " + directory);
+        }
+        SimulationCheckpoint checkpoint = makeCheckpoint(model);
+        List<String> unsaved = getUnsaved(id, model, checkpoint);
+        if (!unsaved.isEmpty()) {
+            log.warn("Checkpoint of simulation " + id + " does not save " + String.join(", ", unsaved));
+        }
+        model.getSimulation().getController().doActionNow(() -> checkpoint.write(getFile(id)));
+    }
+
+    /**
+     * Makes a new instance of the simulation saved with the given id and
+     * restores it from the checkpoint.  The simulation class must have a
+     * public no-argument constructor.
+     */
+    public SimulationModel read(UUID id) {
+        File file = getFile(id);
+        String className = SimulationCheckpoint.readSimulationClass(file);
+        Simulation sim;
+        try {
+            // check before making one, so that a bad file can't run an
+            // arbitrary class's constructor
+            Class<?> simClass = Class.forName(className);
+            if (!Simulation.class.isAssignableFrom(simClass)) {
+                throw new RuntimeException(className + " is not a Simulation");
+            }
+            sim = (Simulation) simClass.newInstance();
+        } catch (IllegalAccessException | InstantiationException | ClassNotFoundException e) {
+            throw new RuntimeException("couldn't make a " + className, e);
+        }
+        SimulationModel model = new SimulationModel(sim);
+        makeCheckpoint(model).read(file);
+        return model;
+    }
+
+    /**
+     * Stores a checkpoint (from another server) under the given id.
+     */
+    public void put(UUID id, InputStream in) {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new RuntimeException("couldn't create checkpoint directory " + directory);
+        }
+        File file = getFile(id);
+        File tmpFile = new File(file.getPath() + ".tmp");
+        try {
+            Files.copy(in, tmpFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            SimulationCheckpoint.readSimulationClass(tmpFile);
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            tmpFile.delete();
+        }
+    }
+
+    public boolean remove(UUID id) {
+        return getFile(id).delete();
+    }
+
+    /**
+     * Returns a description of each accumulator and data stream of the
+     * simulation that the checkpoint does not save.
+     */
+    public List<String> getUnsaved(UUID id, SimulationModel model, SimulationCheckpoint checkpoint) {
+        List<String> unsaved = new ArrayList<>();
+        for (long accId : model.getAllIdsOfType(DataAccumulator.class)) {
+            Object accumulator = model.getWrapperById(accId).getWrapped();
+            if (!checkpoint.getAccumulators().contains(accumulator)) {
+                unsaved.add(accumulator.getClass().getSimpleName());
+            }
+        }
+        for (Map.Entry<UUID, DataStreamStore.DataPlumbing> entry : dataStore.entrySet()) {
+            DataStreamStore.DataPlumbing plumbing = entry.getValue();
+            // streams made by addStreams have no pump and are made again
+            if (!plumbing.getSimId().equals(id) || plumbing.getPump() == null) continue;
+            IDataSink sink = plumbing.getPump().getDataSink();
+            unsaved.add("data stream " + entry.getKey() + " ("
+                    + plumbing.getPump().getDataSource().getClass().getSimpleName()
+                    + (sink instanceof DataAccumulator ? " into " + sink.getClass().getSimpleName() : "") + ")");
+        }
+        return unsaved;
+    }
+
+    private static SimulationCheckpoint makeCheckpoint(SimulationModel model) {
+        SimulationCheckpoint checkpoint = new SimulationCheckpoint(model.getSimulation());
+        model.getAllIdsOfType(AccumulatorAverageFixed.class).stream()
+                .sorted()
+                .map(accId -> (AccumulatorAverageFixed) model.getWrapperById(accId).getWrapped())
+                .forEach(checkpoint::addAccumulator);
+        return checkpoint;
+    }
+}
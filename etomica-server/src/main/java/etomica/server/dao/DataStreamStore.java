@@ -1,7 +1,9 @@
 package etomica.server.dao;
 
-import etomica.data.DataDump;
+import etomica.data.DataPipeForked;
 import etomica.data.DataPumpListener;
+import etomica.data.DataSnapshot;
+import etomica.meta.SimulationModel;
 
 import javax.inject.Singleton;
 import java.util.UUID;
@@ -17,14 +19,28 @@ public class DataStreamStore extends ConcurrentHashMap<UUID, DataStreamStore.Dat
         return super.get(o);
     }
 
+    /**
+     * Adds a data stream for each forked data pipe in the simulation.
+     */
+    public void addStreams(UUID simId, SimulationModel model) {
+        model.getAllIdsOfType(DataPipeForked.class).stream()
+                .map(model::getWrapperById)
+                .forEach(wrapper -> {
+                    DataPipeForked pipe = (DataPipeForked) wrapper.getWrapped();
+                    DataSnapshot snapshot = new DataSnapshot();
+                    pipe.addDataSink(snapshot);
+                    this.put(UUID.randomUUID(), new DataPlumbing(null, snapshot, simId));
+                });
+    }
+
     public static class DataPlumbing {
         private final DataPumpListener pump;
-        private final DataDump dump;
+        private final DataSnapshot snapshot;
         private final UUID simId;
 
-        public DataPlumbing(DataPumpListener pump, DataDump dump, UUID simId) {
+        public DataPlumbing(DataPumpListener pump, DataSnapshot snapshot, UUID simId) {
             this.pump = pump;
-            this.dump = dump;
+            this.snapshot = snapshot;
             this.simId = simId;
         }
 
@@ -32,8 +48,8 @@ public class DataStreamStore extends ConcurrentHashMap<UUID, DataStreamStore.Dat
             return pump;
         }
 
-        public DataDump getDump() {
-            return dump;
+        public DataSnapshot getSnapshot() {
+            return snapshot;
         }
 
         public UUID getSimId() {
@@ -0,0 +1,380 @@
+package etomica.server.pool;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import etomica.action.activity.Controller;
+import etomica.box.BoxSnapshot;
+import etomica.integrator.Integrator;
+import etomica.meta.SimulationModel;
+import etomica.server.EtomicaServerConfig;
+import etomica.server.broadcast.Broadcaster;
+import etomica.server.broadcast.BroadcasterStore;
+import etomica.server.dao.DataStreamStore;
+import etomica.server.dao.SimulationStore;
+import etomica.simulation.Simulation;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.setup.Environment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which simulations run.  At most maxRunningSimulations run at
+ * once; when more have been started, they take turns, each running for a
+ * time slice and then being paused while others run.  The pool also limits
+ * the number of simulations held by the server, and removes simulations that
+ * are not running (never started, paused or finished) and have had no
+ * requests and no websocket viewers for the idle timeout.
+ * <p>
+ * Each simulation's Controller still runs its activity on its own thread; the
+ * pool bounds how many of those threads are running (not paused) at any
+ * time, which bounds the CPU they use.
+ * <p>
+ * The pool registers gauges with the server's MetricRegistry: the number of
+ * simulations, the number running and waiting, and the steps per second of
+ * each simulation.  Memory is covered by the JVM gauges Dropwizard already
+ * registers.
+ */
+@Singleton
+public class SimulationPool implements Managed {
+    private final SimulationStore simStore;
+    private final DataStreamStore dataStore;
+    private final BroadcasterStore broadcasters;
+    private final MetricRegistry metrics;
+    private final int maxSimulations;
+    private final int maxRunning;
+    private final long timeSlice;
+    private final long idleTimeout;
+    private final Map<SimulationModel, Entry> entries;
+    // simulations that have been started, in the order they get turns
+    private final List<Entry> queue;
+    // places taken by simulations that are being made
+    private int reserved;
+    private ScheduledExecutorService scheduler;
+
+    private final Logger log = LoggerFactory.getLogger(SimulationPool.class);
+
+    @Inject
+    public SimulationPool(SimulationStore simStore, DataStreamStore dataStore, BroadcasterStore broadcasters,
+                          EtomicaServerConfig config, Environment environment) {
+        this.simStore = simStore;
+        this.dataStore = dataStore;
+        this.broadcasters = broadcasters;
+        this.metrics = environment.metrics();
+        this.maxSimulations = config.getMaxSimulations();
+        this.maxRunning = Math.max(1, config.getMaxRunningSimulations());
+        this.timeSlice = config.getTimeSliceMillis();
+        this.idleTimeout = TimeUnit.MINUTES.toNanos(config.getIdleTimeoutMinutes());
+        entries = new ConcurrentHashMap<>();
+        queue = new ArrayList<>();
+
+        metrics.register(MetricRegistry.name(SimulationPool.class, "simulations"), (Gauge<Integer>) entries::size);
+        metrics.register(MetricRegistry.name(SimulationPool.class, "running"), (Gauge<Integer>) this::getRunningCount);
+        metrics.register(MetricRegistry.name(SimulationPool.class, "waiting"), (Gauge<Integer>) this::getWaitingCount);
+    }
+
+    @Override
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        scheduler.scheduleWithFixedDelay(this::tick, timeSlice, timeSlice, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        scheduler.shutdownNow();
+        for (Entry entry : entries.values()) {
+            remove(entry.model);
+        }
+    }
+
+    /**
+     * Reserves a place for another simulation, removing idle simulations if
+     * needed to make room.  The place is held until the simulation is added,
+     * or until release is called (if the simulation could not be made), so
+     * concurrent requests cannot exceed maxSimulations between the check and
+     * the add.
+     *
+     * @return false if there is no room
+     */
+    public synchronized boolean tryReserve() {
+        if (entries.size() + reserved >= maxSimulations) {
+            evictIdle();
+            if (entries.size() + reserved >= maxSimulations) return false;
+        }
+        reserved++;
+        return true;
+    }
+
+    /**
+     * Gives up a place reserved with tryReserve without adding a simulation.
+     */
+    public synchronized void release() {
+        if (reserved == 0) {
+            throw new IllegalStateException("no place is reserved");
+        }
+        reserved--;
+    }
+
+    /**
+     * Adds the simulation to the pool and to the SimulationStore, taking the
+     * place reserved for it with tryReserve.  The simulation does not run
+     * until it is started.
+     */
+    public synchronized void add(UUID id, SimulationModel model) {
+        if (!addIfAbsent(id, model)) {
+            throw new IllegalArgumentException("simulation " + id + " is already in the pool");
+        }
+    }
+
+    /**
+     * Adds the simulation as add does, unless there is already a simulation
+     * with the given id.  The check and the add are done together, so that
+     * of several requests adding the same id, only one succeeds.  If this
+     * returns false, the reserved place is still held and must be released.
+     *
+     * @return false if there is already a simulation with the id
+     */
+    public synchronized boolean addIfAbsent(UUID id, SimulationModel model) {
+        if (reserved == 0) {
+            throw new IllegalStateException("no place is reserved");
+        }
+        if (simStore.containsKey(id)) return false;
+        Entry entry = new Entry(id, model);
+        // register first, so that nothing has been added if this fails
+        metrics.register(MetricRegistry.name(SimulationPool.class, id.toString(), "stepsPerSecond"),
+                (Gauge<Double>) () -> entry.stepsPerSecond);
+        reserved--;
+        entries.put(model, entry);
+        simStore.put(id, model);
+        return true;
+    }
+
+    /**
+     * Lets the simulation run, when it has a turn.  A simulation that has
+     * finished is run again.
+     *
+     * @return false if the simulation was already started and has not
+     * finished
+     */
+    public synchronized boolean start(SimulationModel model) {
+        Entry entry = getEntry(model);
+        boolean finished = entry.thread != null && !entry.thread.isAlive();
+        if (queue.contains(entry)) {
+            if (!finished) return false;
+        }
+        else {
+            queue.add(entry);
+        }
+        if (finished) {
+            // resume starts a new thread for the controller
+            entry.thread = null;
+        }
+        schedule();
+        return true;
+    }
+
+    /**
+     * Pauses the simulation until it is started again.
+     *
+     * @return false if the simulation was not started
+     */
+    public synchronized boolean pause(SimulationModel model) {
+        Entry entry = getEntry(model);
+        if (!queue.remove(entry)) return false;
+        suspend(entry);
+        schedule();
+        return true;
+    }
+
+    /**
+     * Notes that the simulation is in use, so that it is not removed as idle.
+     */
+    public void touch(SimulationModel model) {
+        Entry entry = entries.get(model);
+        if (entry != null) {
+            entry.lastAccess = System.nanoTime();
+        }
+    }
+
+    /**
+     * Returns snapshots of the simulation's boxes, which are updated between
+     * integrator steps and can be read from any thread without pausing the
+     * simulation.  The snapshots are made the first time they are asked for.
+     */
+    public BoxSnapshot[] getBoxSnapshots(SimulationModel model) {
+        Entry entry = getEntry(model);
+        synchronized (entry) {
+            if (entry.snapshots == null) {
+                Simulation sim = model.getSimulation();
+                BoxSnapshot[] snapshots = new BoxSnapshot[sim.getBoxCount()];
+                for (int i = 0; i < snapshots.length; i++) {
+                    snapshots[i] = new BoxSnapshot(sim.getBox(i));
+                }
+                // take the first copies while the integrator is not stepping
+                sim.getController().doActionNow(() -> {
+                    for (BoxSnapshot snapshot : snapshots) {
+                        snapshot.publish();
+                        if (sim.getIntegrator() != null) {
+                            sim.getIntegrator().getEventManager().addListener(snapshot);
+                        }
+                    }
+                });
+                entry.snapshots = snapshots;
+            }
+            return entry.snapshots;
+        }
+    }
+
+    /**
+     * Halts the simulation and removes it (and its data streams) from the
+     * server.
+     */
+    public synchronized void remove(SimulationModel model) {
+        Entry entry = entries.remove(model);
+        if (entry == null) return;
+        queue.remove(entry);
+        model.getSimulation().getController().halt();
+        if (entry.snapshots != null && model.getSimulation().getIntegrator() != null) {
+            for (BoxSnapshot snapshot : entry.snapshots) {
+                model.getSimulation().getIntegrator().getEventManager().removeListener(snapshot);
+            }
+        }
+        simStore.remove(entry.id);
+        dataStore.values().removeIf(plumbing -> plumbing.getSimId().equals(entry.id));
+        metrics.removeMatching((name, metric) -> name.startsWith(MetricRegistry.name(SimulationPool.class, entry.id.toString())));
+    }
+
+    public synchronized int getRunningCount() {
+        return Math.min(queue.size(), maxRunning);
+    }
+
+    public synchronized int getWaitingCount() {
+        return Math.max(0, queue.size() - maxRunning);
+    }
+
+    private Entry getEntry(SimulationModel model) {
+        Entry entry = entries.get(model);
+        if (entry == null) {
+            throw new IllegalArgumentException("simulation is not in the pool");
+        }
+        return entry;
+    }
+
+    /**
+     * Called at the end of each time slice.
+     */
+    protected synchronized void tick() {
+        try {
+            long now = System.nanoTime();
+            for (Entry entry : entries.values()) {
+                entry.updateRate(now);
+            }
+            evictIdle();
+            // drop simulations that finished on their own
+            queue.removeIf(entry -> entry.thread != null && !entry.thread.isAlive());
+            if (queue.size() > maxRunning) {
+                // those that just ran go to the back of the line
+                Collections.rotate(queue, -maxRunning);
+            }
+            schedule();
+        } catch (RuntimeException e) {
+            // an exception would stop the ticks altogether
+            log.warn("Error scheduling simulations", e);
+        }
+    }
+
+    /**
+     * Runs the simulations at the front of the queue and pauses the rest.
+     */
+    protected void schedule() {
+        for (int i = 0; i < queue.size(); i++) {
+            if (i >= maxRunning) {
+                suspend(queue.get(i));
+            }
+        }
+        for (int i = 0; i < queue.size() && i < maxRunning; i++) {
+            resume(queue.get(i));
+        }
+    }
+
+    protected void resume(Entry entry) {
+        Controller controller = entry.model.getSimulation().getController();
+        if (entry.thread == null) {
+            entry.thread = new Thread(controller::actionPerformed);
+            entry.thread.start();
+        }
+        else if (controller.isPaused()) {
+            controller.unPause();
+        }
+    }
+
+    protected void suspend(Entry entry) {
+        Controller controller = entry.model.getSimulation().getController();
+        if (controller.isActive() && !controller.isPaused()) {
+            controller.pause();
+        }
+    }
+
+    /**
+     * Removes simulations that have had no requests and no viewers for the
+     * idle timeout.  Simulations that have been started (running or waiting
+     * for a turn) are kept until they finish or are paused.
+     */
+    protected void evictIdle() {
+        long now = System.nanoTime();
+        for (Broadcaster broadcaster : broadcasters.values()) {
+            if (broadcaster.getSubscriberCount() == 0) continue;
+            for (Entry entry : entries.values()) {
+                if (entry.model.getSimulation() == broadcaster.getSimulation()) {
+                    entry.lastAccess = now;
+                }
+            }
+        }
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (queue.contains(entry) && (entry.thread == null || entry.thread.isAlive())) continue;
+            if (now - entry.lastAccess > idleTimeout) {
+                log.info("Removing idle simulation " + entry.id);
+                remove(entry.model);
+            }
+        }
+    }
+
+    protected static class Entry {
+        public final UUID id;
+        public final SimulationModel model;
+        public volatile long lastAccess;
+        public Thread thread;
+        public long lastSteps, lastTime;
+        public volatile double stepsPerSecond;
+        public BoxSnapshot[] snapshots;
+
+        public Entry(UUID id, SimulationModel model) {
+            this.id = id;
+            this.model = model;
+            lastAccess = lastTime = System.nanoTime();
+        }
+
+        public void updateRate(long now) {
+            Simulation sim = model.getSimulation();
+            Integrator integrator = sim.getIntegrator();
+            if (integrator == null) return;
+            long steps = integrator.getStepCount();
+            // the step count starts over when the integrator is reset
+            long newSteps = steps >= lastSteps ? steps - lastSteps : steps;
+            stepsPerSecond = newSteps / ((now - lastTime) * 1e-9);
+            lastSteps = steps;
+            lastTime = now;
+        }
+    }
+}
@@ -1,21 +1,44 @@
 package etomica.server.representations;
 
-import etomica.space.Boundary;
-
 public class ConfigurationUpdate {
     private final double[][][] coordinates;
-    private final Boundary[] boxBoundaries;
+    private final BoxBoundary[] boxBoundaries;
 
-    public ConfigurationUpdate(double[][][] coordinates, Boundary[] boxBoundaries) {
+    public ConfigurationUpdate(double[][][] coordinates, double[][] boxSizes, boolean[][] periodicity) {
         this.coordinates = coordinates;
-        this.boxBoundaries = boxBoundaries;
+        this.boxBoundaries = new BoxBoundary[boxSizes.length];
+        for (int i = 0; i < boxSizes.length; i++) {
+            boxBoundaries[i] = new BoxBoundary(boxSizes[i], periodicity[i]);
+        }
     }
 
-    public Boundary[] getBoxBoundaries() {
+    public BoxBoundary[] getBoxBoundaries() {
         return boxBoundaries;
     }
 
     public double[][][] getCoordinates() {
         return coordinates;
     }
+
+    /**
+     * The box size and periodicity of a box, taken from a snapshot rather
+     * than from the box's live Boundary.
+     */
+    public static class BoxBoundary {
+        private final double[] boxSize;
+        private final boolean[] periodicity;
+
+        public BoxBoundary(double[] boxSize, boolean[] periodicity) {
+            this.boxSize = boxSize;
+            this.periodicity = periodicity;
+        }
+
+        public double[] getBoxSize() {
+            return boxSize;
+        }
+
+        public boolean[] getPeriodicity() {
+            return periodicity;
+        }
+    }
 }
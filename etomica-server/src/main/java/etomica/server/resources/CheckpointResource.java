@@ -0,0 +1,117 @@
+package etomica.server.resources;
+
+import etomica.meta.SimulationModel;
+import etomica.server.dao.CheckpointStore;
+import etomica.server.dao.DataStreamStore;
+import etomica.server.dao.SimulationStore;
+import etomica.server.pool.SimulationPool;
+
+import javax.inject.Inject;
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Lists, transfers and resumes simulation checkpoints.  Checkpoints are
+ * written with POST /simulations/{id}/checkpoint.  To move a simulation to
+ * another server, GET its checkpoint here, PUT it to the other server and
+ * resume it there.
+ */
+@Path("/checkpoints")
+@Produces(MediaType.APPLICATION_JSON)
+public class CheckpointResource {
+    private final CheckpointStore checkpoints;
+    private final SimulationStore simStore;
+    private final DataStreamStore dataStore;
+    private final SimulationPool pool;
+
+    @Inject
+    public CheckpointResource(CheckpointStore checkpoints, SimulationStore simStore, DataStreamStore dataStore,
+                              SimulationPool pool) {
+        this.checkpoints = checkpoints;
+        this.simStore = simStore;
+        this.dataStore = dataStore;
+        this.pool = pool;
+    }
+
+    @GET
+    public List<UUID> list() {
+        return checkpoints.list();
+    }
+
+    @GET
+    @Path("{id}")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public File download(@PathParam("id") String id) {
+        UUID uuid = UUID.fromString(id);
+        if (!checkpoints.contains(uuid)) {
+            throw new WebApplicationException("Checkpoint not found", Response.Status.NOT_FOUND);
+        }
+        return checkpoints.getFile(uuid);
+    }
+
+    @PUT
+    @Path("{id}")
+    @Consumes(MediaType.APPLICATION_OCTET_STREAM)
+    public void upload(@PathParam("id") String id, InputStream in) {
+        try {
+            checkpoints.put(UUID.fromString(id), in);
+        } catch (RuntimeException e) {
+            throw new WebApplicationException("Not a simulation checkpoint", Response.Status.BAD_REQUEST);
+        }
+    }
+
+    @DELETE
+    @Path("{id}")
+    public void delete(@PathParam("id") String id) {
+        if (!checkpoints.remove(UUID.fromString(id))) {
+            throw new WebApplicationException("Checkpoint not found", Response.Status.NOT_FOUND);
+        }
+    }
+
+    /**
+     * Makes a new simulation from the checkpoint, with the same id as the
+     * simulation that was saved, and starts it if asked to.
+     */
+    @POST
+    @Path("{id}/resume")
+    public UUID resume(@PathParam("id") String id, @QueryParam("start") boolean start) {
+        UUID uuid = UUID.fromString(id);
+        if (!checkpoints.contains(uuid)) {
+            throw new WebApplicationException("Checkpoint not found", Response.Status.NOT_FOUND);
+        }
+        if (simStore.containsKey(uuid)) {
+            throw new WebApplicationException("Simulation is already running", Response.Status.CONFLICT);
+        }
+        if (!pool.tryReserve()) {
+            throw new WebApplicationException("Too many simulations", Response.Status.SERVICE_UNAVAILABLE);
+        }
+        SimulationModel model;
+        boolean added = false;
+        try {
+            try {
+                model = checkpoints.read(uuid);
+            } catch (RuntimeException e) {
+                throw new ServerErrorException("Couldn't resume checkpoint: " + e.getMessage(), Response.Status.INTERNAL_SERVER_ERROR);
+            }
+            // another request may have resumed it while this one was reading
+            if (!pool.addIfAbsent(uuid, model)) {
+                throw new WebApplicationException("Simulation is already running", Response.Status.CONFLICT);
+            }
+            added = true;
+        } finally {
+            if (!added) {
+                pool.release();
+            }
+        }
+        dataStore.addStreams(uuid, model);
+        if (start) {
+            pool.start(model);
+        }
+        return uuid;
+    }
+}
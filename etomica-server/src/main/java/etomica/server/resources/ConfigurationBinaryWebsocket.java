@@ -0,0 +1,97 @@
+package etomica.server.resources;
+
+import com.codahale.metrics.annotation.Metered;
+import com.codahale.metrics.annotation.Timed;
+import etomica.box.BoxSnapshot;
+import etomica.meta.SimulationModel;
+import etomica.server.broadcast.BoxSnapshotReader;
+import etomica.server.broadcast.Broadcaster;
+import etomica.server.broadcast.BroadcasterStore;
+import etomica.server.dao.SimulationStore;
+import etomica.server.pool.SimulationPool;
+import etomica.server.serializers.ConfigurationFrameEncoder;
+import etomica.simulation.Simulation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.websocket.*;
+import javax.websocket.server.PathParam;
+import javax.websocket.server.ServerEndpoint;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Streams the configuration of a simulation as binary frames from
+ * {@link ConfigurationFrameEncoder}: quantized coordinates, sent as changes
+ * from the previous frame, with box sizes only when they change.  This is much
+ * smaller and cheaper to produce than the JSON from ConfigurationWebsocket.
+ * The number of bits per coordinate (16, the default, or 32) can be chosen
+ * with the "bits" query parameter.
+ */
+@ServerEndpoint("/simulations/{id}/configuration/binary")
+@Metered
+@Timed
+public class ConfigurationBinaryWebsocket {
+    private final SimulationStore simStore;
+    private final BroadcasterStore broadcasters;
+    private final SimulationPool pool;
+
+    private final Logger log = LoggerFactory.getLogger(ConfigurationBinaryWebsocket.class);
+
+    @Inject
+    public ConfigurationBinaryWebsocket(SimulationStore store, BroadcasterStore broadcasters, SimulationPool pool) {
+        this.simStore = store;
+        this.broadcasters = broadcasters;
+        this.pool = pool;
+    }
+
+    @OnOpen
+    public void onOpen(final Session session, @PathParam("id") String id) {
+        session.setMaxIdleTimeout(0);
+
+        SimulationModel model = simStore.get(UUID.fromString(id));
+        Simulation sim = model.getSimulation();
+
+        List<String> bitsParam = session.getRequestParameterMap().get("bits");
+        int bits = bitsParam == null || bitsParam.isEmpty() ? 16 : Integer.parseInt(bitsParam.get(0));
+        if (bits != 16 && bits != 32) {
+            throw new IllegalArgumentException("bits must be 16 or 32");
+        }
+
+        BoxSnapshot[] snapshots = pool.getBoxSnapshots(model);
+
+        // all sessions watching this simulation with these bits share one
+        // broadcaster, which sends key frames to those that need them
+        String key = "configuration/" + id + "/binary" + bits;
+        broadcasters.subscribe(key, session, sim, () -> {
+            ConfigurationFrameEncoder encoder = new ConfigurationFrameEncoder(bits);
+            BoxSnapshotReader reader = new BoxSnapshotReader(snapshots);
+            return new Broadcaster.FrameEncoder() {
+                public Object encode() {
+                    if (!reader.update()) {
+                        return null;
+                    }
+                    return encoder.encode(reader.getCoordinates(), reader.getBoxSizes(), reader.getPeriodicity());
+                }
+
+                public Object keyFrame(Object frame) {
+                    return encoder.keyFrame();
+                }
+            };
+        }, 33);
+        session.getUserProperties().put("broadcast", key);
+    }
+
+    @OnClose
+    public void onClose(Session session) {
+        log.warn("Closing websocket");
+        broadcasters.unsubscribe((String) session.getUserProperties().get("broadcast"), session);
+    }
+
+    @OnError
+    public void onError(Session session, Throwable reason) {
+        log.warn("Error in websocket", reason);
+        broadcasters.unsubscribe((String) session.getUserProperties().get("broadcast"), session);
+    }
+}
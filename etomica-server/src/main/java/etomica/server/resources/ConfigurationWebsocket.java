@@ -2,14 +2,16 @@ package etomica.server.resources;
 
 import com.codahale.metrics.annotation.Metered;
 import com.codahale.metrics.annotation.Timed;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import etomica.box.BoxSnapshot;
 import etomica.meta.SimulationModel;
-import etomica.meta.wrappers.SimulationWrapper;
+import etomica.server.broadcast.BoxSnapshotReader;
+import etomica.server.broadcast.BroadcasterStore;
 import etomica.server.dao.SimulationStore;
+import etomica.server.pool.SimulationPool;
 import etomica.server.representations.ConfigurationUpdate;
 import etomica.simulation.Simulation;
-import etomica.space.Boundary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,35 +19,25 @@ import javax.inject.Inject;
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.io.IOException;
-import java.io.Writer;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
 import static etomica.server.EtomicaServer.objectWriter;
 
-@ServerEndpoint(
-        value="/simulations/{id}/configuration",
-        encoders = {ConfigurationWebsocket.ConfigurationUpdateEncoder.class}
-)
+@ServerEndpoint("/simulations/{id}/configuration")
 @Metered
 @Timed
 public class ConfigurationWebsocket {
     private final SimulationStore simStore;
-    private final ObjectMapper mapper;
-    private final ScheduledThreadPoolExecutor executor;
+    private final BroadcasterStore broadcasters;
+    private final SimulationPool pool;
 
     private final Logger log = LoggerFactory.getLogger(ConfigurationWebsocket.class);
 
     @Inject
-    public ConfigurationWebsocket(SimulationStore store, ObjectMapper mapper, ScheduledThreadPoolExecutor executor) {
+    public ConfigurationWebsocket(SimulationStore store, BroadcasterStore broadcasters, SimulationPool pool) {
         this.simStore = store;
-        this.mapper = mapper;
-        this.executor = executor;
+        this.broadcasters = broadcasters;
+        this.pool = pool;
     }
 
     @OnOpen
@@ -54,63 +46,42 @@ public class ConfigurationWebsocket {
 
         SimulationModel model = simStore.get(UUID.fromString(id));
         Simulation sim = model.getSimulation();
-        SimulationWrapper wrapper = (SimulationWrapper) model.getWrapper(sim);
 
-        Runnable sendConfigurationUpdate = () -> {
-            if(sim.getController().isPaused() || !sim.getController().isActive()) {
-                return;
-            }
+        BoxSnapshot[] snapshots = pool.getBoxSnapshots(model);
 
-
-            sim.getController().doActionNow(() -> {
-                Boundary[] boundaries = new Boundary[sim.getBoxCount()];
-                for (int i = 0; i < sim.getBoxCount(); i++) {
-                    boundaries[i] = sim.getBox(i).getBoundary();
+        // all sessions watching this simulation share one broadcaster
+        String key = "configuration/" + id;
+        broadcasters.subscribe(key, session, sim, () -> {
+            ObjectWriter writer = objectWriter();
+            BoxSnapshotReader reader = new BoxSnapshotReader(snapshots);
+            return () -> {
+                if (!reader.update()) {
+                    return null;
                 }
-
                 ConfigurationUpdate update = new ConfigurationUpdate(
-                        wrapper.getAllCoordinates(),
-                        boundaries
+                        reader.getCoordinates(),
+                        reader.getBoxSizes(),
+                        reader.getPeriodicity()
                 );
-                session.getAsyncRemote().sendObject(update);
-            });
-
-        };
-
-        ScheduledFuture<?> task = executor.scheduleWithFixedDelay(sendConfigurationUpdate, 0, 33, TimeUnit.MILLISECONDS);
-        session.getUserProperties().put("task", task);
+                try {
+                    return writer.writeValueAsString(update);
+                } catch (JsonProcessingException e) {
+                    throw new RuntimeException(e);
+                }
+            };
+        }, 33);
+        session.getUserProperties().put("broadcast", key);
     }
 
     @OnClose
     public void onClose(Session session) {
         log.warn("Closing websocket");
-        ((ScheduledFuture<?>) session.getUserProperties().get("task")).cancel(false);
+        broadcasters.unsubscribe((String) session.getUserProperties().get("broadcast"), session);
     }
 
     @OnError
     public void onError(Session session, Throwable reason) {
         log.warn("Error in websocket", reason);
-        ((ScheduledFuture<?>) session.getUserProperties().get("task")).cancel(false);
-    }
-
-
-    public static class ConfigurationUpdateEncoder implements Encoder.TextStream<ConfigurationUpdate> {
-        private static ObjectWriter objectWriter = objectWriter();
-
-        @Override
-        public void encode(ConfigurationUpdate object, Writer writer) throws EncodeException, IOException {
-            objectWriter.writeValue(writer, object);
-
-        }
-
-        @Override
-        public void init(EndpointConfig config) {
-
-        }
-
-        @Override
-        public void destroy() {
-
-        }
+        broadcasters.unsubscribe((String) session.getUserProperties().get("broadcast"), session);
     }
 }
@@ -1,8 +1,8 @@
 package etomica.server.resources;
 
-import etomica.action.activity.Controller;
 import etomica.meta.SimulationModel;
 import etomica.server.dao.SimulationStore;
+import etomica.server.pool.SimulationPool;
 import etomica.server.representations.StatusAction;
 
 import javax.inject.Inject;
@@ -18,29 +18,27 @@ import java.util.UUID;
 public class ControlResource {
 
     private final SimulationStore simStore;
+    private final SimulationPool pool;
 
     @Inject
-    public ControlResource(SimulationStore simStore) {
+    public ControlResource(SimulationStore simStore, SimulationPool pool) {
         this.simStore = simStore;
+        this.pool = pool;
     }
 
     @PUT
     public void doCommand(@PathParam("id") String id, StatusAction action) {
-        Controller controller = simStore.get(UUID.fromString(id)).getSimulation().getController();
+        SimulationModel model = simStore.get(UUID.fromString(id));
+        pool.touch(model);
+        // the pool decides when the simulation actually runs
         switch (action.getStatus()) {
             case START:
-                if(!controller.isActive()) {
-                    new Thread(controller::actionPerformed).start();
-                } else if(controller.isPaused()) {
-                    controller.unPause();
-                } else {
+                if(!pool.start(model)) {
                     throw new WebApplicationException(Response.Status.CONFLICT);
                 }
                 break;
             case PAUSE:
-                if(controller.isActive() && !controller.isPaused()) {
-                    controller.pause();
-                } else {
+                if(!pool.pause(model)) {
                     throw new WebApplicationException(Response.Status.CONFLICT);
                 }
                 break;
@@ -1,10 +1,10 @@
 package etomica.server.resources;
 
-import etomica.data.DataDump;
-import etomica.data.DataPipeForked;
 import etomica.meta.SimulationModel;
+import etomica.server.dao.CheckpointStore;
 import etomica.server.dao.DataStreamStore;
 import etomica.server.dao.SimulationStore;
+import etomica.server.pool.SimulationPool;
 import etomica.server.representations.SimClassInfo;
 import etomica.server.representations.SimulationConstructor;
 import etomica.simulation.Simulation;
@@ -26,11 +26,16 @@ import java.util.UUID;
 public class SimulationResource {
     private final SimulationStore simStore;
     private final DataStreamStore dataStore;
+    private final SimulationPool pool;
+    private final CheckpointStore checkpoints;
 
     @Inject
-    public SimulationResource(SimulationStore simStore, DataStreamStore dataStore) {
+    public SimulationResource(SimulationStore simStore, DataStreamStore dataStore, SimulationPool pool,
+                              CheckpointStore checkpoints) {
         this.simStore = simStore;
         this.dataStore = dataStore;
+        this.pool = pool;
+        this.checkpoints = checkpoints;
     }
 
     @GET
@@ -41,6 +46,7 @@ public class SimulationResource {
             throw new WebApplicationException("Simulation instance not found", Response.Status.NOT_FOUND);
         }
         SimulationModel model = simStore.get(uuid);
+        pool.touch(model);
         SimClassInfo classInfo = SimClassInfo.forClass(model.getSimulation().getClass());
         Map<String, Object> map = new HashMap<>();
         map.put("model", model);
@@ -50,34 +56,50 @@ public class SimulationResource {
 
     @POST
     public UUID createSimulation(@NotNull SimulationConstructor constructionParams) {
+        if (!pool.tryReserve()) {
+            throw new WebApplicationException("Too many simulations", Response.Status.SERVICE_UNAVAILABLE);
+        }
         UUID id = UUID.randomUUID();
+        boolean added = false;
         try {
             Simulation sim = (Simulation) Class.forName(constructionParams.className).newInstance();
             SimulationModel model = new SimulationModel(sim);
-            simStore.put(id, model);
-
-            model.getAllIdsOfType(DataPipeForked.class).stream()
-                    .map(model::getWrapperById)
-                    .forEach(wrapper -> {
-                        DataPipeForked pipe = (DataPipeForked) wrapper.getWrapped();
-                        DataDump dump = new DataDump();
-                        pipe.addDataSink(dump);
-                        this.dataStore.put(UUID.randomUUID(), new DataStreamStore.DataPlumbing(null, dump, id));
-                    });
+            pool.add(id, model);
+            added = true;
+            dataStore.addStreams(id, model);
 
             return id;
         } catch (IllegalAccessException | InstantiationException | ClassNotFoundException e) {
             throw new ServerErrorException("Simulation class not found", Response.Status.NOT_FOUND);
+        } finally {
+            if (!added) {
+                pool.release();
+            }
+        }
+    }
+
+    /**
+     * Writes a checkpoint of the simulation, which can be resumed later (see
+     * CheckpointResource).  The checkpoint has the same id as the simulation.
+     */
+    @POST
+    @Path("{simId}/checkpoint")
+    public UUID checkpoint(@PathParam("simId") String simId) {
+        UUID id = UUID.fromString(simId);
+        SimulationModel model = simStore.get(id);
+        if (model == null) {
+            throw new WebApplicationException("Simulation instance not found", Response.Status.NOT_FOUND);
         }
+        pool.touch(model);
+        checkpoints.write(id, model);
+        return id;
     }
 
     @DELETE
     @Path("{simId}")
     public void deleteInstance(@PathParam("simId") String simId) {
         UUID id = UUID.fromString(simId);
-        SimulationModel model = simStore.get(id);
-        model.getSimulation().getController().halt();
-        simStore.remove(id);
+        pool.remove(simStore.get(id));
     }
 
 
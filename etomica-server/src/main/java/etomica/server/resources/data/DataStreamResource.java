@@ -59,9 +59,9 @@ public class DataStreamResource {
             IDataSource meter = Construction.<IDataSource>createInstance(constructionParams, simModel)
                     .orElseThrow(() -> new WebApplicationException("Unable to create meter"));
 
-            DataDump dump = new DataDump();
-            DataPumpListener pump = new DataPumpListener(meter, dump, 100);
-            this.dataStore.put(dataId, new DataStreamStore.DataPlumbing(pump, dump, UUID.fromString(simId)));
+            DataSnapshot snapshot = new DataSnapshot();
+            DataPumpListener pump = new DataPumpListener(meter, snapshot, 100);
+            this.dataStore.put(dataId, new DataStreamStore.DataPlumbing(pump, snapshot, UUID.fromString(simId)));
             return dataId;
 
         } catch (ClassNotFoundException e) {
@@ -81,9 +81,9 @@ public class DataStreamResource {
 
             DataPlumbing plumbing = this.dataStore.get(UUID.fromString(dataId));
             DataPump pump = plumbing.getPump();
-            DataDump dump = plumbing.getDump();
+            DataSnapshot snapshot = plumbing.getSnapshot();
             pump.setDataSink(accumulator);
-            accumulator.addDataSink(dump);
+            accumulator.addDataSink(snapshot);
         } catch (ClassNotFoundException e) {
             e.printStackTrace();
             throw new WebApplicationException("Unable to create accumulator");
@@ -127,6 +127,6 @@ public class DataStreamResource {
     @Path("{dataId}")
     public IDataInfo getDataInfo(@PathParam("simId") String simId, @PathParam("dataId") String dataId) {
         //TODO: serializers
-        return this.dataStore.get(UUID.fromString(dataId)).getDump().getDataInfo();
+        return this.dataStore.get(UUID.fromString(dataId)).getSnapshot().getDataInfo();
     }
 }
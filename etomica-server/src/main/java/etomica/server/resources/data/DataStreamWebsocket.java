@@ -6,6 +6,7 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import etomica.data.*;
 import etomica.meta.SimulationModel;
+import etomica.server.broadcast.BroadcasterStore;
 import etomica.server.dao.DataStreamStore;
 import etomica.server.dao.SimulationStore;
 import etomica.server.representations.DataAndInfo;
@@ -17,63 +18,58 @@ import javax.inject.Inject;
 import javax.websocket.*;
 import javax.websocket.server.PathParam;
 import javax.websocket.server.ServerEndpoint;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
-import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 
-@ServerEndpoint(
-        value="/simulations/{simId}/data/{dataId}",
-        encoders = {DataStreamWebsocket.DataAndInfoEncoder.class}
-)
+@ServerEndpoint("/simulations/{simId}/data/{dataId}")
 @Metered
 @Timed
 public class DataStreamWebsocket {
     private final SimulationStore simStore;
     private final DataStreamStore dataStore;
     private final ObjectMapper mapper;
-    private final ScheduledThreadPoolExecutor executor;
+    private final BroadcasterStore broadcasters;
 
     private final Logger log = LoggerFactory.getLogger(DataStreamWebsocket.class);
 
     @Inject
-    public DataStreamWebsocket(SimulationStore simStore, DataStreamStore dataStore, ObjectMapper mapper, ScheduledThreadPoolExecutor executor) {
+    public DataStreamWebsocket(SimulationStore simStore, DataStreamStore dataStore, ObjectMapper mapper, BroadcasterStore broadcasters) {
         this.simStore = simStore;
         this.dataStore = dataStore;
         this.mapper = mapper;
-        this.executor = executor;
+        this.broadcasters = broadcasters;
     }
 
     @OnOpen
     public void onOpen(final Session session, @PathParam("simId") String simId, @PathParam("dataId") String dataId) {
         session.setMaxIdleTimeout(0);
 
-        session.getUserProperties().put("mapper", mapper);
         SimulationModel model = simStore.get(UUID.fromString(simId));
         Simulation sim = model.getSimulation();
         DataStreamStore.DataPlumbing dataPlumbing = dataStore.get(UUID.fromString(dataId));
-        DataDump dump = dataPlumbing.getDump();
-        final DataAndInfo dataAndInfo = new DataAndInfo();
-
-        Runnable sendData = () -> {
-            if(sim.getController().isPaused() || !sim.getController().isActive()) {
-                return;
-            }
-
-            sim.getController().doActionNow(() -> {
-                IData data = dump.getData();
-                dataAndInfo.setData(dump.getData());
-                dataAndInfo.setDataInfo(dump.getDataInfo());
-                if(data != null) {
-                    session.getAsyncRemote().sendObject(dataAndInfo);
+        DataSnapshot snapshot = dataPlumbing.getSnapshot();
+
+        // all sessions watching this data share one broadcaster
+        String key = "data/" + dataId;
+        broadcasters.subscribe(key, session, sim, () -> {
+            final DataAndInfo dataAndInfo = new DataAndInfo();
+            final long[] lastVersion = new long[1];
+            return () -> {
+                if (snapshot.getVersion() == lastVersion[0]) {
+                    return null;
                 }
-            });
-        };
-
-        ScheduledFuture<?> task = executor.scheduleWithFixedDelay(sendData, 0, 333, TimeUnit.MILLISECONDS);
-        session.getUserProperties().put("task", task);
+                lastVersion[0] = snapshot.getVersion();
+                return snapshot.read(frame -> {
+                    dataAndInfo.setData(frame.data);
+                    dataAndInfo.setDataInfo(frame.dataInfo);
+                    try {
+                        return mapper.writeValueAsString(dataAndInfo);
+                    } catch (JsonProcessingException e) {
+                        throw new RuntimeException(e);
+                    }
+                });
+            };
+        }, 333);
+        session.getUserProperties().put("broadcast", key);
         // add on construction
 //        model.getSimulation().getIntegrator().getEventManager().addListener(dataPlumbing.getPump());
     }
@@ -81,37 +77,13 @@ public class DataStreamWebsocket {
     @OnClose
     public void onClose(Session session) {
         log.warn("Closing websocket");
-        ((ScheduledFuture<?>) session.getUserProperties().get("task")).cancel(false);
+        broadcasters.unsubscribe((String) session.getUserProperties().get("broadcast"), session);
     }
 
     @OnError
     public void onError(Session session, Throwable reason) {
         log.warn("Error in websocket", reason);
-        ((ScheduledFuture<?>) session.getUserProperties().get("task")).cancel(false);
-    }
-
-    public static class DataAndInfoEncoder implements Encoder.Text<DataAndInfo> {
-        private EndpointConfig config;
-
-        @Override
-        public String encode(DataAndInfo object) throws EncodeException {
-            ObjectMapper mapper = (ObjectMapper) config.getUserProperties().get("mapper");
-            try {
-                return mapper.writeValueAsString(object);
-            } catch (JsonProcessingException e) {
-                throw new EncodeException(object, "JSON error", e);
-            }
-        }
-
-        @Override
-        public void init(EndpointConfig config) {
-            this.config = config;
-        }
-
-        @Override
-        public void destroy() {
-
-        }
+        broadcasters.unsubscribe((String) session.getUserProperties().get("broadcast"), session);
     }
 
 }
@@ -0,0 +1,137 @@
+package etomica.server.serializers;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reference decoder for the frames made by ConfigurationFrameEncoder (see
+ * there for the format).  The decoder keeps the quantized coordinates of the
+ * last frame, so it must be given a key frame first and then every frame
+ * that follows it.  If a frame is missed, decode returns false for the
+ * frames after it until the next key frame.
+ */
+public class ConfigurationFrameDecoder {
+
+    /**
+     * Applies the given frame.
+     *
+     * @return false if the frame is not a key frame and does not follow the
+     * last frame decoded, in which case a key frame is needed
+     * @throws IllegalArgumentException if the frame is not understood or
+     *                                  does not match the previous frames
+     */
+    public boolean decode(ByteBuffer frame) {
+        ByteBuffer in = frame.duplicate();
+        byte version = in.get();
+        if (version != ConfigurationFrameEncoder.VERSION) {
+            throw new IllegalArgumentException("unknown frame version " + version);
+        }
+        boolean key = (in.get() & ConfigurationFrameEncoder.KEY_FRAME) != 0;
+        int newBits = in.get() & 0xff;
+        if (newBits != 16 && newBits != 32) {
+            throw new IllegalArgumentException("unsupported bits per coordinate " + newBits);
+        }
+        int dim = in.get() & 0xff;
+        int frameNumber = in.getInt();
+        int nBoxes = in.getShort() & 0xffff;
+
+        if (!key) {
+            if (quantized == null || frameNumber != lastFrame + 1) return false;
+            if (newBits != bits || dim != this.dim || nBoxes != quantized.length) {
+                throw new IllegalArgumentException("frame does not match the previous frames");
+            }
+            for (int i = 0; i < nBoxes; i++) {
+                int[] q = quantized[i];
+                if (in.getInt() * dim != q.length) {
+                    throw new IllegalArgumentException("frame does not match the previous frames");
+                }
+                for (int k = 0; k < q.length; k++) {
+                    int z = getVarint(in);
+                    int delta = (z >>> 1) ^ -(z & 1);
+                    q[k] += delta;
+                    if (bits == 16) q[k] &= 0xffff;
+                }
+            }
+        }
+        else {
+            bits = newBits;
+            this.dim = dim;
+            quantized = new int[nBoxes][];
+            boxSizes = new double[nBoxes][dim];
+            periodicity = new boolean[nBoxes][dim];
+            for (int i = 0; i < nBoxes; i++) {
+                for (int d = 0; d < dim; d++) {
+                    boxSizes[i][d] = Double.longBitsToDouble(in.getLong());
+                }
+                int p = in.get();
+                for (int d = 0; d < dim; d++) {
+                    periodicity[i][d] = (p & (1 << d)) != 0;
+                }
+                int[] q = quantized[i] = new int[in.getInt() * dim];
+                for (int k = 0; k < q.length; k++) {
+                    q[k] = bits == 16 ? in.getShort() & 0xffff : in.getInt();
+                }
+            }
+        }
+        lastFrame = frameNumber;
+        return true;
+    }
+
+    protected static int getVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            v |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+    }
+
+    /**
+     * Returns the number of the last frame decoded.
+     */
+    public int getFrameNumber() {
+        return lastFrame;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Returns the quantized coordinates of each box (atom by atom, D values
+     * each), as unsigned values of the frame's bits.
+     */
+    public int[][] getQuantized() {
+        return quantized;
+    }
+
+    /**
+     * Returns the coordinates of each atom in each box, recovered from the
+     * quantized values.
+     */
+    public double[][][] getCoordinates() {
+        double maxQ = bits == 32 ? 0xffffffffL : 0xffff;
+        double[][][] coordinates = new double[quantized.length][][];
+        for (int i = 0; i < quantized.length; i++) {
+            int[] q = quantized[i];
+            coordinates[i] = new double[q.length / dim][dim];
+            for (int k = 0; k < q.length; k++) {
+                double f = (q[k] & 0xffffffffL) / maxQ;
+                coordinates[i][k / dim][k % dim] = (f - 0.5) * boxSizes[i][k % dim];
+            }
+        }
+        return coordinates;
+    }
+
+    public double[][] getBoxSizes() {
+        return boxSizes;
+    }
+
+    public boolean[][] getPeriodicity() {
+        return periodicity;
+    }
+
+    protected int bits, dim, lastFrame;
+    protected int[][] quantized;
+    protected double[][] boxSizes;
+    protected boolean[][] periodicity;
+}
@@ -0,0 +1,284 @@
+package etomica.server.serializers;
+
+import etomica.space.Boundary;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Encodes successive configurations of a simulation as compact binary frames.
+ * Coordinates are quantized to 16 or 32 bit fixed point fractions of the box
+ * edge, and each frame after a key frame holds only the change in each
+ * quantized coordinate since the previous frame, so that a client that has
+ * seen every frame since the last key frame reconstructs exactly the
+ * quantized positions.  Box sizes are sent only in key frames, and a key
+ * frame is sent whenever the boxes, their sizes or their numbers of atoms
+ * change.
+ * <p>
+ * The encoder keeps the state of the previous frame.  A client that joins
+ * late, or misses a frame, can be sent keyFrame(), after which the frames
+ * that follow apply.  All values are big-endian.  A frame is
+ * <pre>
+ * byte   version (1)
+ * byte   flags (1 if this is a key frame)
+ * byte   bits per coordinate (16 or 32)
+ * byte   D, the dimension
+ * int    frame number
+ * short  number of boxes
+ * for each box:
+ *   key frames only: D doubles, the box edge lengths
+ *                    byte, bit d set if the box is periodic in dimension d
+ *   int    number of atoms
+ *   key frames: nAtoms*D unsigned coordinates (of the given bits)
+ *   otherwise:  nAtoms*D varints, the zigzag-encoded change in each
+ *               coordinate, taken modulo 2^bits
+ * </pre>
+ * The quantized value q of coordinate x in a box with edge L is
+ * round((x/L + 1/2) (2^bits - 1)), clamped to the range; a client recovers
+ * x = (q / (2^bits - 1) - 1/2) L.  Because the changes wrap modulo 2^bits, an
+ * atom that crosses a periodic boundary costs no more than one that moves a
+ * short distance.  The varints hold 7 bits per byte, low bits first, with the
+ * high bit set on all but the last byte; the zigzag encoding maps a change d
+ * to 2d for d >= 0 and -2d-1 for d < 0.
+ */
+public class ConfigurationFrameEncoder {
+
+    public static final byte VERSION = 1;
+    public static final byte KEY_FRAME = 1;
+
+    /**
+     * @param bits the number of bits for each coordinate; 16 or 32
+     */
+    public ConfigurationFrameEncoder(int bits) {
+        if (bits != 16 && bits != 32) {
+            throw new IllegalArgumentException("bits must be 16 or 32");
+        }
+        this.bits = bits;
+        maxQ = bits == 32 ? 0xffffffffL : 0xffffL;
+        buffer = new byte[1024];
+        keyFrameNeeded = true;
+    }
+
+    public int getBits() {
+        return bits;
+    }
+
+    /**
+     * Sets the number of frames after which a key frame is sent even if
+     * nothing requires one.  The default (0) sends key frames only when
+     * needed.
+     */
+    public void setKeyFrameInterval(int newKeyFrameInterval) {
+        keyFrameInterval = newKeyFrameInterval;
+    }
+
+    public int getKeyFrameInterval() {
+        return keyFrameInterval;
+    }
+
+    /**
+     * Makes the next frame a key frame, for instance because a frame was not
+     * delivered.
+     */
+    public void requestKeyFrame() {
+        keyFrameNeeded = true;
+    }
+
+    /**
+     * Returns the number of frames encoded so far.
+     */
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Encodes the given configuration.
+     *
+     * @param coordinates the coordinates of each atom in each box, as from
+     *                    SimulationWrapper.getAllCoordinates
+     * @param boundaries  the boundary of each box
+     * @return a new buffer holding the frame, ready to be read
+     */
+    public ByteBuffer encode(double[][][] coordinates, Boundary[] boundaries) {
+        int dim = boundaries[0].getBoxSize().getD();
+        double[][] boxSizes = new double[boundaries.length][dim];
+        boolean[][] periodicity = new boolean[boundaries.length][dim];
+        for (int i = 0; i < boundaries.length; i++) {
+            boundaries[i].getBoxSize().assignTo(boxSizes[i]);
+            for (int d = 0; d < dim; d++) {
+                periodicity[i][d] = boundaries[i].getPeriodicity(d);
+            }
+        }
+        return encode(coordinates, boxSizes, periodicity);
+    }
+
+    /**
+     * Encodes the given configuration.
+     *
+     * @param coordinates the coordinates of each atom in each box
+     * @param boxSizes    the edge lengths of each box
+     * @param periodicity whether each box is periodic in each dimension
+     * @return a new buffer holding the frame, ready to be read
+     */
+    public ByteBuffer encode(double[][][] coordinates, double[][] boxSizes, boolean[][] periodicity) {
+        int nBoxes = coordinates.length;
+        int dim = boxSizes[0].length;
+        boolean key = keyFrameNeeded || previous == null || previous.length != nBoxes || dim != lastDim
+                || (keyFrameInterval > 0 && frameCount - lastKeyFrame >= keyFrameInterval);
+        if (previous == null || previous.length != nBoxes || dim != lastDim) {
+            previous = new int[nBoxes][];
+            boxSize = new double[nBoxes][dim];
+            periodic = new int[nBoxes];
+            lastDim = dim;
+        }
+        for (int i = 0; i < nBoxes; i++) {
+            int p = 0;
+            for (int d = 0; d < dim; d++) {
+                if (boxSizes[i][d] != boxSize[i][d]) {
+                    key = true;
+                    boxSize[i][d] = boxSizes[i][d];
+                }
+                if (periodicity[i][d]) p |= 1 << d;
+            }
+            if (p != periodic[i]) {
+                key = true;
+                periodic[i] = p;
+            }
+            int n = coordinates[i].length * dim;
+            if (previous[i] == null || previous[i].length != n) {
+                key = true;
+                previous[i] = new int[n];
+            }
+        }
+
+        if (key) {
+            for (int i = 0; i < nBoxes; i++) {
+                int[] q = previous[i];
+                int k = 0;
+                for (double[] atom : coordinates[i]) {
+                    for (int d = 0; d < dim; d++, k++) {
+                        q[k] = quantize(atom[d], boxSize[i][d]);
+                    }
+                }
+            }
+            keyFrameNeeded = false;
+            lastKeyFrame = frameCount;
+            frameCount++;
+            return keyFrame();
+        }
+
+        putHeader(0, frameCount);
+        for (int i = 0; i < nBoxes; i++) {
+            int[] q = previous[i];
+            ensureCapacity(4 + q.length * ((bits + 6) / 7));
+            putInt(coordinates[i].length);
+            int k = 0;
+            for (double[] atom : coordinates[i]) {
+                for (int d = 0; d < dim; d++, k++) {
+                    int newQ = quantize(atom[d], boxSize[i][d]);
+                    int delta = newQ - q[k];
+                    if (bits == 16) delta = (short) delta;
+                    putVarint((delta << 1) ^ (delta >> 31));
+                    q[k] = newQ;
+                }
+            }
+        }
+        frameCount++;
+        return ByteBuffer.wrap(Arrays.copyOf(buffer, position));
+    }
+
+    /**
+     * Returns a key frame for the configuration most recently encoded, with
+     * the same frame number.  A client can start from this frame and then
+     * apply the frames that follow it, so one encoder can serve clients that
+     * join at different times.
+     */
+    public ByteBuffer keyFrame() {
+        if (previous == null) {
+            throw new IllegalStateException("nothing has been encoded");
+        }
+        putHeader(KEY_FRAME, frameCount - 1);
+        for (int i = 0; i < previous.length; i++) {
+            int[] q = previous[i];
+            ensureCapacity(lastDim * 8 + 5 + q.length * (bits / 8));
+            for (int d = 0; d < lastDim; d++) {
+                putLong(Double.doubleToLongBits(boxSize[i][d]));
+            }
+            putByte((byte) periodic[i]);
+            putInt(q.length / lastDim);
+            for (int value : q) {
+                if (bits == 16) putShort(value);
+                else putInt(value);
+            }
+        }
+        return ByteBuffer.wrap(Arrays.copyOf(buffer, position));
+    }
+
+    protected void putHeader(int flags, int frame) {
+        position = 0;
+        ensureCapacity(10);
+        putByte(VERSION);
+        putByte(flags);
+        putByte((byte) bits);
+        putByte((byte) lastDim);
+        putInt(frame);
+        putShort(previous.length);
+    }
+
+    /**
+     * Returns x as a fraction of the box edge L, in units of 2^-bits, with
+     * the bits of an unsigned value.
+     */
+    protected int quantize(double x, double L) {
+        double f = L > 0 ? x / L + 0.5 : 0.5;
+        if (!(f > 0)) return 0;
+        if (f >= 1) return (int) maxQ;
+        return (int) Math.round(f * maxQ);
+    }
+
+    protected void ensureCapacity(int n) {
+        if (position + n > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, position + n));
+        }
+    }
+
+    protected void putByte(int b) {
+        buffer[position++] = (byte) b;
+    }
+
+    protected void putShort(int s) {
+        buffer[position++] = (byte) (s >>> 8);
+        buffer[position++] = (byte) s;
+    }
+
+    protected void putInt(int i) {
+        buffer[position++] = (byte) (i >>> 24);
+        buffer[position++] = (byte) (i >>> 16);
+        buffer[position++] = (byte) (i >>> 8);
+        buffer[position++] = (byte) i;
+    }
+
+    protected void putLong(long l) {
+        putInt((int) (l >>> 32));
+        putInt((int) l);
+    }
+
+    protected void putVarint(int v) {
+        while ((v & ~0x7f) != 0) {
+            buffer[position++] = (byte) ((v & 0x7f) | 0x80);
+            v >>>= 7;
+        }
+        buffer[position++] = (byte) v;
+    }
+
+    protected final int bits;
+    protected final long maxQ;
+    protected int keyFrameInterval;
+    protected volatile boolean keyFrameNeeded;
+    protected int frameCount, lastKeyFrame, lastDim;
+    protected int[][] previous;
+    protected double[][] boxSize;
+    protected int[] periodic;
+    protected byte[] buffer;
+    protected int position;
+}
@@ -0,0 +1,138 @@
+package etomica.server.serializers;
+
+import etomica.util.random.RandomMersenneTwister;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+class ConfigurationFrameEncoderTest {
+
+    private static boolean isKeyFrame(ByteBuffer frame) {
+        return (frame.get(1) & ConfigurationFrameEncoder.KEY_FRAME) != 0;
+    }
+
+    /**
+     * Checks that the decoder has the encoder's quantized coordinates
+     * exactly, and that they are within half a step of the actual ones.
+     */
+    private static void check(ConfigurationFrameEncoder encoder, ConfigurationFrameDecoder decoder,
+                              double[][][] coordinates, double[][] boxSizes) {
+        int[][] q = decoder.getQuantized();
+        Assertions.assertEquals(encoder.previous.length, q.length);
+        for (int i = 0; i < q.length; i++) {
+            Assertions.assertArrayEquals(encoder.previous[i], q[i]);
+            Assertions.assertArrayEquals(boxSizes[i], decoder.getBoxSizes()[i]);
+        }
+        double maxQ = encoder.getBits() == 32 ? 0xffffffffL : 0xffff;
+        double[][][] decoded = decoder.getCoordinates();
+        for (int i = 0; i < coordinates.length; i++) {
+            for (int j = 0; j < coordinates[i].length; j++) {
+                for (int d = 0; d < boxSizes[i].length; d++) {
+                    double tol = 0.5 * boxSizes[i][d] / maxQ * (1 + 1e-6);
+                    Assertions.assertEquals(coordinates[i][j][d], decoded[i][j][d], tol);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        for (int bits : new int[]{16, 32}) {
+            RandomMersenneTwister random = new RandomMersenneTwister(bits);
+            ConfigurationFrameEncoder encoder = new ConfigurationFrameEncoder(bits);
+            ConfigurationFrameDecoder decoder = new ConfigurationFrameDecoder();
+            double[][] boxSizes = new double[][]{{10, 11, 12}, {5, 5, 5}};
+            boolean[][] periodicity = new boolean[][]{{true, true, true}, {true, false, true}};
+            double[][][] coordinates = new double[][][]{new double[20][3], new double[7][3]};
+            for (int i = 0; i < 2; i++) {
+                for (double[] atom : coordinates[i]) {
+                    for (int d = 0; d < 3; d++) {
+                        atom[d] = (random.nextDouble() - 0.5) * boxSizes[i][d];
+                    }
+                }
+            }
+
+            ByteBuffer frame = encoder.encode(coordinates, boxSizes, periodicity);
+            Assertions.assertTrue(isKeyFrame(frame));
+            Assertions.assertTrue(decoder.decode(frame));
+            Assertions.assertArrayEquals(periodicity[1], decoder.getPeriodicity()[1]);
+            check(encoder, decoder, coordinates, boxSizes);
+
+            // a late joiner starts from a key frame of the same state
+            ConfigurationFrameDecoder lateDecoder = null;
+            for (int n = 0; n < 20; n++) {
+                for (int i = 0; i < 2; i++) {
+                    for (double[] atom : coordinates[i]) {
+                        for (int d = 0; d < 3; d++) {
+                            atom[d] += 0.1 * (random.nextDouble() - 0.5);
+                            // keep it in the box
+                            atom[d] -= Math.floor(atom[d] / boxSizes[i][d] + 0.5) * boxSizes[i][d];
+                        }
+                    }
+                }
+                // atom 0 crosses the periodic boundary in x
+                coordinates[0][0][0] = (n % 2 == 0 ? 0.4999 : -0.4999) * boxSizes[0][0];
+                frame = encoder.encode(coordinates, boxSizes, periodicity);
+                Assertions.assertFalse(isKeyFrame(frame));
+                Assertions.assertTrue(decoder.decode(frame));
+                check(encoder, decoder, coordinates, boxSizes);
+                if (n == 5) {
+                    lateDecoder = new ConfigurationFrameDecoder();
+                    ByteBuffer keyFrame = encoder.keyFrame();
+                    Assertions.assertTrue(isKeyFrame(keyFrame));
+                    Assertions.assertTrue(lateDecoder.decode(keyFrame));
+                    Assertions.assertEquals(decoder.getFrameNumber(), lateDecoder.getFrameNumber());
+                }
+                else if (n > 5) {
+                    Assertions.assertTrue(lateDecoder.decode(frame));
+                    check(encoder, lateDecoder, coordinates, boxSizes);
+                }
+            }
+
+            // a changed box size forces a key frame
+            boxSizes[1][2] = 6;
+            frame = encoder.encode(coordinates, boxSizes, periodicity);
+            Assertions.assertTrue(isKeyFrame(frame));
+            Assertions.assertTrue(decoder.decode(frame));
+            check(encoder, decoder, coordinates, boxSizes);
+
+            // a missed frame needs a key frame
+            encoder.encode(coordinates, boxSizes, periodicity);
+            frame = encoder.encode(coordinates, boxSizes, periodicity);
+            Assertions.assertFalse(decoder.decode(frame));
+            encoder.requestKeyFrame();
+            frame = encoder.encode(coordinates, boxSizes, periodicity);
+            Assertions.assertTrue(isKeyFrame(frame));
+            Assertions.assertTrue(decoder.decode(frame));
+            check(encoder, decoder, coordinates, boxSizes);
+        }
+    }
+
+    /**
+     * With 16 bits, a move across the periodic boundary wraps around and is
+     * sent as a small change.
+     */
+    @Test
+    public void testWraparound() {
+        ConfigurationFrameEncoder encoder = new ConfigurationFrameEncoder(16);
+        ConfigurationFrameDecoder decoder = new ConfigurationFrameDecoder();
+        double[][] boxSizes = new double[][]{{10}};
+        boolean[][] periodicity = new boolean[][]{{true}};
+        double[][][] coordinates = new double[][][]{{{5}}};
+        Assertions.assertTrue(decoder.decode(encoder.encode(coordinates, boxSizes, periodicity)));
+        Assertions.assertEquals(0xffff, decoder.getQuantized()[0][0]);
+
+        coordinates[0][0][0] = -5;
+        ByteBuffer frame = encoder.encode(coordinates, boxSizes, periodicity);
+        // header (10 bytes), atom count (4) and one single-byte varint
+        Assertions.assertEquals(15, frame.remaining());
+        Assertions.assertTrue(decoder.decode(frame));
+        Assertions.assertEquals(0, decoder.getQuantized()[0][0]);
+        Assertions.assertEquals(-5, decoder.getCoordinates()[0][0][0]);
+
+        coordinates[0][0][0] = 5;
+        Assertions.assertTrue(decoder.decode(encoder.encode(coordinates, boxSizes, periodicity)));
+        Assertions.assertEquals(0xffff, decoder.getQuantized()[0][0]);
+    }
+}